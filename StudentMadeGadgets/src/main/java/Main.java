@@ -1,6 +1,8 @@
 import java.io.IOException;
 import java.util.Scanner;
 import server.Server;
+import server.ServerConfig;
+import server.ServerMode;
 import ui.TextBasedUi;
 import ui.TextHelper;
 
@@ -25,6 +27,18 @@ public class Main {
           Server.runServer();
           running = false;
         }
+        case "RUN SERVER NIO" -> {
+          ServerConfig config = new ServerConfig();
+          config.setMode(ServerMode.NIO);
+          Server.runServer(config);
+          running = false;
+        }
+        case "RUN SERVER VIRTUAL" -> {
+          ServerConfig config = new ServerConfig();
+          config.setMode(ServerMode.VIRTUAL);
+          Server.runServer(config);
+          running = false;
+        }
         case "RUN CPANEL" -> {
           TextBasedUi textBasedUi = new TextBasedUi();
           textBasedUi.start();
@@ -43,6 +57,11 @@ public class Main {
     System.out.println("Welcome to our Student Made Gadgets application!");
     System.out.print("To set up a Server use");
     textHelper.printTextWithColour(" RUN server", "green");
+    System.out.print(" (or");
+    textHelper.printTextWithColour(" RUN server nio", "green");
+    System.out.print(" /");
+    textHelper.printTextWithColour(" RUN server virtual", "green");
+    System.out.print(" for the other server modes)");
     System.out.println();
     System.out.print("To enter a Control Panel use");
     textHelper.printTextWithColour(" RUN cpanel", "blue");
@@ -0,0 +1,517 @@
+package client;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import protocol.Codec;
+import protocol.Framing;
+import protocol.Message;
+import protocol.Protocol;
+import protocol.SensorDeltaDecoder;
+import protocol.command.*;
+
+/**
+ * Asynchronous version of {@link ControlPanelNode}.
+ *
+ * <p>Requests are sent right away without waiting for earlier replies,
+ * and every method returns a {@link CompletableFuture} for the reply.
+ * One reader thread per connection reads the replies and completes the
+ * pending future with the matching correlationID, so many requests can be
+ * in flight on the same socket at once.</p>
+ *
+ * <p>A future completes exceptionally with an {@link IOException} if the
+ * server answers with an ERROR message or the connection is lost, and with
+ * a {@link java.util.concurrent.TimeoutException} if no reply arrives within
+ * the request timeout.</p>
+ *
+ * <p>Messages pushed by subscriptions are handed to the listener of the
+ * subscription on the reader thread, so listeners should return quickly.</p>
+ */
+public class AsyncControlPanelNode {
+  private final String host;
+  private final int port;
+  private final ConcurrentHashMap<String, CompletableFuture<Message>> pending = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Consumer<Message>> subscriptions = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Integer, SensorDeltaDecoder> sensorDeltas = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Integer, CompletableFuture<SensorData>> sensorDeltaPolls = new ConcurrentHashMap<>();
+  private volatile GreenhouseListData cachedGreenhouses;
+  private Duration requestTimeout = Duration.ofSeconds(10);
+  private Framing framing = Framing.LINE;
+  private Codec codec = Codec.JSON;
+  private Socket socket;
+  private Protocol protocol;
+
+  /**
+   * Constructor for the AsyncControlPanelNode class.
+   *
+   * @param host the host/ip of the server to connect to
+   * @param port the port number to use, 6767 per the protocol specifications
+   */
+  public AsyncControlPanelNode(String host, int port) {
+    this.host = host;
+    this.port = port;
+  }
+
+  /**
+   * Connects to the server and starts the reader thread.
+   *
+   * @throws IOException if the connection could not be made
+   */
+  public void connect() throws IOException {
+    // The delta streams of the server belong to the old connection, and
+    // the registry versions of another server mean nothing here
+    sensorDeltas.clear();
+    sensorDeltaPolls.clear();
+    cachedGreenhouses = null;
+    this.socket = new Socket(host, port);
+    this.protocol = new Protocol(socket);
+    if (codec == Codec.BINARY) {
+      protocol.negotiate(Framing.LENGTH_PREFIXED, Codec.BINARY);
+    } else if (framing != Framing.LINE) {
+      protocol.negotiate(framing);
+    }
+
+    Thread reader = new Thread(this::readReplies, "control-panel-reader-" + host + ":" + port);
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  /**
+   * Disconnects from the server. Requests still waiting for a reply
+   * complete exceptionally.
+   *
+   * @throws IOException if an I/O error occurs when closing the socket
+   */
+  public void disconnect() throws IOException {
+    protocol.close();
+  }
+
+  /**
+   * Returns True if the panel is connected to a server.
+   * Returns False if the panel is not connected to a server.
+   */
+  public boolean isConnected() {
+    return this.socket != null && socket.isConnected() && !socket.isClosed();
+  }
+
+  /**
+   * Sets how long a request may wait for its reply.
+   *
+   * @param requestTimeout the request timeout
+   */
+  public void setRequestTimeout(Duration requestTimeout) {
+    this.requestTimeout = requestTimeout;
+  }
+
+  /**
+   * Sets the framing to ask the server for on the next connect.
+   * Servers that do not support it keep using {@link Framing#LINE}.
+   *
+   * @param framing the framing to ask for
+   */
+  public void setFraming(Framing framing) {
+    this.framing = framing;
+  }
+
+  /**
+   * Sets the codec to ask the server for on the next connect. The binary
+   * codec always uses length prefixed framing. Servers that do not support
+   * it keep using {@link Codec#JSON}.
+   *
+   * @param codec the codec to ask for
+   */
+  public void setCodec(Codec codec) {
+    this.codec = codec;
+  }
+
+  /**
+   * Gets the number of requests waiting for a reply.
+   *
+   * @return the number of pending requests
+   */
+  public int getPendingRequestCount() {
+    return pending.size();
+  }
+
+  /**
+   * Reads replies until the connection is closed, and completes the
+   * request each reply answers. Pushed messages go to the listener of
+   * their subscription. Replies to unknown or timed out requests are dropped.
+   */
+  private void readReplies() {
+    try {
+      while (true) {
+        Message replyMessage;
+        try {
+          replyMessage = protocol.receive();
+        } catch (IllegalArgumentException e) {
+          System.out.println("Dropped unreadable reply: " + e.getMessage());
+          continue;
+        }
+        if (replyMessage == null) {
+          break;
+        }
+
+        String correlationID = replyMessage.getCorrelationID();
+        if (isPush(replyMessage) && subscriptions.containsKey(correlationID)) {
+          Consumer<Message> listener = subscriptions.get(correlationID);
+          if (listener != null) {
+            listener.accept(replyMessage);
+          }
+          continue;
+        }
+
+        CompletableFuture<Message> future = correlationID == null ? null : pending.remove(correlationID);
+        if (future == null) {
+          continue;
+        }
+
+        if ("ERROR".equals(replyMessage.getMessageType())) {
+          Information error = (Information) replyMessage.getBody();
+          String description = error == null ? "unknown error" : error.getInformation();
+          future.completeExceptionally(new IOException("Server error: " + description));
+        } else {
+          future.complete(replyMessage);
+        }
+      }
+      failPending(new IOException("Connection closed by server"));
+    } catch (IOException e) {
+      failPending(e);
+    }
+  }
+
+  private static boolean isPush(Message message) {
+    return "SENSOR_DATA".equals(message.getMessageType())
+        || "SENSOR_DATA_DELTA".equals(message.getMessageType())
+        || "ACTUATOR_DATA".equals(message.getMessageType());
+  }
+
+  private void failPending(IOException cause) {
+    for (String messageID : pending.keySet()) {
+      CompletableFuture<Message> future = pending.remove(messageID);
+      if (future != null) {
+        future.completeExceptionally(cause);
+      }
+    }
+  }
+
+  /**
+   * Sends a request using the default request timeout.
+   *
+   * @param messageType the type of the request
+   * @param body        the body of the request, may be null
+   * @return a future for the reply
+   */
+  public CompletableFuture<Message> request(String messageType, Command body) {
+    return request(messageType, body, requestTimeout);
+  }
+
+  /**
+   * Sends a request.
+   *
+   * @param messageType the type of the request
+   * @param body        the body of the request, may be null
+   * @param timeout     how long to wait for the reply
+   * @return a future for the reply
+   */
+  public CompletableFuture<Message> request(String messageType, Command body, Duration timeout) {
+    return request(String.valueOf(UUID.randomUUID()), messageType, body, timeout);
+  }
+
+  private CompletableFuture<Message> request(String messageID, String messageType, Command body,
+                                             Duration timeout) {
+    Message message = new Message();
+    message.setMessageType(messageType);
+    message.setMessageID(messageID);
+    message.setTimestamp(System.currentTimeMillis());
+    message.setBody(body);
+
+    CompletableFuture<Message> future = new CompletableFuture<>();
+    pending.put(message.getMessageID(), future);
+    // The caller gets the stage after the removal, so a completed request is never pending
+    CompletableFuture<Message> result = future.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+        .whenComplete((reply, error) -> pending.remove(message.getMessageID()));
+
+    try {
+      protocol.send(message);
+    } catch (IOException e) {
+      future.completeExceptionally(e);
+    }
+    return result;
+  }
+
+  /**
+   * Gets a list of all greenhouses from the server. The list is cached
+   * and reused while the server replies NOT_MODIFIED, see
+   * {@link ControlPanelNode#getAllGreenhouses()}.
+   *
+   * @return a future for the list of all greenhouses
+   */
+  public CompletableFuture<GreenhouseListData> getAllGreenhouses() {
+    GreenhouseListData cached = cachedGreenhouses;
+    Command body = cached == null || cached.getVersion() == 0
+        ? null
+        : new GreenhouseListRequest(cached.getVersion());
+
+    return request("GET_ALL_GREENHOUSES", body).thenApply(reply -> {
+      if ("NOT_MODIFIED".equals(reply.getMessageType())) {
+        return cached;
+      }
+      GreenhouseListData greenhouses = (GreenhouseListData) reply.getBody();
+      // Pipelined replies may arrive out of order, keep the newest list
+      GreenhouseListData current = cachedGreenhouses;
+      if (current == null || greenhouses.getVersion() >= current.getVersion()) {
+        cachedGreenhouses = greenhouses;
+      }
+      return greenhouses;
+    });
+  }
+
+  /**
+   * Gets one page of greenhouse summaries from the server, see
+   * {@link ControlPanelNode#listGreenhouses(GreenhouseQuery)}.
+   *
+   * @param query the page and fields to get
+   * @return a future for the page of greenhouse summaries
+   */
+  public CompletableFuture<GreenhouseSummaryList> listGreenhouses(GreenhouseQuery query) {
+    return request("LIST_GREENHOUSES", query)
+        .thenApply(reply -> (GreenhouseSummaryList) reply.getBody());
+  }
+
+  /**
+   * Creates a new greenhouse on the server.
+   *
+   * @param name the name of the new greenhouse
+   * @return a future for the result of the operation
+   */
+  public CompletableFuture<Information> createGreenhouse(String name) {
+    return request("CREATE_GREENHOUSE", new CreateGreenhouse(name))
+        .thenApply(reply -> (Information) reply.getBody());
+  }
+
+  /**
+   * Creates a new greenhouse on the server, unless a greenhouse with the
+   * name exists already.
+   *
+   * @param name the name of the greenhouse
+   * @return a future for the result of the operation
+   */
+  public CompletableFuture<Information> createGreenhouseIfAbsent(String name) {
+    return request("CREATE_GREENHOUSE_IF_ABSENT", new CreateGreenhouse(name))
+        .thenApply(reply -> (Information) reply.getBody());
+  }
+
+  /**
+   * Finds the greenhouses with a name on the server.
+   *
+   * @param name the name of the greenhouses
+   * @return a future for the summaries of the greenhouses with the name
+   */
+  public CompletableFuture<GreenhouseSummaryList> findGreenhouses(String name) {
+    return request("FIND_GREENHOUSE", new GreenhouseLookup(name))
+        .thenApply(reply -> (GreenhouseSummaryList) reply.getBody());
+  }
+
+  /**
+   * Finds the greenhouses holding a device, see
+   * {@link ControlPanelNode#findDevice(String, String)}.
+   *
+   * @param deviceType "SENSOR" or "ACTUATOR"
+   * @param deviceId   the ID of the device
+   * @return a future for the IDs of the greenhouses holding the device
+   */
+  public CompletableFuture<DeviceLocations> findDevice(String deviceType, String deviceId) {
+    return request("FIND_DEVICE", new DeviceLookup(deviceType, deviceId))
+        .thenApply(reply -> (DeviceLocations) reply.getBody());
+  }
+
+  /**
+   * Removes a greenhouse from the server.
+   *
+   * @param id the ID of the greenhouse to remove
+   * @return a future for the result of the operation
+   */
+  public CompletableFuture<Information> removeGreenhouse(int id) {
+    return request("REMOVE_GREENHOUSE", new RemoveGreenhouse(id))
+        .thenApply(reply -> (Information) reply.getBody());
+  }
+
+  /**
+   * Gets sensor data for all sensors in a specified greenhouse.
+   *
+   * @param greenhouseId the ID of the greenhouse
+   * @return a future for the sensor data
+   */
+  public CompletableFuture<SensorData> getAllSensorData(int greenhouseId) {
+    return request("DATA_REQUEST", new DataRequest(greenhouseId, "ALL", "SENSOR"))
+        .thenApply(reply -> (SensorData) reply.getBody());
+  }
+
+  /**
+   * Gets sensor data for all sensors in a specified greenhouse in delta
+   * mode, see {@link ControlPanelNode#getSensorDataDelta(int, HashMap)}.
+   * Delta requests for the same greenhouse are sent one after another,
+   * since each reply builds on the one before.
+   *
+   * @param greenhouseId the ID of the greenhouse
+   * @param deadBands    how much a reading must change to be sent again,
+   *                     keyed by sensor type, with "ALL" for other types
+   * @return a future for the sensor data
+   */
+  public CompletableFuture<SensorData> getSensorDataDelta(int greenhouseId, HashMap<String, Double> deadBands) {
+    SensorDeltaDecoder decoder = sensorDeltas.computeIfAbsent(greenhouseId, id -> new SensorDeltaDecoder());
+    return sensorDeltaPolls.compute(greenhouseId, (id, previous) -> {
+      CompletableFuture<SensorData> done = previous == null
+          ? CompletableFuture.completedFuture(null)
+          : previous.exceptionally(error -> null);
+      return done.thenCompose(ignored -> request("DATA_REQUEST", new DataRequest(greenhouseId, deadBands)))
+          .thenApply(decoder::apply);
+    });
+  }
+
+  /**
+   * Gets actuator data for a specific actuator in a specified greenhouse.
+   *
+   * @param greenhouseId the ID of the greenhouse
+   * @param actuatorId the ID of the actuator
+   * @return a future for the actuator data
+   */
+  public CompletableFuture<ActuatorData> getActuatorData(int greenhouseId, String actuatorId) {
+    return request("DATA_REQUEST", new DataRequest(greenhouseId, actuatorId, "ACTUATOR"))
+        .thenApply(reply -> (ActuatorData) reply.getBody());
+  }
+
+  /**
+   * Gets actuator data for all actuators in a specified greenhouse.
+   *
+   * @param greenhouseId the ID of the greenhouse
+   * @return a future for the actuator data
+   */
+  public CompletableFuture<ActuatorData> getAllActuatorData(int greenhouseId) {
+    return request("DATA_REQUEST", new DataRequest(greenhouseId, "ALL", "ACTUATOR"))
+        .thenApply(reply -> (ActuatorData) reply.getBody());
+  }
+
+  /**
+   * Changes the state of a specific actuator in a specified greenhouse.
+   *
+   * @param greenhouseId the ID of the greenhouse
+   * @param actuatorId the ID of the actuator
+   * @param state the desired state of the actuator (true for ON, false for OFF)
+   * @return a future for the result of the operation
+   */
+  public CompletableFuture<Information> changeActuatorState(int greenhouseId, String actuatorId, boolean state) {
+    return request("ACTUATOR_COMMAND", new ActuatorCommand(greenhouseId, actuatorId, state))
+        .thenApply(reply -> (Information) reply.getBody());
+  }
+
+  /**
+   * Changes the power level of a specific actuator in a specified greenhouse.
+   *
+   * @param greenhouseId the ID of the greenhouse
+   * @param actuatorId the ID of the actuator
+   * @param power the desired power level of the actuator
+   * @return a future for the result of the operation
+   */
+  public CompletableFuture<Information> changeActuatorPower(int greenhouseId, String actuatorId, int power) {
+    return request("ACTUATOR_COMMAND", new ActuatorCommand(greenhouseId, actuatorId, power))
+        .thenApply(reply -> (Information) reply.getBody());
+  }
+
+  /**
+   * Adds an actuator to a sensor node in a specified greenhouse.
+   *
+   * @param greenhouseId the ID of the greenhouse
+   * @param actuatorType the type of actuator to add
+   * @return a future for the result of the operation
+   */
+  public CompletableFuture<Information> addActuatorToSensorNode(int greenhouseId, String actuatorType) {
+    return request("ADD_ACTUATOR", new AddActuator(greenhouseId, actuatorType))
+        .thenApply(reply -> (Information) reply.getBody());
+  }
+
+  /**
+   * Adds a sensor to a sensor node in a specified greenhouse.
+   *
+   * @param greenhouseId the ID of the greenhouse
+   * @param sensorType the type of sensor to add
+   * @return a future for the result of the operation
+   */
+  public CompletableFuture<Information> addSensorToSensorNode(int greenhouseId, String sensorType) {
+    return request("ADD_SENSOR", new AddSensor(greenhouseId, sensorType))
+        .thenApply(reply -> (Information) reply.getBody());
+  }
+
+  /**
+   * Executes several requests in one round trip.
+   *
+   * @param batch the requests to execute
+   * @return a future for the replies to the executed requests
+   */
+  public CompletableFuture<BatchResult> executeBatch(Batch batch) {
+    return request("BATCH", batch)
+        .thenApply(reply -> (BatchResult) reply.getBody());
+  }
+
+  /**
+   * Subscribes to the sensor or actuator data of a greenhouse. The server
+   * sends the data right away, and again every time it changes.
+   *
+   * @param greenhouseId the ID of the greenhouse
+   * @param deviceType   "SENSOR" or "ACTUATOR"
+   * @param listener     gets every pushed SENSOR_DATA or ACTUATOR_DATA message
+   * @return a future for the ID of the subscription
+   */
+  public CompletableFuture<String> subscribe(int greenhouseId, String deviceType, Consumer<Message> listener) {
+    return subscribe(new Subscribe(greenhouseId, deviceType), listener);
+  }
+
+  /**
+   * Subscribes to the sensor data of a greenhouse in delta mode. The
+   * server only pushes readings that moved by more than their dead-band,
+   * and the listener gets the full sensor data rebuilt from the pushes.
+   *
+   * @param greenhouseId the ID of the greenhouse
+   * @param deadBands    how much a reading must change to be sent again,
+   *                     keyed by sensor type, with "ALL" for other types
+   * @param listener     gets the sensor data after every push
+   * @return a future for the ID of the subscription
+   */
+  public CompletableFuture<String> subscribeToSensorDeltas(int greenhouseId, HashMap<String, Double> deadBands,
+                                                          Consumer<SensorData> listener) {
+    SensorDeltaDecoder decoder = new SensorDeltaDecoder();
+    return subscribe(new Subscribe(greenhouseId, deadBands), push -> listener.accept(decoder.apply(push)));
+  }
+
+  private CompletableFuture<String> subscribe(Subscribe subscribe, Consumer<Message> listener) {
+    String subscriptionId = String.valueOf(UUID.randomUUID());
+    // The first push may arrive before the reply
+    subscriptions.put(subscriptionId, listener);
+    return request(subscriptionId, "SUBSCRIBE", subscribe, requestTimeout)
+        .whenComplete((reply, error) -> {
+          if (error != null) {
+            subscriptions.remove(subscriptionId);
+          }
+        })
+        .thenApply(reply -> subscriptionId);
+  }
+
+  /**
+   * Stops a subscription.
+   *
+   * @param subscriptionId the ID of the subscription
+   * @return a future for the result of the operation
+   */
+  public CompletableFuture<Information> unsubscribe(String subscriptionId) {
+    subscriptions.remove(subscriptionId);
+    return request("UNSUBSCRIBE", new Unsubscribe(subscriptionId))
+        .thenApply(reply -> (Information) reply.getBody());
+  }
+}
@@ -2,20 +2,37 @@ package client;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.util.HashMap;
+import java.util.Objects;
 import java.util.UUID;
-import protocol.JSONHandler;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import protocol.Codec;
+import protocol.Framing;
 import protocol.Message;
 import protocol.Protocol;
+import protocol.SensorDeltaDecoder;
 import protocol.command.*;
 
 /**
  * ControlPanelNode class, includes methods for connecting
  * to and sending commands to the server.
+ *
+ * <p>A connected node keeps one {@link Protocol} for the lifetime of its
+ * socket. Requests are sent one at a time; callers on other threads wait
+ * for the current request to get its reply. To share a bounded number of
+ * connections between many threads, see {@link ControlPanelPool}.</p>
  */
 public class ControlPanelNode {
   private String host;
   private int port;
   private Socket socket;
+  private Protocol protocol;
+  private Framing framing = Framing.LINE;
+  private Codec codec = Codec.JSON;
+  private final ReentrantLock requestLock = new ReentrantLock();
+  private final ConcurrentHashMap<Integer, SensorDeltaDecoder> sensorDeltas = new ConcurrentHashMap<>();
+  private volatile GreenhouseListData cachedGreenhouses;
 
   /**
    * Constructor for the ControlPanelNode class.
@@ -38,14 +55,60 @@ public class ControlPanelNode {
     this.port = port;
   }
 
+  /**
+   * Sets the framing to ask the server for on the next connect.
+   * Servers that do not support it keep using {@link Framing#LINE}, or
+   * close the connection, see {@link Protocol#negotiate(Framing, Codec)}.
+   *
+   * @param framing the framing to ask for
+   */
+  public void setFraming(Framing framing) {
+    this.framing = framing;
+  }
+
+  /**
+   * Sets the codec to ask the server for on the next connect. The binary
+   * codec always uses length prefixed framing. Servers that do not support
+   * it keep using {@link Codec#JSON}, or close the connection, see
+   * {@link Protocol#negotiate(Framing, Codec)}.
+   *
+   * @param codec the codec to ask for
+   */
+  public void setCodec(Codec codec) {
+    this.codec = codec;
+  }
+
   /**
    * Connects to the server, specified with the host and port.
    */
   public void connect() {
+    Socket newSocket = null;
     try {
-      socket = new Socket(host,port);
+      // The delta streams of the server belong to the old connection, and
+      // the registry versions of another server mean nothing here
+      sensorDeltas.clear();
+      cachedGreenhouses = null;
+      newSocket = new Socket(host,port);
+      Protocol newProtocol = new Protocol(newSocket);
+      if (codec == Codec.BINARY) {
+        newProtocol.negotiate(Framing.LENGTH_PREFIXED, Codec.BINARY);
+      } else if (framing != Framing.LINE) {
+        newProtocol.negotiate(framing);
+      }
+      socket = newSocket;
+      protocol = newProtocol;
     } catch (IOException e) {
       System.out.println("Failed to connect to the server: " + e.getMessage());
+      // A connection whose framing or codec was not agreed on can not be used
+      if (newSocket != null) {
+        try {
+          newSocket.close();
+        } catch (IOException closeError) {
+          System.out.println("Failed to close the connection: " + closeError.getMessage());
+        }
+      }
+      protocol = null;
+      socket = null;
     }
   }
 
@@ -55,7 +118,8 @@ public class ControlPanelNode {
    * @throws IOException if an I/O error occurs when closing the socket
    */
   public void disconnect() throws IOException {
-    socket.close();
+    protocol.close();
+    protocol = null;
     socket = null;
   }
 
@@ -72,24 +136,113 @@ public class ControlPanelNode {
     return this.socket != null && socket.isConnected() && !socket.isClosed();
   }
 
+  /**
+   * Sends a request to the server and waits for its reply. Messages
+   * that do not answer this request are skipped. After an I/O error the
+   * socket is closed, so the node is no longer {@link #isConnected()}.
+   *
+   * @param messageType the type of the request
+   * @param body        the body of the request, may be null
+   * @return the reply from the server
+   * @throws IOException if an I/O error occurs, the connection is closed,
+   *                     or the server replies with an ERROR message
+   */
+  private Message request(String messageType, Command body) throws IOException {
+    Message message = new Message();
+    message.setMessageType(messageType);
+    message.setMessageID(String.valueOf(UUID.randomUUID()));
+    message.setTimestamp(System.currentTimeMillis());
+    message.setBody(body);
+
+    requestLock.lock();
+    try {
+      Message replyMessage;
+      try {
+        protocol.send(message);
+        do {
+          replyMessage = protocol.receive();
+          if (replyMessage == null) {
+            throw new IOException("Connection closed by server");
+          }
+        } while (!answers(replyMessage, message));
+      } catch (IOException e) {
+        // The reply may be partly read or still on its way, so the connection can not be used again
+        closeQuietly();
+        throw e;
+      }
+
+      if ("ERROR".equals(replyMessage.getMessageType())) {
+        Information error = (Information) replyMessage.getBody();
+        throw new IOException("Server error: " + (error == null ? "unknown error" : error.getInformation()));
+      }
+      return replyMessage;
+    } finally {
+      requestLock.unlock();
+    }
+  }
+
+  /**
+   * Closes the socket after a failed request, so the node no longer counts
+   * as connected. The node can still be disconnected or connected again.
+   */
+  private void closeQuietly() {
+    try {
+      protocol.close();
+    } catch (IOException e) {
+      System.out.println("Failed to close the connection: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Checks if a reply answers a request. An ERROR without a correlationID
+   * means the server could not read the request at all, and is taken as
+   * the answer as well.
+   */
+  private static boolean answers(Message reply, Message request) {
+    if (reply.getCorrelationID() == null) {
+      return "ERROR".equals(reply.getMessageType());
+    }
+    return Objects.equals(reply.getCorrelationID(), request.getMessageID());
+  }
+
   /**
    * Gets a list of all greenhouses from the server.
    *
+   * <p>The list is cached. When the server still has the same version of
+   * the list it replies NOT_MODIFIED, and the cached list is returned.
+   * The temperature, humidity and light in the list are those of when it
+   * was last sent; use the sensor data for current readings.</p>
+   *
    * @return GreenhouseListData object containing all greenhouses
    * @throws IOException if an I/O error occurs during communication
    */
   public GreenhouseListData getAllGreenhouses() throws IOException {
-    Message message = new Message();
-    message.setMessageType("GET_ALL_GREENHOUSES");
-    message.setMessageID(String.valueOf(UUID.randomUUID()));
-    message.setTimestamp(System.currentTimeMillis());
-    String jsonMessage = JSONHandler.serializeMessageToJSON(message);
-    Protocol protocol = new Protocol(this.socket);
-    protocol.sendMessage(jsonMessage);
-    String reply = protocol.readMessage();
-    Message replyMessage = JSONHandler.deserializeFromJSONToMessage(reply);
-    GreenhouseListData greenhouseListData = (GreenhouseListData) replyMessage.getBody();
-    return greenhouseListData;
+    GreenhouseListData cached = cachedGreenhouses;
+    Command body = cached == null || cached.getVersion() == 0
+        ? null
+        : new GreenhouseListRequest(cached.getVersion());
+
+    Message replyMessage = request("GET_ALL_GREENHOUSES", body);
+    if ("NOT_MODIFIED".equals(replyMessage.getMessageType())) {
+      return cached;
+    }
+    GreenhouseListData greenhouses = (GreenhouseListData) replyMessage.getBody();
+    cachedGreenhouses = greenhouses;
+    return greenhouses;
+  }
+
+  /**
+   * Gets one page of greenhouse summaries from the server. Unlike
+   * {@link #getAllGreenhouses()}, the reply only holds the fields asked
+   * for, and its size is bounded however many greenhouses there are.
+   *
+   * @param query the page and fields to get
+   * @return the page of greenhouse summaries
+   * @throws IOException if an I/O error occurs during communication
+   */
+  public GreenhouseSummaryList listGreenhouses(GreenhouseQuery query) throws IOException {
+    Message replyMessage = request("LIST_GREENHOUSES", query);
+    return (GreenhouseSummaryList) replyMessage.getBody();
   }
 
   /**
@@ -100,19 +253,46 @@ public class ControlPanelNode {
    * @throws IOException if an I/O error occurs during communication
    */
   public Information createGreenhouse(String name) throws IOException {
-    Message message = new Message();
-    message.setMessageType("CREATE_GREENHOUSE");
-    message.setMessageID(String.valueOf(UUID.randomUUID()));
-    message.setTimestamp(System.currentTimeMillis());
-    message.setBody(new CreateGreenhouse(name));
-    String jsonMessage = JSONHandler.serializeMessageToJSON(message);
-    Protocol protocol = new Protocol(this.socket);
-    protocol.sendMessage(jsonMessage);
-
-    String reply = protocol.readMessage();
-    Message replyMessage = JSONHandler.deserializeFromJSONToMessage(reply);
-    Information information = (Information) replyMessage.getBody();
-    return information;
+    Message replyMessage = request("CREATE_GREENHOUSE", new CreateGreenhouse(name));
+    return (Information) replyMessage.getBody();
+  }
+
+  /**
+   * Creates a new greenhouse on the server, unless a greenhouse with the
+   * name exists already.
+   *
+   * @param name the name of the greenhouse
+   * @return Information object telling if the greenhouse was added or already existed
+   * @throws IOException if an I/O error occurs during communication
+   */
+  public Information createGreenhouseIfAbsent(String name) throws IOException {
+    Message replyMessage = request("CREATE_GREENHOUSE_IF_ABSENT", new CreateGreenhouse(name));
+    return (Information) replyMessage.getBody();
+  }
+
+  /**
+   * Finds the greenhouses with a name on the server.
+   *
+   * @param name the name of the greenhouses
+   * @return the summaries of the greenhouses with the name, ordered by ID
+   * @throws IOException if an I/O error occurs during communication
+   */
+  public GreenhouseSummaryList findGreenhouses(String name) throws IOException {
+    Message replyMessage = request("FIND_GREENHOUSE", new GreenhouseLookup(name));
+    return (GreenhouseSummaryList) replyMessage.getBody();
+  }
+
+  /**
+   * Finds the greenhouses holding a device, without knowing their IDs.
+   *
+   * @param deviceType "SENSOR" or "ACTUATOR"
+   * @param deviceId   the ID of the device, e.g. "Temperature-3"
+   * @return the IDs of the greenhouses holding the device
+   * @throws IOException if an I/O error occurs during communication
+   */
+  public DeviceLocations findDevice(String deviceType, String deviceId) throws IOException {
+    Message replyMessage = request("FIND_DEVICE", new DeviceLookup(deviceType, deviceId));
+    return (DeviceLocations) replyMessage.getBody();
   }
 
   /**
@@ -123,19 +303,8 @@ public class ControlPanelNode {
    * @throws IOException if an I/O error occurs during communication
    */
   public Information removeGreenhouse(int id) throws IOException {
-    Message message = new Message();
-    message.setMessageType("REMOVE_GREENHOUSE");
-    message.setMessageID(String.valueOf(UUID.randomUUID()));
-    message.setTimestamp(System.currentTimeMillis());
-    message.setBody(new RemoveGreenhouse(id));
-    String jsonMessage = JSONHandler.serializeMessageToJSON(message);
-    Protocol protocol = new Protocol(this.socket);
-    protocol.sendMessage(jsonMessage);
-
-    String reply = protocol.readMessage();
-    Message replyMessage = JSONHandler.deserializeFromJSONToMessage(reply);
-    Information information = (Information) replyMessage.getBody();
-    return information;
+    Message replyMessage = request("REMOVE_GREENHOUSE", new RemoveGreenhouse(id));
+    return (Information) replyMessage.getBody();
   }
 
   /**
@@ -146,19 +315,32 @@ public class ControlPanelNode {
    * @throws IOException if an I/O error occurs during communication
    */
   public SensorData getAllSensorData(int greenhouseId) throws IOException {
-    Message message = new Message();
-    message.setMessageType("DATA_REQUEST");
-    message.setMessageID(String.valueOf(UUID.randomUUID()));
-    message.setTimestamp(System.currentTimeMillis());
-    message.setBody(new DataRequest(greenhouseId, "ALL", "SENSOR"));
-    String jsonMessage = JSONHandler.serializeMessageToJSON(message);
-    Protocol protocol = new Protocol(this.socket);
-    protocol.sendMessage(jsonMessage);
-
-    String reply = protocol.readMessage();
-    Message replyMessage = JSONHandler.deserializeFromJSONToMessage(reply);
-    SensorData sensorData = (SensorData) replyMessage.getBody();
-    return sensorData;
+    Message replyMessage = request("DATA_REQUEST", new DataRequest(greenhouseId, "ALL", "SENSOR"));
+    return (SensorData) replyMessage.getBody();
+  }
+
+  /**
+   * Gets sensor data for all sensors in a specified greenhouse in delta
+   * mode. The server only sends the readings that moved by more than their
+   * dead-band since the last call for the same greenhouse, and the rest is
+   * filled in from earlier replies.
+   *
+   * @param greenhouseId the ID of the greenhouse
+   * @param deadBands    how much a reading must change to be sent again,
+   *                     keyed by sensor type, with "ALL" for other types
+   * @return SensorData object containing the sensor data
+   * @throws IOException if an I/O error occurs during communication
+   */
+  public SensorData getSensorDataDelta(int greenhouseId, HashMap<String, Double> deadBands) throws IOException {
+    SensorDeltaDecoder decoder = sensorDeltas.computeIfAbsent(greenhouseId, id -> new SensorDeltaDecoder());
+    // Keep the request lock until the reply is applied, so the replies are applied in the order they were sent
+    requestLock.lock();
+    try {
+      Message replyMessage = request("DATA_REQUEST", new DataRequest(greenhouseId, deadBands));
+      return decoder.apply(replyMessage);
+    } finally {
+      requestLock.unlock();
+    }
   }
 
   /**
@@ -170,19 +352,8 @@ public class ControlPanelNode {
    * @throws IOException if an I/O error occurs during communication
    */
   public ActuatorData getActuatorData(int greenhouseId, String actuatorId) throws IOException {
-    Message message = new Message();
-    message.setMessageType("DATA_REQUEST");
-    message.setMessageID(String.valueOf(UUID.randomUUID()));
-    message.setTimestamp(System.currentTimeMillis());
-    message.setBody(new DataRequest(greenhouseId, actuatorId, "ACTUATOR"));
-    String jsonMessage = JSONHandler.serializeMessageToJSON(message);
-    Protocol protocol = new Protocol(this.socket);
-    protocol.sendMessage(jsonMessage);
-
-    String reply = protocol.readMessage();
-    Message replyMessage = JSONHandler.deserializeFromJSONToMessage(reply);
-    ActuatorData actuatorData = (ActuatorData) replyMessage.getBody();
-    return actuatorData;
+    Message replyMessage = request("DATA_REQUEST", new DataRequest(greenhouseId, actuatorId, "ACTUATOR"));
+    return (ActuatorData) replyMessage.getBody();
   }
 
   /**
@@ -193,19 +364,8 @@ public class ControlPanelNode {
    * @throws IOException if an I/O error occurs during communication
    */
   public ActuatorData getAllActuatorData(int greenhouseId) throws IOException {
-    Message message = new Message();
-    message.setMessageType("DATA_REQUEST");
-    message.setMessageID(String.valueOf(UUID.randomUUID()));
-    message.setTimestamp(System.currentTimeMillis());
-    message.setBody(new DataRequest(greenhouseId, "ALL", "ACTUATOR"));
-    String jsonMessage = JSONHandler.serializeMessageToJSON(message);
-    Protocol protocol = new Protocol(this.socket);
-    protocol.sendMessage(jsonMessage);
-
-    String reply = protocol.readMessage();
-    Message replyMessage = JSONHandler.deserializeFromJSONToMessage(reply);
-    ActuatorData actuatorData = (ActuatorData) replyMessage.getBody();
-    return actuatorData;
+    Message replyMessage = request("DATA_REQUEST", new DataRequest(greenhouseId, "ALL", "ACTUATOR"));
+    return (ActuatorData) replyMessage.getBody();
   }
 
   /**
@@ -218,19 +378,8 @@ public class ControlPanelNode {
    * @throws IOException if an I/O error occurs during communication
    */
   public Information changeActuatorState(int greenhouseId, String actuatorId, boolean state) throws IOException {
-    Message message = new Message();
-    message.setMessageType("ACTUATOR_COMMAND");
-    message.setMessageID(String.valueOf(UUID.randomUUID()));
-    message.setTimestamp(System.currentTimeMillis());
-    message.setBody(new ActuatorCommand(greenhouseId, actuatorId, state));
-    String jsonMessage = JSONHandler.serializeMessageToJSON(message);
-    Protocol protocol = new Protocol(this.socket);
-    protocol.sendMessage(jsonMessage);
-
-    String reply = protocol.readMessage();
-    Message replyMessage = JSONHandler.deserializeFromJSONToMessage(reply);
-    Information information = (Information) replyMessage.getBody();
-    return information;
+    Message replyMessage = request("ACTUATOR_COMMAND", new ActuatorCommand(greenhouseId, actuatorId, state));
+    return (Information) replyMessage.getBody();
   }
 
   /**
@@ -243,19 +392,8 @@ public class ControlPanelNode {
    * @throws IOException if an I/O error occurs during communication
    */
   public Information changeActuatorPower(int greenhouseId, String actuatorId, int power) throws IOException {
-    Message message = new Message();
-    message.setMessageType("ACTUATOR_COMMAND");
-    message.setMessageID(String.valueOf(UUID.randomUUID()));
-    message.setTimestamp(System.currentTimeMillis());
-    message.setBody(new ActuatorCommand(greenhouseId, actuatorId, power));
-    String jsonMessage = JSONHandler.serializeMessageToJSON(message);
-    Protocol protocol = new Protocol(this.socket);
-    protocol.sendMessage(jsonMessage);
-
-    String reply = protocol.readMessage();
-    Message replyMessage = JSONHandler.deserializeFromJSONToMessage(reply);
-    Information information = (Information) replyMessage.getBody();
-    return information;
+    Message replyMessage = request("ACTUATOR_COMMAND", new ActuatorCommand(greenhouseId, actuatorId, power));
+    return (Information) replyMessage.getBody();
   }
 
   /**
@@ -267,19 +405,8 @@ public class ControlPanelNode {
    * @throws IOException if an I/O error occurs during communication
    */
   public Information addActuatorToSensorNode(int greenhouseId, String actuatorType) throws IOException {
-    Message message = new Message();
-    message.setMessageType("ADD_ACTUATOR");
-    message.setMessageID(String.valueOf(UUID.randomUUID()));
-    message.setTimestamp(System.currentTimeMillis());
-    message.setBody(new AddActuator(greenhouseId, actuatorType));
-    String jsonMessage = JSONHandler.serializeMessageToJSON(message);
-    Protocol protocol = new Protocol(this.socket);
-    protocol.sendMessage(jsonMessage);
-
-    String reply = protocol.readMessage();
-    Message replyMessage = JSONHandler.deserializeFromJSONToMessage(reply);
-    Information information = (Information) replyMessage.getBody();
-    return information;
+    Message replyMessage = request("ADD_ACTUATOR", new AddActuator(greenhouseId, actuatorType));
+    return (Information) replyMessage.getBody();
   }
 
   /**
@@ -291,18 +418,19 @@ public class ControlPanelNode {
    * @throws IOException if an I/O error occurs during communication
    */
   public Information addSensorToSensorNode(int greenhouseId, String sensorType) throws IOException {
-    Message message = new Message();
-    message.setMessageType("ADD_SENSOR");
-    message.setMessageID(String.valueOf(UUID.randomUUID()));
-    message.setTimestamp(System.currentTimeMillis());
-    message.setBody(new AddSensor(greenhouseId, sensorType));
-    String jsonMessage = JSONHandler.serializeMessageToJSON(message);
-    Protocol protocol = new Protocol(this.socket);
-    protocol.sendMessage(jsonMessage);
-
-    String reply = protocol.readMessage();
-    Message replyMessage = JSONHandler.deserializeFromJSONToMessage(reply);
-    Information information = (Information) replyMessage.getBody();
-    return information;
+    Message replyMessage = request("ADD_SENSOR", new AddSensor(greenhouseId, sensorType));
+    return (Information) replyMessage.getBody();
+  }
+
+  /**
+   * Executes several requests in one round trip.
+   *
+   * @param batch the requests to execute
+   * @return the replies to the executed requests
+   * @throws IOException if an I/O error occurs during communication
+   */
+  public BatchResult executeBatch(Batch batch) throws IOException {
+    Message replyMessage = request("BATCH", batch);
+    return (BatchResult) replyMessage.getBody();
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,172 @@
+package client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of connections to the same server.
+ *
+ * <p>Threads borrow a connected {@link ControlPanelNode}, use it for one or
+ * more requests and give it back. At most {@code size} connections are
+ * opened; borrowers wait while all of them are in use. Connections are
+ * opened when first needed, and a connection that was lost is replaced by
+ * a new one the next time it is borrowed.</p>
+ */
+public class ControlPanelPool implements Closeable {
+  private final String host;
+  private final int port;
+  private final ArrayBlockingQueue<ControlPanelNode> idle;
+  private final Semaphore available;
+  private volatile boolean closed = false;
+
+  /**
+   * A request made with a borrowed connection.
+   *
+   * @param <T> the type of the result
+   */
+  @FunctionalInterface
+  public interface PooledRequest<T> {
+    T apply(ControlPanelNode node) throws IOException;
+  }
+
+  /**
+   * Constructor for the ControlPanelPool class.
+   *
+   * @param host the host/ip of the server to connect to
+   * @param port the port number to use, 6767 per the protocol specifications
+   * @param size the maximum number of connections, at least 1
+   */
+  public ControlPanelPool(String host, int port, int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException("The pool must hold at least one connection");
+    }
+    this.host = host;
+    this.port = port;
+    this.idle = new ArrayBlockingQueue<>(size);
+    this.available = new Semaphore(size, true);
+  }
+
+  /**
+   * Borrows a connection, waiting as long as needed for one to become free.
+   * The connection must be given back with {@link #release(ControlPanelNode)}.
+   *
+   * @return a connected node
+   * @throws IOException if a new connection could not be made
+   */
+  public ControlPanelNode borrow() throws IOException {
+    available.acquireUninterruptibly();
+    return takeConnected();
+  }
+
+  /**
+   * Borrows a connection, waiting at most the given time for one to become free.
+   * The connection must be given back with {@link #release(ControlPanelNode)}.
+   *
+   * @param timeout how long to wait
+   * @param unit    the unit of the timeout
+   * @return a connected node
+   * @throws IOException if no connection became free in time, or a new
+   *                     connection could not be made
+   */
+  public ControlPanelNode borrow(long timeout, TimeUnit unit) throws IOException {
+    try {
+      if (!available.tryAcquire(timeout, unit)) {
+        throw new IOException("No free connection to " + host + ":" + port + " within " + timeout + " " + unit);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for a connection", e);
+    }
+    return takeConnected();
+  }
+
+  /**
+   * Takes an idle connection, or opens a new one. Must be called with a
+   * permit from {@link #available}, which is given back if this fails.
+   */
+  private ControlPanelNode takeConnected() throws IOException {
+    if (closed) {
+      available.release();
+      throw new IOException("The connection pool is closed");
+    }
+    ControlPanelNode node = idle.poll();
+    if (node != null) {
+      if (node.isConnected()) {
+        return node;
+      }
+      // The server closed the connection while the node was idle
+      disconnectQuietly(node);
+    }
+
+    node = new ControlPanelNode(host, port);
+    node.connect();
+    if (!node.isConnected()) {
+      available.release();
+      throw new IOException("Failed to connect to " + host + ":" + port);
+    }
+    return node;
+  }
+
+  /**
+   * Gives a borrowed connection back to the pool.
+   *
+   * @param node the borrowed node
+   */
+  public void release(ControlPanelNode node) {
+    if (node.isConnected()) {
+      if (closed) {
+        disconnectQuietly(node);
+      } else {
+        idle.offer(node);
+        // The pool may have been closed after the check, and missed the node
+        if (closed && idle.remove(node)) {
+          disconnectQuietly(node);
+        }
+      }
+    }
+    available.release();
+  }
+
+  private static void disconnectQuietly(ControlPanelNode node) {
+    try {
+      node.disconnect();
+    } catch (IOException e) {
+      System.out.println("Failed to close pooled connection: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Borrows a connection, makes a request with it and gives it back.
+   *
+   * @param request the request to make
+   * @param <T>     the type of the result
+   * @return the result of the request
+   * @throws IOException if no connection could be made or the request fails
+   */
+  public <T> T execute(PooledRequest<T> request) throws IOException {
+    ControlPanelNode node = borrow();
+    try {
+      return request.apply(node);
+    } finally {
+      release(node);
+    }
+  }
+
+  /**
+   * Closes all idle connections. Connections that are borrowed are closed
+   * when they are given back.
+   *
+   * @throws IOException if an I/O error occurs when closing a connection
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    ControlPanelNode node;
+    while ((node = idle.poll()) != null) {
+      node.disconnect();
+    }
+  }
+}
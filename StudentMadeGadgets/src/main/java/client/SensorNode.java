@@ -1,24 +1,39 @@
 package client;
 
 import actuator.Actuator;
+import greenhouse.Climate;
+import greenhouse.DeviceDirectory;
 import greenhouse.Greenhouse;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import sensor.Sensor;
+import sensor.SensorHistory;
 
 
 /**
  * This class represents a sensor node that can hold multiple sensors and actuators.
+ *
+ * <p>Devices are added and removed by request threads while the climate
+ * engine records the history and snapshots are copied, so the maps are
+ * concurrent.</p>
  */
 public class SensorNode {
-  private HashMap<String, Actuator> actuators;
-  private HashMap<String, Sensor> sensors;
+  private ConcurrentHashMap<String, Actuator> actuators;
+  private ConcurrentHashMap<String, Sensor> sensors;
+  // The directory told about added and removed devices, and the greenhouse it knows the node as
+  private DeviceDirectory directory;
+  private Greenhouse owner;
+  // The readings of every sensor, while the node keeps a history
+  private final ConcurrentHashMap<String, SensorHistory> histories = new ConcurrentHashMap<>();
+  private volatile int historyCapacity = 0;
 
   /**
    * Constructor for the SensorNode class.
    */
   public SensorNode() {
-    this.actuators = new HashMap<>();
-    this.sensors = new HashMap<>();
+    this.actuators = new ConcurrentHashMap<>();
+    this.sensors = new ConcurrentHashMap<>();
   }
 
   /**
@@ -34,20 +49,109 @@ public class SensorNode {
     do {
       uniqueID = sensorType + "-" + count;
       count++;
-    } while (sensors.containsKey(uniqueID));
+      sensor.setID(uniqueID);
+    } while (sensors.putIfAbsent(uniqueID, sensor) != null);
 
-    sensor.setID(uniqueID);
-    this.sensors.put(uniqueID, sensor);
+    if (historyCapacity > 0) {
+      histories.put(uniqueID, new SensorHistory(historyCapacity));
+    }
+    if (directory != null) {
+      directory.addSensor(uniqueID, owner);
+    }
     return uniqueID;
   }
 
+  /**
+   * Adds a sensor to the node with a given device ID, e.g. when the node is
+   * restored from the write-ahead log.
+   *
+   * @param sensor   the sensor to add
+   * @param deviceID the device ID of the sensor
+   * @return false if the node already has a sensor with the ID
+   */
+  public boolean addSensorToNode(Sensor sensor, String deviceID) {
+    sensor.setID(deviceID);
+    if (sensors.putIfAbsent(deviceID, sensor) != null) {
+      return false;
+    }
+    if (historyCapacity > 0) {
+      histories.put(deviceID, new SensorHistory(historyCapacity));
+    }
+    if (directory != null) {
+      directory.addSensor(deviceID, owner);
+    }
+    return true;
+  }
+
   /**
    * Removes a sensor from the node.
    *
    * @param sensor the sensor to remove
    */
   public void removeSensorFromNode(Sensor sensor) {
-    this.sensors.remove(sensor.getID());
+    if (this.sensors.remove(sensor.getID()) != null) {
+      histories.remove(sensor.getID());
+      if (directory != null) {
+        directory.removeSensor(sensor.getID(), owner);
+      }
+    }
+  }
+
+  /**
+   * Sets the number of readings kept per sensor. The latest readings that
+   * fit are kept when the capacity changes.
+   *
+   * @param capacity the number of readings per sensor, or 0 to keep none
+   */
+  public void setHistoryCapacity(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("The history capacity can not be negative");
+    }
+    this.historyCapacity = capacity;
+    if (capacity == 0) {
+      histories.clear();
+      return;
+    }
+    for (String sensorId : sensors.keySet()) {
+      // A sensor removed meanwhile gets no history
+      histories.compute(sensorId, (id, history) -> !sensors.containsKey(id) ? null
+          : history == null ? new SensorHistory(capacity) : history.resize(capacity));
+    }
+  }
+
+  /**
+   * Gets the number of readings kept per sensor.
+   *
+   * @return the history capacity, 0 if no readings are kept
+   */
+  public int getHistoryCapacity() {
+    return this.historyCapacity;
+  }
+
+  /**
+   * Gets the latest readings of a sensor.
+   *
+   * @param deviceID the device ID of the sensor
+   * @return the history of the sensor, or null if no readings are kept
+   */
+  public SensorHistory getHistory(String deviceID) {
+    return histories.get(deviceID);
+  }
+
+  /**
+   * Records a reading of every sensor with a history.
+   *
+   * @param greenhouse the greenhouse the node is in
+   * @param climate    the climate read from the greenhouse
+   * @param timestamp  the time of the readings, in milliseconds since the epoch
+   */
+  public void recordHistory(Greenhouse greenhouse, Climate climate, long timestamp) {
+    for (Map.Entry<String, SensorHistory> entry : histories.entrySet()) {
+      Sensor sensor = sensors.get(entry.getKey());
+      if (sensor != null) {
+        entry.getValue().record(timestamp, sensor.read(greenhouse, climate));
+      }
+    }
   }
 
   /**
@@ -63,20 +167,80 @@ public class SensorNode {
     do {
       uniqueID = actuatorType + "-" + count;
       count++;
-    } while (actuators.containsKey(uniqueID));
+      actuator.setID(uniqueID);
+    } while (actuators.putIfAbsent(uniqueID, actuator) != null);
 
-    actuator.setID(uniqueID);
-    this.actuators.put(uniqueID, actuator);
+    if (directory != null) {
+      directory.addActuator(uniqueID, owner);
+    }
     return uniqueID;
   }
 
+  /**
+   * Adds an actuator to the node with a given device ID, e.g. when the node
+   * is restored from the write-ahead log.
+   *
+   * @param actuator the actuator to add
+   * @param deviceID the device ID of the actuator
+   * @return false if the node already has an actuator with the ID
+   */
+  public boolean addActuatorToNode(Actuator actuator, String deviceID) {
+    actuator.setID(deviceID);
+    if (actuators.putIfAbsent(deviceID, actuator) != null) {
+      return false;
+    }
+    if (directory != null) {
+      directory.addActuator(deviceID, owner);
+    }
+    return true;
+  }
+
   /**
    * Removes an actuator from the node.
    *
    * @param actuator the actuator to remove from the node
    */
   public void removeActuatorFromNode(Actuator actuator) {
-    this.actuators.remove(actuator.getID());
+    if (this.actuators.remove(actuator.getID()) != null && directory != null) {
+      directory.removeActuator(actuator.getID(), owner);
+    }
+  }
+
+  /**
+   * Sets the device directory that is told about the devices of the node.
+   * The devices are taken out of the old directory and put in the new one.
+   *
+   * @param directory the device directory, or null to stop telling any
+   * @param owner     the greenhouse the node belongs to
+   */
+  public void setDirectory(DeviceDirectory directory, Greenhouse owner) {
+    if (this.directory != null) {
+      for (String sensorId : sensors.keySet()) {
+        this.directory.removeSensor(sensorId, this.owner);
+      }
+      for (String actuatorId : actuators.keySet()) {
+        this.directory.removeActuator(actuatorId, this.owner);
+      }
+    }
+    this.directory = directory;
+    this.owner = directory == null ? null : owner;
+    if (directory != null) {
+      for (String sensorId : sensors.keySet()) {
+        directory.addSensor(sensorId, owner);
+      }
+      for (String actuatorId : actuators.keySet()) {
+        directory.addActuator(actuatorId, owner);
+      }
+    }
+  }
+
+  /**
+   * Gets the device directory that is told about the devices of the node.
+   *
+   * @return the device directory, or null if there is none
+   */
+  public DeviceDirectory getDirectory() {
+    return this.directory;
   }
 
   /**
@@ -102,21 +266,23 @@ public class SensorNode {
   }
 
   /**
-   * Returns the actuators in the sensor node.
+   * Returns a copy of the actuators in the sensor node. Changing the copy
+   * does not change the node.
    *
    * @return the actuators
    */
   public HashMap<String, Actuator> getActuators() {
-    return this.actuators;
+    return new HashMap<>(this.actuators);
   }
 
   /**
-   * Returns the sensors in the sensor node.
+   * Returns a copy of the sensors in the sensor node. Changing the copy
+   * does not change the node.
    *
    * @return the sensors
    */
   public HashMap<String, Sensor> getSensors() {
-    return this.sensors;
+    return new HashMap<>(this.sensors);
   }
 
   /**
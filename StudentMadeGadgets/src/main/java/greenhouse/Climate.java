@@ -0,0 +1,11 @@
+package greenhouse;
+
+/**
+ * The temperature, humidity and light of a greenhouse, read at one moment.
+ *
+ * @param temperature the temperature, in degrees Celsius
+ * @param humidity    the humidity, in percent
+ * @param light       the light level, in lux
+ */
+public record Climate(double temperature, int humidity, int light) {
+}
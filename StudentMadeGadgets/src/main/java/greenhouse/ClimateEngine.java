@@ -0,0 +1,626 @@
+package greenhouse;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Simulates the climate of all greenhouses on the server.
+ *
+ * <p>The temperature, humidity and light of the greenhouses are stored in
+ * primitive arrays, one element per greenhouse, instead of in the
+ * greenhouse objects. A tick updates all greenhouses in one loop over
+ * these arrays, which touches far less memory than visiting every object
+ * and lets the JIT keep the loop tight.</p>
+ *
+ * <p>The arrays are split into chunks of {@link #CHUNK_SIZE} elements.
+ * Chunks are never copied, so a value written while the engine grows is
+ * never lost. A greenhouse holds a {@link Slot} with its index in the
+ * arrays. Cancelling the slot copies the values back into the greenhouse
+ * and frees the index for another greenhouse.</p>
+ *
+ * <p>With a parallelism above 1, a tick splits the chunks between the
+ * threads of a {@link ForkJoinPool}. The random changes of a step are
+ * computed from the seed of the greenhouse and the number of the step
+ * alone, so the threads share no state except the chunks they are
+ * given.</p>
+ *
+ * <p>In {@link Mode#LAZY} mode a tick only updates the greenhouses with
+ * change listeners. Every other greenhouse remembers the step its values
+ * belong to, and catches up on the missed steps when it is read or
+ * changed, so idle greenhouses cost nothing. Since a step gives the same
+ * changes whenever it is computed, a lazy greenhouse goes through exactly
+ * the same values as an eager one with the same seed.</p>
+ *
+ * <p>The values of every greenhouse are guarded by a sequence lock: a
+ * version number that is odd while they are being changed. Writers take
+ * turns on the version with compare-and-set, and readers read without
+ * locking and try again if the version changed meanwhile, so a read
+ * never sees half of a change.</p>
+ */
+public final class ClimateEngine {
+  /**
+   * The number of greenhouses in a chunk of the arrays.
+   */
+  public static final int CHUNK_SIZE = 4096;
+  private static final int CHUNK_SHIFT = Integer.numberOfTrailingZeros(CHUNK_SIZE);
+
+  /**
+   * The time between two ticks of the shared engine, in milliseconds.
+   */
+  public static final long TICK_MILLIS = 10_000;
+
+  /**
+   * The default number of threads a tick runs on, one per processor.
+   */
+  public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+  private static final VarHandle VERSION = MethodHandles.arrayElementVarHandle(long[].class);
+
+  /**
+   * When the climate of the greenhouses is computed.
+   */
+  public enum Mode {
+    /**
+     * Every greenhouse is updated on every tick.
+     */
+    EAGER,
+    /**
+     * A greenhouse is updated when it is read or changed, or on a tick if
+     * it has change listeners.
+     */
+    LAZY
+  }
+
+  private static volatile ClimateEngine shared;
+
+  private final long seed;
+  private final LongSupplier clock;
+  private final long startTime;
+  private volatile Chunk[] chunks = new Chunk[0];
+  private volatile int end = 0;
+  private int[] freeIndexes = new int[16];
+  private int freeCount = 0;
+  private int attached = 0;
+  private long attachCount = 0;
+  private final Object tickLock = new Object();
+  private volatile ForkJoinPool pool;
+  private volatile Mode mode = Mode.EAGER;
+  // The step every greenhouse is at in eager mode
+  private long eagerStep = 0;
+  // Added to the number of whole ticks since the start to get the step in lazy mode
+  private volatile long lazyStepOffset = 0;
+  private volatile long lazyStepLimit = Long.MAX_VALUE;
+  private final Set<Slot> watchedSlots = ConcurrentHashMap.newKeySet();
+
+  private static final class Chunk {
+    final double[] temperature = new double[CHUNK_SIZE];
+    final int[] humidity = new int[CHUNK_SIZE];
+    final int[] light = new int[CHUNK_SIZE];
+    final long[] seed = new long[CHUNK_SIZE];
+    // The step the values belong to, only kept up to date in lazy mode
+    final long[] step = new long[CHUNK_SIZE];
+    final Slot[] slots = new Slot[CHUNK_SIZE];
+    // Even while the values can be read, odd while they are being changed
+    final long[] version = new long[CHUNK_SIZE];
+    // Greenhouses with change listeners, null for the others
+    final Greenhouse[] watched = new Greenhouse[CHUNK_SIZE];
+  }
+
+  /**
+   * The place of one greenhouse in the engine.
+   */
+  public static final class Slot {
+    private final ClimateEngine engine;
+    private final Greenhouse owner;
+    private final Chunk chunk;
+    private final int index;
+    private final int offset;
+    private volatile boolean isCancelled;
+
+    private Slot(ClimateEngine engine, Greenhouse owner, int index) {
+      this.engine = engine;
+      this.owner = owner;
+      this.chunk = engine.chunks[index >>> CHUNK_SHIFT];
+      this.index = index;
+      this.offset = index & (CHUNK_SIZE - 1);
+    }
+
+    /**
+     * Takes the greenhouse out of the engine, so its climate is no longer
+     * simulated. The greenhouse keeps its current values.
+     */
+    public void cancel() {
+      owner.stopEnvironmentUpdates();
+    }
+
+    /**
+     * Checks if the greenhouse has been taken out of the engine.
+     *
+     * @return true if the slot was cancelled
+     */
+    public boolean isCancelled() {
+      return this.isCancelled;
+    }
+
+    /**
+     * Frees the slot for another greenhouse.
+     *
+     * @return the values of the greenhouse when it left, or null if the
+     *     slot was already freed
+     */
+    Climate free() {
+      return engine.free(this);
+    }
+
+    /**
+     * Starts a change of the values, and catches up on the steps missed in
+     * lazy mode first.
+     *
+     * @return the version to end the change with
+     */
+    private long beginWrite() {
+      long version = ClimateEngine.beginWrite(chunk, offset);
+      if (engine.mode == Mode.LAZY && !isCancelled) {
+        long target = engine.lazyStep();
+        for (long step = chunk.step[offset]; step < target; step++) {
+          applyStep(chunk, offset, step);
+        }
+        chunk.step[offset] = Math.max(chunk.step[offset], target);
+      }
+      return version;
+    }
+
+    /**
+     * Catches up on the steps missed in lazy mode.
+     */
+    private void materialize() {
+      if (engine.mode == Mode.LAZY && chunk.step[offset] < engine.lazyStep()) {
+        endWrite(chunk, offset, beginWrite());
+      }
+    }
+
+    /**
+     * Reads the values of the greenhouse at one moment, without locking.
+     *
+     * @return the values
+     */
+    Climate read() {
+      materialize();
+      while (true) {
+        long version = (long) VERSION.getAcquire(chunk.version, offset);
+        double temperature = chunk.temperature[offset];
+        int humidity = chunk.humidity[offset];
+        int light = chunk.light[offset];
+        VarHandle.acquireFence();
+        if ((version & 1) == 0 && version == (long) VERSION.getOpaque(chunk.version, offset)) {
+          return new Climate(temperature, humidity, light);
+        }
+        Thread.onSpinWait();
+      }
+    }
+
+    double getTemperature() {
+      return read().temperature();
+    }
+
+    int getHumidity() {
+      return read().humidity();
+    }
+
+    int getLight() {
+      return read().light();
+    }
+
+    void changeTemperature(double change) {
+      long version = beginWrite();
+      if (!isCancelled) {
+        chunk.temperature[offset] += change;
+      }
+      endWrite(chunk, offset, version);
+    }
+
+    /**
+     * Changes the humidity, unless it would end up outside 0 to 100.
+     */
+    void changeHumidity(int change) {
+      long version = beginWrite();
+      int humidity = chunk.humidity[offset] + change;
+      if (!isCancelled && humidity >= 0 && humidity <= 100) {
+        chunk.humidity[offset] = humidity;
+      }
+      endWrite(chunk, offset, version);
+    }
+
+    void changeLight(int change) {
+      long version = beginWrite();
+      if (!isCancelled) {
+        chunk.light[offset] += change;
+      }
+      endWrite(chunk, offset, version);
+    }
+
+    void setWatched(Greenhouse greenhouse) {
+      chunk.watched[offset] = greenhouse;
+      if (greenhouse == null) {
+        engine.watchedSlots.remove(this);
+      } else {
+        engine.watchedSlots.add(this);
+      }
+    }
+  }
+
+  /**
+   * Constructor for an eager engine with a random seed, that ticks on the
+   * calling thread.
+   */
+  public ClimateEngine() {
+    this(System.nanoTime() ^ Double.doubleToLongBits(Math.random()), System::nanoTime);
+  }
+
+  /**
+   * Constructor for ClimateEngine.
+   *
+   * @param seed  the seed the seeds of the greenhouses are made from
+   * @param clock the time in nanoseconds, which decides the step in lazy mode
+   */
+  ClimateEngine(long seed, LongSupplier clock) {
+    this.seed = seed;
+    this.clock = clock;
+    this.startTime = clock.getAsLong();
+  }
+
+  /**
+   * Gets the engine shared by all greenhouses, creating it with
+   * {@link #DEFAULT_PARALLELISM} and starting its ticks the first time.
+   * The first tick runs right away, then one every {@link #TICK_MILLIS}.
+   * Other engines tick on the calling thread until their parallelism is set.
+   *
+   * @return the shared engine
+   */
+  public static ClimateEngine getShared() {
+    ClimateEngine engine = shared;
+    if (engine == null) {
+      synchronized (ClimateEngine.class) {
+        engine = shared;
+        if (engine == null) {
+          engine = new ClimateEngine();
+          engine.setParallelism(DEFAULT_PARALLELISM);
+          startTicking(engine);
+          shared = engine;
+        }
+      }
+    }
+    return engine;
+  }
+
+  /**
+   * Ticks an engine on a thread of its own. The engine is the only task,
+   * so a single scheduled thread is enough; a failed tick is printed and
+   * does not stop the next ones.
+   */
+  private static void startTicking(ClimateEngine engine) {
+    ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "climate-engine");
+      thread.setDaemon(true);
+      return thread;
+    });
+    ticker.scheduleAtFixedRate(() -> {
+      try {
+        engine.tick();
+      } catch (RuntimeException e) {
+        System.out.println("Climate tick failed: " + e.getMessage());
+      }
+    }, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Adds a greenhouse to the engine.
+   *
+   * @param greenhouse  the greenhouse that owns the slot
+   * @param temperature the current temperature
+   * @param humidity    the current humidity
+   * @param light       the current light level
+   * @return the slot of the greenhouse
+   */
+  synchronized Slot attach(Greenhouse greenhouse, double temperature, int humidity, int light) {
+    int index;
+    if (freeCount > 0) {
+      index = freeIndexes[--freeCount];
+    } else {
+      index = end;
+      if (index >>> CHUNK_SHIFT == chunks.length) {
+        Chunk[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+        grown[chunks.length] = new Chunk();
+        chunks = grown;
+      }
+      end = index + 1;
+    }
+    Slot slot = new Slot(this, greenhouse, index);
+    Chunk chunk = slot.chunk;
+    int offset = slot.offset;
+    long version = beginWrite(chunk, offset);
+    chunk.temperature[offset] = temperature;
+    chunk.humidity[offset] = humidity;
+    chunk.light[offset] = light;
+    chunk.seed[offset] = mix(seed + ++attachCount * GOLDEN_GAMMA);
+    chunk.step[offset] = mode == Mode.LAZY ? lazyStep() : 0;
+    chunk.slots[offset] = slot;
+    endWrite(chunk, offset, version);
+    attached++;
+    return slot;
+  }
+
+  private synchronized Climate free(Slot slot) {
+    if (slot.isCancelled) {
+      return null;
+    }
+    Chunk chunk = slot.chunk;
+    long version = slot.beginWrite();
+    Climate last = new Climate(chunk.temperature[slot.offset], chunk.humidity[slot.offset], chunk.light[slot.offset]);
+    slot.isCancelled = true;
+    endWrite(chunk, slot.offset, version);
+    slot.setWatched(null);
+    slot.chunk.slots[slot.offset] = null;
+    if (freeCount == freeIndexes.length) {
+      freeIndexes = Arrays.copyOf(freeIndexes, freeCount * 2);
+    }
+    freeIndexes[freeCount++] = slot.index;
+    attached--;
+    return last;
+  }
+
+  /**
+   * Gets the number of greenhouses in the engine.
+   *
+   * @return the number of greenhouses
+   */
+  public synchronized int size() {
+    return this.attached;
+  }
+
+  /**
+   * Sets the number of threads a tick runs on.
+   *
+   * @param parallelism the number of threads, 1 to tick on the calling thread only
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1");
+    }
+    synchronized (tickLock) {
+      if (pool != null) {
+        pool.shutdown();
+      }
+      pool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+    }
+  }
+
+  /**
+   * Gets the number of threads a tick runs on.
+   *
+   * @return the parallelism
+   */
+  public int getParallelism() {
+    ForkJoinPool current = pool;
+    return current == null ? 1 : current.getParallelism();
+  }
+
+  /**
+   * Sets when the climate is computed. The greenhouses keep their values
+   * and go on from the same step.
+   *
+   * @param newMode the new mode
+   */
+  public void setMode(Mode newMode) {
+    synchronized (tickLock) {
+      if (newMode == mode) {
+        return;
+      }
+      int count = this.end;
+      Chunk[] current = this.chunks;
+      if (newMode == Mode.LAZY) {
+        for (int i = 0; i < count; i++) {
+          current[i >>> CHUNK_SHIFT].step[i & (CHUNK_SIZE - 1)] = eagerStep;
+        }
+        lazyStepOffset = eagerStep - elapsedTicks();
+        mode = Mode.LAZY;
+      } else {
+        // Hold the step still, so every greenhouse catches up to the same one
+        long target = lazyStep();
+        lazyStepLimit = target;
+        for (int i = 0; i < count; i++) {
+          Slot slot = current[i >>> CHUNK_SHIFT].slots[i & (CHUNK_SIZE - 1)];
+          if (slot != null) {
+            slot.materialize();
+          }
+        }
+        eagerStep = target;
+        mode = Mode.EAGER;
+        lazyStepLimit = Long.MAX_VALUE;
+      }
+    }
+  }
+
+  /**
+   * Gets when the climate is computed.
+   *
+   * @return the mode
+   */
+  public Mode getMode() {
+    return this.mode;
+  }
+
+  private long elapsedTicks() {
+    return (clock.getAsLong() - startTime) / TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+  }
+
+  private long lazyStep() {
+    return Math.min(elapsedTicks() + lazyStepOffset, lazyStepLimit);
+  }
+
+  /**
+   * Moves the climate one step forward. In eager mode every greenhouse is
+   * updated, and the watched greenhouses are told about the change; with
+   * a parallelism above 1, change listeners are called from several
+   * threads at once. In lazy mode the step follows the clock instead, and
+   * only the watched greenhouses are updated, to tell them about it.
+   */
+  public void tick() {
+    if (mode == Mode.LAZY) {
+      for (Slot slot : watchedSlots) {
+        slot.materialize();
+        Greenhouse greenhouse = slot.chunk.watched[slot.offset];
+        if (greenhouse != null) {
+          tickWatched(greenhouse);
+        }
+      }
+      return;
+    }
+    // Read the end first: chunks is always replaced before end grows
+    int count = this.end;
+    Chunk[] current = this.chunks;
+    int chunkCount = (count + CHUNK_SIZE - 1) >>> CHUNK_SHIFT;
+    synchronized (tickLock) {
+      if (mode == Mode.LAZY) {
+        return;
+      }
+      TickTask task = new TickTask(current, 0, chunkCount, count, eagerStep);
+      if (pool == null || chunkCount < 2) {
+        task.compute();
+      } else {
+        pool.invoke(task);
+      }
+      eagerStep++;
+    }
+  }
+
+  /**
+   * Ticks a range of chunks, splitting it in two until it is small enough.
+   */
+  private static final class TickTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private static final int CHUNKS_PER_TASK = 2;
+
+    // A task is never serialized, the chunks stay in the engine
+    private final transient Chunk[] chunks;
+    private final int from;
+    private final int to;
+    private final int count;
+    private final long step;
+
+    TickTask(Chunk[] chunks, int from, int to, int count, long step) {
+      this.chunks = chunks;
+      this.from = from;
+      this.to = to;
+      this.count = count;
+      this.step = step;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > CHUNKS_PER_TASK) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new TickTask(chunks, from, middle, count, step),
+            new TickTask(chunks, middle, to, count, step));
+        return;
+      }
+      for (int c = from; c < to; c++) {
+        int length = Math.min(CHUNK_SIZE, count - (c << CHUNK_SHIFT));
+        tickChunk(chunks[c], length, step);
+      }
+    }
+  }
+
+  private static void tickChunk(Chunk chunk, int length, long step) {
+    for (int i = 0; i < length; i++) {
+      long version = beginWrite(chunk, i);
+      applyStep(chunk, i, step);
+      endWrite(chunk, i, version);
+    }
+
+    Greenhouse[] watched = chunk.watched;
+    for (int i = 0; i < length; i++) {
+      Greenhouse greenhouse = watched[i];
+      if (greenhouse != null) {
+        tickWatched(greenhouse);
+      }
+    }
+  }
+
+  /**
+   * Tells a watched greenhouse about a step. A greenhouse that fails does
+   * not keep the others from being told, nor the step from ending.
+   */
+  private static void tickWatched(Greenhouse greenhouse) {
+    try {
+      greenhouse.onClimateTick();
+    } catch (RuntimeException e) {
+      System.out.println("Greenhouse climate tick failed: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Starts a change of the values of one greenhouse, waiting for a change
+   * on another thread to end first.
+   *
+   * @return the version to end the change with
+   */
+  private static long beginWrite(Chunk chunk, int offset) {
+    while (true) {
+      long version = (long) VERSION.getOpaque(chunk.version, offset);
+      if ((version & 1) == 0 && VERSION.compareAndSet(chunk.version, offset, version, version + 1)) {
+        return version + 1;
+      }
+      Thread.onSpinWait();
+    }
+  }
+
+  /**
+   * Ends a change of the values of one greenhouse, so they can be read.
+   */
+  private static void endWrite(Chunk chunk, int offset, long version) {
+    VERSION.setRelease(chunk.version, offset, version + 1);
+  }
+
+  /**
+   * Applies the small random changes of one step to one greenhouse. The
+   * changes only depend on the seed of the greenhouse and the step.
+   */
+  private static void applyStep(Chunk chunk, int offset, long step) {
+    long random = mix(chunk.seed[offset] + step * GOLDEN_GAMMA);
+    double temperatureChange = ((random >>> 11) * 0x1.0p-53 - 0.5) * 3;
+    int humidityChange = bounded(mix(random + GOLDEN_GAMMA), 7) - 3;
+    int lightChange = bounded(mix(random + 2 * GOLDEN_GAMMA), 201) - 100;
+
+    double temperature = chunk.temperature[offset] + temperatureChange;
+    chunk.temperature[offset] = (double) Math.round(Math.max(-5, Math.min(40, temperature)) * 10) / 10;
+    chunk.humidity[offset] = Math.max(0, Math.min(100, chunk.humidity[offset] + humidityChange));
+    chunk.light[offset] = Math.max(0, Math.min(5000, chunk.light[offset] + lightChange));
+  }
+
+  /**
+   * Scrambles the bits of a value, as SplittableRandom does.
+   */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * Maps random bits to a number from 0 up to, but not including, the bound.
+   */
+  private static int bounded(long random, int bound) {
+    return (int) (((random >>> 32) * bound) >>> 32);
+  }
+}
@@ -0,0 +1,108 @@
+package greenhouse;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the greenhouses that hold a sensor or an actuator with a given
+ * device ID, without going through every greenhouse.
+ *
+ * <p>Device IDs such as "Temperature-3" are only unique within one
+ * greenhouse, so an ID may be found in several greenhouses. The sensor
+ * nodes of the greenhouses in a {@link GreenhouseRegistry} keep the
+ * directory up to date as devices are added and removed.</p>
+ *
+ * <p>Every device ID maps to an unmodifiable list of greenhouses, ordered
+ * by ID, that is replaced on every change. Lookups take no lock.</p>
+ */
+public final class DeviceDirectory {
+  private static final Comparator<Greenhouse> BY_ID = Comparator.comparingInt(Greenhouse::getGreenhouseId);
+
+  private final ConcurrentHashMap<String, List<Greenhouse>> sensors = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, List<Greenhouse>> actuators = new ConcurrentHashMap<>();
+
+  /**
+   * Records that a greenhouse holds a sensor.
+   *
+   * @param deviceId   the ID of the sensor
+   * @param greenhouse the greenhouse holding it
+   */
+  public void addSensor(String deviceId, Greenhouse greenhouse) {
+    add(sensors, deviceId, greenhouse);
+  }
+
+  /**
+   * Records that a greenhouse no longer holds a sensor.
+   *
+   * @param deviceId   the ID of the sensor
+   * @param greenhouse the greenhouse that held it
+   */
+  public void removeSensor(String deviceId, Greenhouse greenhouse) {
+    remove(sensors, deviceId, greenhouse);
+  }
+
+  /**
+   * Records that a greenhouse holds an actuator.
+   *
+   * @param deviceId   the ID of the actuator
+   * @param greenhouse the greenhouse holding it
+   */
+  public void addActuator(String deviceId, Greenhouse greenhouse) {
+    add(actuators, deviceId, greenhouse);
+  }
+
+  /**
+   * Records that a greenhouse no longer holds an actuator.
+   *
+   * @param deviceId   the ID of the actuator
+   * @param greenhouse the greenhouse that held it
+   */
+  public void removeActuator(String deviceId, Greenhouse greenhouse) {
+    remove(actuators, deviceId, greenhouse);
+  }
+
+  /**
+   * Finds the greenhouses holding a sensor.
+   *
+   * @param deviceId the ID of the sensor
+   * @return the greenhouses ordered by ID, empty if none holds the sensor
+   */
+  public List<Greenhouse> findSensor(String deviceId) {
+    return sensors.getOrDefault(deviceId, List.of());
+  }
+
+  /**
+   * Finds the greenhouses holding an actuator.
+   *
+   * @param deviceId the ID of the actuator
+   * @return the greenhouses ordered by ID, empty if none holds the actuator
+   */
+  public List<Greenhouse> findActuator(String deviceId) {
+    return actuators.getOrDefault(deviceId, List.of());
+  }
+
+  private static void add(ConcurrentHashMap<String, List<Greenhouse>> index, String deviceId, Greenhouse greenhouse) {
+    index.compute(deviceId, (key, current) -> {
+      if (current == null) {
+        return List.of(greenhouse);
+      }
+      if (current.contains(greenhouse)) {
+        return current;
+      }
+      ArrayList<Greenhouse> updated = new ArrayList<>(current);
+      updated.add(greenhouse);
+      updated.sort(BY_ID);
+      return List.copyOf(updated);
+    });
+  }
+
+  private static void remove(ConcurrentHashMap<String, List<Greenhouse>> index, String deviceId, Greenhouse greenhouse) {
+    index.computeIfPresent(deviceId, (key, current) -> {
+      ArrayList<Greenhouse> updated = new ArrayList<>(current);
+      updated.remove(greenhouse);
+      return updated.isEmpty() ? null : List.copyOf(updated);
+    });
+  }
+}
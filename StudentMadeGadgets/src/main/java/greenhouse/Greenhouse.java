@@ -1,14 +1,18 @@
 package greenhouse;
 
 import client.SensorNode;
-import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * Represents a greenhouse with environmental parameters.
+ *
+ * <p>The class is final: the constructor hands the greenhouse to the
+ * climate engine, which must never see a subclass that is only partly
+ * constructed.</p>
  */
-public class Greenhouse {
+public final class Greenhouse {
   private int greenhouseId;
   private String greenhouseName;
   private transient SensorNode sensorNode = new SensorNode();
@@ -17,19 +21,52 @@ public class Greenhouse {
   private int light;
   private int humidity;
 
-  private final transient Random random = new Random();
-  private final transient Timer timer = new Timer(true);
+  // Sequence lock of the fields above: odd while they are being changed
+  private transient volatile int fieldVersion;
+  // The number of readings kept per sensor
+  private transient volatile int historyCapacity;
+  // The slot of the greenhouse in the climate engine, while its climate is simulated
+  private transient volatile ClimateEngine.Slot slot;
+  private final transient CopyOnWriteArrayList<Consumer<Greenhouse>> changeListeners = new CopyOnWriteArrayList<>();
 
   /**
    * Constructor for the Greenhouse class.
    */
   public Greenhouse(String name) {
+    this(name, new Climate(14, 60, 1000));
+  }
+
+  /**
+   * Constructor for a greenhouse whose climate is simulated from given
+   * values, e.g. when it is restored from a snapshot.
+   *
+   * @param name    the name of the greenhouse
+   * @param climate the climate to start from
+   */
+  public Greenhouse(String name, Climate climate) {
     this.greenhouseName = name;
-    this.temperature = 14;
-    this.humidity = 60;
-    this.light = 1000;
+    this.temperature = climate.temperature();
+    this.humidity = climate.humidity();
+    this.light = climate.light();
+    this.slot = ClimateEngine.getShared().attach(this, temperature, humidity, light);
+  }
 
-    startGradualUpdater();
+  /**
+   * Constructor for a greenhouse received from the server. The values are
+   * only a copy of the server side greenhouse, so they are not updated.
+   *
+   * @param id          the ID of the greenhouse
+   * @param name        the name of the greenhouse
+   * @param temperature the temperature
+   * @param humidity    the humidity
+   * @param light       the light level
+   */
+  public Greenhouse(int id, String name, double temperature, int humidity, int light) {
+    this.greenhouseId = id;
+    this.greenhouseName = name;
+    this.temperature = temperature;
+    this.humidity = humidity;
+    this.light = light;
   }
 
   /**
@@ -50,31 +87,141 @@ public class Greenhouse {
     return this.greenhouseId;
   }
 
-  private void startGradualUpdater() {
-    timer.scheduleAtFixedRate(new TimerTask() {
-      @Override
-      public void run() {
-        graduallyUpdateEnvironment();
+  /**
+   * Stops the environment updates of the greenhouse, e.g. when it is
+   * removed from the registry. The greenhouse keeps its current values.
+   */
+  public synchronized void stopEnvironmentUpdates() {
+    ClimateEngine.Slot slot = this.slot;
+    if (slot != null && !slot.isCancelled()) {
+      // Readers that see the slot cancelled read the fields, so they wait
+      // for the last values from the moment the slot is freed
+      beginWrite();
+      Climate last = slot.free();
+      if (last != null) {
+        this.temperature = last.temperature();
+        this.humidity = last.humidity();
+        this.light = last.light();
       }
-    }, 0, 10_000); // every 10 seconds
+      endWrite();
+    }
   }
 
   /**
-   * Applies small random changes to the environment.
+   * Starts the environment updates again after they were stopped. A
+   * greenhouse received from the server is never updated.
    */
-  private void graduallyUpdateEnvironment() {
-    double tempChange = ((random.nextDouble() - 0.5) * 3);
-    this.temperature = (double) Math.round(clamp(this.temperature + tempChange, -5, 40) * 10) / 10;
+  public synchronized void resumeEnvironmentUpdates() {
+    ClimateEngine.Slot slot = this.slot;
+    if (slot != null && slot.isCancelled()) {
+      slot = ClimateEngine.getShared().attach(this, temperature, humidity, light);
+      slot.setWatched(isWatched() ? this : null);
+      this.slot = slot;
+    }
+  }
 
-    int humChange = random.nextInt(7) - 3;
-    this.humidity = (int) clamp(this.humidity + humChange, 0, 100);
+  /**
+   * Gets the slot of the greenhouse in the climate engine.
+   *
+   * @return the slot, or null if the climate is not simulated now
+   */
+  private ClimateEngine.Slot simulated() {
+    ClimateEngine.Slot slot = this.slot;
+    return slot == null || slot.isCancelled() ? null : slot;
+  }
 
-    int lightChange = random.nextInt(201) - 100;
-    this.light = (int) clamp(this.light + lightChange, 0, 5000);
+  /**
+   * Tells if the climate of the greenhouse is simulated now, i.e. its
+   * environment updates are not stopped.
+   *
+   * @return true if the climate is simulated
+   */
+  boolean isSimulated() {
+    return simulated() != null;
+  }
+
+  /**
+   * Tells the climate engine if the greenhouse has change listeners or
+   * keeps a sensor history, so only those greenhouses are told about a tick.
+   */
+  private synchronized void updateWatched() {
+    ClimateEngine.Slot slot = simulated();
+    if (slot != null) {
+      slot.setWatched(isWatched() ? this : null);
+    }
+  }
+
+  private boolean isWatched() {
+    return !changeListeners.isEmpty() || historyCapacity > 0;
+  }
+
+  /**
+   * Sets the number of readings kept per sensor, see
+   * {@link sensor.SensorHistory}. A reading of every sensor is recorded on
+   * every climate tick, and each kept reading takes 16 bytes.
+   *
+   * @param capacity the number of readings per sensor, or 0 to keep none
+   */
+  public synchronized void setHistoryCapacity(int capacity) {
+    sensorNode.setHistoryCapacity(capacity);
+    this.historyCapacity = capacity;
+    updateWatched();
   }
 
-  private double clamp(double value, double min, double max) {
-    return Math.max(min, Math.min(max, value));
+  /**
+   * Gets the number of readings kept per sensor.
+   *
+   * @return the history capacity, 0 if no readings are kept
+   */
+  public int getHistoryCapacity() {
+    return this.historyCapacity;
+  }
+
+  /**
+   * Called by the climate engine after a tick changed the climate. Records
+   * the sensor readings and tells the change listeners.
+   */
+  void onClimateTick() {
+    if (historyCapacity > 0) {
+      sensorNode.recordHistory(this, getClimate(), System.currentTimeMillis());
+    }
+    notifyChanged();
+  }
+
+  /**
+   * Adds a listener that is called whenever the state of the greenhouse
+   * changes. Listeners are called on the thread making the change, and
+   * must not block.
+   *
+   * @param listener the listener to add
+   */
+  public void addChangeListener(Consumer<Greenhouse> listener) {
+    this.changeListeners.add(listener);
+    updateWatched();
+  }
+
+  /**
+   * Removes a change listener.
+   *
+   * @param listener the listener to remove
+   */
+  public void removeChangeListener(Consumer<Greenhouse> listener) {
+    this.changeListeners.remove(listener);
+    updateWatched();
+  }
+
+  /**
+   * Tells the change listeners that the state of the greenhouse, or of
+   * its sensors and actuators, has changed.
+   */
+  public void notifyChanged() {
+    for (Consumer<Greenhouse> listener : changeListeners) {
+      try {
+        listener.accept(this);
+      } catch (RuntimeException e) {
+        System.out.println("Greenhouse change listener failed: " + e.getMessage());
+      }
+    }
   }
 
   /**
@@ -83,6 +230,15 @@ public class Greenhouse {
    * @param sensorNode sensor node to set
    */
   public void setSensorNode(SensorNode sensorNode) {
+    // Move the devices of a registered greenhouse over to the new node in the device directory
+    DeviceDirectory directory = this.sensorNode == null ? null : this.sensorNode.getDirectory();
+    if (directory != null) {
+      this.sensorNode.setDirectory(null, null);
+      sensorNode.setDirectory(directory, this);
+    }
+    if (sensorNode != null) {
+      sensorNode.setHistoryCapacity(historyCapacity);
+    }
     this.sensorNode = sensorNode;
   }
 
@@ -110,56 +266,114 @@ public class Greenhouse {
     this.greenhouseName = greenhouseName;
   }
 
+  /**
+   * Gets the temperature, humidity and light of the greenhouse at one
+   * moment, without locking.
+   *
+   * @return the climate of the greenhouse
+   */
+  public Climate getClimate() {
+    ClimateEngine.Slot slot = simulated();
+    if (slot != null) {
+      Climate climate = slot.read();
+      // The slot may have been freed while reading, then the values were moved back here
+      if (!slot.isCancelled()) {
+        return climate;
+      }
+    }
+    while (true) {
+      int version = this.fieldVersion;
+      double currentTemperature = this.temperature;
+      int currentHumidity = this.humidity;
+      int currentLight = this.light;
+      VarHandle.loadLoadFence();
+      if ((version & 1) == 0 && version == this.fieldVersion) {
+        return new Climate(currentTemperature, currentHumidity, currentLight);
+      }
+      Thread.onSpinWait();
+    }
+  }
+
+  /**
+   * Starts a change of the fields. Only called while holding the lock of
+   * the greenhouse, so there is one writer at a time.
+   */
+  private void beginWrite() {
+    this.fieldVersion++;
+    VarHandle.storeStoreFence();
+  }
+
+  /**
+   * Ends a change of the fields, so they can be read.
+   */
+  private void endWrite() {
+    this.fieldVersion++;
+  }
+
   /**
    * Gets the temperature of the greenhouse.
    */
   public double getTemperature() {
-    return this.temperature;
+    return getClimate().temperature();
   }
 
   /**
    * Gets the humidity of the greenhouse.
    */
   public int getHumidity() {
-    return this.humidity;
+    return getClimate().humidity();
   }
 
   /**
    * Gets the light of the greenhouse.
    */
   public int getLight() {
-    return this.light;
+    return getClimate().light();
   }
 
   /**
    * Changes the temperature of the greenhouse.
    * @param temperature temperature to change
    */
-  public void changeTemperature(double temperature) {
-    this.temperature = this.temperature + temperature;
+  public synchronized void changeTemperature(double temperature) {
+    ClimateEngine.Slot slot = simulated();
+    if (slot != null) {
+      slot.changeTemperature(temperature);
+    } else {
+      beginWrite();
+      this.temperature = this.temperature + temperature;
+      endWrite();
+    }
   }
 
   /**
-   * Changes the humidity of the greenhouse.
+   * Changes the humidity of the greenhouse. A change that would take the
+   * humidity below 0 or above 100 is ignored.
    * @param humidity humidity to change
    */
-  public void changeHumidity(int humidity) {
-    if (this.humidity + humidity > 100) {
-      humidity = 100;
-      return;
+  public synchronized void changeHumidity(int humidity) {
+    ClimateEngine.Slot slot = simulated();
+    if (slot != null) {
+      slot.changeHumidity(humidity);
+    } else if (this.humidity + humidity >= 0 && this.humidity + humidity <= 100) {
+      beginWrite();
+      this.humidity = this.humidity + humidity;
+      endWrite();
     }
-    if (this.humidity + humidity < 0) {
-      humidity = 0;
-      return;
-    }
-    this.humidity = this.humidity + humidity;
   }
 
   /**
    * Changes the light of the greenhouse.
    * @param light light to change
    */
-  public void changeLight(int light) {
-    this.light = this.light + light;
+  public synchronized void changeLight(int light) {
+    ClimateEngine.Slot slot = simulated();
+    if (slot != null) {
+      slot.changeLight(light);
+    } else {
+      beginWrite();
+      this.light = this.light + light;
+      endWrite();
+    }
   }
 }
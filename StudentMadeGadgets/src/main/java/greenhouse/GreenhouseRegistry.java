@@ -1,12 +1,62 @@
 package greenhouse;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Registry for managing multiple greenhouses.
+ *
+ * <p>Every greenhouse gets an ID when it is added, counting up from 1. IDs
+ * are never reused or changed, so a client holding an ID always addresses
+ * the same greenhouse, or none if it was removed.</p>
+ *
+ * <p>The greenhouses are stored by ID in chunks of {@link #CHUNK_SIZE}, so
+ * looking up an ID is a couple of array reads. Reads take no lock and see
+ * every change that was finished before they started. Changes are guarded
+ * by a {@link ReentrantLock} rather than {@code synchronized}, so client
+ * threads waiting for the registry never pin the carrier thread when they
+ * run as virtual threads. A chunk whose greenhouses were all removed is
+ * dropped.</p>
+ *
+ * <p>Two indexes are kept up to date next to the IDs: one from names to
+ * greenhouses, and a {@link DeviceDirectory} from device IDs to the
+ * greenhouses holding them. Names are indexed as they were when the
+ * greenhouse was added. Neither names nor device IDs have to be unique,
+ * so lookups return every greenhouse that matches, ordered by ID.</p>
+ *
+ * <p>Every change to the list of greenhouses bumps the version of the
+ * registry, so clients can tell if the list they have is still current.
+ * The version is bumped after the change is made, so a list read after
+ * the version is never older than it.</p>
  */
 public class GreenhouseRegistry {
-  private final ArrayList<Greenhouse> greenhouses = new ArrayList<>();
+  /**
+   * The number of IDs in a chunk of the registry.
+   */
+  public static final int CHUNK_SIZE = 1024;
+  private static final int CHUNK_SHIFT = Integer.numberOfTrailingZeros(CHUNK_SIZE);
+
+  private final ReentrantLock lock = new ReentrantLock();
+  // Replaced, never changed in place, so readers need no lock
+  private volatile Chunk[] chunks = new Chunk[0];
+  private volatile int nextId = 1;
+  private volatile int size = 0;
+  private volatile long version = 1;
+  private volatile int historyCapacity = 0;
+  // Unmodifiable lists ordered by ID, replaced with the lock held
+  private final ConcurrentHashMap<String, List<Greenhouse>> names = new ConcurrentHashMap<>();
+  private final DeviceDirectory devices = new DeviceDirectory();
+
+  private static final class Chunk {
+    final AtomicReferenceArray<Greenhouse> greenhouses = new AtomicReferenceArray<>(CHUNK_SIZE);
+    // The number of greenhouses in the chunk, only used with the lock held
+    int count = 0;
+  }
 
   /**
    * Adds a new greenhouse to the registry.
@@ -14,47 +64,363 @@ public class GreenhouseRegistry {
    * @param name the name of the new greenhouse
    * @return the ID of the newly added greenhouse
    */
-  public synchronized int addGreenhouse(String name) {
-    Greenhouse greenhouse = new Greenhouse(name);
-    this.greenhouses.add(greenhouse);
-    updateList();
-    return greenhouse.getGreenhouseId();
+  public int addGreenhouse(String name) {
+    return addGreenhouse(new Greenhouse(name));
   }
 
-  private synchronized void updateList() {
-    for (int i = 0; i < greenhouses.size(); i++) {
-      greenhouses.get(i).setGreenhouseId(i+1);
+  /**
+   * Adds an existing greenhouse to the registry, with a new ID.
+   *
+   * @param greenhouse the greenhouse to add
+   * @return the ID of the newly added greenhouse
+   */
+  public int addGreenhouse(Greenhouse greenhouse) {
+    lock.lock();
+    try {
+      int id = nextId;
+      greenhouse.setGreenhouseId(id);
+      put(id, greenhouse);
+      nextId = id + 1;
+      version++;
+      return id;
+    } finally {
+      lock.unlock();
     }
   }
 
   /**
-   * Gets a greenhouse by its ID.
+   * Sets the number of readings kept per sensor in greenhouses added from
+   * now on, unless they keep a history already. It can be changed for
+   * each greenhouse with {@link Greenhouse#setHistoryCapacity(int)}.
+   *
+   * @param historyCapacity the number of readings per sensor, or 0 to keep none
+   */
+  public void setHistoryCapacity(int historyCapacity) {
+    if (historyCapacity < 0) {
+      throw new IllegalArgumentException("The history capacity can not be negative");
+    }
+    this.historyCapacity = historyCapacity;
+  }
+
+  /**
+   * Gets the number of readings kept per sensor in added greenhouses.
+   *
+   * @return the history capacity, 0 if no readings are kept
+   */
+  public int getHistoryCapacity() {
+    return this.historyCapacity;
+  }
+
+  /**
+   * Stores a greenhouse at a free ID. Must be called with the lock held.
+   */
+  private void put(int id, Greenhouse greenhouse) {
+    if (historyCapacity > 0 && greenhouse.getHistoryCapacity() == 0) {
+      greenhouse.setHistoryCapacity(historyCapacity);
+    }
+    int chunkIndex = (id - 1) >>> CHUNK_SHIFT;
+    Chunk[] current = chunks;
+    if (chunkIndex >= current.length || current[chunkIndex] == null) {
+      Chunk[] grown = Arrays.copyOf(current, Math.max(current.length, chunkIndex + 1));
+      grown[chunkIndex] = new Chunk();
+      chunks = grown;
+      current = grown;
+    }
+    Chunk chunk = current[chunkIndex];
+    chunk.greenhouses.set((id - 1) & (CHUNK_SIZE - 1), greenhouse);
+    chunk.count++;
+    size++;
+
+    String name = greenhouse.getGreenhouseName();
+    if (name != null) {
+      ArrayList<Greenhouse> named = new ArrayList<>(names.getOrDefault(name, List.of()));
+      named.add(greenhouse);
+      named.sort(Comparator.comparingInt(Greenhouse::getGreenhouseId));
+      names.put(name, List.copyOf(named));
+    }
+    if (greenhouse.getSensorNode() != null) {
+      greenhouse.getSensorNode().setDirectory(devices, greenhouse);
+    }
+  }
+
+  /**
+   * Takes the greenhouse with an ID out of the registry. Must be called
+   * with the lock held.
+   *
+   * @return the removed greenhouse, or null if there was none
+   */
+  private Greenhouse take(int id) {
+    Chunk chunk = chunkOf(id);
+    if (chunk == null) {
+      return null;
+    }
+    Greenhouse removed = chunk.greenhouses.getAndSet((id - 1) & (CHUNK_SIZE - 1), null);
+    if (removed != null) {
+      String name = removed.getGreenhouseName();
+      if (name != null) {
+        ArrayList<Greenhouse> named = new ArrayList<>(names.getOrDefault(name, List.of()));
+        named.remove(removed);
+        if (named.isEmpty()) {
+          names.remove(name);
+        } else {
+          names.put(name, List.copyOf(named));
+        }
+      }
+      if (removed.getSensorNode() != null) {
+        removed.getSensorNode().setDirectory(null, null);
+      }
+      size--;
+      int chunkIndex = (id - 1) >>> CHUNK_SHIFT;
+      // Only drop full chunks, the last one still gets new IDs
+      if (--chunk.count == 0 && nextId - 1 >= (chunkIndex + 1) * CHUNK_SIZE) {
+        Chunk[] shrunk = chunks.clone();
+        shrunk[chunkIndex] = null;
+        chunks = shrunk;
+      }
+    }
+    return removed;
+  }
+
+  private Chunk chunkOf(int id) {
+    if (id < 1) {
+      return null;
+    }
+    Chunk[] current = chunks;
+    int chunkIndex = (id - 1) >>> CHUNK_SHIFT;
+    return chunkIndex < current.length ? current[chunkIndex] : null;
+  }
+
+  /**
+   * Gets the version of the registry. It starts at 1 and goes up every
+   * time a greenhouse is added or removed.
+   *
+   * @return the current version
+   */
+  public long getVersion() {
+    return this.version;
+  }
+
+  /**
+   * Gets a greenhouse by its ID, without locking.
    *
    * @param ID the ID of the greenhouse
-   * @return the greenhouse with the specified ID
+   * @return the greenhouse with the specified ID, or null if there is none
    */
   public Greenhouse getGreenhouse(int ID) {
-    return this.greenhouses.get(ID - 1);
+    Chunk chunk = chunkOf(ID);
+    return chunk == null ? null : chunk.greenhouses.get((ID - 1) & (CHUNK_SIZE - 1));
+  }
+
+  /**
+   * Finds the greenhouses with a name, without locking.
+   *
+   * @param name the name of the greenhouses
+   * @return the greenhouses ordered by ID, empty if there are none
+   */
+  public List<Greenhouse> findGreenhouses(String name) {
+    return name == null ? List.of() : names.getOrDefault(name, List.of());
   }
 
   /**
-   * Removes a greenhouse by its ID.
+   * Gets the directory that finds the greenhouses holding a device.
+   *
+   * @return the device directory of the registry
+   */
+  public DeviceDirectory getDeviceDirectory() {
+    return this.devices;
+  }
+
+  /**
+   * Adds a greenhouse with a new ID, unless a greenhouse with the same
+   * name is registered already.
+   *
+   * @param greenhouse the greenhouse to add
+   * @return the greenhouse now registered with the name: the given one if
+   *     it was added, otherwise the existing one with the lowest ID
+   */
+  public Greenhouse addGreenhouseIfAbsent(Greenhouse greenhouse) {
+    lock.lock();
+    try {
+      List<Greenhouse> existing = findGreenhouses(greenhouse.getGreenhouseName());
+      if (!existing.isEmpty()) {
+        return existing.get(0);
+      }
+      addGreenhouse(greenhouse);
+      return greenhouse;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes a greenhouse by its ID and stops its environment updates.
    *
    * @param id the ID of the greenhouse to be removed
    * @return true if the greenhouse was removed, false otherwise
    */
-  public synchronized boolean removeGreenhouse(int id) {
-    boolean result = greenhouses.removeIf(greenhouse -> greenhouse.getGreenhouseId() == id);
-    updateList();
-    return result;
+  public boolean removeGreenhouse(int id) {
+    lock.lock();
+    try {
+      Greenhouse removed = take(id);
+      if (removed == null) {
+        return false;
+      }
+      removed.stopEnvironmentUpdates();
+      version++;
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes a given greenhouse and stops its environment updates.
+   *
+   * @param greenhouse the greenhouse to be removed
+   * @return true if the greenhouse was removed, false otherwise
+   */
+  public boolean removeGreenhouse(Greenhouse greenhouse) {
+    lock.lock();
+    try {
+      int id = greenhouse.getGreenhouseId();
+      if (getGreenhouse(id) != greenhouse) {
+        return false;
+      }
+      take(id);
+      greenhouse.stopEnvironmentUpdates();
+      version++;
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Puts a removed greenhouse back at its old ID, e.g. to undo its
+   * removal, and starts the environment updates stopped by the removal
+   * again.
+   *
+   * @param id         the ID the greenhouse had
+   * @param greenhouse the greenhouse to insert
+   * @throws IllegalArgumentException if the ID was never given out, or is in use
+   */
+  public void insertGreenhouse(int id, Greenhouse greenhouse) {
+    lock.lock();
+    try {
+      if (id < 1 || id >= nextId || getGreenhouse(id) != null) {
+        throw new IllegalArgumentException("Greenhouse ID " + id + " can not be reused");
+      }
+      greenhouse.setGreenhouseId(id);
+      put(id, greenhouse);
+      greenhouse.resumeEnvironmentUpdates();
+      version++;
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
-   * Gets all greenhouses in the registry.
+   * Puts a greenhouse at a given ID when the registry is restored, e.g. from
+   * the write-ahead log. The ID and all IDs below it count as given out.
    *
-   * @return a list of all greenhouses
+   * @param id         the ID the greenhouse had
+   * @param greenhouse the greenhouse to restore
+   * @return false if the ID is in use, then nothing is changed
+   * @throws IllegalArgumentException if the ID is not positive
    */
-  public synchronized ArrayList<Greenhouse> getAllGreenhouses() {
-    return this.greenhouses;
+  public boolean restoreGreenhouse(int id, Greenhouse greenhouse) {
+    if (id < 1) {
+      throw new IllegalArgumentException("Invalid greenhouse ID " + id);
+    }
+    lock.lock();
+    try {
+      if (getGreenhouse(id) != null) {
+        return false;
+      }
+      greenhouse.setGreenhouseId(id);
+      put(id, greenhouse);
+      nextId = Math.max(nextId, id + 1);
+      version++;
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the ID the next added greenhouse gets.
+   *
+   * @return the next ID
+   */
+  public int getNextId() {
+    return this.nextId;
+  }
+
+  /**
+   * Makes sure no ID below a given one is given out again, e.g. when the
+   * registry is restored and the greenhouses with the highest IDs were
+   * removed before.
+   *
+   * @param nextId the lowest ID that may still be given out
+   */
+  public void restoreNextId(int nextId) {
+    lock.lock();
+    try {
+      this.nextId = Math.max(this.nextId, nextId);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets all greenhouses in the registry, ordered by ID.
+   *
+   * @return a copy of the list of all greenhouses
+   */
+  public ArrayList<Greenhouse> getAllGreenhouses() {
+    ArrayList<Greenhouse> all = new ArrayList<>(size);
+    getGreenhouses(null, 0, Integer.MAX_VALUE, Integer.MAX_VALUE, all);
+    return all;
+  }
+
+  /**
+   * Gets one page of the greenhouses, ordered by ID, without copying the
+   * whole registry. Positions are IDs minus one, so a position stays
+   * valid when greenhouses are added or removed.
+   *
+   * @param namePrefix only include greenhouses whose name starts with this, or null for all
+   * @param offset     the position in the registry to start from
+   * @param limit      the largest number of greenhouses to add to the page
+   * @param maxScanned the largest number of positions to look at, so a
+   *                   rare prefix can not make one call go through them all
+   * @param page       the list the greenhouses are added to
+   * @return the position to continue from, or -1 if no greenhouses are left
+   */
+  public int getGreenhouses(String namePrefix, int offset, int limit, int maxScanned, List<Greenhouse> page) {
+    // Read the IDs first: a chunk is always added before its first ID is given out
+    int idCount = nextId - 1;
+    Chunk[] current = chunks;
+    int end = (int) Math.min(idCount, (long) offset + maxScanned);
+    int position = offset;
+    int added = 0;
+    while (position < end && added < limit) {
+      int chunkIndex = position >>> CHUNK_SHIFT;
+      Chunk chunk = chunkIndex < current.length ? current[chunkIndex] : null;
+      if (chunk == null) {
+        // A chunk whose greenhouses were all removed
+        position = (chunkIndex + 1) << CHUNK_SHIFT;
+        continue;
+      }
+      Greenhouse greenhouse = chunk.greenhouses.get(position++ & (CHUNK_SIZE - 1));
+      if (greenhouse == null) {
+        continue;
+      }
+      String name = greenhouse.getGreenhouseName();
+      if (namePrefix == null || (name != null && name.startsWith(namePrefix))) {
+        page.add(greenhouse);
+        added++;
+      }
+    }
+    return position < idCount ? position : -1;
   }
 }
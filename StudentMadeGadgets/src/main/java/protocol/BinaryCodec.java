@@ -0,0 +1,730 @@
+package protocol;
+
+import greenhouse.Greenhouse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import javafx.util.Pair;
+import protocol.command.*;
+
+/**
+ * Compact binary encoding of Messages, used instead of JSON on connections
+ * that negotiated {@link Codec#BINARY}.
+ *
+ * <p>A message is written as its type, source, destination, messageID,
+ * correlationID, timestamp and body, in that order, without field names:</p>
+ * <ul>
+ *   <li>Integers are zigzag varints, so small values take one byte.</li>
+ *   <li>The message type is a numeric tag, or tag 0 followed by the type
+ *       name for types without a tag.</li>
+ *   <li>Strings are a varint of the byte length plus one, where 0 means
+ *       null, followed by the UTF-8 bytes.</li>
+ *   <li>IDs that are UUIDs are sent as 16 raw bytes instead of 36 characters.</li>
+ *   <li>Sensor readings and temperatures are raw 8 byte doubles.</li>
+ * </ul>
+ *
+ * <p>Like with JSON, the message type decides how the body is read. Bodies
+ * are written based on their class.</p>
+ */
+public final class BinaryCodec {
+  private static final String[] MESSAGE_TYPES = {
+      null,
+      "GET_ALL_GREENHOUSES",
+      "GREENHOUSE_LIST_DATA",
+      "CREATE_GREENHOUSE",
+      "REMOVE_GREENHOUSE",
+      "DATA_REQUEST",
+      "SENSOR_DATA",
+      "ACTUATOR_DATA",
+      "ACTUATOR_COMMAND",
+      "ADD_ACTUATOR",
+      "ADD_SENSOR",
+      "INFORMATION",
+      "ERROR",
+      "BATCH",
+      "BATCH_RESULT",
+      "SUBSCRIBE",
+      "UNSUBSCRIBE",
+      "SENSOR_DATA_DELTA",
+      "NOT_MODIFIED",
+      "LIST_GREENHOUSES",
+      "GREENHOUSE_SUMMARIES",
+      "CREATE_GREENHOUSE_IF_ABSENT",
+      "FIND_GREENHOUSE",
+      "FIND_DEVICE",
+      "DEVICE_LOCATIONS"
+  };
+
+  private static final Map<String, Integer> MESSAGE_TYPE_TAGS = new HashMap<>();
+
+  static {
+    for (int tag = 1; tag < MESSAGE_TYPES.length; tag++) {
+      MESSAGE_TYPE_TAGS.put(MESSAGE_TYPES[tag], tag);
+    }
+  }
+
+  private static final byte ID_NULL = 0;
+  private static final byte ID_UUID = 1;
+  private static final byte ID_STRING = 2;
+
+  private static final byte SINGLE_DEVICE = 0;
+  private static final byte ALL_DEVICES = 1;
+
+  private BinaryCodec() {
+  }
+
+  /**
+   * Encodes a Message.
+   *
+   * @param message the message to encode
+   * @return the encoded message
+   * @throws IllegalArgumentException if the body can not be encoded
+   */
+  public static byte[] encode(Message message) {
+    Writer writer = new Writer();
+
+    Integer tag = message.getMessageType() == null ? null : MESSAGE_TYPE_TAGS.get(message.getMessageType());
+    if (tag == null) {
+      writer.writeVarInt(0);
+      writer.writeString(message.getMessageType());
+    } else {
+      writer.writeVarInt(tag);
+    }
+    writer.writeString(message.getSource());
+    writer.writeString(message.getDestination());
+    writer.writeId(message.getMessageID());
+    writer.writeId(message.getCorrelationID());
+    writer.writeVarLong(zigzag(message.getTimestamp()));
+
+    Command body = message.getBody();
+    writer.writeBoolean(body != null);
+    if (body != null) {
+      encodeBody(writer, body);
+    }
+    return writer.toByteArray();
+  }
+
+  /**
+   * Decodes a Message.
+   *
+   * @param bytes the encoded message
+   * @return the decoded message
+   * @throws IllegalArgumentException if the bytes are not a valid message
+   */
+  public static Message decode(byte[] bytes) {
+    return decode(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Decodes a Message from part of an array.
+   *
+   * @param bytes  the array holding the encoded message
+   * @param offset where the message starts
+   * @param length the length of the message
+   * @return the decoded message
+   * @throws IllegalArgumentException if the bytes are not a valid message
+   */
+  public static Message decode(byte[] bytes, int offset, int length) {
+    return decode(bytes, offset, length, false);
+  }
+
+  /**
+   * Decodes a Message, which is one of the messages of a batch if
+   * {@code nested} is set. Batches are not decoded inside batches, so a
+   * crafted message can not nest them deep enough to overflow the stack.
+   */
+  private static Message decode(byte[] bytes, int offset, int length, boolean nested) {
+    if (bytes == null || length == 0) {
+      throw new IllegalArgumentException("Binary message is null or empty");
+    }
+    Reader reader = new Reader(bytes, offset, length);
+
+    Message message = new Message();
+    int tag = reader.readVarInt();
+    if (tag == 0) {
+      message.setMessageType(reader.readString());
+    } else if (tag < MESSAGE_TYPES.length) {
+      message.setMessageType(MESSAGE_TYPES[tag]);
+    } else {
+      throw new IllegalArgumentException("Unknown message type tag: " + tag);
+    }
+    if (message.getMessageType() == null) {
+      throw new IllegalArgumentException("Missing required field: messageType");
+    }
+    if (nested && isBatch(message.getMessageType())) {
+      throw new IllegalArgumentException("Batches can not be nested");
+    }
+
+    message.setSource(reader.readString());
+    message.setDestination(reader.readString());
+    message.setMessageID(reader.readId());
+    message.setCorrelationID(reader.readId());
+    message.setTimestamp(unzigzag(reader.readVarLong()));
+
+    if (reader.readBoolean()) {
+      message.setBody(decodeBody(reader, message.getMessageType()));
+    }
+    if (reader.remaining() != 0) {
+      throw new IllegalArgumentException(reader.remaining() + " unexpected bytes after the message");
+    }
+    return message;
+  }
+
+  private static void encodeBody(Writer writer, Command body) {
+    switch (body) {
+      case ActuatorCommand command -> {
+        writer.writeInt(command.getGreenhouseId());
+        writer.writeString(command.getActuatorId());
+        writer.writeInt(command.getPower());
+        writer.writeBoolean(command.isTurnOn());
+      }
+      case ActuatorData data -> {
+        if (data.getActuatorDataHashMap() == null) {
+          writer.writeByte(SINGLE_DEVICE);
+          writer.writeString(data.getActuatorID());
+          writer.writeBoolean(data.isOn());
+          writer.writeInt(data.getPower());
+        } else {
+          writer.writeByte(ALL_DEVICES);
+          writer.writeVarInt(data.getActuatorDataHashMap().size());
+          for (Map.Entry<String, Pair<Boolean, Integer>> entry : data.getActuatorDataHashMap().entrySet()) {
+            writer.writeString(entry.getKey());
+            writer.writeBoolean(entry.getValue().getKey());
+            writer.writeInt(entry.getValue().getValue());
+          }
+        }
+      }
+      case SensorData data -> {
+        if (data.getSensorDataHashMap() == null) {
+          writer.writeByte(SINGLE_DEVICE);
+          writer.writeString(data.getSensorID());
+          writer.writeDouble(data.getData());
+          writer.writeString(data.getUnit());
+        } else {
+          writer.writeByte(ALL_DEVICES);
+          writer.writeVarInt(data.getSensorDataHashMap().size());
+          for (Map.Entry<String, Pair<Double, String>> entry : data.getSensorDataHashMap().entrySet()) {
+            writer.writeString(entry.getKey());
+            writer.writeDouble(entry.getValue().getKey());
+            writer.writeString(entry.getValue().getValue());
+          }
+        }
+      }
+      case CachedGreenhouseListData cached -> writer.writeRaw(cached.getBinary(() -> {
+        Writer bodyWriter = new Writer();
+        writeGreenhouseList(bodyWriter, cached);
+        return bodyWriter.toByteArray();
+      }));
+      case GreenhouseListData data -> writeGreenhouseList(writer, data);
+      case GreenhouseListRequest request -> writer.writeVarLong(request.getKnownVersion());
+      case DataRequest request -> {
+        writer.writeInt(request.getGreenhouseID());
+        writer.writeString(request.getDeviceID());
+        writer.writeString(request.getdeviceType());
+        writeDeadBands(writer, request.getDeadBands());
+      }
+      case CreateGreenhouse create -> writer.writeString(create.getName());
+      case GreenhouseLookup lookup -> writer.writeString(lookup.getName());
+      case DeviceLookup lookup -> {
+        writer.writeString(lookup.getDeviceType());
+        writer.writeString(lookup.getDeviceId());
+      }
+      case DeviceLocations locations -> {
+        writer.writeString(locations.getDeviceType());
+        writer.writeString(locations.getDeviceId());
+        writer.writeVarInt(locations.getGreenhouseIds().size());
+        for (int greenhouseId : locations.getGreenhouseIds()) {
+          writer.writeInt(greenhouseId);
+        }
+      }
+      case RemoveGreenhouse remove -> writer.writeInt(remove.getId());
+      case Information information -> writer.writeString(information.getInformation());
+      case AddActuator add -> {
+        writer.writeInt(add.getGreenhouseId());
+        writer.writeString(add.getActuatorType());
+      }
+      case AddSensor add -> {
+        writer.writeInt(add.getGreenhouseId());
+        writer.writeString(add.getSensorType());
+      }
+      case Batch batch -> {
+        writer.writeBoolean(batch.isAtomic());
+        writeMessages(writer, batch.getCommands());
+      }
+      case BatchResult result -> {
+        writer.writeBoolean(result.isRolledBack());
+        writeMessages(writer, result.getResults());
+      }
+      case Subscribe subscribe -> {
+        writer.writeInt(subscribe.getGreenhouseId());
+        writer.writeString(subscribe.getDeviceType());
+        writeDeadBands(writer, subscribe.getDeadBands());
+      }
+      case SensorDataDelta delta -> {
+        writer.writeBoolean(delta.isKeyframe());
+        writer.writeVarInt(delta.getSensors().size());
+        for (Map.Entry<Integer, Pair<String, String>> sensor : delta.getSensors().entrySet()) {
+          writer.writeVarInt(sensor.getKey());
+          writer.writeString(sensor.getValue().getKey());
+          writer.writeString(sensor.getValue().getValue());
+        }
+        writer.writeVarInt(delta.getReadings().size());
+        for (Map.Entry<Integer, Double> reading : delta.getReadings().entrySet()) {
+          writer.writeVarInt(reading.getKey());
+          writer.writeDouble(reading.getValue());
+        }
+        writer.writeVarInt(delta.getRemoved().size());
+        for (Integer index : delta.getRemoved()) {
+          writer.writeVarInt(index);
+        }
+      }
+      case Unsubscribe unsubscribe -> writer.writeId(unsubscribe.getSubscriptionId());
+      case GreenhouseQuery query -> {
+        writer.writeString(query.getNamePrefix());
+        writer.writeInt(query.getOffset());
+        writer.writeInt(query.getLimit());
+        ArrayList<String> fields = query.getFields();
+        writer.writeVarInt(fields == null ? 0 : fields.size() + 1);
+        if (fields != null) {
+          for (String field : fields) {
+            writer.writeString(field);
+          }
+        }
+      }
+      case GreenhouseSummaryList list -> {
+        writer.writeVarInt(list.getGreenhouses().size());
+        for (GreenhouseSummary summary : list.getGreenhouses()) {
+          writer.writeInt(summary.getGreenhouseId());
+          writer.writeString(summary.getGreenhouseName());
+          writeOptionalCount(writer, summary.getSensorCount());
+          writeOptionalCount(writer, summary.getActuatorCount());
+        }
+        writer.writeInt(list.getNextOffset());
+        writer.writeVarLong(list.getVersion());
+      }
+      default -> throw new IllegalArgumentException("No binary encoding for " + body.getClass().getSimpleName());
+    }
+  }
+
+  private static Command decodeBody(Reader reader, String messageType) {
+    return switch (messageType) {
+      case "ACTUATOR_COMMAND" -> {
+        int greenhouseId = reader.readInt();
+        String actuatorId = reader.readString();
+        int power = reader.readInt();
+        boolean turnOn = reader.readBoolean();
+        yield power == -1
+            ? new ActuatorCommand(greenhouseId, actuatorId, turnOn)
+            : new ActuatorCommand(greenhouseId, actuatorId, power);
+      }
+      case "ACTUATOR_DATA" -> {
+        if (reader.readByte() == SINGLE_DEVICE) {
+          yield new ActuatorData(reader.readString(), reader.readBoolean(), reader.readInt());
+        }
+        int count = reader.readCount();
+        HashMap<String, Pair<Boolean, Integer>> actuators = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+          actuators.put(reader.readString(), new Pair<>(reader.readBoolean(), reader.readInt()));
+        }
+        yield new ActuatorData(actuators);
+      }
+      case "SENSOR_DATA" -> {
+        if (reader.readByte() == SINGLE_DEVICE) {
+          yield new SensorData(reader.readString(), reader.readDouble(), reader.readString());
+        }
+        int count = reader.readCount();
+        HashMap<String, Pair<Double, String>> sensors = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+          sensors.put(reader.readString(), new Pair<>(reader.readDouble(), reader.readString()));
+        }
+        yield new SensorData(sensors);
+      }
+      case "GREENHOUSE_LIST_DATA" -> {
+        int count = reader.readCount();
+        ArrayList<Greenhouse> greenhouses = count == 0 ? null : new ArrayList<>(count - 1);
+        for (int i = 0; i < count - 1; i++) {
+          greenhouses.add(new Greenhouse(reader.readInt(), reader.readString(), reader.readDouble(),
+              reader.readInt(), reader.readInt()));
+        }
+        yield new GreenhouseListData(greenhouses, reader.readVarLong());
+      }
+      case "DATA_REQUEST" -> new DataRequest(reader.readInt(), reader.readString(), reader.readString(),
+          readDeadBands(reader));
+      case "GET_ALL_GREENHOUSES" -> new GreenhouseListRequest(reader.readVarLong());
+      case "CREATE_GREENHOUSE", "CREATE_GREENHOUSE_IF_ABSENT" -> new CreateGreenhouse(reader.readString());
+      case "FIND_GREENHOUSE" -> new GreenhouseLookup(reader.readString());
+      case "FIND_DEVICE" -> new DeviceLookup(reader.readString(), reader.readString());
+      case "DEVICE_LOCATIONS" -> {
+        String deviceType = reader.readString();
+        String deviceId = reader.readString();
+        int count = reader.readCount();
+        ArrayList<Integer> greenhouseIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          greenhouseIds.add(reader.readInt());
+        }
+        yield new DeviceLocations(deviceType, deviceId, greenhouseIds);
+      }
+      case "REMOVE_GREENHOUSE" -> new RemoveGreenhouse(reader.readInt());
+      case "INFORMATION", "ERROR" -> new Information(reader.readString());
+      case "ADD_ACTUATOR" -> new AddActuator(reader.readInt(), reader.readString());
+      case "ADD_SENSOR" -> new AddSensor(reader.readInt(), reader.readString());
+      case "SUBSCRIBE" -> new Subscribe(reader.readInt(), reader.readString(), readDeadBands(reader));
+      case "SENSOR_DATA_DELTA" -> {
+        boolean keyframe = reader.readBoolean();
+        int sensorCount = reader.readCount();
+        HashMap<Integer, Pair<String, String>> sensors = new HashMap<>();
+        for (int i = 0; i < sensorCount; i++) {
+          sensors.put(reader.readVarInt(), new Pair<>(reader.readString(), reader.readString()));
+        }
+        int readingCount = reader.readCount();
+        HashMap<Integer, Double> readings = new HashMap<>();
+        for (int i = 0; i < readingCount; i++) {
+          readings.put(reader.readVarInt(), reader.readDouble());
+        }
+        int removedCount = reader.readCount();
+        ArrayList<Integer> removed = new ArrayList<>();
+        for (int i = 0; i < removedCount; i++) {
+          removed.add(reader.readVarInt());
+        }
+        yield new SensorDataDelta(keyframe, sensors, readings, removed);
+      }
+      case "UNSUBSCRIBE" -> new Unsubscribe(reader.readId());
+      case "LIST_GREENHOUSES" -> {
+        String namePrefix = reader.readString();
+        int offset = reader.readInt();
+        int limit = reader.readInt();
+        int count = reader.readVarInt();
+        ArrayList<String> fields = count == 0 ? null : new ArrayList<>();
+        for (int i = 0; i < count - 1; i++) {
+          fields.add(reader.readString());
+        }
+        yield new GreenhouseQuery(namePrefix, offset, limit, fields);
+      }
+      case "GREENHOUSE_SUMMARIES" -> {
+        int count = reader.readCount();
+        ArrayList<GreenhouseSummary> summaries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          summaries.add(new GreenhouseSummary(reader.readInt(), reader.readString(),
+              readOptionalCount(reader), readOptionalCount(reader)));
+        }
+        yield new GreenhouseSummaryList(summaries, reader.readInt(), reader.readVarLong());
+      }
+      case "BATCH" -> {
+        boolean atomic = reader.readBoolean();
+        yield new Batch(readMessages(reader), atomic);
+      }
+      case "BATCH_RESULT" -> {
+        boolean rolledBack = reader.readBoolean();
+        yield new BatchResult(readMessages(reader), rolledBack);
+      }
+      default -> throw new IllegalArgumentException("No binary encoding for the body of " + messageType);
+    };
+  }
+
+  private static void writeGreenhouseList(Writer writer, GreenhouseListData data) {
+    ArrayList<Greenhouse> greenhouses = data.getGreenhouses();
+    writer.writeVarInt(greenhouses == null ? 0 : greenhouses.size() + 1);
+    if (greenhouses != null) {
+      for (Greenhouse greenhouse : greenhouses) {
+        writer.writeInt(greenhouse.getGreenhouseId());
+        writer.writeString(greenhouse.getGreenhouseName());
+        writer.writeDouble(greenhouse.getTemperature());
+        writer.writeInt(greenhouse.getHumidity());
+        writer.writeInt(greenhouse.getLight());
+      }
+    }
+    writer.writeVarLong(data.getVersion());
+  }
+
+  /**
+   * Writes a count that may be left out as the count plus one, where 0 means null.
+   */
+  private static void writeOptionalCount(Writer writer, Integer count) {
+    writer.writeVarInt(count == null ? 0 : count + 1);
+  }
+
+  private static Integer readOptionalCount(Reader reader) {
+    int count = reader.readVarInt();
+    return count == 0 ? null : count - 1;
+  }
+
+  /**
+   * Writes optional dead-bands as their count plus one, where 0 means null,
+   * followed by the sensor type and dead-band of each.
+   */
+  private static void writeDeadBands(Writer writer, Map<String, Double> deadBands) {
+    if (deadBands == null) {
+      writer.writeVarInt(0);
+      return;
+    }
+    writer.writeVarInt(deadBands.size() + 1);
+    for (Map.Entry<String, Double> entry : deadBands.entrySet()) {
+      writer.writeString(entry.getKey());
+      writer.writeDouble(entry.getValue());
+    }
+  }
+
+  private static HashMap<String, Double> readDeadBands(Reader reader) {
+    int count = reader.readCount();
+    if (count == 0) {
+      return null;
+    }
+    HashMap<String, Double> deadBands = new HashMap<>();
+    for (int i = 0; i < count - 1; i++) {
+      deadBands.put(reader.readString(), reader.readDouble());
+    }
+    return deadBands;
+  }
+
+  /**
+   * Writes a list of messages, each as a length prefixed encoded message.
+   */
+  private static void writeMessages(Writer writer, ArrayList<Message> messages) {
+    writer.writeVarInt(messages.size());
+    for (Message message : messages) {
+      writer.writeBytes(encode(message));
+    }
+  }
+
+  private static ArrayList<Message> readMessages(Reader reader) {
+    int count = reader.readCount();
+    ArrayList<Message> messages = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int length = reader.readCount();
+      messages.add(decode(reader.bytes, reader.position, length, true));
+      reader.position += length;
+    }
+    return messages;
+  }
+
+  private static boolean isBatch(String messageType) {
+    return "BATCH".equals(messageType) || "BATCH_RESULT".equals(messageType);
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Returns the UUID written in the given ID, if the ID is a UUID in the
+   * canonical form, so it can be turned back into the same string.
+   */
+  private static UUID asUuid(String id) {
+    if (id.length() != 36) {
+      return null;
+    }
+    try {
+      UUID uuid = UUID.fromString(id);
+      return uuid.toString().equals(id) ? uuid : null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Appends encoded values to a growing byte array.
+   */
+  private static final class Writer {
+    private byte[] buffer = new byte[64];
+    private int size = 0;
+
+    private void ensureCapacity(int extra) {
+      if (size + extra > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(size + extra, buffer.length * 2));
+      }
+    }
+
+    void writeByte(int value) {
+      ensureCapacity(1);
+      buffer[size++] = (byte) value;
+    }
+
+    void writeBoolean(boolean value) {
+      writeByte(value ? 1 : 0);
+    }
+
+    void writeVarLong(long value) {
+      ensureCapacity(10);
+      while ((value & ~0x7FL) != 0) {
+        buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[size++] = (byte) value;
+    }
+
+    void writeVarInt(int value) {
+      writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    void writeInt(int value) {
+      writeVarLong(zigzag(value));
+    }
+
+    void writeLong(long value) {
+      ensureCapacity(8);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        buffer[size++] = (byte) (value >>> shift);
+      }
+    }
+
+    void writeDouble(double value) {
+      writeLong(Double.doubleToRawLongBits(value));
+    }
+
+    void writeString(String value) {
+      if (value == null) {
+        writeVarInt(0);
+        return;
+      }
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVarInt(bytes.length + 1);
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, size, bytes.length);
+      size += bytes.length;
+    }
+
+    void writeBytes(byte[] bytes) {
+      writeVarInt(bytes.length);
+      writeRaw(bytes);
+    }
+
+    /**
+     * Writes already encoded bytes as they are.
+     */
+    void writeRaw(byte[] bytes) {
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, size, bytes.length);
+      size += bytes.length;
+    }
+
+    void writeId(String id) {
+      if (id == null) {
+        writeByte(ID_NULL);
+        return;
+      }
+      UUID uuid = asUuid(id);
+      if (uuid == null) {
+        writeByte(ID_STRING);
+        writeString(id);
+      } else {
+        writeByte(ID_UUID);
+        writeLong(uuid.getMostSignificantBits());
+        writeLong(uuid.getLeastSignificantBits());
+      }
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, size);
+    }
+  }
+
+  /**
+   * Reads encoded values from a byte array, and rejects values that run
+   * past the end of the message.
+   */
+  private static final class Reader {
+    private final byte[] bytes;
+    private final int limit;
+    private int position;
+
+    Reader(byte[] bytes, int offset, int length) {
+      this.bytes = bytes;
+      this.position = offset;
+      this.limit = offset + length;
+    }
+
+    int remaining() {
+      return limit - position;
+    }
+
+    private void require(int count) {
+      if (count < 0 || remaining() < count) {
+        throw new IllegalArgumentException("Binary message ends in the middle of a value");
+      }
+    }
+
+    byte readByte() {
+      require(1);
+      return bytes[position++];
+    }
+
+    boolean readBoolean() {
+      return readByte() != 0;
+    }
+
+    long readVarLong() {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        byte b = readByte();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("Malformed varint");
+    }
+
+    int readVarInt() {
+      long value = readVarLong();
+      if ((value >>> 32) != 0) {
+        throw new IllegalArgumentException("Varint does not fit in an int");
+      }
+      return (int) value;
+    }
+
+    /**
+     * Reads a collection size, which can not be larger than the bytes left.
+     */
+    int readCount() {
+      int count = readVarInt();
+      if (count < 0 || count > remaining()) {
+        throw new IllegalArgumentException("Invalid element count: " + count);
+      }
+      return count;
+    }
+
+    int readInt() {
+      return (int) unzigzag(readVarLong());
+    }
+
+    long readLong() {
+      require(8);
+      long value = 0;
+      for (int i = 0; i < 8; i++) {
+        value = (value << 8) | (bytes[position++] & 0xFF);
+      }
+      return value;
+    }
+
+    double readDouble() {
+      return Double.longBitsToDouble(readLong());
+    }
+
+    String readString() {
+      int length = readVarInt() - 1;
+      if (length == -1) {
+        return null;
+      }
+      require(length);
+      String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return value;
+    }
+
+    String readId() {
+      return switch (readByte()) {
+        case ID_NULL -> null;
+        case ID_UUID -> new UUID(readLong(), readLong()).toString();
+        case ID_STRING -> readString();
+        default -> throw new IllegalArgumentException("Unknown ID encoding");
+      };
+    }
+  }
+}
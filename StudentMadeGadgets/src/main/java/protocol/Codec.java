@@ -0,0 +1,48 @@
+package protocol;
+
+/**
+ * The ways a message can be encoded on a connection.
+ */
+public enum Codec {
+  /**
+   * Messages are JSON text, see {@link JSONHandler}. This is the default.
+   */
+  JSON((byte) 0),
+
+  /**
+   * Messages are in the compact binary format of {@link BinaryCodec}.
+   * Must be negotiated when the connection is opened, and can only be
+   * used with {@link Framing#LENGTH_PREFIXED} framing.
+   */
+  BINARY((byte) 1);
+
+  private final byte code;
+
+  Codec(byte code) {
+    this.code = code;
+  }
+
+  /**
+   * Gets the code used for this codec in the connection preamble.
+   *
+   * @return the codec code
+   */
+  public byte getCode() {
+    return this.code;
+  }
+
+  /**
+   * Gets the codec with the given preamble code.
+   *
+   * @param code the codec code
+   * @return the codec, or null if the code is unknown
+   */
+  public static Codec fromCode(byte code) {
+    for (Codec codec : values()) {
+      if (codec.code == code) {
+        return codec;
+      }
+    }
+    return null;
+  }
+}
@@ -1,8 +1,13 @@
 package protocol;
 
 import actuator.*;
+import greenhouse.Climate;
+import greenhouse.DeviceDirectory;
 import greenhouse.Greenhouse;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import javafx.util.Pair;
 import protocol.command.*;
 import sensor.HumiditySensor;
@@ -10,23 +15,456 @@ import sensor.LightSensor;
 import sensor.Sensor;
 import sensor.TemperatureSensor;
 import server.Server;
+import server.WriteAheadLog;
 
 /**
  * The CommandHandler class is responsible for handling incoming commands
  * and generating appropriate responses based on the command type.
  */
 public class CommandHandler {
+  // Atomic batches hold the write lock, every other request the read lock
+  private static final ReentrantReadWriteLock ATOMIC_BATCH_LOCK = new ReentrantReadWriteLock();
 
   /**
    * Handles the incoming command message and
    * generates a response.
    *
+   * <p>Every reply, including error replies, carries the messageID of the
+   * request as its correlationID, so clients with several requests in
+   * flight can tell which request a reply answers.</p>
+   *
    * @param message the incoming command message in JSON format
    * @return the response message in JSON format
    */
   public static String handleCommand(String message) {
-    Message messageFromJSON = JSONHandler.deserializeFromJSONToMessage(message);
+    return handleCommand(message, null);
+  }
+
+  /**
+   * Handles the incoming command message from a connection that keeps
+   * state between requests, and generates a response.
+   *
+   * @param message the incoming command message in JSON format
+   * @param session the state of the connection, or null if it has none
+   * @return the response message in JSON format
+   */
+  public static String handleCommand(String message, Session session) {
+    Message messageFromJSON;
+    try {
+      messageFromJSON = JSONHandler.deserializeFromJSONToMessage(message);
+    } catch (IllegalArgumentException e) {
+      return JSONHandler.serializeMessageToJSON(createErrorReply(null, "Invalid message: " + e.getMessage()));
+    }
+
+    Message reply;
+    try {
+      reply = handle(messageFromJSON, session);
+    } catch (RuntimeException e) {
+      reply = createErrorReply(messageFromJSON,
+          "Could not handle " + messageFromJSON.getMessageType() + ": " + e);
+    }
+    return JSONHandler.serializeMessageToJSON(reply);
+  }
+
+  /**
+   * Handles an incoming command message in the binary format of
+   * {@link BinaryCodec}, and generates a response in the same format.
+   *
+   * @param message the incoming command message, binary encoded
+   * @return the response message, binary encoded
+   */
+  public static byte[] handleCommand(byte[] message) {
+    return handleCommand(message, null);
+  }
+
+  /**
+   * Handles an incoming command message in the binary format of
+   * {@link BinaryCodec} from a connection that keeps state between requests.
+   *
+   * @param message the incoming command message, binary encoded
+   * @param session the state of the connection, or null if it has none
+   * @return the response message, binary encoded
+   */
+  public static byte[] handleCommand(byte[] message, Session session) {
+    Message request;
+    try {
+      request = BinaryCodec.decode(message);
+    } catch (IllegalArgumentException e) {
+      return BinaryCodec.encode(createErrorReply(null, "Invalid message: " + e.getMessage()));
+    }
+
+    Message reply;
+    try {
+      reply = handle(request, session);
+    } catch (RuntimeException e) {
+      reply = createErrorReply(request, "Could not handle " + request.getMessageType() + ": " + e);
+    }
+    return BinaryCodec.encode(reply);
+  }
+
+  /**
+   * Creates an ERROR reply to a request.
+   *
+   * @param request the request that failed, or null if it could not be read
+   * @param error   a description of what went wrong
+   * @return the error reply
+   */
+  public static Message createErrorReply(Message request, String error) {
+    Message reply = new Message();
+    reply.setMessageID(String.valueOf(UUID.randomUUID()));
+    reply.setTimestamp(System.currentTimeMillis());
+    reply.setSource("Server");
+    reply.setMessageType("ERROR");
+    reply.setBody(new Information(error));
+    if (request != null) {
+      reply.setCorrelationID(request.getMessageID());
+      reply.setDestination(request.getSource());
+    }
+    return reply;
+  }
+
+  /**
+   * Handles an incoming request and generates the reply.
+   *
+   * @param messageFromJSON the incoming request
+   * @return the reply message
+   */
+  public static Message handle(Message messageFromJSON) {
+    return handle(messageFromJSON, null);
+  }
+
+  /**
+   * Handles an incoming request from a connection that keeps state
+   * between requests, like subscriptions, and generates the reply.
+   *
+   * @param messageFromJSON the incoming request
+   * @param session         the state of the connection, or null if it has none
+   * @return the reply message
+   */
+  public static Message handle(Message messageFromJSON, Session session) {
+    if ("BATCH".equals(messageFromJSON.getMessageType())) {
+      return handle(messageFromJSON, null, session);
+    }
+    // Handled like a batch of one, so the log is waited for after the lock is released
+    BatchContext context = new BatchContext(false);
+    Message reply = betweenAtomicBatches(() -> handle(messageFromJSON, context, session));
+    awaitDurable(context);
+    return reply;
+  }
+
+  /**
+   * Undo log and greenhouse references of a batch being executed. A single
+   * request outside a batch gets one as well, without an undo log.
+   */
+  private static final class BatchContext {
+    private final Deque<Runnable> undoLog;
+    // Log records of an atomic batch, only written when the whole batch succeeds
+    private final List<ToLongFunction<WriteAheadLog>> logRecords;
+    private Greenhouse lastCreated;
+    private long lastLsn;
+
+    private BatchContext(boolean atomic) {
+      this.undoLog = atomic ? new ArrayDeque<>() : null;
+      this.logRecords = atomic ? new ArrayList<>() : null;
+    }
+
+    private void onUndo(Runnable undo) {
+      if (undoLog != null) {
+        undoLog.push(undo);
+      }
+    }
+
+    private void rollBack() {
+      while (!undoLog.isEmpty()) {
+        undoLog.pop().run();
+      }
+    }
+  }
+
+  /**
+   * Gets a greenhouse by its ID. In a batch, ID 0 is the greenhouse created
+   * last by the same batch.
+   *
+   * @throws IllegalArgumentException if there is no greenhouse with the ID
+   */
+  private static Greenhouse getGreenhouse(int id, BatchContext batch) {
+    if (id == 0 && batch != null && batch.lastCreated != null) {
+      return batch.lastCreated;
+    }
+    Greenhouse greenhouse = Server.getGreenhouseRegistry().getGreenhouse(id);
+    if (greenhouse == null) {
+      throw new IllegalArgumentException("No greenhouse with id " + id);
+    }
+    return greenhouse;
+  }
+
+  /**
+   * Runs an action while no atomic batch is running, so it never sees
+   * changes that may still be rolled back. Only atomic batches wait for the
+   * action, other requests and actions run at the same time. Every request
+   * outside an atomic batch is handled this way.
+   *
+   * @param action the action to run
+   * @param <T>    the type of the result
+   * @return the result of the action
+   */
+  public static <T> T betweenAtomicBatches(Supplier<T> action) {
+    ATOMIC_BATCH_LOCK.readLock().lock();
+    try {
+      return action.get();
+    } finally {
+      ATOMIC_BATCH_LOCK.readLock().unlock();
+    }
+  }
+
+  /**
+   * Writes a change to the write-ahead log, if the server has one. The
+   * records are written as the requests run, but only waited for with
+   * {@link #awaitDurable(BatchContext)} once the lock of the request is
+   * released, and an atomic batch only writes them once every request has
+   * succeeded.
+   *
+   * @throws java.io.UncheckedIOException if the log could not be written
+   */
+  private static void log(BatchContext batch, ToLongFunction<WriteAheadLog> record) {
+    WriteAheadLog log = Server.getWriteAheadLog();
+    if (log == null) {
+      return;
+    }
+    if (batch.logRecords != null) {
+      batch.logRecords.add(record);
+    } else {
+      batch.lastLsn = record.applyAsLong(log);
+    }
+  }
+
+  /**
+   * Waits until the log records written for a request or batch are on
+   * disk. Must not be called while holding {@link #ATOMIC_BATCH_LOCK}, so
+   * other requests are not held back for a whole sync of the log.
+   */
+  private static void awaitDurable(BatchContext batch) {
+    if (batch.lastLsn > 0) {
+      Server.getWriteAheadLog().awaitDurable(batch.lastLsn);
+    }
+  }
+
+  /**
+   * Executes the requests of a batch in order.
+   *
+   * <p>In atomic mode, every change is recorded in an undo log. When a
+   * request fails, the later requests are skipped and the log is replayed
+   * backwards. An atomic batch runs alone: other requests wait until it
+   * is done, so they never see changes that are rolled back, and its log
+   * records, written at the end, are not ordered before theirs. The
+   * requests of other batches are handled one by one like single
+   * requests.</p>
+   */
+  private static Message handleBatch(Message request) {
+    Batch batch = (Batch) request.getBody();
+    BatchContext context = new BatchContext(batch.isAtomic());
+    ArrayList<Message> results = new ArrayList<>(batch.getCommands().size());
+    boolean rolledBack = false;
+
+    if (batch.isAtomic()) {
+      ATOMIC_BATCH_LOCK.writeLock().lock();
+    }
+    try {
+      for (Message command : batch.getCommands()) {
+        Message result;
+        try {
+          result = batch.isAtomic() ? handle(command, context, null)
+              : betweenAtomicBatches(() -> handle(command, context, null));
+        } catch (RuntimeException e) {
+          result = createErrorReply(command, "Could not handle " + command.getMessageType() + ": " + e);
+        }
+        results.add(result);
+
+        if (batch.isAtomic() && "ERROR".equals(result.getMessageType())) {
+          context.rollBack();
+          rolledBack = true;
+          break;
+        }
+      }
+      WriteAheadLog log = Server.getWriteAheadLog();
+      if (log != null && batch.isAtomic() && !rolledBack) {
+        for (ToLongFunction<WriteAheadLog> record : context.logRecords) {
+          context.lastLsn = record.applyAsLong(log);
+        }
+      }
+    } finally {
+      if (batch.isAtomic()) {
+        ATOMIC_BATCH_LOCK.writeLock().unlock();
+      }
+    }
+    awaitDurable(context);
+
+    Message reply = new Message();
+    reply.setMessageID(String.valueOf(UUID.randomUUID()));
+    reply.setTimestamp(System.currentTimeMillis());
+    reply.setCorrelationID(request.getMessageID());
+    reply.setSource("Server");
+    reply.setDestination(request.getSource());
+    reply.setMessageType("BATCH_RESULT");
+    reply.setBody(new BatchResult(results, rolledBack));
+    return reply;
+  }
+
+  /**
+   * Creates a sensor of a type.
+   *
+   * @param sensorType the type of the sensor: Humidity, Light or Temperature
+   * @return the new sensor, or null if the type is unknown
+   */
+  public static Sensor createSensor(String sensorType) {
+    return switch (String.valueOf(sensorType)) {
+      case "Humidity" -> new HumiditySensor();
+      case "Light" -> new LightSensor();
+      case "Temperature" -> new TemperatureSensor();
+      default -> null;
+    };
+  }
+
+  /**
+   * Creates an actuator of a type.
+   *
+   * @param actuatorType the type of the actuator: Fan, Heater, Light or Sprinkler
+   * @return the new actuator, or null if the type is unknown
+   */
+  public static Actuator createActuator(String actuatorType) {
+    return switch (String.valueOf(actuatorType)) {
+      case "Fan" -> new FanActuator();
+      case "Heater" -> new HeaterActuator();
+      case "Light" -> new LightActuator();
+      case "Sprinkler" -> new SprinklerActuator();
+      default -> null;
+    };
+  }
+
+  /**
+   * Reads all sensors of a greenhouse.
+   *
+   * @param greenhouse the greenhouse
+   * @return the readings, keyed by sensor ID
+   */
+  public static SensorData readAllSensors(Greenhouse greenhouse) {
+    HashMap<String, Pair<Double, String>> sensorDataHashMap = new HashMap<>();
+    HashMap<String, Sensor> sensors = greenhouse.getSensorNode().getSensors();
+    // Read the climate once, so all sensors show the same moment
+    Climate climate = greenhouse.getClimate();
+
+    for (Map.Entry<String, Sensor> entry : sensors.entrySet()) {
+      String sensorID = entry.getKey();
+      Sensor sensor = entry.getValue();
+
+      sensorDataHashMap.put(sensorID, new Pair<>(sensor.read(greenhouse, climate), sensor.getUnit()));
+    }
+    return new SensorData(sensorDataHashMap);
+  }
+
+  /**
+   * Reads the state of all actuators of a greenhouse.
+   *
+   * @param greenhouse the greenhouse
+   * @return the state and power, keyed by actuator ID
+   */
+  public static ActuatorData readAllActuators(Greenhouse greenhouse) {
+    HashMap<String, Pair<Boolean, Integer>> actuatorDataHashMap = new HashMap<>();
+    HashMap<String, Actuator> actuators = greenhouse.getSensorNode().getActuators();
+
+    for (Map.Entry<String, Actuator> entry : actuators.entrySet()) {
+      String actuatorID = entry.getKey();
+      Actuator actuator = entry.getValue();
+
+      actuatorDataHashMap.put(actuatorID, new Pair<>(actuator.isOn(), actuator.getPower()));
+    }
+    return new ActuatorData(actuatorDataHashMap);
+  }
+
+  /**
+   * Lists one page of greenhouse summaries with the fields asked for.
+   *
+   * @param query the page and fields to list
+   * @return the page of summaries
+   * @throws IllegalArgumentException if the offset, limit or a field is not valid
+   */
+  public static GreenhouseSummaryList listGreenhouses(GreenhouseQuery query) {
+    if (query.getOffset() < 0 || query.getLimit() < 0) {
+      throw new IllegalArgumentException("Offset and limit can not be negative");
+    }
+    boolean name = query.getFields() == null;
+    boolean sensorCount = false;
+    boolean actuatorCount = false;
+    if (query.getFields() != null) {
+      for (String field : query.getFields()) {
+        switch (String.valueOf(field)) {
+          case GreenhouseSummary.NAME -> name = true;
+          case GreenhouseSummary.SENSOR_COUNT -> sensorCount = true;
+          case GreenhouseSummary.ACTUATOR_COUNT -> actuatorCount = true;
+          default -> throw new IllegalArgumentException("Unknown greenhouse field: " + field);
+        }
+      }
+    }
+    int limit = query.getLimit() == 0
+        ? GreenhouseQuery.DEFAULT_LIMIT
+        : Math.min(query.getLimit(), GreenhouseQuery.MAX_LIMIT);
+
+    long version = Server.getGreenhouseRegistry().getVersion();
+    ArrayList<Greenhouse> page = new ArrayList<>(Math.min(limit, 64));
+    int nextOffset = Server.getGreenhouseRegistry().getGreenhouses(query.getNamePrefix(), query.getOffset(), limit,
+        GreenhouseQuery.MAX_SCANNED, page);
+
+    ArrayList<GreenhouseSummary> summaries = new ArrayList<>(page.size());
+    for (Greenhouse greenhouse : page) {
+      summaries.add(new GreenhouseSummary(greenhouse.getGreenhouseId(),
+          name ? greenhouse.getGreenhouseName() : null,
+          sensorCount ? greenhouse.getSensorNode().getSensors().size() : null,
+          actuatorCount ? greenhouse.getSensorNode().getActuators().size() : null));
+    }
+    return new GreenhouseSummaryList(summaries, nextOffset, version);
+  }
+
+  /**
+   * Finds the greenhouses with a name through the name index.
+   *
+   * @param lookup the name to find
+   * @return the summaries of the greenhouses with the name, with names
+   */
+  public static GreenhouseSummaryList findGreenhouses(GreenhouseLookup lookup) {
+    long version = Server.getGreenhouseRegistry().getVersion();
+    ArrayList<GreenhouseSummary> summaries = new ArrayList<>();
+    for (Greenhouse greenhouse : Server.getGreenhouseRegistry().findGreenhouses(lookup.getName())) {
+      summaries.add(new GreenhouseSummary(greenhouse.getGreenhouseId(), greenhouse.getGreenhouseName(), null, null));
+    }
+    return new GreenhouseSummaryList(summaries, -1, version);
+  }
+
+  /**
+   * Finds the greenhouses holding a device through the device directory.
+   *
+   * @param lookup the device to find
+   * @return the IDs of the greenhouses holding the device
+   * @throws IllegalArgumentException if the device type is not SENSOR or ACTUATOR
+   */
+  public static DeviceLocations findDevice(DeviceLookup lookup) {
+    DeviceDirectory directory = Server.getGreenhouseRegistry().getDeviceDirectory();
+    List<Greenhouse> greenhouses = switch (String.valueOf(lookup.getDeviceType())) {
+      case "SENSOR" -> directory.findSensor(lookup.getDeviceId());
+      case "ACTUATOR" -> directory.findActuator(lookup.getDeviceId());
+      default -> throw new IllegalArgumentException("Unknown device type: " + lookup.getDeviceType());
+    };
+    ArrayList<Integer> greenhouseIds = new ArrayList<>(greenhouses.size());
+    for (Greenhouse greenhouse : greenhouses) {
+      greenhouseIds.add(greenhouse.getGreenhouseId());
+    }
+    return new DeviceLocations(lookup.getDeviceType(), lookup.getDeviceId(), greenhouseIds);
+  }
 
+  /**
+   * Handles an incoming request with the context of its batch, or of the
+   * single request. Only a BATCH request itself is handled without one.
+   */
+  private static Message handle(Message messageFromJSON, BatchContext batch, Session session) {
     Message reply = new Message();
     reply.setMessageID(String.valueOf(UUID.randomUUID()));
     reply.setTimestamp(System.currentTimeMillis());
@@ -35,44 +473,113 @@ public class CommandHandler {
 
     switch (messageFromJSON.getMessageType()) {
       case "GET_ALL_GREENHOUSES" -> {
-        ArrayList<Greenhouse> greenhouses = Server.getGreenhouseRegistry().getAllGreenhouses();
-        reply.setBody(new GreenhouseListData(greenhouses));
+        // Read the version first, so the list is never older than the version sent with it
+        long version = Server.getGreenhouseRegistry().getVersion();
+        if (messageFromJSON.getBody() instanceof GreenhouseListRequest listRequest
+            && listRequest.getKnownVersion() == version) {
+          reply.setMessageType("NOT_MODIFIED");
+          reply.setDestination(messageFromJSON.getSource());
+          return reply;
+        }
+
+        reply.setBody(Server.getGreenhouseListCache().get(version));
         reply.setMessageType("GREENHOUSE_LIST_DATA");
         reply.setDestination(messageFromJSON.getSource());
-        String replyJson = JSONHandler.serializeMessageToJSON(reply);
-        return replyJson;
+        return reply;
+      }
+
+      case "LIST_GREENHOUSES" -> {
+        GreenhouseQuery query = messageFromJSON.getBody() instanceof GreenhouseQuery body
+            ? body
+            : new GreenhouseQuery();
+        reply.setBody(listGreenhouses(query));
+        reply.setMessageType("GREENHOUSE_SUMMARIES");
+        reply.setDestination(messageFromJSON.getSource());
+        return reply;
       }
 
       case "CREATE_GREENHOUSE" -> {
         CreateGreenhouse createGreenhouse = (CreateGreenhouse) messageFromJSON.getBody();
         String name = createGreenhouse.getName();
 
-        Server.getGreenhouseRegistry().addGreenhouse(name);
+        Greenhouse greenhouse = new Greenhouse(name);
+        Server.getGreenhouseRegistry().addGreenhouse(greenhouse);
+        if (batch != null) {
+          batch.lastCreated = greenhouse;
+          batch.onUndo(() -> Server.getGreenhouseRegistry().removeGreenhouse(greenhouse));
+        }
+        log(batch, log -> log.logCreateGreenhouse(greenhouse));
 
         reply.setMessageType("INFORMATION");
         reply.setBody(new Information(name + " was added as a greenhouse."));
         reply.setDestination(messageFromJSON.getSource());
-        String replyJson = JSONHandler.serializeMessageToJSON(reply);
-        return replyJson;
+        return reply;
+      }
+
+      case "CREATE_GREENHOUSE_IF_ABSENT" -> {
+        CreateGreenhouse createGreenhouse = (CreateGreenhouse) messageFromJSON.getBody();
+        String name = createGreenhouse.getName();
+
+        Greenhouse candidate = new Greenhouse(name);
+        Greenhouse greenhouse = Server.getGreenhouseRegistry().addGreenhouseIfAbsent(candidate);
+        if (greenhouse != candidate) {
+          candidate.stopEnvironmentUpdates();
+        } else {
+          if (batch != null) {
+            batch.onUndo(() -> Server.getGreenhouseRegistry().removeGreenhouse(greenhouse));
+          }
+          log(batch, log -> log.logCreateGreenhouse(greenhouse));
+        }
+        if (batch != null) {
+          batch.lastCreated = greenhouse;
+        }
+
+        reply.setMessageType("INFORMATION");
+        reply.setBody(new Information(greenhouse == candidate
+            ? name + " was added as a greenhouse."
+            : name + " already exists as greenhouse " + greenhouse.getGreenhouseId() + "."));
+        reply.setDestination(messageFromJSON.getSource());
+        return reply;
+      }
+
+      case "FIND_GREENHOUSE" -> {
+        reply.setBody(findGreenhouses((GreenhouseLookup) messageFromJSON.getBody()));
+        reply.setMessageType("GREENHOUSE_SUMMARIES");
+        reply.setDestination(messageFromJSON.getSource());
+        return reply;
+      }
+
+      case "FIND_DEVICE" -> {
+        reply.setBody(findDevice((DeviceLookup) messageFromJSON.getBody()));
+        reply.setMessageType("DEVICE_LOCATIONS");
+        reply.setDestination(messageFromJSON.getSource());
+        return reply;
       }
 
       case "REMOVE_GREENHOUSE" -> {
         RemoveGreenhouse removeGreenhouse = (RemoveGreenhouse) messageFromJSON.getBody();
         int id = removeGreenhouse.getId();
 
-        Server.getGreenhouseRegistry().removeGreenhouse(id);
+        if (batch != null && batch.undoLog != null) {
+          Greenhouse removed = getGreenhouse(id, batch);
+          int removedId = removed.getGreenhouseId();
+          Server.getGreenhouseRegistry().removeGreenhouse(removed);
+          batch.onUndo(() -> Server.getGreenhouseRegistry().insertGreenhouse(removedId, removed));
+          log(batch, log -> log.logRemoveGreenhouse(removedId));
+        } else if (Server.getGreenhouseRegistry().removeGreenhouse(id)) {
+          log(batch, log -> log.logRemoveGreenhouse(id));
+        }
 
         reply.setMessageType("INFORMATION");
         reply.setBody(new Information("Greenhouse with id: " + id + " was removed."));
         reply.setDestination(messageFromJSON.getSource());
-        String replyJson = JSONHandler.serializeMessageToJSON(reply);
-        return replyJson;
+        return reply;
       }
 
       case "DATA_REQUEST" -> {
         DataRequest dataRequest = (DataRequest) messageFromJSON.getBody();
         int greenhouseID = dataRequest.getGreenhouseID();
-        Greenhouse greenhouse = Server.getGreenhouseRegistry().getGreenhouse(greenhouseID);
+        Greenhouse greenhouse = getGreenhouse(greenhouseID, batch);
         String deviceID = dataRequest.getDeviceID();
         String deviceType = dataRequest.getdeviceType();
 
@@ -81,29 +588,23 @@ public class CommandHandler {
           case "SENSOR" -> {
             reply.setMessageType("SENSOR_DATA");
 
-            if (Objects.equals(deviceID, "ALL")) {
-              HashMap<String, Pair<Double, String>> sensorDataHashMap = new HashMap<>();
-              HashMap<String, Sensor> sensors = greenhouse.getSensorNode().getSensors();
-
-              for (Map.Entry<String, Sensor> entry : sensors.entrySet()) {
-                String sensorID = entry.getKey();
-                Sensor sensor = entry.getValue();
-
-                sensorDataHashMap.put(sensorID, new Pair<>(sensor.read(greenhouse), sensor.getUnit()));
-              }
+            if (Objects.equals(deviceID, "ALL") && dataRequest.getDeadBands() != null && session != null) {
+              reply.setMessageType("SENSOR_DATA_DELTA");
+              reply.setBody(session.getSensorDeltas(greenhouseID).encode(greenhouse, dataRequest.getDeadBands()));
+              reply.setDestination(messageFromJSON.getSource());
 
-              reply.setBody(new SensorData(sensorDataHashMap));
+              return reply;
+            } else if (Objects.equals(deviceID, "ALL")) {
+              reply.setBody(readAllSensors(greenhouse));
               reply.setDestination(messageFromJSON.getSource());
 
-              String replyJson = JSONHandler.serializeMessageToJSON(reply);
-              return replyJson;
+              return reply;
             } else {
               Sensor sensor = greenhouse.getSensorNode().getSensor(deviceID);
               reply.setBody(new SensorData(sensor.getID(), sensor.read(greenhouse), sensor.getUnit()));
               reply.setDestination(messageFromJSON.getSource());
 
-              String replyJson = JSONHandler.serializeMessageToJSON(reply);
-              return replyJson;
+              return reply;
             }
           }
 
@@ -111,33 +612,21 @@ public class CommandHandler {
             reply.setMessageType("ACTUATOR_DATA");
 
             if (Objects.equals(deviceID, "ALL")) {
-              HashMap<String, Pair<Boolean, Integer>> actuatorDataHashMap = new HashMap<>();
-              HashMap<String, Actuator> actuators = greenhouse.getSensorNode().getActuators();
-
-              for (Map.Entry<String, Actuator> entry : actuators.entrySet()) {
-                String actuatorID = entry.getKey();
-                Actuator actuator = entry.getValue();
-
-                actuatorDataHashMap.put(actuatorID, new Pair<>(actuator.isOn(), actuator.getPower()));
-              }
-
-              reply.setBody(new ActuatorData(actuatorDataHashMap));
+              reply.setBody(readAllActuators(greenhouse));
               reply.setDestination(messageFromJSON.getSource());
 
-              String replyJson = JSONHandler.serializeMessageToJSON(reply);
-              return replyJson;
+              return reply;
             } else {
               Actuator actuator = greenhouse.getSensorNode().getActuator(deviceID);
               reply.setBody(new ActuatorData(actuator.getID(), actuator.isOn(), actuator.getPower()));
               reply.setDestination(messageFromJSON.getSource());
 
-              String replyJson = JSONHandler.serializeMessageToJSON(reply);
-              return replyJson;
+              return reply;
             }
           }
 
           default ->  {
-            return "Device type not found";
+            return createErrorReply(messageFromJSON, "Device type not found");
           }
         }
       }
@@ -147,26 +636,23 @@ public class CommandHandler {
         int greenhouseId = addActuator.getGreenhouseId();
         String actuatorType = addActuator.getActuatorType();
 
-        Greenhouse greenhouse = Server.getGreenhouseRegistry().getGreenhouse(greenhouseId);
-        Actuator actuator;
-
-        switch (actuatorType) {
-          case "Fan" -> actuator = new FanActuator();
-          case "Heater" -> actuator = new HeaterActuator();
-          case "Light" -> actuator = new LightActuator();
-          case "Sprinkler" -> actuator = new SprinklerActuator();
-          default -> {
-            return "Actuator type not found";
-            }
+        Greenhouse greenhouse = getGreenhouse(greenhouseId, batch);
+        Actuator actuator = createActuator(actuatorType);
+        if (actuator == null) {
+          return createErrorReply(messageFromJSON, "Actuator type not found");
         }
 
         greenhouse.getSensorNode().addActuatorToNode(actuator);
+        greenhouse.notifyChanged();
+        if (batch != null) {
+          batch.onUndo(() -> greenhouse.getSensorNode().removeActuatorFromNode(actuator));
+        }
+        log(batch, log -> log.logAddActuator(greenhouse.getGreenhouseId(), actuator));
 
         reply.setMessageType("INFORMATION");
         reply.setBody(new Information("Actuator with id " + actuator.getID() + " was added to sensor node"));
         reply.setDestination(messageFromJSON.getSource());
-        String replyJson = JSONHandler.serializeMessageToJSON(reply);
-        return replyJson;
+        return reply;
       }
 
       case "ADD_SENSOR" -> {
@@ -174,32 +660,39 @@ public class CommandHandler {
         int greenhouseId = addSensor.getGreenhouseId();
         String actuatorType = addSensor.getSensorType();
 
-        Greenhouse greenhouse = Server.getGreenhouseRegistry().getGreenhouse(greenhouseId);
-        Sensor sensor;
-
-        switch (actuatorType) {
-          case "Humidity" -> sensor = new HumiditySensor();
-          case "Light" -> sensor = new LightSensor();
-          case "Temperature" -> sensor = new TemperatureSensor();
-          default -> {
-            return "Sensor type not found";
-          }
+        Greenhouse greenhouse = getGreenhouse(greenhouseId, batch);
+        Sensor sensor = createSensor(actuatorType);
+        if (sensor == null) {
+          return createErrorReply(messageFromJSON, "Sensor type not found");
         }
 
         greenhouse.getSensorNode().addSensorToNode(sensor);
+        greenhouse.notifyChanged();
+        if (batch != null) {
+          batch.onUndo(() -> greenhouse.getSensorNode().removeSensorFromNode(sensor));
+        }
+        log(batch, log -> log.logAddSensor(greenhouse.getGreenhouseId(), sensor));
 
         reply.setMessageType("INFORMATION");
         reply.setBody(new Information("Sensor with id " + sensor.getID() + " was added to sensor node"));
         reply.setDestination(messageFromJSON.getSource());
-        String replyJson = JSONHandler.serializeMessageToJSON(reply);
-        return replyJson;
+        return reply;
       }
 
       case "ACTUATOR_COMMAND" -> {
         ActuatorCommand actuatorCommand = (ActuatorCommand) messageFromJSON.getBody();
         String actuatorId = actuatorCommand.getActuatorId();
         int greenhouseId = actuatorCommand.getGreenhouseId();
-        Greenhouse greenhouse = Server.getGreenhouseRegistry().getGreenhouse(greenhouseId);
+        Greenhouse greenhouse = getGreenhouse(greenhouseId, batch);
+        if (batch != null && batch.undoLog != null) {
+          Actuator actuator = greenhouse.getSensorNode().getActuator(actuatorId);
+          boolean wasOn = actuator.isOn();
+          int oldPower = actuator.getPower();
+          batch.onUndo(() -> {
+            actuator.setPower(oldPower, greenhouse);
+            actuator.setState(wasOn, greenhouse);
+          });
+        }
         if (actuatorCommand.getPower() != -1) {
           int actuatorPower = actuatorCommand.getPower();
           greenhouse.getSensorNode().setActuatorPower(actuatorId, actuatorPower, greenhouse);
@@ -207,16 +700,56 @@ public class CommandHandler {
           boolean actuatorState = actuatorCommand.isTurnOn();
           greenhouse.getSensorNode().setActuatorState(actuatorId, greenhouse, actuatorState);
         }
+        greenhouse.notifyChanged();
+        Actuator actuator = greenhouse.getSensorNode().getActuator(actuatorId);
+        log(batch, log -> log.logActuatorState(greenhouse.getGreenhouseId(), actuator));
 
         reply.setMessageType("INFORMATION");
         reply.setBody(new Information("Actuator state successfully changed"));
         reply.setDestination(messageFromJSON.getSource());
-        String replyJson = JSONHandler.serializeMessageToJSON(reply);
-        return replyJson;
+        return reply;
+      }
+
+      case "SUBSCRIBE" -> {
+        if (session == null) {
+          return createErrorReply(messageFromJSON, "Subscriptions are not supported here");
+        }
+        Subscribe subscribe = (Subscribe) messageFromJSON.getBody();
+        Greenhouse greenhouse = getGreenhouse(subscribe.getGreenhouseId(), batch);
+        try {
+          session.getSubscriptions().subscribe(messageFromJSON.getMessageID(), greenhouse,
+              subscribe.getDeviceType(), subscribe.getDeadBands());
+        } catch (IllegalArgumentException e) {
+          return createErrorReply(messageFromJSON, e.getMessage());
+        }
+
+        reply.setMessageType("INFORMATION");
+        reply.setBody(new Information("Subscribed to greenhouse " + subscribe.getGreenhouseId()));
+        reply.setDestination(messageFromJSON.getSource());
+        return reply;
+      }
+
+      case "UNSUBSCRIBE" -> {
+        Unsubscribe unsubscribe = (Unsubscribe) messageFromJSON.getBody();
+        if (session == null || !session.getSubscriptions().unsubscribe(unsubscribe.getSubscriptionId())) {
+          return createErrorReply(messageFromJSON, "Subscription not found");
+        }
+
+        reply.setMessageType("INFORMATION");
+        reply.setBody(new Information("Subscription " + unsubscribe.getSubscriptionId() + " was stopped"));
+        reply.setDestination(messageFromJSON.getSource());
+        return reply;
+      }
+
+      case "BATCH" -> {
+        if (batch != null) {
+          return createErrorReply(messageFromJSON, "Batches can not be nested");
+        }
+        return handleBatch(messageFromJSON);
       }
 
       default -> {
-        return "Message type not found";
+        return createErrorReply(messageFromJSON, "Message type not found");
       }
     }
   }
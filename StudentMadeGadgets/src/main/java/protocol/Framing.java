@@ -0,0 +1,48 @@
+package protocol;
+
+/**
+ * The ways messages can be separated from each other on a connection.
+ */
+public enum Framing {
+  /**
+   * Every message is one line, ended by a newline. This is the default,
+   * and the only framing understood by older clients and servers.
+   */
+  LINE((byte) 0),
+
+  /**
+   * Every message is preceded by its length in bytes, as a 4 byte big
+   * endian integer. Must be negotiated when the connection is opened.
+   */
+  LENGTH_PREFIXED((byte) 1);
+
+  private final byte code;
+
+  Framing(byte code) {
+    this.code = code;
+  }
+
+  /**
+   * Gets the code used for this framing in the connection preamble.
+   *
+   * @return the framing code
+   */
+  public byte getCode() {
+    return this.code;
+  }
+
+  /**
+   * Gets the framing with the given preamble code.
+   *
+   * @param code the framing code
+   * @return the framing, or null if the code is unknown
+   */
+  public static Framing fromCode(byte code) {
+    for (Framing framing : values()) {
+      if (framing.code == code) {
+        return framing;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,86 @@
+package protocol;
+
+import greenhouse.GreenhouseRegistry;
+import java.util.concurrent.atomic.LongAdder;
+import protocol.command.CachedGreenhouseListData;
+
+/**
+ * Cache of the reply body to GET_ALL_GREENHOUSES.
+ *
+ * <p>The same {@link CachedGreenhouseListData} is handed out until the
+ * registry version changes or the list gets older than the maximum age,
+ * which keeps the temperature, humidity and light in it reasonably fresh.
+ * Every codec encodes the cached list only once.</p>
+ */
+public final class GreenhouseListCache {
+  /**
+   * The default maximum age of the cached list, in milliseconds.
+   */
+  public static final long DEFAULT_MAX_AGE_MILLIS = 1000;
+
+  private final GreenhouseRegistry registry;
+  private volatile long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+  private volatile CachedGreenhouseListData current;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Constructor for GreenhouseListCache.
+   *
+   * @param registry the registry to list
+   */
+  public GreenhouseListCache(GreenhouseRegistry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * Sets how long a cached list may be reused. 0 turns the cache off.
+   *
+   * @param maxAgeMillis the maximum age in milliseconds
+   */
+  public void setMaxAgeMillis(long maxAgeMillis) {
+    this.maxAgeMillis = maxAgeMillis;
+    this.current = null;
+  }
+
+  /**
+   * Gets the list of all greenhouses for the given registry version,
+   * from the cache if it is still valid.
+   *
+   * @param version the registry version, read before calling this
+   * @return the list of greenhouses
+   */
+  public CachedGreenhouseListData get(long version) {
+    CachedGreenhouseListData cached = this.current;
+    if (cached != null && cached.getVersion() == version
+        && System.currentTimeMillis() - cached.getCreatedAt() < maxAgeMillis) {
+      hits.increment();
+      return cached;
+    }
+
+    misses.increment();
+    CachedGreenhouseListData fresh = new CachedGreenhouseListData(registry.getAllGreenhouses(), version);
+    if (maxAgeMillis > 0) {
+      this.current = fresh;
+    }
+    return fresh;
+  }
+
+  /**
+   * Gets the number of requests answered from the cache.
+   *
+   * @return the hit counter
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Gets the number of requests that had to list the registry.
+   *
+   * @return the miss counter
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+}
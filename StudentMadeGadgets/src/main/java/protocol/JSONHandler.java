@@ -1,14 +1,47 @@
 package protocol;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.StringReader;
+import protocol.adapter.CommandAdapters;
+import protocol.adapter.MessageAdapter;
 import protocol.command.*;
 
 /**
  * Handles JSON serialization and deserialization for Messages.
+ *
+ * <p>All conversions share one Gson instance, which is thread-safe. Message
+ * and every Command body have hand-written TypeAdapters registered, see
+ * {@link MessageAdapter} and {@link CommandAdapters}, so no reflection is
+ * used on the request path.</p>
  */
 public class JSONHandler {
+  private static final MessageAdapter MESSAGE_ADAPTER = new MessageAdapter();
+  private static final Gson GSON = createGson();
+
+  private static Gson createGson() {
+    GsonBuilder builder = new GsonBuilder().registerTypeAdapter(Message.class, MESSAGE_ADAPTER);
+    for (Class<? extends Command> bodyClass : CommandAdapters.getBodyClasses()) {
+      builder.registerTypeAdapter(bodyClass, CommandAdapters.forClass(bodyClass));
+    }
+    return builder.create();
+  }
+
+  /**
+   * Gets the shared Gson instance, with the adapters for all protocol
+   * classes registered.
+   *
+   * @return the shared Gson instance
+   */
+  public static Gson getGson() {
+    return GSON;
+  }
 
   /**
    * Serializes a Message object to a JSON string.
@@ -17,14 +50,19 @@ public class JSONHandler {
    * @return the JSON string representation of the Message
    */
   public static String serializeMessageToJSON(Message message) {
-    Gson gson = new Gson();
-
-    return gson.toJson(message);
+    return GSON.toJson(message, Message.class);
   }
 
   /**
    * Deserializes a JSON string to a Message object.
    *
+   * <p>The JSON is read in a single pass with a streaming reader, without
+   * building a tree first. The body is decoded straight into its Command
+   * class when messageType comes before it, which is the order
+   * {@link #serializeMessageToJSON(Message)} writes. A body that comes
+   * first is kept until the messageType is known, and bodies of unknown
+   * message types are skipped.</p>
+   *
    * @param json the JSON string to deserialize
    * @return the deserialized Message object
    */
@@ -34,55 +72,21 @@ public class JSONHandler {
       throw new IllegalArgumentException("JSON string is null or empty");
     }
 
-    Gson gson = new Gson();
-    JsonObject root;
-
+    Message message;
     try {
-      root = gson.fromJson(json, JsonObject.class);
-    } catch (JsonSyntaxException e) {
+      JsonReader reader = new JsonReader(new StringReader(json));
+      reader.setLenient(true);
+
+      message = MESSAGE_ADAPTER.read(reader);
+      if (message == null) {
+        throw new IllegalArgumentException("Failed to parse JSON - root is null. JSON: " + json);
+      }
+      if (reader.peek() != JsonToken.END_DOCUMENT) {
+        throw new IllegalArgumentException("Invalid JSON syntax: JSON document was not fully consumed.");
+      }
+    } catch (IOException | IllegalStateException | NumberFormatException | JsonParseException e) {
       throw new IllegalArgumentException("Invalid JSON syntax: " + e.getMessage(), e);
     }
-
-    // Check if parsing resulted in null
-    if (root == null) {
-      throw new IllegalArgumentException("Failed to parse JSON - root is null. JSON: " + json);
-    }
-
-    // Create the Message object
-    Message message = new Message();
-
-    // Basic fields - with required field checking
-    if (!root.has("messageType")) {
-      throw new IllegalArgumentException("Missing required field: messageType");
-    }
-
-    String messageType = root.get("messageType").getAsString();
-    message.setMessageType(messageType);
-
-    // Optional fields
-    if (root.has("source") && !root.get("source").isJsonNull()) {
-      message.setSource(root.get("source").getAsString());
-    }
-    if (root.has("destination") && !root.get("destination").isJsonNull()) {
-      message.setDestination(root.get("destination").getAsString());
-    }
-    if (root.has("messageID") && !root.get("messageID").isJsonNull()) {
-      message.setMessageID(root.get("messageID").getAsString());
-    }
-    if (root.has("correlationID") && !root.get("correlationID").isJsonNull()) {
-      message.setCorrelationID(root.get("correlationID").getAsString());
-    }
-    if (root.has("timestamp") && !root.get("timestamp").isJsonNull()) {
-      message.setTimestamp(root.get("timestamp").getAsLong());
-    }
-
-    // Body
-    if (root.has("body") && root.get("body").isJsonObject()) {
-      JsonObject bodyJson = root.getAsJsonObject("body");
-      Command body = deserializeBody(bodyJson, messageType);
-      message.setBody(body);
-    }
-
     return message;
   }
 
@@ -94,21 +98,11 @@ public class JSONHandler {
    * @return the deserialized Command object
    */
   public static Command deserializeBody(JsonObject bodyJson, String messageType) {
-    Gson gson = new Gson();
-
-    return switch (messageType) {
-      case "ACTUATOR_COMMAND" -> gson.fromJson(bodyJson, ActuatorCommand.class);
-      case "ACTUATOR_DATA" -> gson.fromJson(bodyJson, ActuatorData.class);
-      case "DATA_REQUEST" -> gson.fromJson(bodyJson, DataRequest.class);
-      case "SENSOR_DATA" -> gson.fromJson(bodyJson, SensorData.class);
-      case "GREENHOUSE_LIST_DATA" -> gson.fromJson(bodyJson, GreenhouseListData.class);
-      case "CREATE_GREENHOUSE" -> gson.fromJson(bodyJson, CreateGreenhouse.class);
-      case "REMOVE_GREENHOUSE" -> gson.fromJson(bodyJson, RemoveGreenhouse.class);
-      case "INFORMATION" -> gson.fromJson(bodyJson, Information.class);
-      case "ADD_ACTUATOR" -> gson.fromJson(bodyJson, AddActuator.class);
-      case "ADD_SENSOR" -> gson.fromJson(bodyJson, AddSensor.class);
-      default -> null;
-    };
+    TypeAdapter<? extends Command> adapter = CommandAdapters.forMessageType(messageType);
+    if (adapter == null) {
+      return null;
+    }
+    return adapter.fromJsonTree(bodyJson);
   }
 
 }
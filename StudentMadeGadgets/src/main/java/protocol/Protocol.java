@@ -3,15 +3,63 @@ package protocol;
 import java.io.*;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Provides a simple protocol for sending
  * and receiving messages over a socket.
+ *
+ * <p>Messages may be sent from several threads at once, e.g. when replies
+ * to pipelined requests finish out of order. Reading is meant to be done
+ * by one thread only.</p>
+ *
+ * <p>A connection starts out with {@link Framing#LINE} framing and the
+ * {@link Codec#JSON} codec. A client can ask for another framing and codec
+ * by sending a preamble before its first message, see
+ * {@link #negotiate(Framing, Codec)} and {@link #acceptNegotiation()}. The
+ * preamble starts with a zero byte, which a JSON message never does, so
+ * clients that do not send it keep working as before. No framing accepts
+ * messages longer than the maximum frame size.</p>
  */
 public final class Protocol implements Closeable {
+  /**
+   * The default maximum size of one message, in bytes.
+   */
+  public static final int DEFAULT_MAX_FRAME_SIZE = 1024 * 1024;
+
+  /**
+   * The bytes every preamble starts with.
+   */
+  static final byte[] PREAMBLE_MAGIC = {0, 'S', 'S', 'P'};
+
+  /**
+   * The preamble version understood by this implementation.
+   */
+  static final byte PREAMBLE_VERSION = 1;
+
+  /**
+   * The length of a preamble: magic, version, framing code, codec code and a newline.
+   */
+  public static final int PREAMBLE_LENGTH = PREAMBLE_MAGIC.length + 4;
+
+  private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
   private final Socket socket;
-  private final BufferedReader in;
-  private final BufferedWriter out;
+  private final InputStream in;
+  private final DataOutputStream out;
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private final int maxFrameSize;
+  private volatile Framing framing = Framing.LINE;
+  private volatile Codec codec = Codec.JSON;
+
+  // Bytes read from the socket but not yet consumed are kept in readBuffer
+  // between readPosition and readLimit. Messages that span several reads
+  // are assembled in frameBuffer.
+  private final byte[] readBuffer = new byte[INITIAL_BUFFER_SIZE];
+  private int readPosition = 0;
+  private int readLimit = 0;
+  private byte[] frameBuffer = new byte[INITIAL_BUFFER_SIZE];
 
   /**
    * Constructor for Protocol.
@@ -20,9 +68,191 @@ public final class Protocol implements Closeable {
    * @throws IOException if an I/O error occurs when creating the input/output streams
    */
   public Protocol(Socket socket) throws IOException {
+    this(socket, DEFAULT_MAX_FRAME_SIZE);
+  }
+
+  /**
+   * Constructor for Protocol with a custom maximum message size.
+   *
+   * @param socket       the socket to use for communication
+   * @param maxFrameSize the largest message accepted, in bytes
+   * @throws IOException if an I/O error occurs when creating the input/output streams
+   */
+  public Protocol(Socket socket, int maxFrameSize) throws IOException {
     this.socket = socket;
-    this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
-    this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    this.maxFrameSize = maxFrameSize;
+    this.in = socket.getInputStream();
+    this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+  }
+
+  /**
+   * Gets the framing currently used on this connection.
+   *
+   * @return the framing
+   */
+  public Framing getFraming() {
+    return this.framing;
+  }
+
+  /**
+   * Gets the codec currently used on this connection.
+   *
+   * @return the codec
+   */
+  public Codec getCodec() {
+    return this.codec;
+  }
+
+  /**
+   * Creates the preamble asking for, or confirming, a framing with JSON messages.
+   *
+   * @param framing the framing
+   * @return the preamble bytes
+   */
+  public static byte[] createPreamble(Framing framing) {
+    return createPreamble(framing, Codec.JSON);
+  }
+
+  /**
+   * Creates the preamble asking for, or confirming, a framing and a codec.
+   *
+   * @param framing the framing
+   * @param codec   the codec
+   * @return the preamble bytes
+   */
+  public static byte[] createPreamble(Framing framing, Codec codec) {
+    byte[] preamble = Arrays.copyOf(PREAMBLE_MAGIC, PREAMBLE_LENGTH);
+    preamble[PREAMBLE_MAGIC.length] = PREAMBLE_VERSION;
+    preamble[PREAMBLE_MAGIC.length + 1] = framing.getCode();
+    preamble[PREAMBLE_MAGIC.length + 2] = codec.getCode();
+    preamble[PREAMBLE_MAGIC.length + 3] = '\n';
+    return preamble;
+  }
+
+  /**
+   * Reads the framing out of a preamble.
+   *
+   * @param preamble the preamble bytes, at least {@link #PREAMBLE_LENGTH} long
+   * @param offset   where the preamble starts
+   * @return the framing in the preamble
+   * @throws IOException if the bytes are not a valid preamble
+   */
+  public static Framing parsePreamble(byte[] preamble, int offset) throws IOException {
+    for (int i = 0; i < PREAMBLE_MAGIC.length; i++) {
+      if (preamble[offset + i] != PREAMBLE_MAGIC[i]) {
+        throw new IOException("Invalid connection preamble");
+      }
+    }
+    if (preamble[offset + PREAMBLE_MAGIC.length] != PREAMBLE_VERSION) {
+      throw new IOException("Unsupported preamble version: " + preamble[offset + PREAMBLE_MAGIC.length]);
+    }
+    Framing framing = Framing.fromCode(preamble[offset + PREAMBLE_MAGIC.length + 1]);
+    if (framing == null) {
+      throw new IOException("Unknown framing code: " + preamble[offset + PREAMBLE_MAGIC.length + 1]);
+    }
+    if (parseCodec(preamble, offset) == Codec.BINARY && framing != Framing.LENGTH_PREFIXED) {
+      throw new IOException("The binary codec needs length prefixed framing");
+    }
+    return framing;
+  }
+
+  /**
+   * Reads the codec out of a preamble.
+   *
+   * @param preamble the preamble bytes, at least {@link #PREAMBLE_LENGTH} long
+   * @param offset   where the preamble starts
+   * @return the codec in the preamble
+   * @throws IOException if the codec code is unknown
+   */
+  public static Codec parseCodec(byte[] preamble, int offset) throws IOException {
+    Codec codec = Codec.fromCode(preamble[offset + PREAMBLE_MAGIC.length + 2]);
+    if (codec == null) {
+      throw new IOException("Unknown codec code: " + preamble[offset + PREAMBLE_MAGIC.length + 2]);
+    }
+    return codec;
+  }
+
+  /**
+   * Asks the server for a framing, keeping JSON messages.
+   *
+   * @param requested the framing to ask for
+   * @return the framing used from now on
+   * @throws IOException if an I/O error occurs during the negotiation
+   * @see #negotiate(Framing, Codec)
+   */
+  public Framing negotiate(Framing requested) throws IOException {
+    return negotiate(requested, Codec.JSON);
+  }
+
+  /**
+   * Asks the server for a framing and a codec. Must be called by the client
+   * before sending its first message.
+   *
+   * <p>A server that does not know the preamble takes it for a malformed
+   * message. If it answers with an ERROR line, the line is skipped and the
+   * connection stays at {@link Framing#LINE} and {@link Codec#JSON}. A
+   * server that closes the connection instead, like the servers from
+   * before pipelining did, makes the negotiation fail; the client has to
+   * connect again without asking for a framing.</p>
+   *
+   * @param requested      the framing to ask for
+   * @param requestedCodec the codec to ask for
+   * @return the framing used from now on
+   * @throws IOException if an I/O error occurs during the negotiation, or
+   *                     the server closed the connection
+   */
+  public Framing negotiate(Framing requested, Codec requestedCodec) throws IOException {
+    writeLock.lock();
+    try {
+      out.write(createPreamble(requested, requestedCodec));
+      out.flush();
+    } finally {
+      writeLock.unlock();
+    }
+
+    int first = peek();
+    if (first == -1) {
+      throw new IOException("The server closed the connection during the negotiation");
+    }
+    if (first != PREAMBLE_MAGIC[0]) {
+      readLine();
+      return this.framing;
+    }
+
+    byte[] answer = new byte[PREAMBLE_LENGTH];
+    readFully(answer, PREAMBLE_LENGTH);
+    this.framing = parsePreamble(answer, 0);
+    this.codec = parseCodec(answer, 0);
+    return this.framing;
+  }
+
+  /**
+   * Answers a framing and codec request, if the client sent one. Must be called by
+   * the server before reading the first message.
+   *
+   * @return the framing used from now on
+   * @throws IOException if an I/O error occurs, or the preamble is invalid
+   */
+  public Framing acceptNegotiation() throws IOException {
+    if (peek() != PREAMBLE_MAGIC[0]) {
+      return this.framing;
+    }
+
+    byte[] preamble = new byte[PREAMBLE_LENGTH];
+    readFully(preamble, PREAMBLE_LENGTH);
+    Framing requested = parsePreamble(preamble, 0);
+    Codec requestedCodec = parseCodec(preamble, 0);
+
+    writeLock.lock();
+    try {
+      out.write(createPreamble(requested, requestedCodec));
+      out.flush();
+      this.framing = requested;
+      this.codec = requestedCodec;
+    } finally {
+      writeLock.unlock();
+    }
+    return this.framing;
   }
 
   /**
@@ -32,19 +262,248 @@ public final class Protocol implements Closeable {
    * @throws IOException if an I/O error occurs when sending the message
    */
   public void sendMessage(String message) throws IOException {
-    out.write(message);
-    out.write('\n');
-    out.flush();
+    byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+
+    writeLock.lock();
+    try {
+      if (framing == Framing.LENGTH_PREFIXED) {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      } else {
+        out.write(bytes);
+        out.write('\n');
+      }
+      out.flush();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Sends one length prefixed frame holding raw bytes, e.g. a binary
+   * encoded message.
+   *
+   * @param frame the bytes to send
+   * @throws IOException if an I/O error occurs when sending the frame
+   */
+  public void sendFrame(byte[] frame) throws IOException {
+    if (framing != Framing.LENGTH_PREFIXED) {
+      throw new IOException("Raw frames need length prefixed framing");
+    }
+    writeLock.lock();
+    try {
+      out.writeInt(frame.length);
+      out.write(frame);
+      out.flush();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Sends a Message, encoded with the codec of the connection.
+   *
+   * @param message the message to send
+   * @throws IOException if an I/O error occurs when sending the message
+   */
+  public void send(Message message) throws IOException {
+    if (codec == Codec.BINARY) {
+      sendFrame(BinaryCodec.encode(message));
+    } else {
+      sendMessage(JSONHandler.serializeMessageToJSON(message));
+    }
+  }
+
+  /**
+   * Reads a Message, decoded with the codec of the connection.
+   *
+   * @return the message, or null if the connection was closed
+   * @throws IOException              if an I/O error occurs when reading the message
+   * @throws IllegalArgumentException if the message could not be decoded
+   */
+  public Message receive() throws IOException {
+    if (codec == Codec.BINARY) {
+      byte[] frame = readFrame();
+      return frame == null ? null : BinaryCodec.decode(frame);
+    }
+    String json = readMessage();
+    return json == null ? null : JSONHandler.deserializeFromJSONToMessage(json);
+  }
+
+  /**
+   * Reads one length prefixed frame as raw bytes.
+   *
+   * @return the bytes of the frame, or null if the connection was closed
+   * @throws IOException if an I/O error occurs when reading the frame,
+   *                     or the frame is larger than the maximum frame size
+   */
+  public byte[] readFrame() throws IOException {
+    if (framing != Framing.LENGTH_PREFIXED) {
+      throw new IOException("Raw frames need length prefixed framing");
+    }
+    int length = readFrameLength();
+    if (length == -1) {
+      return null;
+    }
+    byte[] frame = new byte[length];
+    readFully(frame, length);
+    return frame;
   }
 
   /**
    * Reads a message from the socket.
    *
-   * @return the message read from the socket
-   * @throws IOException if an I/O error occurs when reading the message
+   * @return the message read from the socket, or null if the connection was closed
+   * @throws IOException if an I/O error occurs when reading the message,
+   *                     or the message is larger than the maximum frame size
    */
   public String readMessage() throws IOException {
-    return in.readLine();
+    if (framing == Framing.LENGTH_PREFIXED) {
+      return readLengthPrefixed();
+    }
+    return readLine();
+  }
+
+  /**
+   * Reads one length prefixed message.
+   */
+  private String readLengthPrefixed() throws IOException {
+    int length = readFrameLength();
+    if (length == -1) {
+      return null;
+    }
+
+    // The whole frame is already buffered, decode it in place
+    if (readLimit - readPosition >= length) {
+      String message = new String(readBuffer, readPosition, length, StandardCharsets.UTF_8);
+      readPosition += length;
+      return message;
+    }
+
+    if (length > frameBuffer.length) {
+      frameBuffer = new byte[length];
+    }
+    readFully(frameBuffer, length);
+    return new String(frameBuffer, 0, length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads one newline terminated message. A carriage return before the
+   * newline is dropped, like {@link BufferedReader#readLine()}.
+   */
+  private String readLine() throws IOException {
+    int length = 0;
+
+    while (true) {
+      if (readPosition == readLimit && !fill()) {
+        if (length == 0) {
+          return null;
+        }
+        return decodeLine(frameBuffer, 0, length);
+      }
+
+      int newline = -1;
+      for (int i = readPosition; i < readLimit; i++) {
+        if (readBuffer[i] == '\n') {
+          newline = i;
+          break;
+        }
+      }
+
+      int end = newline == -1 ? readLimit : newline;
+      int chunk = end - readPosition;
+
+      if (length + chunk > maxFrameSize) {
+        throw new IOException("Line exceeds the maximum of " + maxFrameSize + " bytes");
+      }
+
+      // The whole line is already buffered, decode it in place
+      if (newline != -1 && length == 0) {
+        String message = decodeLine(readBuffer, readPosition, chunk);
+        readPosition = newline + 1;
+        return message;
+      }
+      if (length + chunk > frameBuffer.length) {
+        frameBuffer = Arrays.copyOf(frameBuffer, Math.min(maxFrameSize, Math.max(length + chunk, frameBuffer.length * 2)));
+      }
+      System.arraycopy(readBuffer, readPosition, frameBuffer, length, chunk);
+      length += chunk;
+
+      if (newline != -1) {
+        readPosition = newline + 1;
+        return decodeLine(frameBuffer, 0, length);
+      }
+      readPosition = readLimit;
+    }
+  }
+
+  /**
+   * Reads the length prefix of the next frame.
+   *
+   * @return the length, or -1 if the connection was closed
+   */
+  private int readFrameLength() throws IOException {
+    if (peek() == -1) {
+      return -1;
+    }
+    byte[] lengthBytes = new byte[4];
+    readFully(lengthBytes, 4);
+    int length = ((lengthBytes[0] & 0xff) << 24) | ((lengthBytes[1] & 0xff) << 16)
+        | ((lengthBytes[2] & 0xff) << 8) | (lengthBytes[3] & 0xff);
+    if (length < 0 || length > maxFrameSize) {
+      throw new IOException("Frame of " + length + " bytes exceeds the maximum of " + maxFrameSize);
+    }
+    return length;
+  }
+
+  private static String decodeLine(byte[] bytes, int offset, int length) {
+    if (length > 0 && bytes[offset + length - 1] == '\r') {
+      length--;
+    }
+    return new String(bytes, offset, length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads more bytes from the socket into the empty read buffer.
+   *
+   * @return false if the connection was closed
+   */
+  private boolean fill() throws IOException {
+    int read = in.read(readBuffer, 0, readBuffer.length);
+    if (read == -1) {
+      return false;
+    }
+    readPosition = 0;
+    readLimit = read;
+    return true;
+  }
+
+  /**
+   * Looks at the next byte without consuming it.
+   *
+   * @return the next byte, or -1 if the connection was closed
+   */
+  private int peek() throws IOException {
+    if (readPosition == readLimit && !fill()) {
+      return -1;
+    }
+    return readBuffer[readPosition] & 0xff;
+  }
+
+  /**
+   * Reads exactly {@code length} bytes into the start of {@code target}.
+   */
+  private void readFully(byte[] target, int length) throws IOException {
+    int copied = 0;
+    while (copied < length) {
+      if (readPosition == readLimit && !fill()) {
+        throw new EOFException("Connection closed in the middle of a message");
+      }
+      int chunk = Math.min(length - copied, readLimit - readPosition);
+      System.arraycopy(readBuffer, readPosition, target, copied, chunk);
+      readPosition += chunk;
+      copied += chunk;
+    }
   }
 
   /**
@@ -55,4 +514,4 @@ public final class Protocol implements Closeable {
   @Override public void close() throws IOException {
     socket.close();
   }
-}
\ No newline at end of file
+}
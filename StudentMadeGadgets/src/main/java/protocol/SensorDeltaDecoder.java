@@ -0,0 +1,57 @@
+package protocol;
+
+import java.util.HashMap;
+import java.util.Map;
+import javafx.util.Pair;
+import protocol.command.SensorData;
+import protocol.command.SensorDataDelta;
+
+/**
+ * Applies the {@link SensorDataDelta}s of one delta stream, in the order
+ * they were received, to rebuild the full sensor data.
+ */
+public final class SensorDeltaDecoder {
+  private final HashMap<Integer, String> ids = new HashMap<>();
+  private final HashMap<String, Pair<Double, String>> readings = new HashMap<>();
+
+  /**
+   * Applies a reply or push of the stream. A full SENSOR_DATA message
+   * replaces everything known, which the server sends when it can not
+   * keep track of the stream, e.g. inside a batch.
+   *
+   * @param message a SENSOR_DATA_DELTA or SENSOR_DATA message
+   * @return the full sensor data after applying the message
+   */
+  public synchronized SensorData apply(Message message) {
+    if (message.getBody() instanceof SensorData full) {
+      ids.clear();
+      readings.clear();
+      readings.putAll(full.getSensorDataHashMap());
+      return snapshot();
+    }
+
+    SensorDataDelta delta = (SensorDataDelta) message.getBody();
+    if (delta.isKeyframe()) {
+      ids.clear();
+      readings.clear();
+    }
+    for (Integer index : delta.getRemoved()) {
+      readings.remove(ids.remove(index));
+    }
+    for (Map.Entry<Integer, Pair<String, String>> sensor : delta.getSensors().entrySet()) {
+      ids.put(sensor.getKey(), sensor.getValue().getKey());
+      readings.put(sensor.getValue().getKey(), new Pair<>(Double.NaN, sensor.getValue().getValue()));
+    }
+    for (Map.Entry<Integer, Double> reading : delta.getReadings().entrySet()) {
+      String id = ids.get(reading.getKey());
+      if (id != null) {
+        readings.put(id, new Pair<>(reading.getValue(), readings.get(id).getValue()));
+      }
+    }
+    return snapshot();
+  }
+
+  private SensorData snapshot() {
+    return new SensorData(new HashMap<>(readings));
+  }
+}
@@ -0,0 +1,89 @@
+package protocol;
+
+import greenhouse.Climate;
+import greenhouse.Greenhouse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import javafx.util.Pair;
+import protocol.command.SensorDataDelta;
+import sensor.Sensor;
+
+/**
+ * Keeps track of the sensor readings last sent on one delta stream, and
+ * creates the {@link SensorDataDelta} with what changed since then.
+ *
+ * <p>A reading is only sent again when it moved by more than the dead-band
+ * of its sensor type, compared to the reading last sent, so slow drifts
+ * are still sent once they add up.</p>
+ */
+public final class SensorDeltaEncoder {
+  private Greenhouse greenhouse;
+  private final HashMap<String, Integer> indexes = new HashMap<>();
+  private final HashMap<Integer, Double> lastSent = new HashMap<>();
+  private int nextIndex = 0;
+
+  /**
+   * Reads the sensors of a greenhouse and creates the delta to send. When
+   * the greenhouse is another one than last time, e.g. because the ID was
+   * reused, the stream starts over with a keyframe.
+   *
+   * @param greenhouse the greenhouse to read
+   * @param deadBands  the dead-bands keyed by sensor type, with "ALL" for other types
+   * @return the delta, which may be empty
+   */
+  public synchronized SensorDataDelta encode(Greenhouse greenhouse, Map<String, Double> deadBands) {
+    boolean keyframe = this.greenhouse != greenhouse;
+    if (keyframe) {
+      this.greenhouse = greenhouse;
+      indexes.clear();
+      lastSent.clear();
+      nextIndex = 0;
+    }
+
+    HashMap<Integer, Pair<String, String>> sensors = new HashMap<>();
+    HashMap<Integer, Double> readings = new HashMap<>();
+    HashMap<String, Sensor> current = greenhouse.getSensorNode().getSensors();
+    Climate climate = greenhouse.getClimate();
+
+    for (Map.Entry<String, Sensor> entry : current.entrySet()) {
+      Sensor sensor = entry.getValue();
+      double reading = sensor.read(greenhouse, climate);
+      Integer index = indexes.get(entry.getKey());
+
+      if (index == null) {
+        index = nextIndex++;
+        indexes.put(entry.getKey(), index);
+        sensors.put(index, new Pair<>(entry.getKey(), sensor.getUnit()));
+      } else if (Math.abs(reading - lastSent.get(index)) <= deadBand(deadBands, sensor.getType())) {
+        continue;
+      }
+      readings.put(index, reading);
+      lastSent.put(index, reading);
+    }
+
+    ArrayList<Integer> removed = new ArrayList<>();
+    Iterator<Map.Entry<String, Integer>> known = indexes.entrySet().iterator();
+    while (known.hasNext()) {
+      Map.Entry<String, Integer> entry = known.next();
+      if (!current.containsKey(entry.getKey())) {
+        removed.add(entry.getValue());
+        lastSent.remove(entry.getValue());
+        known.remove();
+      }
+    }
+    return new SensorDataDelta(keyframe, sensors, readings, removed);
+  }
+
+  private static double deadBand(Map<String, Double> deadBands, String sensorType) {
+    if (deadBands == null) {
+      return 0;
+    }
+    Double deadBand = deadBands.get(sensorType);
+    if (deadBand == null) {
+      deadBand = deadBands.get("ALL");
+    }
+    return deadBand == null ? 0 : deadBand;
+  }
+}
@@ -0,0 +1,48 @@
+package protocol;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The state the server keeps for one client connection between requests.
+ */
+public final class Session {
+  private final Subscriptions subscriptions;
+  private final ConcurrentHashMap<Integer, SensorDeltaEncoder> sensorDeltas = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor for Session.
+   *
+   * @param subscriber where the messages pushed to the connection go
+   */
+  public Session(Subscriber subscriber) {
+    this.subscriptions = new Subscriptions(subscriber);
+  }
+
+  /**
+   * Gets the subscriptions of the connection.
+   *
+   * @return the subscriptions
+   */
+  public Subscriptions getSubscriptions() {
+    return this.subscriptions;
+  }
+
+  /**
+   * Gets the delta stream of the delta mode DATA_REQUESTs for a greenhouse.
+   *
+   * @param greenhouseId the ID of the greenhouse
+   * @return the delta encoder of the greenhouse
+   */
+  public SensorDeltaEncoder getSensorDeltas(int greenhouseId) {
+    return sensorDeltas.computeIfAbsent(greenhouseId, id -> new SensorDeltaEncoder());
+  }
+
+  /**
+   * Ends the subscriptions and forgets the delta streams, when the
+   * connection is closed.
+   */
+  public void close() {
+    subscriptions.close();
+    sensorDeltas.clear();
+  }
+}
@@ -0,0 +1,22 @@
+package protocol;
+
+import java.util.function.Supplier;
+
+/**
+ * Receives the messages pushed to one connection by its subscriptions.
+ */
+public interface Subscriber {
+
+  /**
+   * Queues a push for a subscription. The message is only created when it
+   * is sent, so it has the newest data, and a push that is queued while
+   * another push of the same subscription is still waiting can be left
+   * out. Must not block, since it is called by the thread that changed
+   * the greenhouse.
+   *
+   * @param subscriptionId the ID of the subscription
+   * @param message        creates the message, or returns null if there
+   *                       is nothing to send
+   */
+  void push(String subscriptionId, Supplier<Message> message);
+}
@@ -0,0 +1,165 @@
+package protocol;
+
+import greenhouse.Greenhouse;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import protocol.command.Command;
+import protocol.command.SensorDataDelta;
+
+/**
+ * The subscriptions of one connection.
+ *
+ * <p>A subscription listens for changes of one greenhouse and pushes its
+ * sensor or actuator data to the {@link Subscriber} of the connection. The
+ * pushed messages carry the messageID of the SUBSCRIBE request as their
+ * correlationID, which is also the ID of the subscription.</p>
+ *
+ * <p>A sensor subscription with dead-bands pushes SENSOR_DATA_DELTA
+ * messages, see {@link SensorDeltaEncoder}, and pushes nothing when no
+ * reading moved by more than its dead-band.</p>
+ */
+public final class Subscriptions {
+  /**
+   * The largest number of subscriptions one connection can have.
+   */
+  public static final int MAX_SUBSCRIPTIONS = 64;
+
+  private final Subscriber subscriber;
+  private final ConcurrentHashMap<String, Registration> registrations = new ConcurrentHashMap<>();
+  // The number of subscriptions, counted up before one is added so the limit holds for pipelined requests
+  private final AtomicInteger count = new AtomicInteger();
+
+  private record Registration(Greenhouse greenhouse, Consumer<Greenhouse> listener) {
+  }
+
+  /**
+   * Constructor for Subscriptions.
+   *
+   * @param subscriber where the pushed messages go
+   */
+  public Subscriptions(Subscriber subscriber) {
+    this.subscriber = subscriber;
+  }
+
+  /**
+   * Starts a subscription, and pushes the current data right away.
+   *
+   * @param subscriptionId the ID of the subscription
+   * @param greenhouse     the greenhouse to watch
+   * @param deviceType     "SENSOR" or "ACTUATOR"
+   * @throws IllegalArgumentException if the device type is unknown, the ID is
+   *                                  in use, or there are too many subscriptions
+   */
+  public void subscribe(String subscriptionId, Greenhouse greenhouse, String deviceType) {
+    subscribe(subscriptionId, greenhouse, deviceType, null);
+  }
+
+  /**
+   * Starts a subscription, in delta mode if dead-bands are given, and
+   * pushes the current data right away.
+   *
+   * @param subscriptionId the ID of the subscription
+   * @param greenhouse     the greenhouse to watch
+   * @param deviceType     "SENSOR" or "ACTUATOR"
+   * @param deadBands      the dead-bands keyed by sensor type, or null for full pushes
+   * @throws IllegalArgumentException if the device type is unknown, the ID is
+   *                                  in use, there are too many subscriptions, or
+   *                                  dead-bands are given for actuators
+   */
+  public void subscribe(String subscriptionId, Greenhouse greenhouse, String deviceType,
+                        Map<String, Double> deadBands) {
+    if (!"SENSOR".equals(deviceType) && !"ACTUATOR".equals(deviceType)) {
+      throw new IllegalArgumentException("Device type not found");
+    }
+    if (deadBands != null && !"SENSOR".equals(deviceType)) {
+      throw new IllegalArgumentException("Delta mode is only supported for sensors");
+    }
+    if (subscriptionId == null || registrations.containsKey(subscriptionId)) {
+      throw new IllegalArgumentException("A subscription needs a unique messageID");
+    }
+    int current;
+    do {
+      current = count.get();
+      if (current >= MAX_SUBSCRIPTIONS) {
+        throw new IllegalArgumentException("No more than " + MAX_SUBSCRIPTIONS + " subscriptions per connection");
+      }
+    } while (!count.compareAndSet(current, current + 1));
+
+    SensorDeltaEncoder deltas = deadBands == null ? null : new SensorDeltaEncoder();
+    // The push is created once an atomic batch that changed the greenhouse is
+    // done, so it never holds changes that were rolled back
+    Consumer<Greenhouse> listener = changed -> subscriber.push(subscriptionId,
+        () -> CommandHandler.betweenAtomicBatches(() -> {
+          // The push may be sent after the subscription was stopped
+          if (!registrations.containsKey(subscriptionId)) {
+            return null;
+          }
+          if (deltas == null) {
+            return createPush(subscriptionId, changed, deviceType);
+          }
+          SensorDataDelta delta = deltas.encode(changed, deadBands);
+          return delta.isEmpty() ? null : createPush(subscriptionId, "SENSOR_DATA_DELTA", delta);
+        }));
+    if (registrations.putIfAbsent(subscriptionId, new Registration(greenhouse, listener)) != null) {
+      count.decrementAndGet();
+      throw new IllegalArgumentException("A subscription needs a unique messageID");
+    }
+    greenhouse.addChangeListener(listener);
+    listener.accept(greenhouse);
+  }
+
+  /**
+   * Stops a subscription.
+   *
+   * @param subscriptionId the ID of the subscription
+   * @return true if the subscription existed
+   */
+  public boolean unsubscribe(String subscriptionId) {
+    Registration registration = registrations.remove(subscriptionId);
+    if (registration == null) {
+      return false;
+    }
+    count.decrementAndGet();
+    registration.greenhouse().removeChangeListener(registration.listener());
+    return true;
+  }
+
+  /**
+   * Gets the number of active subscriptions.
+   *
+   * @return the number of subscriptions
+   */
+  public int size() {
+    return registrations.size();
+  }
+
+  /**
+   * Stops all subscriptions, e.g. when the connection is closed.
+   */
+  public void close() {
+    for (String subscriptionId : registrations.keySet()) {
+      unsubscribe(subscriptionId);
+    }
+  }
+
+  private static Message createPush(String subscriptionId, Greenhouse greenhouse, String deviceType) {
+    if ("SENSOR".equals(deviceType)) {
+      return createPush(subscriptionId, "SENSOR_DATA", CommandHandler.readAllSensors(greenhouse));
+    }
+    return createPush(subscriptionId, "ACTUATOR_DATA", CommandHandler.readAllActuators(greenhouse));
+  }
+
+  private static Message createPush(String subscriptionId, String messageType, Command body) {
+    Message push = new Message();
+    push.setMessageID(String.valueOf(UUID.randomUUID()));
+    push.setCorrelationID(subscriptionId);
+    push.setTimestamp(System.currentTimeMillis());
+    push.setSource("Server");
+    push.setMessageType(messageType);
+    push.setBody(body);
+    return push;
+  }
+}
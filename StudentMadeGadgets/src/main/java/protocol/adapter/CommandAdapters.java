@@ -0,0 +1,1091 @@
+package protocol.adapter;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import greenhouse.Greenhouse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import protocol.JSONHandler;
+import protocol.Message;
+import javafx.util.Pair;
+import protocol.command.*;
+
+/**
+ * Hand-written Gson TypeAdapters for every Command body.
+ *
+ * <p>The adapters write the same JSON as Gson's reflection based adapters
+ * did: fields in declaration order, null fields left out, and pairs as
+ * {"key": ..., "value": ...} objects. When reading, fields may come in any
+ * order and unknown fields are skipped.</p>
+ */
+public final class CommandAdapters {
+  private static final Map<Class<? extends Command>, TypeAdapter<? extends Command>> BY_CLASS = new HashMap<>();
+  private static final Map<String, TypeAdapter<? extends Command>> BY_MESSAGE_TYPE = new HashMap<>();
+  private static final MessageAdapter NESTED_MESSAGE_ADAPTER = new MessageAdapter(true);
+
+  static {
+    register(ActuatorCommand.class, new ActuatorCommandAdapter(), "ACTUATOR_COMMAND");
+    register(ActuatorData.class, new ActuatorDataAdapter(), "ACTUATOR_DATA");
+    register(DataRequest.class, new DataRequestAdapter(), "DATA_REQUEST");
+    register(SensorData.class, new SensorDataAdapter(), "SENSOR_DATA");
+    register(GreenhouseListData.class, new GreenhouseListDataAdapter(), "GREENHOUSE_LIST_DATA");
+    register(CachedGreenhouseListData.class, new CachedGreenhouseListDataAdapter());
+    register(CreateGreenhouse.class, new CreateGreenhouseAdapter(), "CREATE_GREENHOUSE", "CREATE_GREENHOUSE_IF_ABSENT");
+    register(RemoveGreenhouse.class, new RemoveGreenhouseAdapter(), "REMOVE_GREENHOUSE");
+    register(Information.class, new InformationAdapter(), "INFORMATION", "ERROR");
+    register(AddActuator.class, new AddActuatorAdapter(), "ADD_ACTUATOR");
+    register(AddSensor.class, new AddSensorAdapter(), "ADD_SENSOR");
+    register(Batch.class, new BatchAdapter(), "BATCH");
+    register(BatchResult.class, new BatchResultAdapter(), "BATCH_RESULT");
+    register(Subscribe.class, new SubscribeAdapter(), "SUBSCRIBE");
+    register(Unsubscribe.class, new UnsubscribeAdapter(), "UNSUBSCRIBE");
+    register(GreenhouseListRequest.class, new GreenhouseListRequestAdapter(), "GET_ALL_GREENHOUSES");
+    register(SensorDataDelta.class, new SensorDataDeltaAdapter(), "SENSOR_DATA_DELTA");
+    register(GreenhouseQuery.class, new GreenhouseQueryAdapter(), "LIST_GREENHOUSES");
+    register(GreenhouseSummaryList.class, new GreenhouseSummaryListAdapter(), "GREENHOUSE_SUMMARIES");
+    register(GreenhouseLookup.class, new GreenhouseLookupAdapter(), "FIND_GREENHOUSE");
+    register(DeviceLookup.class, new DeviceLookupAdapter(), "FIND_DEVICE");
+    register(DeviceLocations.class, new DeviceLocationsAdapter(), "DEVICE_LOCATIONS");
+  }
+
+  private CommandAdapters() {
+  }
+
+  private static <T extends Command> void register(Class<T> type, TypeAdapter<T> adapter, String... messageTypes) {
+    BY_CLASS.put(type, adapter.nullSafe());
+    for (String messageType : messageTypes) {
+      BY_MESSAGE_TYPE.put(messageType, adapter.nullSafe());
+    }
+  }
+
+  /**
+   * Gets the adapter for a body class.
+   *
+   * @param type the class of the body
+   * @param <T>  the type of the body
+   * @return the adapter, or null if the class has none
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends Command> TypeAdapter<T> forClass(Class<T> type) {
+    return (TypeAdapter<T>) BY_CLASS.get(type);
+  }
+
+  /**
+   * Gets the adapter for the body of a message type.
+   *
+   * @param messageType the type of the message
+   * @return the adapter, or null if the message type has no known body
+   */
+  public static TypeAdapter<? extends Command> forMessageType(String messageType) {
+    return BY_MESSAGE_TYPE.get(messageType);
+  }
+
+  /**
+   * Gets all body classes with an adapter.
+   *
+   * @return the body classes
+   */
+  public static Iterable<Class<? extends Command>> getBodyClasses() {
+    return BY_CLASS.keySet();
+  }
+
+  /**
+   * Writes a body with the adapter of its runtime class.
+   *
+   * @param out  the writer
+   * @param body the body, not null
+   * @throws IOException              if writing fails
+   * @throws IllegalArgumentException if the body class has no adapter
+   */
+  @SuppressWarnings("unchecked")
+  public static void writeBody(JsonWriter out, Command body) throws IOException {
+    TypeAdapter<Command> adapter = (TypeAdapter<Command>) BY_CLASS.get(body.getClass());
+    if (adapter == null) {
+      throw new IllegalArgumentException("No JSON adapter for " + body.getClass().getSimpleName());
+    }
+    adapter.write(out, body);
+  }
+
+  /**
+   * Reads one value from a JsonReader.
+   */
+  @FunctionalInterface
+  interface ValueReader<T> {
+    T read(JsonReader in) throws IOException;
+  }
+
+  /**
+   * Reads the next value, or null for a JSON null.
+   */
+  static <T> T nextNullable(JsonReader in, ValueReader<T> reader) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return reader.read(in);
+  }
+
+  /**
+   * Reads the next value as a string, or null for a JSON null.
+   */
+  static String nextNullableString(JsonReader in) throws IOException {
+    return nextNullable(in, JsonReader::nextString);
+  }
+
+  /**
+   * Reads the next value as an int, where null gives the default of 0.
+   */
+  static int nextInt(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return 0;
+    }
+    return in.nextInt();
+  }
+
+  /**
+   * Reads the next value as a long, where null gives the default of 0.
+   */
+  static long nextLong(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return 0;
+    }
+    return in.nextLong();
+  }
+
+  /**
+   * Reads the next value as a double, where null gives the default of 0.
+   */
+  static double nextDouble(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return 0;
+    }
+    return in.nextDouble();
+  }
+
+  /**
+   * Reads the next value as a boolean, where null gives the default of false.
+   */
+  static boolean nextBoolean(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return false;
+    }
+    return in.nextBoolean();
+  }
+
+  private static final class ActuatorCommandAdapter extends TypeAdapter<ActuatorCommand> {
+    @Override
+    public void write(JsonWriter out, ActuatorCommand command) throws IOException {
+      out.beginObject();
+      out.name("greenhouseId").value(command.getGreenhouseId());
+      out.name("actuatorId").value(command.getActuatorId());
+      out.name("power").value(command.getPower());
+      out.name("turnOn").value(command.isTurnOn());
+      out.endObject();
+    }
+
+    @Override
+    public ActuatorCommand read(JsonReader in) throws IOException {
+      int greenhouseId = 0;
+      String actuatorId = null;
+      int power = -1;
+      boolean turnOn = false;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "greenhouseId" -> greenhouseId = nextInt(in);
+          case "actuatorId" -> actuatorId = nextNullableString(in);
+          case "power" -> power = nextInt(in);
+          case "turnOn" -> turnOn = nextBoolean(in);
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return power == -1
+          ? new ActuatorCommand(greenhouseId, actuatorId, turnOn)
+          : new ActuatorCommand(greenhouseId, actuatorId, power);
+    }
+  }
+
+  private static final class ActuatorDataAdapter extends TypeAdapter<ActuatorData> {
+    @Override
+    public void write(JsonWriter out, ActuatorData data) throws IOException {
+      out.beginObject();
+      if (data.getActuatorDataHashMap() != null) {
+        out.name("actuatorDataHashMap").beginObject();
+        for (Map.Entry<String, Pair<Boolean, Integer>> entry : data.getActuatorDataHashMap().entrySet()) {
+          out.name(entry.getKey());
+          Pair<Boolean, Integer> pair = entry.getValue();
+          if (pair == null) {
+            out.nullValue();
+            continue;
+          }
+          out.beginObject();
+          out.name("key").value(pair.getKey());
+          out.name("value").value(pair.getValue());
+          out.endObject();
+        }
+        out.endObject();
+      }
+      out.name("actuatorID").value(data.getActuatorID());
+      out.name("isOn").value(data.isOn());
+      out.name("power").value(data.getPower());
+      out.endObject();
+    }
+
+    @Override
+    public ActuatorData read(JsonReader in) throws IOException {
+      HashMap<String, Pair<Boolean, Integer>> actuators = null;
+      String actuatorID = null;
+      boolean isOn = false;
+      int power = 0;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "actuatorDataHashMap" -> {
+            if (in.peek() == JsonToken.NULL) {
+              in.nextNull();
+              break;
+            }
+            actuators = new HashMap<>();
+            in.beginObject();
+            while (in.hasNext()) {
+              String key = in.nextName();
+              if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                actuators.put(key, null);
+                continue;
+              }
+              Boolean on = null;
+              Integer level = null;
+              in.beginObject();
+              while (in.hasNext()) {
+                switch (in.nextName()) {
+                  case "key" -> on = nextNullable(in, JsonReader::nextBoolean);
+                  case "value" -> level = nextNullable(in, JsonReader::nextInt);
+                  default -> in.skipValue();
+                }
+              }
+              in.endObject();
+              actuators.put(key, new Pair<>(on, level));
+            }
+            in.endObject();
+          }
+          case "actuatorID" -> actuatorID = nextNullableString(in);
+          case "isOn" -> isOn = nextBoolean(in);
+          case "power" -> power = nextInt(in);
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return actuators != null ? new ActuatorData(actuators) : new ActuatorData(actuatorID, isOn, power);
+    }
+  }
+
+  private static final class SensorDataAdapter extends TypeAdapter<SensorData> {
+    @Override
+    public void write(JsonWriter out, SensorData data) throws IOException {
+      out.beginObject();
+      if (data.getSensorDataHashMap() != null) {
+        out.name("sensorDataHashMap").beginObject();
+        for (Map.Entry<String, Pair<Double, String>> entry : data.getSensorDataHashMap().entrySet()) {
+          out.name(entry.getKey());
+          Pair<Double, String> pair = entry.getValue();
+          if (pair == null) {
+            out.nullValue();
+            continue;
+          }
+          out.beginObject();
+          out.name("key").value(pair.getKey());
+          out.name("value").value(pair.getValue());
+          out.endObject();
+        }
+        out.endObject();
+      }
+      out.name("sensorID").value(data.getSensorID());
+      out.name("data").value(data.getData());
+      out.name("unit").value(data.getUnit());
+      out.endObject();
+    }
+
+    @Override
+    public SensorData read(JsonReader in) throws IOException {
+      HashMap<String, Pair<Double, String>> sensors = null;
+      String sensorID = null;
+      double value = 0;
+      String unit = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "sensorDataHashMap" -> {
+            if (in.peek() == JsonToken.NULL) {
+              in.nextNull();
+              break;
+            }
+            sensors = new HashMap<>();
+            in.beginObject();
+            while (in.hasNext()) {
+              String key = in.nextName();
+              if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                sensors.put(key, null);
+                continue;
+              }
+              Double reading = null;
+              String readingUnit = null;
+              in.beginObject();
+              while (in.hasNext()) {
+                switch (in.nextName()) {
+                  case "key" -> reading = nextNullable(in, JsonReader::nextDouble);
+                  case "value" -> readingUnit = nextNullableString(in);
+                  default -> in.skipValue();
+                }
+              }
+              in.endObject();
+              sensors.put(key, new Pair<>(reading, readingUnit));
+            }
+            in.endObject();
+          }
+          case "sensorID" -> sensorID = nextNullableString(in);
+          case "data" -> value = nextDouble(in);
+          case "unit" -> unit = nextNullableString(in);
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return sensors != null ? new SensorData(sensors) : new SensorData(sensorID, value, unit);
+    }
+  }
+
+  private static final class GreenhouseListDataAdapter extends TypeAdapter<GreenhouseListData> {
+    @Override
+    public void write(JsonWriter out, GreenhouseListData data) throws IOException {
+      out.beginObject();
+      if (data.getGreenhouses() != null) {
+        out.name("greenhouses").beginArray();
+        for (Greenhouse greenhouse : data.getGreenhouses()) {
+          if (greenhouse == null) {
+            out.nullValue();
+            continue;
+          }
+          out.beginObject();
+          out.name("greenhouseId").value(greenhouse.getGreenhouseId());
+          out.name("greenhouseName").value(greenhouse.getGreenhouseName());
+          out.name("temperature").value(greenhouse.getTemperature());
+          out.name("light").value(greenhouse.getLight());
+          out.name("humidity").value(greenhouse.getHumidity());
+          out.endObject();
+        }
+        out.endArray();
+      }
+      out.name("version").value(data.getVersion());
+      out.endObject();
+    }
+
+    @Override
+    public GreenhouseListData read(JsonReader in) throws IOException {
+      ArrayList<Greenhouse> greenhouses = null;
+      long version = 0;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "greenhouses" -> {
+            if (in.peek() == JsonToken.NULL) {
+              in.nextNull();
+              break;
+            }
+            greenhouses = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+              greenhouses.add(readGreenhouse(in));
+            }
+            in.endArray();
+          }
+          case "version" -> version = nextLong(in);
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return new GreenhouseListData(greenhouses, version);
+    }
+
+    private static Greenhouse readGreenhouse(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      int id = 0;
+      String name = null;
+      double temperature = 0;
+      int light = 0;
+      int humidity = 0;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "greenhouseId" -> id = nextInt(in);
+          case "greenhouseName" -> name = nextNullableString(in);
+          case "temperature" -> temperature = nextDouble(in);
+          case "light" -> light = nextInt(in);
+          case "humidity" -> humidity = nextInt(in);
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return new Greenhouse(id, name, temperature, humidity, light);
+    }
+  }
+
+  /**
+   * Writes the remembered JSON of a cached list. It is encoded with the
+   * shared Gson the first time, so it is the same as for an uncached list.
+   */
+  private static final class CachedGreenhouseListDataAdapter extends TypeAdapter<CachedGreenhouseListData> {
+    private final GreenhouseListDataAdapter listAdapter = new GreenhouseListDataAdapter();
+
+    @Override
+    public void write(JsonWriter out, CachedGreenhouseListData data) throws IOException {
+      out.jsonValue(data.getJson(() -> JSONHandler.getGson().toJson(data, GreenhouseListData.class)));
+    }
+
+    @Override
+    public CachedGreenhouseListData read(JsonReader in) throws IOException {
+      GreenhouseListData data = listAdapter.read(in);
+      return new CachedGreenhouseListData(data.getGreenhouses(), data.getVersion());
+    }
+  }
+
+  private static final class GreenhouseListRequestAdapter extends TypeAdapter<GreenhouseListRequest> {
+    @Override
+    public void write(JsonWriter out, GreenhouseListRequest request) throws IOException {
+      out.beginObject();
+      out.name("knownVersion").value(request.getKnownVersion());
+      out.endObject();
+    }
+
+    @Override
+    public GreenhouseListRequest read(JsonReader in) throws IOException {
+      long knownVersion = 0;
+      in.beginObject();
+      while (in.hasNext()) {
+        if (in.nextName().equals("knownVersion")) {
+          knownVersion = nextLong(in);
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      return new GreenhouseListRequest(knownVersion);
+    }
+  }
+
+  private static final class GreenhouseQueryAdapter extends TypeAdapter<GreenhouseQuery> {
+    @Override
+    public void write(JsonWriter out, GreenhouseQuery query) throws IOException {
+      out.beginObject();
+      if (query.getNamePrefix() != null) {
+        out.name("namePrefix").value(query.getNamePrefix());
+      }
+      out.name("offset").value(query.getOffset());
+      out.name("limit").value(query.getLimit());
+      if (query.getFields() != null) {
+        out.name("fields").beginArray();
+        for (String field : query.getFields()) {
+          out.value(field);
+        }
+        out.endArray();
+      }
+      out.endObject();
+    }
+
+    @Override
+    public GreenhouseQuery read(JsonReader in) throws IOException {
+      String namePrefix = null;
+      int offset = 0;
+      int limit = 0;
+      ArrayList<String> fields = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "namePrefix" -> namePrefix = nextNullableString(in);
+          case "offset" -> offset = nextInt(in);
+          case "limit" -> limit = nextInt(in);
+          case "fields" -> fields = nextNullable(in, reader -> {
+            ArrayList<String> names = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+              names.add(nextNullableString(reader));
+            }
+            reader.endArray();
+            return names;
+          });
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return new GreenhouseQuery(namePrefix, offset, limit, fields);
+    }
+  }
+
+  private static final class GreenhouseSummaryListAdapter extends TypeAdapter<GreenhouseSummaryList> {
+    @Override
+    public void write(JsonWriter out, GreenhouseSummaryList list) throws IOException {
+      out.beginObject();
+      out.name("greenhouses").beginArray();
+      for (GreenhouseSummary summary : list.getGreenhouses()) {
+        out.beginObject();
+        out.name("greenhouseId").value(summary.getGreenhouseId());
+        if (summary.getGreenhouseName() != null) {
+          out.name("greenhouseName").value(summary.getGreenhouseName());
+        }
+        if (summary.getSensorCount() != null) {
+          out.name("sensorCount").value(summary.getSensorCount());
+        }
+        if (summary.getActuatorCount() != null) {
+          out.name("actuatorCount").value(summary.getActuatorCount());
+        }
+        out.endObject();
+      }
+      out.endArray();
+      out.name("nextOffset").value(list.getNextOffset());
+      out.name("version").value(list.getVersion());
+      out.endObject();
+    }
+
+    @Override
+    public GreenhouseSummaryList read(JsonReader in) throws IOException {
+      ArrayList<GreenhouseSummary> summaries = new ArrayList<>();
+      int nextOffset = -1;
+      long version = 0;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "greenhouses" -> {
+            in.beginArray();
+            while (in.hasNext()) {
+              summaries.add(readSummary(in));
+            }
+            in.endArray();
+          }
+          case "nextOffset" -> nextOffset = nextInt(in);
+          case "version" -> version = nextLong(in);
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return new GreenhouseSummaryList(summaries, nextOffset, version);
+    }
+
+    private static GreenhouseSummary readSummary(JsonReader in) throws IOException {
+      int id = 0;
+      String name = null;
+      Integer sensorCount = null;
+      Integer actuatorCount = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "greenhouseId" -> id = nextInt(in);
+          case "greenhouseName" -> name = nextNullableString(in);
+          case "sensorCount" -> sensorCount = nextNullable(in, JsonReader::nextInt);
+          case "actuatorCount" -> actuatorCount = nextNullable(in, JsonReader::nextInt);
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return new GreenhouseSummary(id, name, sensorCount, actuatorCount);
+    }
+  }
+
+  private static final class DataRequestAdapter extends TypeAdapter<DataRequest> {
+    @Override
+    public void write(JsonWriter out, DataRequest request) throws IOException {
+      out.beginObject();
+      out.name("greenhouseID").value(request.getGreenhouseID());
+      out.name("deviceID").value(request.getDeviceID());
+      out.name("deviceType").value(request.getdeviceType());
+      if (request.getDeadBands() != null) {
+        out.name("deadBands");
+        writeDeadBands(out, request.getDeadBands());
+      }
+      out.endObject();
+    }
+
+    @Override
+    public DataRequest read(JsonReader in) throws IOException {
+      int greenhouseID = 0;
+      String deviceID = null;
+      String deviceType = null;
+      HashMap<String, Double> deadBands = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "greenhouseID" -> greenhouseID = nextInt(in);
+          case "deviceID" -> deviceID = nextNullableString(in);
+          case "deviceType" -> deviceType = nextNullableString(in);
+          case "deadBands" -> deadBands = nextNullable(in, CommandAdapters::readDeadBands);
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return new DataRequest(greenhouseID, deviceID, deviceType, deadBands);
+    }
+  }
+
+  private static final class GreenhouseLookupAdapter extends TypeAdapter<GreenhouseLookup> {
+    @Override
+    public void write(JsonWriter out, GreenhouseLookup lookup) throws IOException {
+      out.beginObject();
+      out.name("name").value(lookup.getName());
+      out.endObject();
+    }
+
+    @Override
+    public GreenhouseLookup read(JsonReader in) throws IOException {
+      String name = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        if (in.nextName().equals("name")) {
+          name = nextNullableString(in);
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      return new GreenhouseLookup(name);
+    }
+  }
+
+  private static final class DeviceLookupAdapter extends TypeAdapter<DeviceLookup> {
+    @Override
+    public void write(JsonWriter out, DeviceLookup lookup) throws IOException {
+      out.beginObject();
+      out.name("deviceType").value(lookup.getDeviceType());
+      out.name("deviceId").value(lookup.getDeviceId());
+      out.endObject();
+    }
+
+    @Override
+    public DeviceLookup read(JsonReader in) throws IOException {
+      String deviceType = null;
+      String deviceId = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "deviceType" -> deviceType = nextNullableString(in);
+          case "deviceId" -> deviceId = nextNullableString(in);
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return new DeviceLookup(deviceType, deviceId);
+    }
+  }
+
+  private static final class DeviceLocationsAdapter extends TypeAdapter<DeviceLocations> {
+    @Override
+    public void write(JsonWriter out, DeviceLocations locations) throws IOException {
+      out.beginObject();
+      out.name("deviceType").value(locations.getDeviceType());
+      out.name("deviceId").value(locations.getDeviceId());
+      out.name("greenhouseIds").beginArray();
+      for (int greenhouseId : locations.getGreenhouseIds()) {
+        out.value(greenhouseId);
+      }
+      out.endArray();
+      out.endObject();
+    }
+
+    @Override
+    public DeviceLocations read(JsonReader in) throws IOException {
+      String deviceType = null;
+      String deviceId = null;
+      ArrayList<Integer> greenhouseIds = new ArrayList<>();
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "deviceType" -> deviceType = nextNullableString(in);
+          case "deviceId" -> deviceId = nextNullableString(in);
+          case "greenhouseIds" -> {
+            in.beginArray();
+            while (in.hasNext()) {
+              greenhouseIds.add(nextInt(in));
+            }
+            in.endArray();
+          }
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return new DeviceLocations(deviceType, deviceId, greenhouseIds);
+    }
+  }
+
+  private static final class CreateGreenhouseAdapter extends TypeAdapter<CreateGreenhouse> {
+    @Override
+    public void write(JsonWriter out, CreateGreenhouse create) throws IOException {
+      out.beginObject();
+      out.name("name").value(create.getName());
+      out.endObject();
+    }
+
+    @Override
+    public CreateGreenhouse read(JsonReader in) throws IOException {
+      String name = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        if (in.nextName().equals("name")) {
+          name = nextNullableString(in);
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      return new CreateGreenhouse(name);
+    }
+  }
+
+  private static final class RemoveGreenhouseAdapter extends TypeAdapter<RemoveGreenhouse> {
+    @Override
+    public void write(JsonWriter out, RemoveGreenhouse remove) throws IOException {
+      out.beginObject();
+      out.name("id").value(remove.getId());
+      out.endObject();
+    }
+
+    @Override
+    public RemoveGreenhouse read(JsonReader in) throws IOException {
+      int id = 0;
+      in.beginObject();
+      while (in.hasNext()) {
+        if (in.nextName().equals("id")) {
+          id = nextInt(in);
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      return new RemoveGreenhouse(id);
+    }
+  }
+
+  private static final class InformationAdapter extends TypeAdapter<Information> {
+    @Override
+    public void write(JsonWriter out, Information information) throws IOException {
+      out.beginObject();
+      out.name("information").value(information.getInformation());
+      out.endObject();
+    }
+
+    @Override
+    public Information read(JsonReader in) throws IOException {
+      String information = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        if (in.nextName().equals("information")) {
+          information = nextNullableString(in);
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      return new Information(information);
+    }
+  }
+
+  private static final class AddActuatorAdapter extends TypeAdapter<AddActuator> {
+    @Override
+    public void write(JsonWriter out, AddActuator add) throws IOException {
+      out.beginObject();
+      out.name("greenhouseId").value(add.getGreenhouseId());
+      out.name("actuatorType").value(add.getActuatorType());
+      out.endObject();
+    }
+
+    @Override
+    public AddActuator read(JsonReader in) throws IOException {
+      int greenhouseId = 0;
+      String actuatorType = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "greenhouseId" -> greenhouseId = nextInt(in);
+          case "actuatorType" -> actuatorType = nextNullableString(in);
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return new AddActuator(greenhouseId, actuatorType);
+    }
+  }
+
+  private static final class AddSensorAdapter extends TypeAdapter<AddSensor> {
+    @Override
+    public void write(JsonWriter out, AddSensor add) throws IOException {
+      out.beginObject();
+      out.name("greenhouseId").value(add.getGreenhouseId());
+      out.name("sensorType").value(add.getSensorType());
+      out.endObject();
+    }
+
+    @Override
+    public AddSensor read(JsonReader in) throws IOException {
+      int greenhouseId = 0;
+      String sensorType = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "greenhouseId" -> greenhouseId = nextInt(in);
+          case "sensorType" -> sensorType = nextNullableString(in);
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return new AddSensor(greenhouseId, sensorType);
+    }
+  }
+
+  /**
+   * Writes a list of messages, each with the Message adapter.
+   */
+  private static void writeMessages(JsonWriter out, ArrayList<Message> messages) throws IOException {
+    out.beginArray();
+    for (Message message : messages) {
+      NESTED_MESSAGE_ADAPTER.write(out, message);
+    }
+    out.endArray();
+  }
+
+  /**
+   * Reads a list of messages, each with the Message adapter.
+   */
+  private static ArrayList<Message> readMessages(JsonReader in) throws IOException {
+    ArrayList<Message> messages = new ArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      messages.add(NESTED_MESSAGE_ADAPTER.read(in));
+    }
+    in.endArray();
+    return messages;
+  }
+
+  private static void writeDeadBands(JsonWriter out, Map<String, Double> deadBands) throws IOException {
+    out.beginObject();
+    for (Map.Entry<String, Double> entry : deadBands.entrySet()) {
+      out.name(entry.getKey()).value(entry.getValue());
+    }
+    out.endObject();
+  }
+
+  private static HashMap<String, Double> readDeadBands(JsonReader in) throws IOException {
+    HashMap<String, Double> deadBands = new HashMap<>();
+    in.beginObject();
+    while (in.hasNext()) {
+      deadBands.put(in.nextName(), nextDouble(in));
+    }
+    in.endObject();
+    return deadBands;
+  }
+
+  private static final class SensorDataDeltaAdapter extends TypeAdapter<SensorDataDelta> {
+    @Override
+    public void write(JsonWriter out, SensorDataDelta delta) throws IOException {
+      out.beginObject();
+      out.name("keyframe").value(delta.isKeyframe());
+      out.name("sensors").beginObject();
+      for (Map.Entry<Integer, Pair<String, String>> entry : delta.getSensors().entrySet()) {
+        out.name(String.valueOf(entry.getKey())).beginObject();
+        out.name("key").value(entry.getValue().getKey());
+        out.name("value").value(entry.getValue().getValue());
+        out.endObject();
+      }
+      out.endObject();
+      out.name("readings").beginObject();
+      for (Map.Entry<Integer, Double> entry : delta.getReadings().entrySet()) {
+        out.name(String.valueOf(entry.getKey())).value(entry.getValue());
+      }
+      out.endObject();
+      out.name("removed").beginArray();
+      for (Integer index : delta.getRemoved()) {
+        out.value(index);
+      }
+      out.endArray();
+      out.endObject();
+    }
+
+    @Override
+    public SensorDataDelta read(JsonReader in) throws IOException {
+      boolean keyframe = false;
+      HashMap<Integer, Pair<String, String>> sensors = new HashMap<>();
+      HashMap<Integer, Double> readings = new HashMap<>();
+      ArrayList<Integer> removed = new ArrayList<>();
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "keyframe" -> keyframe = nextBoolean(in);
+          case "sensors" -> {
+            in.beginObject();
+            while (in.hasNext()) {
+              int index = Integer.parseInt(in.nextName());
+              String sensorId = null;
+              String unit = null;
+              in.beginObject();
+              while (in.hasNext()) {
+                switch (in.nextName()) {
+                  case "key" -> sensorId = nextNullableString(in);
+                  case "value" -> unit = nextNullableString(in);
+                  default -> in.skipValue();
+                }
+              }
+              in.endObject();
+              sensors.put(index, new Pair<>(sensorId, unit));
+            }
+            in.endObject();
+          }
+          case "readings" -> {
+            in.beginObject();
+            while (in.hasNext()) {
+              readings.put(Integer.parseInt(in.nextName()), nextDouble(in));
+            }
+            in.endObject();
+          }
+          case "removed" -> {
+            in.beginArray();
+            while (in.hasNext()) {
+              removed.add(nextInt(in));
+            }
+            in.endArray();
+          }
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return new SensorDataDelta(keyframe, sensors, readings, removed);
+    }
+  }
+
+  private static final class SubscribeAdapter extends TypeAdapter<Subscribe> {
+    @Override
+    public void write(JsonWriter out, Subscribe subscribe) throws IOException {
+      out.beginObject();
+      out.name("greenhouseId").value(subscribe.getGreenhouseId());
+      out.name("deviceType").value(subscribe.getDeviceType());
+      if (subscribe.getDeadBands() != null) {
+        out.name("deadBands");
+        writeDeadBands(out, subscribe.getDeadBands());
+      }
+      out.endObject();
+    }
+
+    @Override
+    public Subscribe read(JsonReader in) throws IOException {
+      int greenhouseId = 0;
+      String deviceType = null;
+      HashMap<String, Double> deadBands = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "greenhouseId" -> greenhouseId = nextInt(in);
+          case "deviceType" -> deviceType = nextNullableString(in);
+          case "deadBands" -> deadBands = nextNullable(in, CommandAdapters::readDeadBands);
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return new Subscribe(greenhouseId, deviceType, deadBands);
+    }
+  }
+
+  private static final class UnsubscribeAdapter extends TypeAdapter<Unsubscribe> {
+    @Override
+    public void write(JsonWriter out, Unsubscribe unsubscribe) throws IOException {
+      out.beginObject();
+      out.name("subscriptionId").value(unsubscribe.getSubscriptionId());
+      out.endObject();
+    }
+
+    @Override
+    public Unsubscribe read(JsonReader in) throws IOException {
+      String subscriptionId = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        if (in.nextName().equals("subscriptionId")) {
+          subscriptionId = nextNullableString(in);
+        } else {
+          in.skipValue();
+        }
+      }
+      in.endObject();
+      return new Unsubscribe(subscriptionId);
+    }
+  }
+
+  private static final class BatchAdapter extends TypeAdapter<Batch> {
+    @Override
+    public void write(JsonWriter out, Batch batch) throws IOException {
+      out.beginObject();
+      if (batch.getCommands() != null) {
+        out.name("commands");
+        writeMessages(out, batch.getCommands());
+      }
+      out.name("atomic").value(batch.isAtomic());
+      out.endObject();
+    }
+
+    @Override
+    public Batch read(JsonReader in) throws IOException {
+      ArrayList<Message> commands = new ArrayList<>();
+      boolean atomic = false;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "commands" -> {
+            ArrayList<Message> read = nextNullable(in, CommandAdapters::readMessages);
+            commands = read == null ? commands : read;
+          }
+          case "atomic" -> atomic = nextBoolean(in);
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return new Batch(commands, atomic);
+    }
+  }
+
+  private static final class BatchResultAdapter extends TypeAdapter<BatchResult> {
+    @Override
+    public void write(JsonWriter out, BatchResult result) throws IOException {
+      out.beginObject();
+      if (result.getResults() != null) {
+        out.name("results");
+        writeMessages(out, result.getResults());
+      }
+      out.name("rolledBack").value(result.isRolledBack());
+      out.endObject();
+    }
+
+    @Override
+    public BatchResult read(JsonReader in) throws IOException {
+      ArrayList<Message> results = new ArrayList<>();
+      boolean rolledBack = false;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "results" -> {
+            ArrayList<Message> read = nextNullable(in, CommandAdapters::readMessages);
+            results = read == null ? results : read;
+          }
+          case "rolledBack" -> rolledBack = nextBoolean(in);
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return new BatchResult(results, rolledBack);
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package protocol.adapter;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import protocol.Message;
+import protocol.command.Command;
+
+/**
+ * Hand-written Gson TypeAdapter for Message.
+ *
+ * <p>The body is written with the adapter of its runtime class, and read
+ * with the adapter of the message type, see {@link CommandAdapters}. A body
+ * that comes before the messageType is kept as a JsonElement until the type
+ * is known, and bodies of unknown message types are skipped.</p>
+ *
+ * <p>The messages of a batch are read with a nested adapter, which rejects
+ * batches, so a crafted message can not nest them deep enough to overflow
+ * the stack.</p>
+ */
+public final class MessageAdapter extends TypeAdapter<Message> {
+  private final boolean nested;
+
+  /**
+   * Constructor for a MessageAdapter of messages that are not in a batch.
+   */
+  public MessageAdapter() {
+    this(false);
+  }
+
+  /**
+   * Constructor for MessageAdapter.
+   *
+   * @param nested true to read the messages of a batch, rejecting batches
+   */
+  public MessageAdapter(boolean nested) {
+    this.nested = nested;
+  }
+
+  @Override
+  public void write(JsonWriter out, Message message) throws IOException {
+    if (message == null) {
+      out.nullValue();
+      return;
+    }
+    out.beginObject();
+    out.name("source").value(message.getSource());
+    out.name("destination").value(message.getDestination());
+    out.name("messageType").value(message.getMessageType());
+    out.name("messageID").value(message.getMessageID());
+    out.name("correlationID").value(message.getCorrelationID());
+    out.name("timestamp").value(message.getTimestamp());
+    if (message.getBody() != null) {
+      out.name("body");
+      CommandAdapters.writeBody(out, message.getBody());
+    }
+    out.endObject();
+  }
+
+  /**
+   * Reads a Message.
+   *
+   * @param in the reader
+   * @return the message, or null for a JSON null
+   * @throws IOException              if the JSON is malformed
+   * @throws IllegalArgumentException if the messageType is missing, or is a
+   *                                  batch in a batch
+   */
+  @Override
+  public Message read(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+
+    Message message = new Message();
+    JsonElement bufferedBody = null;
+
+    in.beginObject();
+    while (in.hasNext()) {
+      String field = in.nextName();
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        continue;
+      }
+      switch (field) {
+        case "messageType" -> message.setMessageType(in.nextString());
+        case "source" -> message.setSource(in.nextString());
+        case "destination" -> message.setDestination(in.nextString());
+        case "messageID" -> message.setMessageID(in.nextString());
+        case "correlationID" -> message.setCorrelationID(in.nextString());
+        case "timestamp" -> message.setTimestamp(in.nextLong());
+        case "body" -> {
+          if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+          } else if (message.getMessageType() == null) {
+            bufferedBody = JsonParser.parseReader(in);
+          } else {
+            message.setBody(readBody(in, message.getMessageType()));
+            bufferedBody = null;
+          }
+        }
+        default -> in.skipValue();
+      }
+    }
+    in.endObject();
+
+    if (message.getMessageType() == null) {
+      throw new IllegalArgumentException("Missing required field: messageType");
+    }
+
+    // The body came before the messageType
+    if (bufferedBody != null) {
+      TypeAdapter<? extends Command> adapter = forMessageType(message.getMessageType());
+      message.setBody(adapter == null ? null : adapter.fromJsonTree(bufferedBody));
+    }
+    return message;
+  }
+
+  private Command readBody(JsonReader in, String messageType) throws IOException {
+    TypeAdapter<? extends Command> adapter = forMessageType(messageType);
+    if (adapter == null) {
+      in.skipValue();
+      return null;
+    }
+    return adapter.read(in);
+  }
+
+  private TypeAdapter<? extends Command> forMessageType(String messageType) {
+    if (nested && ("BATCH".equals(messageType) || "BATCH_RESULT".equals(messageType))) {
+      throw new IllegalArgumentException("Batches can not be nested");
+    }
+    return CommandAdapters.forMessageType(messageType);
+  }
+}
@@ -0,0 +1,69 @@
+package protocol.command;
+
+import java.util.ArrayList;
+import protocol.Message;
+
+/**
+ * Command representing an ordered list of requests executed in one round trip.
+ *
+ * <p>Each item is a Message with its own messageType and body. Inside a
+ * batch, greenhouse ID 0 refers to the greenhouse created by the last
+ * CREATE_GREENHOUSE earlier in the same batch.</p>
+ */
+public class Batch implements Command {
+  private ArrayList<Message> commands;
+  private boolean atomic;
+
+  /**
+   * Constructor for Batch.
+   *
+   * @param commands the requests to execute, in order
+   * @param atomic   true if either all requests must succeed, or none of them take effect
+   */
+  public Batch(ArrayList<Message> commands, boolean atomic) {
+    this.commands = commands;
+    this.atomic = atomic;
+  }
+
+  /**
+   * Constructor for an empty Batch.
+   *
+   * @param atomic true if either all requests must succeed, or none of them take effect
+   */
+  public Batch(boolean atomic) {
+    this(new ArrayList<>(), atomic);
+  }
+
+  /**
+   * Adds a request to the end of the batch.
+   *
+   * @param messageType the type of the request
+   * @param body        the body of the request, may be null
+   * @return this batch
+   */
+  public Batch add(String messageType, Command body) {
+    Message command = new Message();
+    command.setMessageType(messageType);
+    command.setBody(body);
+    this.commands.add(command);
+    return this;
+  }
+
+  /**
+   * Gets the requests of the batch.
+   *
+   * @return the requests, in order
+   */
+  public ArrayList<Message> getCommands() {
+    return this.commands;
+  }
+
+  /**
+   * Checks if the batch is all-or-nothing.
+   *
+   * @return true if the batch is atomic
+   */
+  public boolean isAtomic() {
+    return this.atomic;
+  }
+}
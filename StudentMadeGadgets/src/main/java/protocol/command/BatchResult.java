@@ -0,0 +1,46 @@
+package protocol.command;
+
+import java.util.ArrayList;
+import protocol.Message;
+
+/**
+ * Command representing the results of a {@link Batch}.
+ *
+ * <p>There is one reply per executed request, in the same order as the
+ * requests. A failed request has an ERROR reply. When an atomic batch
+ * fails, the requests after the failure are not executed and the ones
+ * before it are rolled back.</p>
+ */
+public class BatchResult implements Command {
+  private ArrayList<Message> results;
+  private boolean rolledBack;
+
+  /**
+   * Constructor for BatchResult.
+   *
+   * @param results    the replies to the executed requests, in order
+   * @param rolledBack true if an atomic batch failed and was rolled back
+   */
+  public BatchResult(ArrayList<Message> results, boolean rolledBack) {
+    this.results = results;
+    this.rolledBack = rolledBack;
+  }
+
+  /**
+   * Gets the replies to the executed requests.
+   *
+   * @return the replies, in the order of the requests
+   */
+  public ArrayList<Message> getResults() {
+    return this.results;
+  }
+
+  /**
+   * Checks if the batch was rolled back.
+   *
+   * @return true if an atomic batch failed and none of its requests took effect
+   */
+  public boolean isRolledBack() {
+    return this.rolledBack;
+  }
+}
@@ -0,0 +1,67 @@
+package protocol.command;
+
+import greenhouse.Greenhouse;
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+/**
+ * A greenhouse list that is sent to many clients, and remembers how it was
+ * encoded so the codecs only encode it once.
+ *
+ * <p>The remembered encodings are not updated when the greenhouses in the
+ * list change, so the list should only be reused for a short time.</p>
+ */
+public class CachedGreenhouseListData extends GreenhouseListData {
+  private final long createdAt = System.currentTimeMillis();
+  private volatile String json;
+  private volatile byte[] binary;
+
+  /**
+   * Constructor for CachedGreenhouseListData.
+   *
+   * @param greenhouses the list of greenhouses
+   * @param version     the version of the registry the list was taken from
+   */
+  public CachedGreenhouseListData(ArrayList<Greenhouse> greenhouses, long version) {
+    super(greenhouses, version);
+  }
+
+  /**
+   * Gets when the list was taken from the registry.
+   *
+   * @return the creation time in milliseconds
+   */
+  public long getCreatedAt() {
+    return this.createdAt;
+  }
+
+  /**
+   * Gets the JSON encoding of the list, encoding it the first time.
+   *
+   * @param encoder encodes the list as JSON
+   * @return the JSON encoding
+   */
+  public String getJson(Supplier<String> encoder) {
+    String encoded = this.json;
+    if (encoded == null) {
+      encoded = encoder.get();
+      this.json = encoded;
+    }
+    return encoded;
+  }
+
+  /**
+   * Gets the binary encoding of the list, encoding it the first time.
+   *
+   * @param encoder encodes the list in the binary format
+   * @return the binary encoding
+   */
+  public byte[] getBinary(Supplier<byte[]> encoder) {
+    byte[] encoded = this.binary;
+    if (encoded == null) {
+      encoded = encoder.get();
+      this.binary = encoded;
+    }
+    return encoded;
+  }
+}
@@ -1,5 +1,7 @@
 package protocol.command;
 
+import java.util.HashMap;
+
 /**
  * Command representing a data request for a specific device in a greenhouse.
  */
@@ -7,6 +9,7 @@ public class DataRequest implements Command {
   private int greenhouseID;
   private String deviceID;
   private String deviceType;
+  private HashMap<String, Double> deadBands;
 
   /**
    * Constructor for DataRequest.
@@ -21,6 +24,31 @@ public class DataRequest implements Command {
     this.deviceType = deviceType;
   }
 
+  /**
+   * Constructor for a request for all sensors of a greenhouse in delta mode,
+   * see {@link SensorDataDelta}.
+   *
+   * @param greenhouseID the ID of the greenhouse
+   * @param deadBands    how much a reading must change to be sent again,
+   *                     keyed by sensor type, with "ALL" for other types
+   */
+  public DataRequest(int greenhouseID, HashMap<String, Double> deadBands) {
+    this(greenhouseID, "ALL", "SENSOR", deadBands);
+  }
+
+  /**
+   * Constructor for DataRequest with all fields.
+   *
+   * @param greenhouseID the ID of the greenhouse
+   * @param deviceID     the ID of the device
+   * @param deviceType   the type of the device
+   * @param deadBands    the dead-bands of a delta mode request, or null
+   */
+  public DataRequest(int greenhouseID, String deviceID, String deviceType, HashMap<String, Double> deadBands) {
+    this(greenhouseID, deviceID, deviceType);
+    this.deadBands = deadBands;
+  }
+
   /**
    * Gets the greenhouse ID.
    *
@@ -47,4 +75,13 @@ public class DataRequest implements Command {
   public String getDeviceID() {
     return this.deviceID;
   }
+
+  /**
+   * Gets the dead-bands of a delta mode request.
+   *
+   * @return the dead-bands keyed by sensor type, or null for a full reply
+   */
+  public HashMap<String, Double> getDeadBands() {
+    return this.deadBands;
+  }
 }
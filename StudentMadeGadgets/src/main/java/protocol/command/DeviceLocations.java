@@ -0,0 +1,54 @@
+package protocol.command;
+
+import java.util.ArrayList;
+
+/**
+ * Command representing the greenhouses holding a device, the reply to a
+ * {@link DeviceLookup}. Device IDs are only unique within a greenhouse, so
+ * there may be several.
+ */
+public class DeviceLocations implements Command {
+  private String deviceType;
+  private String deviceId;
+  private ArrayList<Integer> greenhouseIds;
+
+  /**
+   * Constructor for DeviceLocations.
+   *
+   * @param deviceType    "SENSOR" or "ACTUATOR"
+   * @param deviceId      the ID of the device
+   * @param greenhouseIds the IDs of the greenhouses holding the device, in increasing order
+   */
+  public DeviceLocations(String deviceType, String deviceId, ArrayList<Integer> greenhouseIds) {
+    this.deviceType = deviceType;
+    this.deviceId = deviceId;
+    this.greenhouseIds = greenhouseIds;
+  }
+
+  /**
+   * Gets the type of the device.
+   *
+   * @return "SENSOR" or "ACTUATOR"
+   */
+  public String getDeviceType() {
+    return this.deviceType;
+  }
+
+  /**
+   * Gets the ID of the device.
+   *
+   * @return the device ID
+   */
+  public String getDeviceId() {
+    return this.deviceId;
+  }
+
+  /**
+   * Gets the IDs of the greenhouses holding the device.
+   *
+   * @return the greenhouse IDs in increasing order, empty if none holds it
+   */
+  public ArrayList<Integer> getGreenhouseIds() {
+    return this.greenhouseIds;
+  }
+}
@@ -0,0 +1,39 @@
+package protocol.command;
+
+/**
+ * Command to find the greenhouses holding a device, without knowing the
+ * greenhouse ID. The reply is a {@link DeviceLocations}.
+ */
+public class DeviceLookup implements Command {
+  private String deviceType;
+  private String deviceId;
+
+  /**
+   * Constructor for DeviceLookup.
+   *
+   * @param deviceType "SENSOR" or "ACTUATOR"
+   * @param deviceId   the ID of the device, e.g. "Temperature-3"
+   */
+  public DeviceLookup(String deviceType, String deviceId) {
+    this.deviceType = deviceType;
+    this.deviceId = deviceId;
+  }
+
+  /**
+   * Gets the type of the device.
+   *
+   * @return "SENSOR" or "ACTUATOR"
+   */
+  public String getDeviceType() {
+    return this.deviceType;
+  }
+
+  /**
+   * Gets the ID of the device.
+   *
+   * @return the device ID
+   */
+  public String getDeviceId() {
+    return this.deviceId;
+  }
+}
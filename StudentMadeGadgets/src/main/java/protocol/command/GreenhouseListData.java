@@ -8,6 +8,7 @@ import java.util.ArrayList;
  */
 public class GreenhouseListData implements Command {
   ArrayList<Greenhouse> greenhouses;
+  private long version;
 
   /**
    * Constructor for GreenhouseListData.
@@ -18,6 +19,17 @@ public class GreenhouseListData implements Command {
     this.greenhouses = greenhouses;
   }
 
+  /**
+   * Constructor for GreenhouseListData with the registry version.
+   *
+   * @param greenhouses the list of greenhouses
+   * @param version     the version of the registry the list was taken from
+   */
+  public GreenhouseListData(ArrayList<Greenhouse> greenhouses, long version) {
+    this.greenhouses = greenhouses;
+    this.version = version;
+  }
+
   /**
    * Gets the list of greenhouses.
    *
@@ -26,4 +38,14 @@ public class GreenhouseListData implements Command {
   public ArrayList<Greenhouse> getGreenhouses() {
     return greenhouses;
   }
+
+  /**
+   * Gets the version of the registry the list was taken from. The list
+   * may be newer than the version, but never older.
+   *
+   * @return the registry version, or 0 if unknown
+   */
+  public long getVersion() {
+    return version;
+  }
 }
@@ -0,0 +1,31 @@
+package protocol.command;
+
+/**
+ * Command representing a request for the list of all greenhouses, for a
+ * client that already has a copy of the list.
+ *
+ * <p>The server replies with NOT_MODIFIED when the registry still has the
+ * version the client knows, and with GREENHOUSE_LIST_DATA otherwise. A
+ * GET_ALL_GREENHOUSES request without a body always gets the list.</p>
+ */
+public class GreenhouseListRequest implements Command {
+  private long knownVersion;
+
+  /**
+   * Constructor for GreenhouseListRequest.
+   *
+   * @param knownVersion the version of the list the client has
+   */
+  public GreenhouseListRequest(long knownVersion) {
+    this.knownVersion = knownVersion;
+  }
+
+  /**
+   * Gets the version of the list the client has.
+   *
+   * @return the known version
+   */
+  public long getKnownVersion() {
+    return this.knownVersion;
+  }
+}
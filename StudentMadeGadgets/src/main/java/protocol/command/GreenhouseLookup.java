@@ -0,0 +1,27 @@
+package protocol.command;
+
+/**
+ * Command to find the greenhouses with a name, through the name index of
+ * the server. The reply is a {@link GreenhouseSummaryList} with the names.
+ */
+public class GreenhouseLookup implements Command {
+  private String name;
+
+  /**
+   * Constructor for GreenhouseLookup.
+   *
+   * @param name the name of the greenhouses to find
+   */
+  public GreenhouseLookup(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Gets the name of the greenhouses to find.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return this.name;
+  }
+}
@@ -0,0 +1,94 @@
+package protocol.command;
+
+import java.util.ArrayList;
+
+/**
+ * Command representing a request for one page of greenhouse summaries.
+ *
+ * <p>Unlike GET_ALL_GREENHOUSES, the reply only holds the fields asked
+ * for and at most {@link #MAX_LIMIT} greenhouses, so it stays small with
+ * any number of greenhouses. The next page is asked for with the
+ * nextOffset of the {@link GreenhouseSummaryList}.</p>
+ *
+ * <p>The server looks at no more than {@link #MAX_SCANNED} greenhouses
+ * per page. With a name prefix that few greenhouses have, a page can
+ * therefore hold fewer greenhouses than the limit, or none at all, while
+ * more are left. Only a nextOffset of -1 means the listing is done.</p>
+ */
+public class GreenhouseQuery implements Command {
+  /**
+   * The number of greenhouses in a page when no limit is given.
+   */
+  public static final int DEFAULT_LIMIT = 100;
+  /**
+   * The largest number of greenhouses in a page. Larger limits are lowered to this.
+   */
+  public static final int MAX_LIMIT = 1000;
+  /**
+   * The largest number of greenhouses the server looks at for one page.
+   */
+  public static final int MAX_SCANNED = 10_000;
+
+  private String namePrefix;
+  private int offset;
+  private int limit;
+  private ArrayList<String> fields;
+
+  /**
+   * Constructor for a query of the first page of all greenhouses, with
+   * their IDs and names.
+   */
+  public GreenhouseQuery() {
+  }
+
+  /**
+   * Constructor for GreenhouseQuery.
+   *
+   * @param namePrefix only list greenhouses whose name starts with this, or null for all
+   * @param offset     where to start, 0 or the nextOffset of the previous page
+   * @param limit      the largest number of greenhouses to list, or 0 for {@link #DEFAULT_LIMIT}
+   * @param fields     the fields of {@link GreenhouseSummary} to fill in, or null for the name only
+   */
+  public GreenhouseQuery(String namePrefix, int offset, int limit, ArrayList<String> fields) {
+    this.namePrefix = namePrefix;
+    this.offset = offset;
+    this.limit = limit;
+    this.fields = fields;
+  }
+
+  /**
+   * Gets the prefix the greenhouse names must start with.
+   *
+   * @return the name prefix, or null for all greenhouses
+   */
+  public String getNamePrefix() {
+    return this.namePrefix;
+  }
+
+  /**
+   * Gets where to start listing.
+   *
+   * @return the offset
+   */
+  public int getOffset() {
+    return this.offset;
+  }
+
+  /**
+   * Gets the largest number of greenhouses to list.
+   *
+   * @return the limit, or 0 for the default
+   */
+  public int getLimit() {
+    return this.limit;
+  }
+
+  /**
+   * Gets the fields to fill in.
+   *
+   * @return the field names, or null for the name only
+   */
+  public ArrayList<String> getFields() {
+    return this.fields;
+  }
+}
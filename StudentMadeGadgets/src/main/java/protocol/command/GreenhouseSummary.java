@@ -0,0 +1,78 @@
+package protocol.command;
+
+/**
+ * Summary of one greenhouse in a {@link GreenhouseSummaryList}.
+ *
+ * <p>The ID is always set. The other fields are only set when they were
+ * asked for in the {@link GreenhouseQuery}, and are null otherwise.</p>
+ */
+public class GreenhouseSummary {
+  /**
+   * Field name for the name of the greenhouse.
+   */
+  public static final String NAME = "name";
+  /**
+   * Field name for the number of sensors in the greenhouse.
+   */
+  public static final String SENSOR_COUNT = "sensorCount";
+  /**
+   * Field name for the number of actuators in the greenhouse.
+   */
+  public static final String ACTUATOR_COUNT = "actuatorCount";
+
+  private int greenhouseId;
+  private String greenhouseName;
+  private Integer sensorCount;
+  private Integer actuatorCount;
+
+  /**
+   * Constructor for GreenhouseSummary.
+   *
+   * @param greenhouseId   the ID of the greenhouse
+   * @param greenhouseName the name of the greenhouse, or null
+   * @param sensorCount    the number of sensors, or null
+   * @param actuatorCount  the number of actuators, or null
+   */
+  public GreenhouseSummary(int greenhouseId, String greenhouseName, Integer sensorCount, Integer actuatorCount) {
+    this.greenhouseId = greenhouseId;
+    this.greenhouseName = greenhouseName;
+    this.sensorCount = sensorCount;
+    this.actuatorCount = actuatorCount;
+  }
+
+  /**
+   * Gets the ID of the greenhouse.
+   *
+   * @return the greenhouse ID
+   */
+  public int getGreenhouseId() {
+    return this.greenhouseId;
+  }
+
+  /**
+   * Gets the name of the greenhouse.
+   *
+   * @return the name, or null if it was not asked for
+   */
+  public String getGreenhouseName() {
+    return this.greenhouseName;
+  }
+
+  /**
+   * Gets the number of sensors in the greenhouse.
+   *
+   * @return the sensor count, or null if it was not asked for
+   */
+  public Integer getSensorCount() {
+    return this.sensorCount;
+  }
+
+  /**
+   * Gets the number of actuators in the greenhouse.
+   *
+   * @return the actuator count, or null if it was not asked for
+   */
+  public Integer getActuatorCount() {
+    return this.actuatorCount;
+  }
+}
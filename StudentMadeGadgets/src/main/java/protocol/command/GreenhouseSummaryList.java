@@ -0,0 +1,53 @@
+package protocol.command;
+
+import java.util.ArrayList;
+
+/**
+ * Command representing one page of greenhouse summaries, the reply to a
+ * {@link GreenhouseQuery}.
+ */
+public class GreenhouseSummaryList implements Command {
+  private ArrayList<GreenhouseSummary> greenhouses;
+  private int nextOffset;
+  private long version;
+
+  /**
+   * Constructor for GreenhouseSummaryList.
+   *
+   * @param greenhouses the summaries on this page
+   * @param nextOffset  the offset of the next page, or -1 if this is the last page
+   * @param version     the version of the registry the page was taken from
+   */
+  public GreenhouseSummaryList(ArrayList<GreenhouseSummary> greenhouses, int nextOffset, long version) {
+    this.greenhouses = greenhouses;
+    this.nextOffset = nextOffset;
+    this.version = version;
+  }
+
+  /**
+   * Gets the summaries on this page.
+   *
+   * @return the greenhouse summaries
+   */
+  public ArrayList<GreenhouseSummary> getGreenhouses() {
+    return this.greenhouses;
+  }
+
+  /**
+   * Gets the offset to ask for the next page with.
+   *
+   * @return the next offset, or -1 if there are no more greenhouses
+   */
+  public int getNextOffset() {
+    return this.nextOffset;
+  }
+
+  /**
+   * Gets the version of the registry the page was taken from.
+   *
+   * @return the registry version
+   */
+  public long getVersion() {
+    return this.version;
+  }
+}
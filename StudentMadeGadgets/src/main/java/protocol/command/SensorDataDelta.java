@@ -0,0 +1,84 @@
+package protocol.command;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import javafx.util.Pair;
+
+/**
+ * Command representing the sensor readings of a greenhouse that changed
+ * since the last SENSOR_DATA_DELTA sent on the same stream.
+ *
+ * <p>A stream is either one subscription, or the delta mode DATA_REQUESTs
+ * for one greenhouse on one connection. Every sensor gets a small index the
+ * first time it is sent, together with its ID and unit. After that, only
+ * the index and the reading are sent, and only when the reading moved by
+ * more than the dead-band of the sensor type. A keyframe tells the client
+ * to forget the sensors of the stream before applying the delta.</p>
+ */
+public class SensorDataDelta implements Command {
+  private boolean keyframe;
+  private HashMap<Integer, Pair<String, String>> sensors;
+  private HashMap<Integer, Double> readings;
+  private ArrayList<Integer> removed;
+
+  /**
+   * Constructor for SensorDataDelta.
+   *
+   * @param keyframe true if the client should forget what it knows first
+   * @param sensors  the ID and unit of sensors sent for the first time, by index
+   * @param readings the readings that changed, by index
+   * @param removed  the indexes of sensors that were removed
+   */
+  public SensorDataDelta(boolean keyframe, HashMap<Integer, Pair<String, String>> sensors,
+                         HashMap<Integer, Double> readings, ArrayList<Integer> removed) {
+    this.keyframe = keyframe;
+    this.sensors = sensors;
+    this.readings = readings;
+    this.removed = removed;
+  }
+
+  /**
+   * Checks if the client should forget the sensors of the stream first.
+   *
+   * @return true for a keyframe
+   */
+  public boolean isKeyframe() {
+    return this.keyframe;
+  }
+
+  /**
+   * Gets the sensors sent for the first time.
+   *
+   * @return the sensor ID and unit, keyed by index
+   */
+  public HashMap<Integer, Pair<String, String>> getSensors() {
+    return this.sensors;
+  }
+
+  /**
+   * Gets the readings that changed.
+   *
+   * @return the readings, keyed by index
+   */
+  public HashMap<Integer, Double> getReadings() {
+    return this.readings;
+  }
+
+  /**
+   * Gets the sensors that were removed.
+   *
+   * @return the indexes of the removed sensors
+   */
+  public ArrayList<Integer> getRemoved() {
+    return this.removed;
+  }
+
+  /**
+   * Checks if the delta changes nothing.
+   *
+   * @return true if there is nothing to send
+   */
+  public boolean isEmpty() {
+    return !keyframe && sensors.isEmpty() && readings.isEmpty() && removed.isEmpty();
+  }
+}
@@ -0,0 +1,75 @@
+package protocol.command;
+
+import java.util.HashMap;
+
+/**
+ * Command representing a request to be sent the data of a greenhouse
+ * whenever it changes.
+ */
+public class Subscribe implements Command {
+  private int greenhouseId;
+  private String deviceType;
+  private HashMap<String, Double> deadBands;
+
+  /**
+   * Constructor for Subscribe.
+   *
+   * @param greenhouseId the ID of the greenhouse to watch
+   * @param deviceType   "SENSOR" or "ACTUATOR"
+   */
+  public Subscribe(int greenhouseId, String deviceType) {
+    this.greenhouseId = greenhouseId;
+    this.deviceType = deviceType;
+  }
+
+  /**
+   * Constructor for a subscription to the sensors of a greenhouse in
+   * delta mode, see {@link SensorDataDelta}.
+   *
+   * @param greenhouseId the ID of the greenhouse to watch
+   * @param deadBands    how much a reading must change to be sent again,
+   *                     keyed by sensor type, with "ALL" for other types
+   */
+  public Subscribe(int greenhouseId, HashMap<String, Double> deadBands) {
+    this(greenhouseId, "SENSOR", deadBands);
+  }
+
+  /**
+   * Constructor for Subscribe with all fields.
+   *
+   * @param greenhouseId the ID of the greenhouse to watch
+   * @param deviceType   "SENSOR" or "ACTUATOR"
+   * @param deadBands    the dead-bands of a delta mode subscription, or null
+   */
+  public Subscribe(int greenhouseId, String deviceType, HashMap<String, Double> deadBands) {
+    this(greenhouseId, deviceType);
+    this.deadBands = deadBands;
+  }
+
+  /**
+   * Gets the ID of the greenhouse to watch.
+   *
+   * @return the greenhouse ID
+   */
+  public int getGreenhouseId() {
+    return this.greenhouseId;
+  }
+
+  /**
+   * Gets the type of device data to send.
+   *
+   * @return "SENSOR" or "ACTUATOR"
+   */
+  public String getDeviceType() {
+    return this.deviceType;
+  }
+
+  /**
+   * Gets the dead-bands of a delta mode subscription.
+   *
+   * @return the dead-bands keyed by sensor type, or null for full pushes
+   */
+  public HashMap<String, Double> getDeadBands() {
+    return this.deadBands;
+  }
+}
@@ -0,0 +1,26 @@
+package protocol.command;
+
+/**
+ * Command representing a request to stop a subscription.
+ */
+public class Unsubscribe implements Command {
+  private String subscriptionId;
+
+  /**
+   * Constructor for Unsubscribe.
+   *
+   * @param subscriptionId the messageID of the SUBSCRIBE request
+   */
+  public Unsubscribe(String subscriptionId) {
+    this.subscriptionId = subscriptionId;
+  }
+
+  /**
+   * Gets the ID of the subscription to stop.
+   *
+   * @return the messageID of the SUBSCRIBE request
+   */
+  public String getSubscriptionId() {
+    return this.subscriptionId;
+  }
+}
@@ -1,5 +1,6 @@
 package sensor;
 
+import greenhouse.Climate;
 import greenhouse.Greenhouse;
 
 /**
@@ -65,4 +66,13 @@ public class HumiditySensor implements Sensor {
   public double read(Greenhouse greenhouse) {
     return (double) greenhouse.getHumidity();
   }
+  /**
+   * Reads the humidity value from a climate read from the greenhouse.
+   *
+   * @return the humidity value
+   */
+  @Override
+  public double read(Greenhouse greenhouse, Climate climate) {
+    return (double) climate.humidity();
+  }
 }
@@ -1,5 +1,6 @@
 package sensor;
 
+import greenhouse.Climate;
 import greenhouse.Greenhouse;
 
 /**
@@ -61,4 +62,12 @@ public class LightSensor implements Sensor {
     return (double)  greenhouse.getLight();
   }
 
+  /**
+   * Reads the light value from a climate read from the greenhouse.
+   * @return the light value
+   */
+  @Override
+  public double read(Greenhouse greenhouse, Climate climate) {
+    return (double) climate.light();
+  }
 }
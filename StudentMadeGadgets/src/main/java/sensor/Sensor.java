@@ -1,5 +1,6 @@
 package sensor;
 
+import greenhouse.Climate;
 import greenhouse.Greenhouse;
 
 /**
@@ -14,4 +15,17 @@ public interface Sensor {
   String getType();
   String getUnit();
   double read(Greenhouse greenhouse);
+
+  /**
+   * Reads the sensor from a climate already read from the greenhouse, so
+   * several sensors can be read from the same moment. Sensors that do
+   * not measure the climate read the greenhouse instead.
+   *
+   * @param greenhouse the greenhouse the sensor is in
+   * @param climate    the climate of the greenhouse
+   * @return the value of the sensor
+   */
+  default double read(Greenhouse greenhouse, Climate climate) {
+    return read(greenhouse);
+  }
 }
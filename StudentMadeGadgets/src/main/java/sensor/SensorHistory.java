@@ -0,0 +1,99 @@
+package sensor;
+
+/**
+ * The latest readings of a sensor, kept in a ring buffer with a fixed
+ * capacity. When the buffer is full, the oldest reading is overwritten.
+ *
+ * <p>Timestamps and values are kept in primitive arrays, so recording a
+ * reading creates no objects, and a history takes 16 bytes per reading it
+ * can hold. Readings are recorded by the climate engine and read by
+ * request threads, so the methods are synchronized.</p>
+ */
+public final class SensorHistory {
+  private final long[] timestamps;
+  private final double[] values;
+  // The index the next reading is written to
+  private int next = 0;
+  private int size = 0;
+
+  /**
+   * Creates an empty history.
+   *
+   * @param capacity the number of readings the history holds, at least 1
+   */
+  public SensorHistory(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("A sensor history must hold at least 1 reading");
+    }
+    this.timestamps = new long[capacity];
+    this.values = new double[capacity];
+  }
+
+  /**
+   * Gets the number of readings the history holds when it is full.
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return this.timestamps.length;
+  }
+
+  /**
+   * Gets the number of readings in the history.
+   *
+   * @return the number of readings, at most the capacity
+   */
+  public synchronized int size() {
+    return this.size;
+  }
+
+  /**
+   * Records a reading, overwriting the oldest one if the history is full.
+   *
+   * @param timestamp the time of the reading, in milliseconds since the epoch
+   * @param value     the value read
+   */
+  public synchronized void record(long timestamp, double value) {
+    timestamps[next] = timestamp;
+    values[next] = value;
+    next = next + 1 == timestamps.length ? 0 : next + 1;
+    if (size < timestamps.length) {
+      size++;
+    }
+  }
+
+  /**
+   * Copies the latest readings into two arrays, oldest first. As many
+   * readings are copied as fit in the shorter array.
+   *
+   * @param timestamps the array the timestamps are copied to
+   * @param values     the array the values are copied to
+   * @return the number of readings copied
+   */
+  public synchronized int copyTo(long[] timestamps, double[] values) {
+    int capacity = this.timestamps.length;
+    int count = Math.min(size, Math.min(timestamps.length, values.length));
+    int start = next - count < 0 ? next - count + capacity : next - count;
+    // The readings may wrap around the end of the buffer
+    int first = Math.min(count, capacity - start);
+    System.arraycopy(this.timestamps, start, timestamps, 0, first);
+    System.arraycopy(this.values, start, values, 0, first);
+    System.arraycopy(this.timestamps, 0, timestamps, first, count - first);
+    System.arraycopy(this.values, 0, values, first, count - first);
+    return count;
+  }
+
+  /**
+   * Creates a history with another capacity, holding the latest readings
+   * of this one that fit.
+   *
+   * @param capacity the capacity of the new history, at least 1
+   * @return the new history
+   */
+  public SensorHistory resize(int capacity) {
+    SensorHistory resized = new SensorHistory(capacity);
+    resized.size = copyTo(resized.timestamps, resized.values);
+    resized.next = resized.size % capacity;
+    return resized;
+  }
+}
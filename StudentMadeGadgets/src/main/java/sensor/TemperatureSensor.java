@@ -1,5 +1,6 @@
 package sensor;
 
+import greenhouse.Climate;
 import greenhouse.Greenhouse;
 
 /**
@@ -56,4 +57,12 @@ public class TemperatureSensor implements Sensor {
   @Override public double read(Greenhouse greenhouse) {
     return greenhouse.getTemperature();
   }
+
+  /**
+   * Reads the temperature value from a climate read from the greenhouse.
+   * @return the temperature value
+   */
+  @Override public double read(Greenhouse greenhouse, Climate climate) {
+    return climate.temperature();
+  }
 }
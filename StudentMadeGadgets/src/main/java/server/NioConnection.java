@@ -0,0 +1,184 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import protocol.Codec;
+import protocol.Framing;
+import protocol.Session;
+
+/**
+ * State kept for one client connection in {@link ServerMode#NIO} mode.
+ *
+ * <p>The read buffer is reused for the whole lifetime of the connection,
+ * and is only grown when a single message does not fit in it. Replies are
+ * queued by the threads handling the requests and written by the I/O
+ * thread.</p>
+ */
+class NioConnection {
+  static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+  private final SocketChannel channel;
+  private final int maxFrameSize;
+  private final ConcurrentLinkedQueue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+  private int scanPosition = 0;
+  private boolean readPaused = false;
+  private boolean inputClosed = false;
+  private boolean preambleChecked = false;
+  private volatile Framing framing = Framing.LINE;
+  private volatile Codec codec = Codec.JSON;
+  private PushQueue pushes;
+  private Session session;
+
+  /**
+   * Constructor for NioConnection.
+   *
+   * @param channel      the channel of the client
+   * @param maxFrameSize the largest message accepted from the client
+   */
+  NioConnection(SocketChannel channel, int maxFrameSize) {
+    this.channel = channel;
+    this.maxFrameSize = maxFrameSize;
+  }
+
+  SocketChannel getChannel() {
+    return this.channel;
+  }
+
+  ByteBuffer getReadBuffer() {
+    return this.readBuffer;
+  }
+
+  ConcurrentLinkedQueue<ByteBuffer> getOutbound() {
+    return this.outbound;
+  }
+
+  /**
+   * Gets the number of requests from this connection that are being handled.
+   *
+   * @return the in-flight counter
+   */
+  AtomicInteger getInFlight() {
+    return this.inFlight;
+  }
+
+  /**
+   * Checks if reading is paused because too many requests are in flight.
+   *
+   * @return true if reading is paused
+   */
+  boolean isReadPaused() {
+    return this.readPaused;
+  }
+
+  void setReadPaused(boolean readPaused) {
+    this.readPaused = readPaused;
+  }
+
+  /**
+   * Checks if the client has closed its side of the connection. The
+   * connection is kept open until the replies in flight are written.
+   *
+   * @return true if nothing more is read from the client
+   */
+  boolean isInputClosed() {
+    return this.inputClosed;
+  }
+
+  void setInputClosed(boolean inputClosed) {
+    this.inputClosed = inputClosed;
+  }
+
+  int getMaxFrameSize() {
+    return this.maxFrameSize;
+  }
+
+  /**
+   * Checks if the start of the connection has been looked at for a
+   * framing preamble.
+   *
+   * @return true if the preamble check is done
+   */
+  boolean isPreambleChecked() {
+    return this.preambleChecked;
+  }
+
+  void setPreambleChecked(boolean preambleChecked) {
+    this.preambleChecked = preambleChecked;
+  }
+
+  Framing getFraming() {
+    return this.framing;
+  }
+
+  void setFraming(Framing framing) {
+    this.framing = framing;
+  }
+
+  Codec getCodec() {
+    return this.codec;
+  }
+
+  void setCodec(Codec codec) {
+    this.codec = codec;
+  }
+
+  /**
+   * Gets the messages pushed to this connection by its subscriptions.
+   *
+   * @return the push queue
+   */
+  PushQueue getPushes() {
+    return this.pushes;
+  }
+
+  Session getSession() {
+    return this.session;
+  }
+
+  /**
+   * Starts the session of this connection, with the pushes going to the
+   * given queue. Called once, before anything is read.
+   *
+   * @param pushes the push queue of the connection
+   */
+  void startSession(PushQueue pushes) {
+    this.pushes = pushes;
+    this.session = new Session(pushes);
+  }
+
+  /**
+   * Gets the position in the read buffer where the search for the next
+   * newline should continue, so bytes are only scanned once.
+   *
+   * @return the scan position
+   */
+  int getScanPosition() {
+    return this.scanPosition;
+  }
+
+  void setScanPosition(int scanPosition) {
+    this.scanPosition = scanPosition;
+  }
+
+  /**
+   * Doubles the size of the read buffer, keeping its contents. The buffer
+   * never grows past what one maximum sized frame with its length prefix needs.
+   *
+   * @return false if the buffer is already at its largest size
+   */
+  boolean growReadBuffer() {
+    int largest = maxFrameSize + 4;
+    if (readBuffer.capacity() >= largest) {
+      return false;
+    }
+    ByteBuffer larger = ByteBuffer.allocate((int) Math.min(largest, readBuffer.capacity() * 2L));
+    readBuffer.flip();
+    larger.put(readBuffer);
+    this.readBuffer = larger;
+    return true;
+  }
+}
@@ -0,0 +1,436 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import protocol.BinaryCodec;
+import protocol.Codec;
+import protocol.CommandHandler;
+import protocol.Framing;
+import protocol.JSONHandler;
+import protocol.Message;
+import protocol.Protocol;
+
+/**
+ * Non-blocking server built on java.nio selectors.
+ *
+ * <p>The thread calling {@link #run()} accepts new connections and hands
+ * them out round robin to a fixed number of I/O threads. Each I/O thread
+ * multiplexes its connections on its own {@link Selector}, splits the
+ * incoming bytes into messages and passes every complete message to the
+ * {@link CommandHandler}. Messages are newline separated JSON unless the
+ * client negotiated another {@link Framing} and {@link Codec} with a
+ * preamble, like with {@link Protocol#acceptNegotiation()}.</p>
+ *
+ * <p>Like the blocking modes, requests are pipelined: they are handled on
+ * {@link Server#getRequestExecutor()} and replies are written in the order
+ * they finish. A connection stops being read from while
+ * {@link Server#MAX_IN_FLIGHT_PER_CONNECTION} of its requests are in flight.
+ * Messages pushed by subscriptions are written whenever no reply is waiting.</p>
+ */
+public class NioServer {
+  private final int port;
+  private final int maxFrameSize;
+  private final IoWorker[] workers;
+
+  /**
+   * Constructor for NioServer.
+   *
+   * @param port         the port to listen on
+   * @param ioThreads    the number of I/O threads
+   * @param maxFrameSize the largest message accepted from a client, in bytes
+   * @throws IOException if a selector could not be opened
+   */
+  public NioServer(int port, int ioThreads, int maxFrameSize) throws IOException {
+    this.port = port;
+    this.maxFrameSize = maxFrameSize;
+    this.workers = new IoWorker[ioThreads];
+    for (int i = 0; i < ioThreads; i++) {
+      this.workers[i] = new IoWorker();
+    }
+  }
+
+  /**
+   * Starts the I/O threads and accepts connections until the
+   * server socket is closed.
+   *
+   * @throws IOException if the server socket could not be opened
+   */
+  public void run() throws IOException {
+    for (int i = 0; i < workers.length; i++) {
+      Thread thread = new Thread(workers[i], "nio-io-" + i);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+      serverChannel.bind(new InetSocketAddress(port));
+      System.out.println("Server is now listening on " + port
+          + " (nio mode, I/O threads: " + workers.length + ")");
+
+      int next = 0;
+      while (true) {
+        SocketChannel channel = serverChannel.accept();
+        workers[next].register(channel);
+        next = (next + 1) % workers.length;
+      }
+    }
+  }
+
+  /**
+   * An I/O thread with its own selector and set of connections.
+   */
+  private class IoWorker implements Runnable {
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<SelectionKey> completed = new ConcurrentLinkedQueue<>();
+
+    IoWorker() throws IOException {
+      this.selector = Selector.open();
+    }
+
+    /**
+     * Hands a newly accepted channel over to this worker.
+     */
+    void register(SocketChannel channel) {
+      pending.add(channel);
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          selector.select();
+          registerPending();
+          writeCompleted();
+
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            NioConnection connection = (NioConnection) key.attachment();
+
+            try {
+              if (key.isValid() && key.isReadable()) {
+                read(key, connection);
+              }
+              if (key.isValid() && key.isWritable()) {
+                flush(key, connection);
+              }
+            } catch (IOException | RuntimeException e) {
+              System.out.println("Client error: " + e.getMessage());
+              close(key);
+            }
+          }
+        }
+      } catch (IOException | ClosedSelectorException e) {
+        System.out.println("I/O thread stopped: " + e.getMessage());
+      }
+    }
+
+    private void registerPending() throws IOException {
+      SocketChannel channel;
+      while ((channel = pending.poll()) != null) {
+        channel.configureBlocking(false);
+        NioConnection connection = new NioConnection(channel, maxFrameSize);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connection.startSession(new PushQueue(pushes -> {
+          completed.add(key);
+          selector.wakeup();
+        }));
+        System.out.println("A client has connected: " + channel.getRemoteAddress());
+      }
+    }
+
+    /**
+     * Writes the replies that finished since the last select, and resumes
+     * reading from connections that are no longer at their in-flight limit.
+     */
+    private void writeCompleted() {
+      SelectionKey key;
+      while ((key = completed.poll()) != null) {
+        if (!key.isValid()) {
+          continue;
+        }
+        NioConnection connection = (NioConnection) key.attachment();
+        if (connection.isReadPaused()
+            && connection.getInFlight().get() < Server.MAX_IN_FLIGHT_PER_CONNECTION) {
+          connection.setReadPaused(false);
+        }
+        try {
+          flush(key, connection);
+        } catch (IOException e) {
+          System.out.println("Client error: " + e.getMessage());
+          close(key);
+        }
+      }
+    }
+
+    /**
+     * Reads what is available from the channel and handles every
+     * complete message in the read buffer.
+     */
+    private void read(SelectionKey key, NioConnection connection) throws IOException {
+      ByteBuffer buffer = connection.getReadBuffer();
+      if (!buffer.hasRemaining() && !connection.growReadBuffer()) {
+        throw new IOException("Message exceeds " + connection.getMaxFrameSize() + " bytes");
+      }
+      buffer = connection.getReadBuffer();
+
+      if (connection.getChannel().read(buffer) == -1) {
+        // Stop reading, but write the replies still in flight before closing
+        connection.setInputClosed(true);
+        flush(key, connection);
+        return;
+      }
+
+      buffer.flip();
+      int frameStart = 0;
+      if (!connection.isPreambleChecked()) {
+        frameStart = checkPreamble(connection, buffer);
+        if (frameStart == -1) {
+          buffer.position(buffer.limit());
+          buffer.limit(buffer.capacity());
+          return;
+        }
+      }
+
+      if (connection.getFraming() == Framing.LENGTH_PREFIXED) {
+        frameStart = readLengthPrefixedFrames(key, connection, buffer, frameStart);
+        connection.setScanPosition(0);
+      } else {
+        frameStart = readLineFrames(key, connection, buffer, frameStart);
+      }
+
+      buffer.position(frameStart);
+      buffer.compact();
+      if (connection.getFraming() == Framing.LINE) {
+        connection.setScanPosition(buffer.position());
+      }
+
+      if (connection.getInFlight().get() >= Server.MAX_IN_FLIGHT_PER_CONNECTION) {
+        connection.setReadPaused(true);
+      }
+      updateInterest(key, connection);
+    }
+
+    /**
+     * Looks for a framing preamble at the start of the connection, and
+     * queues the confirmation if one was sent.
+     *
+     * @return where the first message starts, or -1 if more bytes are needed
+     */
+    private int checkPreamble(NioConnection connection, ByteBuffer buffer) throws IOException {
+      if (buffer.limit() == 0) {
+        return -1;
+      }
+      if (buffer.get(0) != 0) {
+        connection.setPreambleChecked(true);
+        return 0;
+      }
+      if (buffer.limit() < Protocol.PREAMBLE_LENGTH) {
+        return -1;
+      }
+
+      Framing framing = Protocol.parsePreamble(buffer.array(), 0);
+      Codec codec = Protocol.parseCodec(buffer.array(), 0);
+      connection.setFraming(framing);
+      connection.setCodec(codec);
+      connection.setPreambleChecked(true);
+      connection.getOutbound().add(ByteBuffer.wrap(Protocol.createPreamble(framing, codec)));
+      return Protocol.PREAMBLE_LENGTH;
+    }
+
+    /**
+     * Handles every newline terminated message in the buffer.
+     *
+     * @return where the first incomplete message starts
+     */
+    private int readLineFrames(SelectionKey key, NioConnection connection, ByteBuffer buffer, int frameStart) {
+      for (int i = Math.max(frameStart, connection.getScanPosition()); i < buffer.limit(); i++) {
+        if (buffer.get(i) == '\n') {
+          int frameEnd = i;
+          if (frameEnd > frameStart && buffer.get(frameEnd - 1) == '\r') {
+            frameEnd--;
+          }
+          String message = new String(buffer.array(), frameStart, frameEnd - frameStart,
+              StandardCharsets.UTF_8);
+          frameStart = i + 1;
+          handleFrame(key, connection, message);
+        }
+      }
+      return frameStart;
+    }
+
+    /**
+     * Handles every complete length prefixed message in the buffer.
+     *
+     * @return where the first incomplete message starts
+     */
+    private int readLengthPrefixedFrames(SelectionKey key, NioConnection connection, ByteBuffer buffer,
+                                         int frameStart) throws IOException {
+      while (buffer.limit() - frameStart >= 4) {
+        int length = buffer.getInt(frameStart);
+        if (length < 0 || length > connection.getMaxFrameSize()) {
+          throw new IOException("Frame of " + length + " bytes exceeds the maximum of "
+              + connection.getMaxFrameSize());
+        }
+        if (buffer.limit() - frameStart - 4 < length) {
+          break;
+        }
+        if (connection.getCodec() == Codec.BINARY) {
+          byte[] message = Arrays.copyOfRange(buffer.array(), frameStart + 4, frameStart + 4 + length);
+          frameStart += 4 + length;
+          handleBinaryFrame(key, connection, message);
+        } else {
+          String message = new String(buffer.array(), frameStart + 4, length, StandardCharsets.UTF_8);
+          frameStart += 4 + length;
+          handleFrame(key, connection, message);
+        }
+      }
+      return frameStart;
+    }
+
+    /**
+     * Hands a complete message over to the request executor. The reply is
+     * queued on the connection, and this worker is woken up to write it.
+     */
+    private void handleFrame(SelectionKey key, NioConnection connection, String message) {
+      String request = message.trim();
+      if (request.isEmpty()) {
+        return;
+      }
+      connection.getInFlight().incrementAndGet();
+      Server.getRequestExecutor().execute(() -> {
+        try {
+          String reply = CommandHandler.handleCommand(request, connection.getSession());
+          connection.getOutbound().add(encodeFrame(connection, reply));
+        } finally {
+          connection.getInFlight().decrementAndGet();
+          completed.add(key);
+          selector.wakeup();
+        }
+      });
+    }
+
+    /**
+     * Hands a complete binary encoded message over to the request executor.
+     */
+    private void handleBinaryFrame(SelectionKey key, NioConnection connection, byte[] message) {
+      connection.getInFlight().incrementAndGet();
+      Server.getRequestExecutor().execute(() -> {
+        try {
+          byte[] reply = CommandHandler.handleCommand(message, connection.getSession());
+          connection.getOutbound().add(encodeFrame(connection, reply));
+        } finally {
+          connection.getInFlight().decrementAndGet();
+          completed.add(key);
+          selector.wakeup();
+        }
+      });
+    }
+
+    /**
+     * Frames a reply the way the connection negotiated.
+     */
+    private ByteBuffer encodeFrame(NioConnection connection, String reply) {
+      return encodeFrame(connection, reply.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private ByteBuffer encodeFrame(NioConnection connection, byte[] replyBytes) {
+      ByteBuffer frame;
+      if (connection.getFraming() == Framing.LENGTH_PREFIXED) {
+        frame = ByteBuffer.allocate(4 + replyBytes.length);
+        frame.putInt(replyBytes.length);
+        frame.put(replyBytes);
+      } else {
+        frame = ByteBuffer.allocate(replyBytes.length + 1);
+        frame.put(replyBytes);
+        frame.put((byte) '\n');
+      }
+      return frame.flip();
+    }
+
+    /**
+     * Encodes a pushed message with the codec the connection negotiated.
+     */
+    private ByteBuffer encodePush(NioConnection connection, Message push) {
+      if (connection.getCodec() == Codec.BINARY) {
+        return encodeFrame(connection, BinaryCodec.encode(push));
+      }
+      return encodeFrame(connection, JSONHandler.serializeMessageToJSON(push));
+    }
+
+    /**
+     * Writes as much of the queued replies as the socket accepts, and
+     * only asks for write readiness while something is left over. Pushes
+     * are taken one at a time once all replies are written, so pushes to
+     * a slow client are coalesced in its push queue instead of growing
+     * the outbound queue. A connection the client has closed is closed
+     * once no request is in flight and every reply is written.
+     */
+    private void flush(SelectionKey key, NioConnection connection) throws IOException {
+      ByteBuffer head;
+      while ((head = nextOutbound(connection)) != null) {
+        connection.getChannel().write(head);
+        if (head.hasRemaining()) {
+          break;
+        }
+        connection.getOutbound().poll();
+      }
+      if (connection.isInputClosed() && connection.getInFlight().get() == 0
+          && connection.getOutbound().isEmpty()) {
+        close(key);
+        return;
+      }
+      updateInterest(key, connection);
+    }
+
+    private ByteBuffer nextOutbound(NioConnection connection) {
+      ByteBuffer head = connection.getOutbound().peek();
+      if (head != null) {
+        return head;
+      }
+      Message push = connection.getPushes().poll();
+      if (push == null) {
+        return null;
+      }
+      connection.getOutbound().add(encodePush(connection, push));
+      return connection.getOutbound().peek();
+    }
+
+    /**
+     * Asks for read readiness unless reading is paused or the client has
+     * closed its side, and for write readiness while replies are waiting
+     * to be written.
+     */
+    private void updateInterest(SelectionKey key, NioConnection connection) {
+      int ops = connection.isReadPaused() || connection.isInputClosed() ? 0 : SelectionKey.OP_READ;
+      if (!connection.getOutbound().isEmpty()) {
+        ops |= SelectionKey.OP_WRITE;
+      }
+      key.interestOps(ops);
+    }
+
+    private void close(SelectionKey key) {
+      NioConnection connection = (NioConnection) key.attachment();
+      connection.getSession().close();
+      key.cancel();
+      try {
+        key.channel().close();
+      } catch (IOException e) {
+        System.out.println("Failed to close client channel: " + e.getMessage());
+      }
+    }
+  }
+}
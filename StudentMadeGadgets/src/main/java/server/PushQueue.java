@@ -0,0 +1,72 @@
+package server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import protocol.Message;
+import protocol.Subscriber;
+
+/**
+ * Queue of the messages pushed to one connection.
+ *
+ * <p>Pushes never block the thread that changed a greenhouse. Each
+ * subscription has at most one push waiting, and a push is only created
+ * when it is sent, so a slow client gets the newest data instead of a
+ * backlog of stale pushes. The queue is therefore bounded by the number of
+ * subscriptions of the connection.</p>
+ */
+class PushQueue implements Subscriber {
+  private final Consumer<PushQueue> onAvailable;
+  private final LinkedHashMap<String, Supplier<Message>> waiting = new LinkedHashMap<>();
+
+  /**
+   * Constructor for PushQueue.
+   *
+   * @param onAvailable called when a push starts waiting, to get the queue drained
+   */
+  PushQueue(Consumer<PushQueue> onAvailable) {
+    this.onAvailable = onAvailable;
+  }
+
+  @Override
+  public void push(String subscriptionId, Supplier<Message> message) {
+    synchronized (waiting) {
+      if (waiting.putIfAbsent(subscriptionId, message) != null) {
+        return;
+      }
+    }
+    onAvailable.accept(this);
+  }
+
+  /**
+   * Takes the oldest waiting push and creates its message. Pushes with
+   * nothing to send are skipped.
+   *
+   * @return the message, or null if no push is waiting
+   */
+  Message poll() {
+    while (true) {
+      Supplier<Message> next;
+      synchronized (waiting) {
+        Iterator<Map.Entry<String, Supplier<Message>>> oldest = waiting.entrySet().iterator();
+        if (!oldest.hasNext()) {
+          return null;
+        }
+        next = oldest.next().getValue();
+        oldest.remove();
+      }
+      Message message = next.get();
+      if (message != null) {
+        return message;
+      }
+    }
+  }
+
+  boolean isEmpty() {
+    synchronized (waiting) {
+      return waiting.isEmpty();
+    }
+  }
+}
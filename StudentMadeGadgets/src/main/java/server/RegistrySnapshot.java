@@ -0,0 +1,265 @@
+package server;
+
+import actuator.Actuator;
+import greenhouse.Climate;
+import greenhouse.Greenhouse;
+import greenhouse.GreenhouseRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import protocol.CommandHandler;
+import sensor.Sensor;
+
+/**
+ * A compact binary copy of the registry: every greenhouse with its climate,
+ * sensors and actuators, and the LSN of the last write-ahead log record it
+ * holds. At startup the snapshot is loaded, and only the log records after
+ * it are replayed, see {@link WriteAheadLog}.
+ *
+ * <p>Snapshots are taken in the background while requests are handled. The
+ * log is rotated first, so every record up to the snapshot LSN is in the
+ * snapshot. Changes made while the greenhouses are copied may be in it as
+ * well, which does no harm as replaying them again changes nothing. Only
+ * atomic batches wait while the greenhouses are copied, since a batch that
+ * is rolled back must not end up in a snapshot.</p>
+ *
+ * <p>A snapshot is written to a temporary file that is synced and renamed
+ * over the old one, so a crash leaves either the old or the new snapshot.
+ * It is loaded through a memory mapped buffer.</p>
+ *
+ * <p>A snapshot is laid out as a magic number, the format version, the
+ * LSN, the next greenhouse ID and the number of greenhouses. Then follows
+ * every greenhouse with its ID, name, temperature, humidity and light, its
+ * sensors with their type and ID, and its actuators with their type, ID,
+ * state and power. It ends with a CRC32 checksum of everything before it.
+ * Strings are written as their length in UTF-8 bytes and the bytes, or -1
+ * for null.</p>
+ */
+public final class RegistrySnapshot {
+  /**
+   * The name of the snapshot file in the log directory.
+   */
+  public static final String FILE_NAME = "greenhouses.snapshot";
+
+  private static final int MAGIC = 0x47485331;
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 4 * Integer.BYTES + Long.BYTES;
+
+  private RegistrySnapshot() {}
+
+  /**
+   * Loads a snapshot into a registry. Greenhouses at IDs that are in use
+   * already are skipped.
+   *
+   * @param file     the snapshot file
+   * @param registry the registry to load the greenhouses into
+   * @return the LSN of the last log record in the snapshot, or 0 if there
+   *     is no snapshot
+   * @throws IOException if the snapshot can not be read or is corrupt
+   */
+  public static long load(Path file, GreenhouseRegistry registry) throws IOException {
+    if (!Files.exists(file)) {
+      return 0;
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_SIZE + Integer.BYTES || size > Integer.MAX_VALUE) {
+        throw new IOException("Corrupt snapshot: " + file);
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      int end = (int) size - Integer.BYTES;
+      CRC32 crc = new CRC32();
+      crc.update(buffer.slice(0, end));
+      if ((int) crc.getValue() != buffer.getInt(end) || buffer.getInt() != MAGIC) {
+        throw new IOException("Corrupt snapshot: " + file);
+      }
+      int version = buffer.getInt();
+      if (version != FORMAT_VERSION) {
+        throw new IOException("Unknown snapshot format version " + version + ": " + file);
+      }
+      long lsn = buffer.getLong();
+      int nextId = buffer.getInt();
+      int count = buffer.getInt();
+      // The climate in the snapshot already holds the effect of the actuators,
+      // so their state is set against a greenhouse that is thrown away
+      Greenhouse scratch = new Greenhouse(0, null, 0, 0, 0);
+
+      for (int i = 0; i < count; i++) {
+        int id = buffer.getInt();
+        String name = getString(buffer);
+        Greenhouse greenhouse = new Greenhouse(name,
+            new Climate(buffer.getDouble(), buffer.getInt(), buffer.getInt()));
+
+        int sensorCount = buffer.getInt();
+        for (int j = 0; j < sensorCount; j++) {
+          Sensor sensor = CommandHandler.createSensor(getString(buffer));
+          String sensorId = getString(buffer);
+          if (sensor != null) {
+            greenhouse.getSensorNode().addSensorToNode(sensor, sensorId);
+          }
+        }
+        int actuatorCount = buffer.getInt();
+        for (int j = 0; j < actuatorCount; j++) {
+          Actuator actuator = CommandHandler.createActuator(getString(buffer));
+          String actuatorId = getString(buffer);
+          boolean on = buffer.get() != 0;
+          int power = buffer.getInt();
+          if (actuator != null) {
+            if (actuator.getPower() != power) {
+              actuator.setPower(power, scratch);
+            }
+            actuator.setState(on, scratch);
+            greenhouse.getSensorNode().addActuatorToNode(actuator, actuatorId);
+          }
+        }
+
+        if (!registry.restoreGreenhouse(id, greenhouse)) {
+          greenhouse.stopEnvironmentUpdates();
+        }
+      }
+      registry.restoreNextId(nextId);
+      return lsn;
+    }
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Takes a snapshot of the registry, and deletes the log segments whose
+   * records are all in it.
+   *
+   * @param file     the snapshot file
+   * @param log      the write-ahead log of the registry
+   * @param registry the registry
+   * @return the LSN of the last log record in the snapshot
+   * @throws IOException if the snapshot or log could not be written
+   */
+  public static long take(Path file, WriteAheadLog log, GreenhouseRegistry registry) throws IOException {
+    long lsn = log.rotate();
+    byte[] snapshot = CommandHandler.betweenAtomicBatches(() -> encode(lsn, registry));
+
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary,
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer bytes = ByteBuffer.wrap(snapshot);
+      while (bytes.hasRemaining()) {
+        channel.write(bytes);
+      }
+      channel.force(true);
+    }
+    Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    // Sync the directory too, so the rename is on disk before the old segments are gone
+    try (FileChannel directory = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+      directory.force(true);
+    } catch (IOException e) {
+      // Directories can not be synced on every platform
+    }
+
+    log.deleteSegmentsBefore(lsn);
+    return lsn;
+  }
+
+  /**
+   * Copies the greenhouses of the registry into a snapshot.
+   */
+  private static byte[] encode(long lsn, GreenhouseRegistry registry) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      ArrayList<Greenhouse> greenhouses = registry.getAllGreenhouses();
+      // Read the next ID after the greenhouses, so it is above all of their IDs
+      int nextId = registry.getNextId();
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(lsn);
+      out.writeInt(nextId);
+      out.writeInt(greenhouses.size());
+
+      for (Greenhouse greenhouse : greenhouses) {
+        Climate climate = greenhouse.getClimate();
+        out.writeInt(greenhouse.getGreenhouseId());
+        writeString(out, greenhouse.getGreenhouseName());
+        out.writeDouble(climate.temperature());
+        out.writeInt(climate.humidity());
+        out.writeInt(climate.light());
+
+        // The device maps are concurrent, so they can be copied while requests change them
+        ArrayList<Sensor> sensors = new ArrayList<>(greenhouse.getSensorNode().getSensors().values());
+        out.writeInt(sensors.size());
+        for (Sensor sensor : sensors) {
+          writeString(out, sensor.getType());
+          writeString(out, sensor.getID());
+        }
+        ArrayList<Actuator> actuators = new ArrayList<>(greenhouse.getSensorNode().getActuators().values());
+        out.writeInt(actuators.size());
+        for (Actuator actuator : actuators) {
+          writeString(out, actuator.getType());
+          writeString(out, actuator.getID());
+          out.writeBoolean(actuator.isOn());
+          out.writeInt(actuator.getPower());
+        }
+      }
+
+      CRC32 crc = new CRC32();
+      crc.update(bytes.toByteArray());
+      out.writeInt((int) crc.getValue());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not encode a snapshot", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Starts taking snapshots on a background thread.
+   *
+   * @param file            the snapshot file
+   * @param log             the write-ahead log of the registry
+   * @param registry        the registry
+   * @param intervalSeconds the time between two snapshots
+   */
+  static void startTaking(Path file, WriteAheadLog log, GreenhouseRegistry registry, int intervalSeconds) {
+    ScheduledExecutorService snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "registry-snapshot");
+      thread.setDaemon(true);
+      return thread;
+    });
+    snapshotter.scheduleWithFixedDelay(() -> {
+      try {
+        take(file, log, registry);
+      } catch (IOException | RuntimeException e) {
+        System.out.println("Could not take a snapshot: " + e.getMessage());
+      }
+    }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+  }
+}
@@ -1,11 +1,22 @@
 package server;
 
+import greenhouse.ClimateEngine;
 import greenhouse.GreenhouseRegistry;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import protocol.Codec;
 import protocol.CommandHandler;
+import protocol.GreenhouseListCache;
+import protocol.Message;
 import protocol.Protocol;
+import protocol.Session;
 
 /**
  * Javadoc placeholder.
@@ -13,21 +24,77 @@ import protocol.Protocol;
 public class Server {
 
   private static final GreenhouseRegistry greenhouseRegistry = new GreenhouseRegistry();
+  private static final GreenhouseListCache greenhouseListCache = new GreenhouseListCache(greenhouseRegistry);
   private static CommandHandler commandHandler;
+  private static volatile WriteAheadLog writeAheadLog;
+  private static final ExecutorService requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+  /**
+   * The most requests from one connection that are handled at the same time.
+   */
+  public static final int MAX_IN_FLIGHT_PER_CONNECTION = 64;
+
+  private static int maxFrameSize = Protocol.DEFAULT_MAX_FRAME_SIZE;
 
   /**
    * Force start a server.
+   *
+   * @param args server options, see {@link ServerConfig#fromArgs(String[])}
    */
   public static void main(String[] args) throws IOException {
-    runServer();
+    runServer(ServerConfig.fromArgs(args));
   }
 
   /**
    * Starts a new server on port 6767.
    */
   public static void runServer() throws IOException {
-    try (ServerSocket serverSocket = new ServerSocket(6767)) {
-      System.out.println("Server is now listening on 6767");
+    runServer(new ServerConfig());
+  }
+
+  /**
+   * Starts a new server with the given options.
+   *
+   * @param config the server options
+   */
+  public static void runServer(ServerConfig config) throws IOException {
+    maxFrameSize = config.getMaxFrameSize();
+    greenhouseListCache.setMaxAgeMillis(config.getListCacheMaxAge());
+    ClimateEngine.getShared().setParallelism(config.getEnvironmentThreads());
+    ClimateEngine.getShared().setMode(config.getClimateMode());
+    greenhouseRegistry.setHistoryCapacity(config.getHistoryCapacity());
+    if (config.getMetricsInterval() > 0) {
+      ServerMetrics.startReporting(config.getMetricsInterval());
+    }
+    if (config.getWalDirectory() != null) {
+      Path directory = config.getWalDirectory();
+      Files.createDirectories(directory);
+      Path snapshot = directory.resolve(RegistrySnapshot.FILE_NAME);
+      long snapshotLsn = RegistrySnapshot.load(snapshot, greenhouseRegistry);
+      writeAheadLog = WriteAheadLog.open(directory, config.getWalSyncInterval(), greenhouseRegistry, snapshotLsn);
+      System.out.println("Loaded the snapshot up to LSN " + snapshotLsn + " and replayed "
+          + writeAheadLog.getReplayedRecords() + " records from the write-ahead log, "
+          + greenhouseRegistry.getAllGreenhouses().size() + " greenhouses restored");
+      if (config.getSnapshotInterval() > 0) {
+        RegistrySnapshot.startTaking(snapshot, writeAheadLog, greenhouseRegistry, config.getSnapshotInterval());
+      }
+    }
+
+    switch (config.getMode()) {
+      case BLOCKING -> runBlockingServer(config.getPort());
+      case NIO -> new NioServer(config.getPort(), config.getIoThreads(), config.getMaxFrameSize()).run();
+      case VIRTUAL -> runVirtualThreadServer(config.getPort(), config.getMaxConnections());
+    }
+  }
+
+  /**
+   * Starts a server which handles every client on its own thread.
+   *
+   * @param port the port to listen on
+   */
+  private static void runBlockingServer(int port) throws IOException {
+    try (ServerSocket serverSocket = new ServerSocket(port)) {
+      System.out.println("Server is now listening on " + port);
 
       while (true) {
         Socket socket = serverSocket.accept();
@@ -36,28 +103,168 @@ public class Server {
     }
   }
 
+  /**
+   * Starts a server which handles every client on its own virtual thread.
+   * Clients connecting while the connection limit is reached are closed
+   * right away.
+   *
+   * @param port           the port to listen on
+   * @param maxConnections the maximum number of clients served at once
+   */
+  private static void runVirtualThreadServer(int port, int maxConnections) throws IOException {
+    Semaphore admission = new Semaphore(maxConnections);
+
+    try (ServerSocket serverSocket = new ServerSocket(port);
+         ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      System.out.println("Server is now listening on " + port
+          + " (virtual thread mode, max connections: " + maxConnections + ")");
+
+      while (true) {
+        Socket socket = serverSocket.accept();
+        if (!admission.tryAcquire()) {
+          System.out.println("Connection limit reached, rejecting: " + socket.getRemoteSocketAddress());
+          socket.close();
+          continue;
+        }
+        executor.execute(() -> {
+          try {
+            handle(socket);
+          } finally {
+            admission.release();
+          }
+        });
+      }
+    }
+  }
+
   /**
    * Handles a client connection.
    *
+   * <p>Requests are pipelined: every request read from the socket is
+   * handled on its own virtual thread, and replies are written as soon as
+   * they are ready, which may be out of order. At most
+   * {@link #MAX_IN_FLIGHT_PER_CONNECTION} requests per connection are
+   * handled at once; reading pauses until one of them finishes.</p>
+   *
+   * <p>The client may ask for another framing before its first message,
+   * see {@link Protocol#acceptNegotiation()}.</p>
+   *
+   * <p>Messages pushed by the subscriptions of the client are sent from
+   * the request executor. The session of the client, with its
+   * subscriptions, ends when the client disconnects.</p>
+   *
    * @param socket the client socket
    */
   public static void handle(Socket socket) {
-    try (Protocol protocol = new Protocol(socket)) {
+    Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT_PER_CONNECTION);
+
+    try (Protocol protocol = new Protocol(socket, maxFrameSize)) {
       System.out.println("A client has connected: " + socket.getRemoteSocketAddress());
+      protocol.acceptNegotiation();
 
-      String message;
-      while ((message = protocol.readMessage()) != null) {
-        message = message.trim();
-        System.out.println(message);
-        String reply = commandHandler.handleCommand(message);
-        System.out.println(reply);
-        protocol.sendMessage(reply);
+      AtomicBoolean draining = new AtomicBoolean();
+      Session session = new Session(new PushQueue(pushes -> drainPushes(protocol, pushes, draining)));
+      try {
+        if (protocol.getCodec() == Codec.BINARY) {
+          handleBinary(protocol, session, inFlight);
+        } else {
+          handleJson(protocol, session, inFlight);
+        }
+      } finally {
+        session.close();
       }
     } catch (IOException e) {
       System.out.println("Client error: " + e.getMessage());
     }
   }
 
+  /**
+   * Handles the requests of a client that uses the JSON codec.
+   */
+  private static void handleJson(Protocol protocol, Session session, Semaphore inFlight)
+      throws IOException {
+    String message;
+    while ((message = protocol.readMessage()) != null) {
+      String request = message.trim();
+      System.out.println(request);
+      inFlight.acquireUninterruptibly();
+      requestExecutor.execute(() -> {
+        try {
+          String reply = commandHandler.handleCommand(request, session);
+          System.out.println(reply);
+          protocol.sendMessage(reply);
+        } catch (IOException e) {
+          System.out.println("Client error: " + e.getMessage());
+        } finally {
+          inFlight.release();
+        }
+      });
+    }
+
+    // Let the requests still in flight send their replies before closing
+    inFlight.acquireUninterruptibly(MAX_IN_FLIGHT_PER_CONNECTION);
+  }
+
+  /**
+   * Handles the requests of a client that negotiated the binary codec,
+   * pipelined the same way as JSON requests.
+   */
+  private static void handleBinary(Protocol protocol, Session session, Semaphore inFlight)
+      throws IOException {
+    byte[] frame;
+    while ((frame = protocol.readFrame()) != null) {
+      byte[] request = frame;
+      inFlight.acquireUninterruptibly();
+      requestExecutor.execute(() -> {
+        try {
+          protocol.sendFrame(CommandHandler.handleCommand(request, session));
+        } catch (IOException e) {
+          System.out.println("Client error: " + e.getMessage());
+        } finally {
+          inFlight.release();
+        }
+      });
+    }
+
+    // Let the requests still in flight send their replies before closing
+    inFlight.acquireUninterruptibly(MAX_IN_FLIGHT_PER_CONNECTION);
+  }
+
+  /**
+   * Sends the waiting pushes of a connection on the request executor,
+   * unless they are already being sent.
+   */
+  private static void drainPushes(Protocol protocol, PushQueue pushes, AtomicBoolean draining) {
+    if (!draining.compareAndSet(false, true)) {
+      return;
+    }
+    requestExecutor.execute(() -> {
+      try {
+        Message push;
+        while ((push = pushes.poll()) != null) {
+          protocol.send(push);
+        }
+      } catch (IOException e) {
+        System.out.println("Client error: " + e.getMessage());
+      } finally {
+        draining.set(false);
+      }
+      // A push may have arrived after the last poll, but before draining was reset
+      if (!pushes.isEmpty()) {
+        drainPushes(protocol, pushes, draining);
+      }
+    });
+  }
+
+  /**
+   * Gets the executor that pipelined requests are handled on.
+   *
+   * @return the request executor
+   */
+  public static ExecutorService getRequestExecutor() {
+    return requestExecutor;
+  }
+
   /**
    * Gets the greenhouse registry.
    *
@@ -66,4 +273,22 @@ public class Server {
   public static GreenhouseRegistry getGreenhouseRegistry() {
     return greenhouseRegistry;
   }
-}
\ No newline at end of file
+
+  /**
+   * Gets the write-ahead log that changes are written to.
+   *
+   * @return the write-ahead log, or null if changes are not logged
+   */
+  public static WriteAheadLog getWriteAheadLog() {
+    return writeAheadLog;
+  }
+
+  /**
+   * Gets the cache of the reply to GET_ALL_GREENHOUSES.
+   *
+   * @return the greenhouse list cache
+   */
+  public static GreenhouseListCache getGreenhouseListCache() {
+    return greenhouseListCache;
+  }
+}
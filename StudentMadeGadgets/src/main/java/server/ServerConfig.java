@@ -0,0 +1,345 @@
+package server;
+
+import greenhouse.ClimateEngine;
+import greenhouse.GreenhouseRegistry;
+import java.nio.file.Path;
+import protocol.GreenhouseListCache;
+import protocol.Protocol;
+
+/**
+ * Startup options for the server.
+ */
+public class ServerConfig {
+  private int port = 6767;
+  private ServerMode mode = ServerMode.BLOCKING;
+  private int ioThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+  private int maxConnections = 10_000;
+  private int maxFrameSize = Protocol.DEFAULT_MAX_FRAME_SIZE;
+  private long listCacheMaxAge = GreenhouseListCache.DEFAULT_MAX_AGE_MILLIS;
+  private int metricsInterval = 0;
+  private int environmentThreads = ClimateEngine.DEFAULT_PARALLELISM;
+  private ClimateEngine.Mode climateMode = ClimateEngine.Mode.EAGER;
+  private Path walDirectory = null;
+  private int walSyncInterval = 10;
+  private int snapshotInterval = 60;
+  private int historyCapacity = 0;
+
+  /**
+   * Creates a config with the default options.
+   */
+  public ServerConfig() {}
+
+  /**
+   * Creates a config from command line arguments on the form
+   * {@code --option=value}, e.g. {@code --mode=nio --io-threads=2}.
+   * Options that are not given keep their default value.
+   *
+   * @param args the command line arguments
+   * @return the resulting config
+   * @throws IllegalArgumentException if an argument is not recognized
+   */
+  public static ServerConfig fromArgs(String[] args) {
+    ServerConfig config = new ServerConfig();
+
+    for (String arg : args) {
+      String[] option = arg.split("=", 2);
+      if (option.length != 2 || !option[0].startsWith("--")) {
+        throw new IllegalArgumentException("Invalid server option: " + arg);
+      }
+      String value = option[1];
+
+      switch (option[0]) {
+        case "--port" -> config.setPort(Integer.parseInt(value));
+        case "--mode" -> config.setMode(ServerMode.valueOf(value.toUpperCase()));
+        case "--io-threads" -> config.setIoThreads(Integer.parseInt(value));
+        case "--max-connections" -> config.setMaxConnections(Integer.parseInt(value));
+        case "--max-frame-size" -> config.setMaxFrameSize(Integer.parseInt(value));
+        case "--list-cache-max-age" -> config.setListCacheMaxAge(Long.parseLong(value));
+        case "--metrics-interval" -> config.setMetricsInterval(Integer.parseInt(value));
+        case "--environment-threads" -> config.setEnvironmentThreads(Integer.parseInt(value));
+        case "--climate-mode" -> config.setClimateMode(ClimateEngine.Mode.valueOf(value.toUpperCase()));
+        case "--wal-dir" -> config.setWalDirectory(Path.of(value));
+        case "--wal-sync-interval" -> config.setWalSyncInterval(Integer.parseInt(value));
+        case "--snapshot-interval" -> config.setSnapshotInterval(Integer.parseInt(value));
+        case "--history-capacity" -> config.setHistoryCapacity(Integer.parseInt(value));
+        default -> throw new IllegalArgumentException("Unknown server option: " + option[0]);
+      }
+    }
+    return config;
+  }
+
+  /**
+   * Gets the port the server listens on.
+   *
+   * @return the port number
+   */
+  public int getPort() {
+    return this.port;
+  }
+
+  /**
+   * Sets the port the server listens on.
+   *
+   * @param port the port number
+   */
+  public void setPort(int port) {
+    this.port = port;
+  }
+
+  /**
+   * Gets the way the server serves its connections.
+   *
+   * @return the server mode
+   */
+  public ServerMode getMode() {
+    return this.mode;
+  }
+
+  /**
+   * Sets the way the server serves its connections.
+   *
+   * @param mode the server mode
+   */
+  public void setMode(ServerMode mode) {
+    this.mode = mode;
+  }
+
+  /**
+   * Gets the number of I/O threads used in {@link ServerMode#NIO} mode.
+   *
+   * @return the number of I/O threads
+   */
+  public int getIoThreads() {
+    return this.ioThreads;
+  }
+
+  /**
+   * Sets the number of I/O threads used in {@link ServerMode#NIO} mode.
+   *
+   * @param ioThreads the number of I/O threads, at least 1
+   */
+  public void setIoThreads(int ioThreads) {
+    if (ioThreads < 1) {
+      throw new IllegalArgumentException("There must be at least one I/O thread");
+    }
+    this.ioThreads = ioThreads;
+  }
+
+  /**
+   * Gets the maximum number of clients served at once in
+   * {@link ServerMode#VIRTUAL} mode.
+   *
+   * @return the connection limit
+   */
+  public int getMaxConnections() {
+    return this.maxConnections;
+  }
+
+  /**
+   * Sets the maximum number of clients served at once in
+   * {@link ServerMode#VIRTUAL} mode.
+   *
+   * @param maxConnections the connection limit, at least 1
+   */
+  public void setMaxConnections(int maxConnections) {
+    if (maxConnections < 1) {
+      throw new IllegalArgumentException("The connection limit must be at least 1");
+    }
+    this.maxConnections = maxConnections;
+  }
+
+  /**
+   * Gets the largest message accepted from a client, in bytes.
+   *
+   * @return the maximum frame size
+   */
+  public int getMaxFrameSize() {
+    return this.maxFrameSize;
+  }
+
+  /**
+   * Sets the largest message accepted from a client, in bytes. Clients
+   * sending larger messages are disconnected.
+   *
+   * @param maxFrameSize the maximum frame size, at least 1
+   */
+  public void setMaxFrameSize(int maxFrameSize) {
+    if (maxFrameSize < 1) {
+      throw new IllegalArgumentException("The maximum frame size must be at least 1 byte");
+    }
+    this.maxFrameSize = maxFrameSize;
+  }
+
+  /**
+   * Gets how long the reply to GET_ALL_GREENHOUSES may be reused, in milliseconds.
+   *
+   * @return the maximum age of the cached greenhouse list
+   */
+  public long getListCacheMaxAge() {
+    return this.listCacheMaxAge;
+  }
+
+  /**
+   * Sets how long the reply to GET_ALL_GREENHOUSES may be reused, in
+   * milliseconds. The cached list is also dropped when a greenhouse is
+   * added or removed.
+   *
+   * @param listCacheMaxAge the maximum age, or 0 to turn the cache off
+   */
+  public void setListCacheMaxAge(long listCacheMaxAge) {
+    if (listCacheMaxAge < 0) {
+      throw new IllegalArgumentException("The list cache age can not be negative");
+    }
+    this.listCacheMaxAge = listCacheMaxAge;
+  }
+
+  /**
+   * Gets how often the server prints its metrics, in seconds.
+   *
+   * @return the metrics interval, 0 if metrics are not printed
+   */
+  public int getMetricsInterval() {
+    return this.metricsInterval;
+  }
+
+  /**
+   * Sets how often the server prints its metrics, see {@link ServerMetrics}.
+   *
+   * @param metricsInterval the interval in seconds, or 0 to not print metrics
+   */
+  public void setMetricsInterval(int metricsInterval) {
+    if (metricsInterval < 0) {
+      throw new IllegalArgumentException("The metrics interval can not be negative");
+    }
+    this.metricsInterval = metricsInterval;
+  }
+
+  /**
+   * Gets the number of threads that update the environment of the greenhouses.
+   *
+   * @return the number of environment threads
+   */
+  public int getEnvironmentThreads() {
+    return this.environmentThreads;
+  }
+
+  /**
+   * Sets the number of threads that update the environment of the
+   * greenhouses, see {@link ClimateEngine}.
+   *
+   * @param environmentThreads the number of environment threads, at least 1
+   */
+  public void setEnvironmentThreads(int environmentThreads) {
+    if (environmentThreads < 1) {
+      throw new IllegalArgumentException("There must be at least 1 environment thread");
+    }
+    this.environmentThreads = environmentThreads;
+  }
+
+  /**
+   * Gets when the climate of the greenhouses is computed.
+   *
+   * @return the climate mode
+   */
+  public ClimateEngine.Mode getClimateMode() {
+    return this.climateMode;
+  }
+
+  /**
+   * Sets when the climate of the greenhouses is computed: on every tick,
+   * or only when a greenhouse is read.
+   *
+   * @param climateMode the climate mode
+   */
+  public void setClimateMode(ClimateEngine.Mode climateMode) {
+    this.climateMode = climateMode;
+  }
+
+  /**
+   * Gets the directory of the write-ahead log.
+   *
+   * @return the log directory, or null if changes are not logged
+   */
+  public Path getWalDirectory() {
+    return this.walDirectory;
+  }
+
+  /**
+   * Sets the directory of the write-ahead log, see {@link WriteAheadLog}.
+   * The log in it is replayed when the server starts.
+   *
+   * @param walDirectory the log directory, or null to not log changes
+   */
+  public void setWalDirectory(Path walDirectory) {
+    this.walDirectory = walDirectory;
+  }
+
+  /**
+   * Gets the time between two syncs of the write-ahead log, in milliseconds.
+   *
+   * @return the sync interval, 0 if the log is synced on every change
+   */
+  public int getWalSyncInterval() {
+    return this.walSyncInterval;
+  }
+
+  /**
+   * Sets the time between two syncs of the write-ahead log, in milliseconds.
+   * A longer interval lets more changes share one sync, but requests that
+   * change something wait longer for their reply.
+   *
+   * @param walSyncInterval the sync interval, or 0 to sync on every change
+   */
+  public void setWalSyncInterval(int walSyncInterval) {
+    if (walSyncInterval < 0) {
+      throw new IllegalArgumentException("The write-ahead log sync interval can not be negative");
+    }
+    this.walSyncInterval = walSyncInterval;
+  }
+
+  /**
+   * Gets how often a snapshot of the registry is taken, in seconds.
+   *
+   * @return the snapshot interval, 0 if no snapshots are taken
+   */
+  public int getSnapshotInterval() {
+    return this.snapshotInterval;
+  }
+
+  /**
+   * Sets how often a snapshot of the registry is taken when there is a
+   * write-ahead log, see {@link RegistrySnapshot}. Startup only replays
+   * the log written after the last snapshot.
+   *
+   * @param snapshotInterval the interval in seconds, or 0 to take no snapshots
+   */
+  public void setSnapshotInterval(int snapshotInterval) {
+    if (snapshotInterval < 0) {
+      throw new IllegalArgumentException("The snapshot interval can not be negative");
+    }
+    this.snapshotInterval = snapshotInterval;
+  }
+
+  /**
+   * Gets the number of readings kept per sensor in new greenhouses.
+   *
+   * @return the history capacity, 0 if no readings are kept
+   */
+  public int getHistoryCapacity() {
+    return this.historyCapacity;
+  }
+
+  /**
+   * Sets the number of readings kept per sensor in new greenhouses, see
+   * {@link GreenhouseRegistry#setHistoryCapacity(int)}. Every reading takes
+   * 16 bytes, and one is recorded per sensor on every climate tick.
+   *
+   * @param historyCapacity the number of readings per sensor, or 0 to keep none
+   */
+  public void setHistoryCapacity(int historyCapacity) {
+    if (historyCapacity < 0) {
+      throw new IllegalArgumentException("The history capacity can not be negative");
+    }
+    this.historyCapacity = historyCapacity;
+  }
+}
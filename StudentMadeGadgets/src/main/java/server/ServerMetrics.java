@@ -0,0 +1,43 @@
+package server;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import protocol.GreenhouseListCache;
+
+/**
+ * Metrics of the running server, printed at a fixed interval when the
+ * server is started with {@code --metrics-interval}.
+ */
+public final class ServerMetrics {
+
+  private ServerMetrics() {}
+
+  /**
+   * Creates a one line summary of the current metrics.
+   *
+   * @return the metrics line
+   */
+  public static String format() {
+    GreenhouseListCache listCache = Server.getGreenhouseListCache();
+    return "Metrics: greenhouses=" + Server.getGreenhouseRegistry().getAllGreenhouses().size()
+        + ", registry version=" + Server.getGreenhouseRegistry().getVersion()
+        + ", list cache hits=" + listCache.getHits()
+        + ", list cache misses=" + listCache.getMisses();
+  }
+
+  /**
+   * Starts printing the metrics on a background thread.
+   *
+   * @param intervalSeconds the time between two metrics lines
+   */
+  static void startReporting(int intervalSeconds) {
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "server-metrics");
+      thread.setDaemon(true);
+      return thread;
+    });
+    reporter.scheduleAtFixedRate(() -> System.out.println(format()),
+        intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,23 @@
+package server;
+
+/**
+ * The ways the server can serve its client connections.
+ */
+public enum ServerMode {
+  /**
+   * One platform thread per connection, blocking on socket reads.
+   */
+  BLOCKING,
+
+  /**
+   * A small, fixed number of I/O threads multiplexing all connections
+   * on non-blocking channels.
+   */
+  NIO,
+
+  /**
+   * One virtual thread per connection, blocking on socket reads
+   * without tying up a platform thread while doing so.
+   */
+  VIRTUAL
+}
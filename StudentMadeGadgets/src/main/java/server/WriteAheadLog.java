@@ -0,0 +1,581 @@
+package server;
+
+import actuator.Actuator;
+import greenhouse.Greenhouse;
+import greenhouse.GreenhouseRegistry;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import protocol.CommandHandler;
+import sensor.Sensor;
+
+/**
+ * An append-only log of the changes made to the greenhouses, their sensors
+ * and their actuators, so they can be restored when the server is started
+ * again.
+ *
+ * <p>Every change is written as one record with a log sequence number
+ * (LSN), counting up from 1, and a CRC32 checksum. Records are collected in
+ * memory and written with a single fsync for all of them once per sync
+ * interval, so many requests share one disk flush (group commit). A request
+ * that changed something waits until its record is on disk before it is
+ * answered.</p>
+ *
+ * <p>The log is split in segment files, named after the first LSN they
+ * hold. A new segment is started by {@link #rotate()} when a snapshot of
+ * the registry is taken, so the segments before it can be deleted once the
+ * snapshot is written, see {@link RegistrySnapshot}.</p>
+ *
+ * <p>When the log is opened, the records after the snapshot are replayed
+ * into the registry. Replaying is idempotent: a record whose effect is
+ * already there, such as a greenhouse at an ID in use, is skipped. A torn
+ * record at the end, left by a crash while it was written, is cut off.</p>
+ *
+ * <p>A record is laid out as its length, the LSN, the record type, the
+ * fields of the record, and the checksum of the LSN, type and fields.</p>
+ */
+public final class WriteAheadLog implements AutoCloseable {
+  private static final String SEGMENT_PREFIX = "greenhouses-";
+  private static final String SEGMENT_SUFFIX = ".wal";
+
+  private static final byte CREATE_GREENHOUSE = 1;
+  private static final byte REMOVE_GREENHOUSE = 2;
+  private static final byte ADD_SENSOR = 3;
+  private static final byte ADD_ACTUATOR = 4;
+  private static final byte ACTUATOR_STATE = 5;
+  // Larger lengths can only come from a torn or corrupt record
+  private static final int MAX_RECORD_SIZE = 1 << 20;
+
+  private final Path directory;
+  private final ScheduledExecutorService syncer;
+  private final long replayed;
+  // The open segment and its first LSN, only changed with flushLock held
+  private FileChannel channel;
+  private long segmentLsn;
+
+  // Guards the fields below; flushLock makes sure only one sync writes at a time
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition synced = lock.newCondition();
+  private final ReentrantLock flushLock = new ReentrantLock();
+  private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+  private long lastLsn;
+  private long durableLsn;
+  private IOException failure;
+  private boolean closed;
+
+  private WriteAheadLog(Path directory, FileChannel channel, long segmentLsn, long lastLsn, long replayed,
+                        int syncIntervalMillis) {
+    this.directory = directory;
+    this.channel = channel;
+    this.segmentLsn = segmentLsn;
+    this.lastLsn = lastLsn;
+    this.durableLsn = lastLsn;
+    this.replayed = replayed;
+    if (syncIntervalMillis > 0) {
+      this.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "write-ahead-log");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.syncer.scheduleWithFixedDelay(this::syncQuietly,
+          syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    } else {
+      this.syncer = null;
+    }
+  }
+
+  /**
+   * Opens the log in a directory, replays the records written after a
+   * snapshot into a registry, and makes it ready for new records.
+   *
+   * @param directory          the log directory, created if it does not exist
+   * @param syncIntervalMillis the time between two syncs of the log, or 0 to
+   *                           sync on every request
+   * @param registry           the registry the records are replayed into
+   * @param snapshotLsn        the LSN of the last record in the snapshot the
+   *                           registry was loaded from, or 0 if there is none
+   * @return the opened log
+   * @throws IOException if the log can not be read or written, has a record
+   *                     of an unknown type, or a torn record before its end
+   */
+  public static WriteAheadLog open(Path directory, int syncIntervalMillis, GreenhouseRegistry registry,
+                                   long snapshotLsn) throws IOException {
+    if (syncIntervalMillis < 0) {
+      throw new IllegalArgumentException("The sync interval can not be negative");
+    }
+    Files.createDirectories(directory);
+    List<Path> segments = listSegments(directory);
+    long previousLsn = 0;
+    long lastLsn = snapshotLsn;
+    long replayed = 0;
+    long validLength = 0;
+
+    for (int i = 0; i < segments.size(); i++) {
+      Path segment = segments.get(i);
+      boolean last = i == segments.size() - 1;
+      // Every record of the segment is in the snapshot if the next one starts after it
+      if (!last && firstLsn(segments.get(i + 1)) <= snapshotLsn + 1) {
+        continue;
+      }
+      validLength = 0;
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+        byte[] record;
+        while ((record = readRecord(in)) != null) {
+          long lsn = ByteBuffer.wrap(record, 0, Long.BYTES).getLong();
+          if (lsn <= previousLsn) {
+            break;
+          }
+          if (lsn > snapshotLsn) {
+            apply(new DataInputStream(new ByteArrayInputStream(record, Long.BYTES, record.length - Long.BYTES)),
+                registry);
+            lastLsn = lsn;
+            replayed++;
+          }
+          previousLsn = lsn;
+          validLength += Integer.BYTES + record.length + Integer.BYTES;
+        }
+      }
+      if (!last && validLength < Files.size(segment)) {
+        throw new IOException("Torn record in the write-ahead log before its end: " + segment);
+      }
+    }
+
+    Path current = segments.isEmpty() ? segmentPath(directory, lastLsn + 1) : segments.get(segments.size() - 1);
+    FileChannel channel = FileChannel.open(current,
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    if (channel.size() > validLength) {
+      System.out.println("Cutting off " + (channel.size() - validLength)
+          + " bytes of torn records at the end of " + current);
+      channel.truncate(validLength);
+      channel.force(true);
+    }
+    channel.position(validLength);
+    return new WriteAheadLog(directory, channel, firstLsn(current), lastLsn, replayed, syncIntervalMillis);
+  }
+
+  private static Path segmentPath(Path directory, long firstLsn) {
+    // Zero padded, so the names sort in LSN order
+    return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+  }
+
+  private static long firstLsn(Path segment) {
+    String name = segment.getFileName().toString();
+    return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  /**
+   * Lists the segments in a log directory, ordered by their first LSN.
+   */
+  private static List<Path> listSegments(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(file -> {
+            String name = file.getFileName().toString();
+            return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+          })
+          .sorted()
+          .toList();
+    }
+  }
+
+  /**
+   * Reads the LSN, type and fields of the next record.
+   *
+   * @return the record, or null at the end of the log or at a torn record
+   */
+  private static byte[] readRecord(DataInputStream in) throws IOException {
+    try {
+      int length = in.readInt();
+      if (length <= Long.BYTES || length > MAX_RECORD_SIZE) {
+        return null;
+      }
+      byte[] record = new byte[length];
+      in.readFully(record);
+      int checksum = in.readInt();
+      CRC32 crc = new CRC32();
+      crc.update(record);
+      return (int) crc.getValue() == checksum ? record : null;
+    } catch (EOFException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Applies one record to the registry, unless its effect is already there.
+   */
+  private static void apply(DataInputStream in, GreenhouseRegistry registry) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case CREATE_GREENHOUSE -> {
+        int id = in.readInt();
+        String name = in.readBoolean() ? in.readUTF() : null;
+        if (registry.getGreenhouse(id) == null) {
+          registry.restoreGreenhouse(id, new Greenhouse(name));
+        }
+      }
+      case REMOVE_GREENHOUSE -> registry.removeGreenhouse(in.readInt());
+      case ADD_SENSOR -> {
+        Greenhouse greenhouse = registry.getGreenhouse(in.readInt());
+        Sensor sensor = CommandHandler.createSensor(in.readUTF());
+        String sensorId = in.readUTF();
+        if (greenhouse != null && sensor != null) {
+          greenhouse.getSensorNode().addSensorToNode(sensor, sensorId);
+        }
+      }
+      case ADD_ACTUATOR -> {
+        Greenhouse greenhouse = registry.getGreenhouse(in.readInt());
+        Actuator actuator = CommandHandler.createActuator(in.readUTF());
+        String actuatorId = in.readUTF();
+        if (greenhouse != null && actuator != null) {
+          greenhouse.getSensorNode().addActuatorToNode(actuator, actuatorId);
+        }
+      }
+      case ACTUATOR_STATE -> {
+        Greenhouse greenhouse = registry.getGreenhouse(in.readInt());
+        String actuatorId = in.readUTF();
+        boolean on = in.readBoolean();
+        int power = in.readInt();
+        Actuator actuator = greenhouse == null ? null : greenhouse.getSensorNode().getActuator(actuatorId);
+        if (actuator != null) {
+          if (actuator.getPower() != power) {
+            actuator.setPower(power, greenhouse);
+          }
+          actuator.setState(on, greenhouse);
+        }
+      }
+      default -> throw new IOException("Unknown write-ahead log record type " + type);
+    }
+  }
+
+  /**
+   * Gets the number of records replayed when the log was opened.
+   *
+   * @return the number of replayed records
+   */
+  public long getReplayedRecords() {
+    return this.replayed;
+  }
+
+  /**
+   * Gets the LSN of the last record added to the log.
+   *
+   * @return the last LSN, 0 if the log is empty
+   */
+  public long getLastLsn() {
+    lock.lock();
+    try {
+      return this.lastLsn;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Adds a record of a new greenhouse.
+   *
+   * @param greenhouse the greenhouse, with the ID it was given
+   * @return the LSN of the record
+   */
+  public long logCreateGreenhouse(Greenhouse greenhouse) {
+    return append(CREATE_GREENHOUSE, out -> {
+      out.writeInt(greenhouse.getGreenhouseId());
+      String name = greenhouse.getGreenhouseName();
+      out.writeBoolean(name != null);
+      if (name != null) {
+        out.writeUTF(name);
+      }
+    });
+  }
+
+  /**
+   * Adds a record of a removed greenhouse.
+   *
+   * @param greenhouseId the ID of the greenhouse
+   * @return the LSN of the record
+   */
+  public long logRemoveGreenhouse(int greenhouseId) {
+    return append(REMOVE_GREENHOUSE, out -> out.writeInt(greenhouseId));
+  }
+
+  /**
+   * Adds a record of a sensor added to a greenhouse.
+   *
+   * @param greenhouseId the ID of the greenhouse
+   * @param sensor       the sensor, with the ID it was given
+   * @return the LSN of the record
+   */
+  public long logAddSensor(int greenhouseId, Sensor sensor) {
+    return append(ADD_SENSOR, out -> {
+      out.writeInt(greenhouseId);
+      out.writeUTF(sensor.getType());
+      out.writeUTF(sensor.getID());
+    });
+  }
+
+  /**
+   * Adds a record of an actuator added to a greenhouse.
+   *
+   * @param greenhouseId the ID of the greenhouse
+   * @param actuator     the actuator, with the ID it was given
+   * @return the LSN of the record
+   */
+  public long logAddActuator(int greenhouseId, Actuator actuator) {
+    return append(ADD_ACTUATOR, out -> {
+      out.writeInt(greenhouseId);
+      out.writeUTF(actuator.getType());
+      out.writeUTF(actuator.getID());
+    });
+  }
+
+  /**
+   * Adds a record of the state and power an actuator has now. The record
+   * holds the new values rather than the change, so replaying it twice does
+   * no harm.
+   *
+   * @param greenhouseId the ID of the greenhouse
+   * @param actuator     the actuator
+   * @return the LSN of the record
+   */
+  public long logActuatorState(int greenhouseId, Actuator actuator) {
+    return append(ACTUATOR_STATE, out -> {
+      out.writeInt(greenhouseId);
+      out.writeUTF(actuator.getID());
+      out.writeBoolean(actuator.isOn());
+      out.writeInt(actuator.getPower());
+    });
+  }
+
+  private interface RecordWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  /**
+   * Adds a record to the records waiting for the next sync.
+   *
+   * @throws UncheckedIOException if the fields of the record can not be written
+   */
+  private long append(byte type, RecordWriter fields) {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(body)) {
+      out.writeByte(type);
+      fields.write(out);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write a write-ahead log record", e);
+    }
+
+    lock.lock();
+    try {
+      if (closed) {
+        throw new IllegalStateException("The write-ahead log is closed");
+      }
+      long lsn = lastLsn + 1;
+      ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + body.size() + Integer.BYTES);
+      record.putInt(Long.BYTES + body.size()).putLong(lsn).put(body.toByteArray());
+      CRC32 crc = new CRC32();
+      crc.update(record.array(), Integer.BYTES, Long.BYTES + body.size());
+      record.putInt((int) crc.getValue());
+      pending.writeBytes(record.array());
+      lastLsn = lsn;
+      return lsn;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until a record is on disk. With a sync interval of 0 the log is
+   * synced right away, unless a sync for another request already wrote it.
+   *
+   * @param lsn the LSN of the record
+   * @throws UncheckedIOException if the log could not be written
+   */
+  public void awaitDurable(long lsn) {
+    try {
+      if (syncer == null) {
+        sync(lsn);
+        return;
+      }
+      lock.lock();
+      try {
+        while (durableLsn < lsn) {
+          if (failure != null) {
+            throw failure;
+          }
+          synced.awaitUninterruptibly();
+        }
+      } finally {
+        lock.unlock();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write the write-ahead log", e);
+    }
+  }
+
+  /**
+   * Writes all waiting records to disk with one fsync.
+   *
+   * @throws IOException if the log could not be written
+   */
+  public void sync() throws IOException {
+    sync(Long.MAX_VALUE);
+  }
+
+  /**
+   * Writes all waiting records to disk, unless the record with the given
+   * LSN is on disk already.
+   */
+  private void sync(long lsn) throws IOException {
+    flushLock.lock();
+    try {
+      ByteArrayOutputStream batch;
+      long batchLsn;
+      lock.lock();
+      try {
+        if (failure != null) {
+          throw failure;
+        }
+        if (durableLsn >= lsn) {
+          return;
+        }
+        batch = pending;
+        batchLsn = lastLsn;
+        pending = new ByteArrayOutputStream();
+      } finally {
+        lock.unlock();
+      }
+
+      try {
+        if (batch.size() > 0) {
+          ByteBuffer bytes = ByteBuffer.wrap(batch.toByteArray());
+          while (bytes.hasRemaining()) {
+            channel.write(bytes);
+          }
+          channel.force(false);
+        }
+      } catch (IOException e) {
+        lock.lock();
+        try {
+          failure = e;
+          synced.signalAll();
+        } finally {
+          lock.unlock();
+        }
+        throw e;
+      }
+
+      lock.lock();
+      try {
+        durableLsn = batchLsn;
+        synced.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /**
+   * Syncs the waiting records and starts a new segment, so the records up
+   * to now can be deleted once they are in a snapshot.
+   *
+   * @return the LSN of the last record in the old segments
+   * @throws IOException if the log could not be written
+   */
+  public long rotate() throws IOException {
+    flushLock.lock();
+    try {
+      sync();
+      long boundary;
+      lock.lock();
+      try {
+        boundary = durableLsn;
+      } finally {
+        lock.unlock();
+      }
+      if (boundary + 1 > segmentLsn) {
+        FileChannel next = FileChannel.open(segmentPath(directory, boundary + 1),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        channel.close();
+        channel = next;
+        segmentLsn = boundary + 1;
+      }
+      return boundary;
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /**
+   * Deletes the segments whose records are all in a snapshot. The open
+   * segment is never deleted.
+   *
+   * @param snapshotLsn the LSN of the last record in the snapshot
+   * @return the number of deleted segments
+   * @throws IOException if a segment could not be deleted
+   */
+  public int deleteSegmentsBefore(long snapshotLsn) throws IOException {
+    List<Path> segments = listSegments(directory);
+    int deleted = 0;
+    for (int i = 0; i < segments.size() - 1; i++) {
+      if (firstLsn(segments.get(i + 1)) <= snapshotLsn + 1 && Files.deleteIfExists(segments.get(i))) {
+        deleted++;
+      }
+    }
+    return deleted;
+  }
+
+  private void syncQuietly() {
+    try {
+      sync();
+    } catch (IOException e) {
+      System.out.println("Could not sync the write-ahead log: " + e.getMessage());
+      // Every later sync fails the same way, requests waiting for it get an error
+      syncer.shutdown();
+    }
+  }
+
+  /**
+   * Syncs the waiting records and closes the log. No records can be added
+   * after it is closed.
+   *
+   * @throws IOException if the log could not be written
+   */
+  @Override
+  public void close() throws IOException {
+    if (syncer != null) {
+      syncer.shutdown();
+    }
+    lock.lock();
+    try {
+      closed = true;
+    } finally {
+      lock.unlock();
+    }
+    flushLock.lock();
+    try {
+      sync();
+    } finally {
+      channel.close();
+      flushLock.unlock();
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package ui;
 
 import client.ControlPanelNode;
+import greenhouse.Greenhouse;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -128,12 +129,26 @@ public class TextBasedUi {
    */
   private void listAllGreenhouses() throws IOException {
     GreenhouseListData greenhouseListData = activeControlPanel.getAllGreenhouses();
-    for (int i = 0; i < greenhouseListData.getGreenhouses().size(); i++) {
-      String greenhouseName = greenhouseListData.getGreenhouses().get(i).getGreenhouseName();
-      System.out.println(i + 1 + ". " + greenhouseName);
+    for (Greenhouse greenhouse : greenhouseListData.getGreenhouses()) {
+      System.out.println(greenhouse.getGreenhouseId() + ". " + greenhouse.getGreenhouseName());
     }
   }
 
+  /**
+   * Gets the name of a greenhouse on the server.
+   *
+   * @param greenhouseId the ID of the greenhouse
+   * @return the name, or null if there is no greenhouse with the ID
+   */
+  private String getGreenhouseName(int greenhouseId) throws IOException {
+    for (Greenhouse greenhouse : activeControlPanel.getAllGreenhouses().getGreenhouses()) {
+      if (greenhouse.getGreenhouseId() == greenhouseId) {
+        return greenhouse.getGreenhouseName();
+      }
+    }
+    return null;
+  }
+
   /**
    * Selects a greenhouse to control.
    */
@@ -141,10 +156,9 @@ public class TextBasedUi {
     textHelper.displayHeader("Available Greenhouses:", "green");
     listAllGreenhouses();
 
-    int choice = textHelper.getUserChoice("Select greenhouse: ", 255);
-    GreenhouseListData greenhouseListData = activeControlPanel.getAllGreenhouses();
+    int choice = textHelper.getUserChoice("Select greenhouse: ", Integer.MAX_VALUE);
 
-    if (choice <= greenhouseListData.getGreenhouses().size()) {
+    if (getGreenhouseName(choice) != null) {
       greenhouseControlMenu(choice);
     } else {
       System.out.println("Invalid greenhouse selected");
@@ -156,8 +170,7 @@ public class TextBasedUi {
    * Menu for controlling a greenhouse.
    */
   private void greenhouseControlMenu(int greenhouseId) throws IOException {
-    GreenhouseListData greenhouseListData = activeControlPanel.getAllGreenhouses();
-    String greenhouseName = greenhouseListData.getGreenhouses().get(greenhouseId-1).getGreenhouseName();
+    String greenhouseName = getGreenhouseName(greenhouseId);
     textHelper.displayHeader("Connected to Greenhouse: " + greenhouseName, "green");
     System.out.println("1. View Sensor Data");
     System.out.println("2. View / Change Actuator Status");
@@ -181,8 +194,7 @@ public class TextBasedUi {
    * Menu for viewing sensor data.
    */
   private void viewSensorDataMenu(int greenhouseId) throws IOException {
-    GreenhouseListData greenhouseListData = activeControlPanel.getAllGreenhouses();
-    String greenhouseName = greenhouseListData.getGreenhouses().get(greenhouseId-1).getGreenhouseName();
+    String greenhouseName = getGreenhouseName(greenhouseId);
     textHelper.displayHeader("Sensor Data for Greenhouse " + greenhouseName, "yellow");
     HashMap<String, Pair<Double, String>> sensorData = activeControlPanel.getAllSensorData(greenhouseId).getSensorDataHashMap();
 
@@ -204,8 +216,7 @@ public class TextBasedUi {
    * Menu for viewing/changing actuator status.
    */
   private void viewChangeActuatorStatusMenu(int greenhouseId) throws IOException {
-    GreenhouseListData greenhouseListData = activeControlPanel.getAllGreenhouses();
-    String greenhouseName = greenhouseListData.getGreenhouses().get(greenhouseId-1).getGreenhouseName();
+    String greenhouseName = getGreenhouseName(greenhouseId);
     textHelper.displayHeader("Actuator Status for Greenhouse " + greenhouseName, "yellow");
     HashMap<String, Pair<Boolean, Integer>> actuatorData = activeControlPanel.getAllActuatorData(greenhouseId).getActuatorDataHashMap();
 
@@ -296,8 +307,7 @@ public class TextBasedUi {
   }
 
   private void addActuatorToSensorNodeMenu(int greenhouseId) throws IOException {
-    GreenhouseListData greenhouseListData = activeControlPanel.getAllGreenhouses();
-    String greenhouseName = greenhouseListData.getGreenhouses().get(greenhouseId-1).getGreenhouseName();
+    String greenhouseName = getGreenhouseName(greenhouseId);
     textHelper.displayHeader("Add actuator to sensor node in greenhouse " + greenhouseName, "magenta");
 
     System.out.println("1. Fan");
@@ -320,8 +330,7 @@ public class TextBasedUi {
   }
 
   private void addSensorToSensorNodeMenu(int greenhouseId) throws IOException {
-    GreenhouseListData greenhouseListData = activeControlPanel.getAllGreenhouses();
-    String greenhouseName = greenhouseListData.getGreenhouses().get(greenhouseId-1).getGreenhouseName();
+    String greenhouseName = getGreenhouseName(greenhouseId);
     textHelper.displayHeader("Add sensor to sensor node in greenhouse " + greenhouseName, "magenta");
 
     System.out.println("1. Humidity");
@@ -357,7 +366,7 @@ public class TextBasedUi {
    * Menu for removing a greenhouse from the server.
    */
   private void removeGreenhouseMenu() throws IOException {
-    int id = textHelper.getUserChoice("Enter ID of greenhouse to remove: ", 255);
+    int id = textHelper.getUserChoice("Enter ID of greenhouse to remove: ", Integer.MAX_VALUE);
 
     Information information = activeControlPanel.removeGreenhouse(id);
 
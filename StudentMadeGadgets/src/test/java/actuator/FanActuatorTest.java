@@ -4,8 +4,6 @@ import greenhouse.Greenhouse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.lang.reflect.Field;
-
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -48,45 +46,25 @@ class FanActuatorTest {
    * random environment changes during tests.
    */
   private void disableTimer() {
-    try {
-      Field timerField = Greenhouse.class.getDeclaredField("timer");
-      timerField.setAccessible(true);
-      Object timer = timerField.get(greenhouse);
-      timer.getClass().getMethod("cancel").invoke(timer);
-    } catch (Exception e) {
-      fail("Failed to disable greenhouse timer: " + e.getMessage());
-    }
+    greenhouse.stopEnvironmentUpdates();
   }
 
   /**
-   * Helper method to set the private 'temperature' field on Greenhouse.
+   * Helper method to set the temperature of the Greenhouse.
    *
-   * @param value temperature value to inject
+   * @param value temperature value to set
    */
   private void setTemperature(double value) {
-    try {
-      Field field = Greenhouse.class.getDeclaredField("temperature");
-      field.setAccessible(true);
-      field.setDouble(greenhouse, value);
-    } catch (Exception e) {
-      fail("Failed to set temperature via reflection: " + e.getMessage());
-    }
+    greenhouse.changeTemperature(value - greenhouse.getTemperature());
   }
 
   /**
-   * Helper method to get the private 'temperature' field on Greenhouse.
+   * Helper method to get the temperature of the Greenhouse.
    *
-   * @return the current temperature value stored in greenhouse
+   * @return the current temperature of the greenhouse
    */
   private double getTemperature() {
-    try {
-      Field field = Greenhouse.class.getDeclaredField("temperature");
-      field.setAccessible(true);
-      return field.getDouble(greenhouse);
-    } catch (Exception e) {
-      fail("Failed to read temperature via reflection: " + e.getMessage());
-      return Double.NaN;
-    }
+    return greenhouse.getTemperature();
   }
 
   /**
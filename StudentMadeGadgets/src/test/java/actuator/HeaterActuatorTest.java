@@ -4,8 +4,6 @@ import greenhouse.Greenhouse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.lang.reflect.Field;
-
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -45,14 +43,7 @@ class HeaterActuatorTest {
    * Prevents random temperature/light updates during tests.
    */
   private void disableTimer() {
-    try {
-      Field timerField = Greenhouse.class.getDeclaredField("timer");
-      timerField.setAccessible(true);
-      Object timer = timerField.get(greenhouse);
-      timer.getClass().getMethod("cancel").invoke(timer);
-    } catch (Exception e) {
-      fail("Failed to disable greenhouse timer: " + e.getMessage());
-    }
+    greenhouse.stopEnvironmentUpdates();
   }
 
   /**
@@ -4,8 +4,6 @@ import greenhouse.Greenhouse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.lang.reflect.Field;
-
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -44,14 +42,7 @@ class LightActuatorTest {
    * Disables the automatic timer in Greenhouse to prevent random light changes.
    */
   private void disableTimer() {
-    try {
-      Field timerField = Greenhouse.class.getDeclaredField("timer");
-      timerField.setAccessible(true);
-      Object timer = timerField.get(greenhouse);
-      timer.getClass().getMethod("cancel").invoke(timer);
-    } catch (Exception e) {
-      fail("Failed to disable greenhouse timer: " + e.getMessage());
-    }
+    greenhouse.stopEnvironmentUpdates();
   }
 
   /**
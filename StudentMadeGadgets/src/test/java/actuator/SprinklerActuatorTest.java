@@ -4,8 +4,6 @@ import greenhouse.Greenhouse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.lang.reflect.Field;
-
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -23,7 +21,7 @@ import static org.junit.jupiter.api.Assertions.*;
  * </ul>
  * </p>
  *
- * <p>Greenhouse timer is disabled using reflection for deterministic execution.</p>
+ * <p>Greenhouse environment updates are stopped for deterministic execution.</p>
  */
 class SprinklerActuatorTest {
 
@@ -45,14 +43,7 @@ class SprinklerActuatorTest {
    * Disables internal Greenhouse timer to avoid random environmental changes.
    */
   private void disableTimer() {
-    try {
-      Field timerField = Greenhouse.class.getDeclaredField("timer");
-      timerField.setAccessible(true);
-      Object timer = timerField.get(greenhouse);
-      timer.getClass().getMethod("cancel").invoke(timer);
-    } catch (Exception e) {
-      fail("Failed to disable greenhouse timer: " + e.getMessage());
-    }
+    greenhouse.stopEnvironmentUpdates();
   }
 
   /**
@@ -0,0 +1,176 @@
+package client;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javafx.util.Pair;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import protocol.JSONHandler;
+import protocol.Message;
+import protocol.Protocol;
+import protocol.command.Command;
+import protocol.command.Information;
+import protocol.command.SensorData;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the class AsyncControlPanelNode against a scripted server, which
+ * answers the requests of the node in the order the test chooses.
+ */
+class AsyncControlPanelNodeTest {
+
+  private ServerSocket serverSocket;
+  private AsyncControlPanelNode node;
+  private Protocol server;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    serverSocket = new ServerSocket(0);
+    node = new AsyncControlPanelNode("localhost", serverSocket.getLocalPort());
+    node.connect();
+    server = new Protocol(serverSocket.accept());
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    node.disconnect();
+    server.close();
+    serverSocket.close();
+  }
+
+  private Message receive() throws IOException {
+    return JSONHandler.deserializeFromJSONToMessage(server.readMessage());
+  }
+
+  private void send(Message message) throws IOException {
+    server.sendMessage(JSONHandler.serializeMessageToJSON(message));
+  }
+
+  private static Message reply(Message request, String messageType, Command body) {
+    Message reply = new Message();
+    reply.setMessageType(messageType);
+    reply.setMessageID("reply-" + request.getMessageID());
+    reply.setCorrelationID(request.getMessageID());
+    reply.setBody(body);
+    return reply;
+  }
+
+  /**
+   * Tests that replies sent in another order than the requests complete
+   * the future of the request they answer.
+   * Expected outcome: each future gets the reply with its own name.
+   */
+  @Test
+  void request_Positive_MatchesRepliesByCorrelationId() throws Exception {
+    // Arrange
+    CompletableFuture<Information> first = node.createGreenhouse("First");
+    CompletableFuture<Information> second = node.createGreenhouse("Second");
+    Message firstRequest = receive();
+    Message secondRequest = receive();
+
+    // Act
+    send(reply(secondRequest, "INFORMATION", new Information("Second")));
+    send(reply(firstRequest, "INFORMATION", new Information("First")));
+
+    // Assert
+    assertEquals("First", first.get(5, TimeUnit.SECONDS).getInformation());
+    assertEquals("Second", second.get(5, TimeUnit.SECONDS).getInformation());
+    assertEquals(0, node.getPendingRequestCount());
+  }
+
+  /**
+   * Tests that an ERROR reply completes the future of its request exceptionally.
+   * Expected outcome: ExecutionException caused by an IOException with the error.
+   */
+  @Test
+  void request_Negative_ErrorReplyFailsFuture() throws Exception {
+    // Arrange
+    CompletableFuture<Information> future = node.removeGreenhouse(42);
+    Message request = receive();
+
+    // Act
+    send(reply(request, "ERROR", new Information("No greenhouse with id 42")));
+
+    // Assert
+    ExecutionException error = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+    assertInstanceOf(IOException.class, error.getCause());
+    assertTrue(error.getCause().getMessage().contains("No greenhouse with id 42"));
+  }
+
+  /**
+   * Tests that a request without a reply times out, and is no longer pending.
+   * Expected outcome: ExecutionException caused by a TimeoutException, and no pending requests.
+   */
+  @Test
+  void request_Negative_TimesOutWithoutReply() throws Exception {
+    // Arrange
+    node.setRequestTimeout(Duration.ofMillis(100));
+
+    // Act
+    CompletableFuture<Information> future = node.createGreenhouse("Unanswered");
+    receive();
+
+    // Assert
+    ExecutionException error = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+    assertInstanceOf(TimeoutException.class, error.getCause());
+    assertEquals(0, node.getPendingRequestCount());
+  }
+
+  /**
+   * Tests that closing the connection fails the requests still waiting for a reply.
+   * Expected outcome: ExecutionException caused by an IOException, and no pending requests.
+   */
+  @Test
+  void disconnect_Negative_FailsPendingRequests() throws Exception {
+    // Arrange
+    CompletableFuture<Information> future = node.createGreenhouse("Pending");
+    receive();
+
+    // Act
+    node.disconnect();
+
+    // Assert
+    ExecutionException error = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+    assertInstanceOf(IOException.class, error.getCause());
+    assertEquals(0, node.getPendingRequestCount());
+  }
+
+  /**
+   * Tests that pushed messages go to the listener of their subscription,
+   * also when the first push arrives before the reply to the SUBSCRIBE.
+   * Expected outcome: the listener gets both pushes, and the future the subscription ID.
+   */
+  @Test
+  void subscribe_Positive_RoutesPushesToListener() throws Exception {
+    // Arrange
+    CopyOnWriteArrayList<Message> pushes = new CopyOnWriteArrayList<>();
+    CompletableFuture<String> subscription = node.subscribe(1, "SENSOR", pushes::add);
+    Message request = receive();
+    HashMap<String, Pair<Double, String>> readings = new HashMap<>();
+    readings.put("Temperature-1", new Pair<>(14.0, "C"));
+
+    // Act
+    send(reply(request, "SENSOR_DATA", new SensorData(readings)));
+    send(reply(request, "INFORMATION", new Information("Subscribed")));
+    String subscriptionId = subscription.get(5, TimeUnit.SECONDS);
+    send(reply(request, "SENSOR_DATA", new SensorData(readings)));
+    // The reply to a later request is read after the push
+    CompletableFuture<Information> later = node.createGreenhouse("Later");
+    send(reply(receive(), "INFORMATION", new Information("Later")));
+    later.get(5, TimeUnit.SECONDS);
+
+    // Assert
+    assertEquals(request.getMessageID(), subscriptionId);
+    assertEquals(2, pushes.size());
+    assertEquals("SENSOR_DATA", pushes.get(0).getMessageType());
+  }
+}
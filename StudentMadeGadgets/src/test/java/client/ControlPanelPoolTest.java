@@ -0,0 +1,175 @@
+package client;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the class ControlPanelPool. The pooled nodes connect to a server
+ * socket that is never read from, since no requests are made.
+ */
+class ControlPanelPoolTest {
+
+  private ServerSocket serverSocket;
+  private ControlPanelPool pool;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    serverSocket = new ServerSocket(0);
+    pool = new ControlPanelPool("localhost", serverSocket.getLocalPort(), 2);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    pool.close();
+    serverSocket.close();
+  }
+
+  /**
+   * Tests that no more nodes are lent out than the size of the pool.
+   * Expected outcome: two different nodes, then an IOException after the timeout.
+   */
+  @Test
+  void borrow_Negative_WaitsWhileAllNodesAreBorrowed() throws IOException {
+    // Arrange
+    ControlPanelNode first = pool.borrow();
+    ControlPanelNode second = pool.borrow();
+
+    // Act & Assert
+    assertNotSame(first, second);
+    assertThrows(IOException.class, () -> pool.borrow(100, TimeUnit.MILLISECONDS));
+    pool.release(first);
+    pool.release(second);
+  }
+
+  /**
+   * Tests that a released node is lent out again instead of opening a new connection.
+   * Expected outcome: the same, still connected node.
+   */
+  @Test
+  void release_Positive_ReusesReleasedNode() throws IOException {
+    // Arrange
+    ControlPanelNode node = pool.borrow();
+
+    // Act
+    pool.release(node);
+    ControlPanelNode again = pool.borrow(100, TimeUnit.MILLISECONDS);
+
+    // Assert
+    assertSame(node, again);
+    assertTrue(again.isConnected());
+    pool.release(again);
+  }
+
+  /**
+   * Tests that execute gives the node back, also when the request fails.
+   * Expected outcome: the IOException of the request, and every node can be borrowed again.
+   */
+  @Test
+  void execute_Positive_ReleasesNodeAfterFailure() throws IOException {
+    // Arrange
+    ControlPanelNode used = pool.execute(node -> node);
+
+    // Act
+    assertThrows(IOException.class, () -> pool.execute(node -> {
+      throw new IOException("Request failed");
+    }));
+    ControlPanelNode first = pool.borrow(100, TimeUnit.MILLISECONDS);
+    ControlPanelNode second = pool.borrow(100, TimeUnit.MILLISECONDS);
+
+    // Assert
+    assertTrue(first == used || second == used);
+    pool.release(first);
+    pool.release(second);
+  }
+
+  /**
+   * Tests that closing the pool closes the idle nodes right away, and the
+   * borrowed nodes when they are released.
+   * Expected outcome: the borrowed node stays connected until it is
+   * released, and no more nodes can be borrowed.
+   */
+  @Test
+  void close_Positive_ClosesBorrowedNodesOnRelease() throws IOException {
+    // Arrange
+    ControlPanelNode borrowed = pool.borrow();
+    ControlPanelNode idle = pool.borrow();
+    pool.release(idle);
+
+    // Act
+    pool.close();
+    boolean borrowedConnectedAfterClose = borrowed.isConnected();
+    pool.release(borrowed);
+
+    // Assert
+    assertFalse(idle.isConnected());
+    assertTrue(borrowedConnectedAfterClose);
+    assertFalse(borrowed.isConnected());
+    assertThrows(IOException.class, () -> pool.borrow(100, TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * Tests that a node whose connection the server closed is not lent out again.
+   * Expected outcome: the request fails, the node is no longer connected,
+   * and the next borrow gets a new, connected node.
+   */
+  @Test
+  void release_Negative_DropsNodeClosedByServer() throws Exception {
+    // Arrange
+    ControlPanelNode node = pool.borrow();
+    serverSocket.accept().close();
+
+    // Act
+    assertThrows(IOException.class, node::getAllGreenhouses);
+    pool.release(node);
+    ControlPanelNode next = pool.borrow(100, TimeUnit.MILLISECONDS);
+
+    // Assert
+    assertFalse(node.isConnected());
+    assertNotSame(node, next);
+    assertTrue(next.isConnected());
+    pool.release(next);
+  }
+
+  /**
+   * Tests that an idle node whose connection was closed meanwhile is
+   * disconnected instead of being lent out.
+   * Expected outcome: a new node, and the stale node has no socket left.
+   */
+  @Test
+  void borrow_Negative_DisconnectsStaleIdleNode() throws IOException {
+    // Arrange
+    ControlPanelNode stale = pool.borrow();
+    pool.release(stale);
+    stale.getSocket().close();
+
+    // Act
+    ControlPanelNode next = pool.borrow(100, TimeUnit.MILLISECONDS);
+
+    // Assert
+    assertNotSame(stale, next);
+    assertNull(stale.getSocket());
+    pool.release(next);
+  }
+
+  /**
+   * Tests that a failed connection does not use up a place in the pool.
+   * Expected outcome: every borrow fails with a connection error, not a timeout.
+   */
+  @Test
+  void borrow_Negative_FailedConnectionIsNotCounted() throws IOException {
+    // Arrange
+    serverSocket.close();
+
+    // Act & Assert
+    for (int i = 0; i < 3; i++) {
+      IOException error = assertThrows(IOException.class, () -> pool.borrow(100, TimeUnit.MILLISECONDS));
+      assertTrue(error.getMessage().startsWith("Failed to connect"));
+    }
+  }
+}
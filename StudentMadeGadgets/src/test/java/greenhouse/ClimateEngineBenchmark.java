@@ -0,0 +1,53 @@
+package greenhouse;
+
+/**
+ * Measures how many greenhouses a climate tick updates per second, for
+ * every parallelism from 1 up to the number of processors.
+ *
+ * <p>Not a unit test. Run it with:</p>
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes greenhouse.ClimateEngineBenchmark
+ * </pre>
+ * <p>An optional argument gives the number of greenhouses, 1000000 by default.</p>
+ */
+public class ClimateEngineBenchmark {
+  private static final int WARMUP_TICKS = 30;
+  private static final int MEASURED_TICKS = 20;
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args the number of greenhouses, optional
+   */
+  public static void main(String[] args) {
+    int greenhouses = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    ClimateEngine engine = new ClimateEngine();
+    for (int i = 0; i < greenhouses; i++) {
+      engine.attach(new Greenhouse(i, "Greenhouse " + i, 14, 60, 1000), 14, 60, 1000);
+    }
+
+    int processors = Runtime.getRuntime().availableProcessors();
+    double sequential = 0;
+    System.out.println(greenhouses + " greenhouses, " + processors + " processors");
+    for (int parallelism = 1; parallelism <= processors; parallelism++) {
+      engine.setParallelism(parallelism);
+      for (int i = 0; i < WARMUP_TICKS; i++) {
+        engine.tick();
+      }
+      long best = Long.MAX_VALUE;
+      for (int i = 0; i < MEASURED_TICKS; i++) {
+        long start = System.nanoTime();
+        engine.tick();
+        best = Math.min(best, System.nanoTime() - start);
+      }
+      double perSecond = greenhouses * 1e9 / best;
+      if (parallelism == 1) {
+        sequential = perSecond;
+      }
+      System.out.printf("parallelism %2d: %7.2f ms per tick, %6.1f M greenhouses/s, %.2fx%n",
+          parallelism, best / 1e6, perSecond / 1e6, perSecond / sequential);
+    }
+    engine.setParallelism(1);
+  }
+}
@@ -0,0 +1,287 @@
+package greenhouse;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+import sensor.SensorHistory;
+import sensor.TemperatureSensor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the class ClimateEngine.
+ */
+class ClimateEngineTest {
+
+  /**
+   * Tests that ticks keep the climate of every greenhouse within its limits,
+   * also for greenhouses in more than one chunk.
+   * Expected outcome: all values stay within their limits after many ticks.
+   */
+  @Test
+  void tick_Positive_KeepsValuesWithinLimits() {
+    // Arrange
+    ClimateEngine engine = new ClimateEngine();
+    ClimateEngine.Slot[] slots = new ClimateEngine.Slot[ClimateEngine.CHUNK_SIZE + 10];
+    for (int i = 0; i < slots.length; i++) {
+      slots[i] = engine.attach(new Greenhouse(i, "G" + i, 39.9, 99, 4990), 39.9, 99, 4990);
+    }
+
+    // Act
+    for (int i = 0; i < 50; i++) {
+      engine.tick();
+    }
+
+    // Assert
+    for (ClimateEngine.Slot slot : slots) {
+      assertTrue(slot.getTemperature() >= -5 && slot.getTemperature() <= 40);
+      assertTrue(slot.getHumidity() >= 0 && slot.getHumidity() <= 100);
+      assertTrue(slot.getLight() >= 0 && slot.getLight() <= 5000);
+    }
+    assertEquals(slots.length, engine.size());
+  }
+
+  /**
+   * Tests that a parallel tick updates the greenhouses of every chunk.
+   * Expected outcome: the light level changed somewhere in each chunk.
+   */
+  @Test
+  void tick_Positive_ParallelTickUpdatesEveryChunk() {
+    // Arrange
+    ClimateEngine engine = new ClimateEngine();
+    engine.setParallelism(4);
+    ClimateEngine.Slot[] slots = new ClimateEngine.Slot[ClimateEngine.CHUNK_SIZE * 5];
+    for (int i = 0; i < slots.length; i++) {
+      slots[i] = engine.attach(new Greenhouse(i, "G" + i, 20, 50, 1000), 20, 50, 1000);
+    }
+
+    // Act
+    engine.tick();
+
+    // Assert
+    for (int chunk = 0; chunk < 5; chunk++) {
+      boolean changed = false;
+      for (int i = chunk * ClimateEngine.CHUNK_SIZE; i < (chunk + 1) * ClimateEngine.CHUNK_SIZE; i++) {
+        changed |= slots[i].getLight() != 1000;
+      }
+      assertTrue(changed, "Chunk " + chunk + " was not updated");
+    }
+    engine.setParallelism(1);
+  }
+
+  /**
+   * Tests that only greenhouses with change listeners are told about a tick.
+   * Expected outcome: the listener is called once per tick, and no more after it is removed.
+   */
+  @Test
+  void tick_Positive_NotifiesWatchedGreenhouses() {
+    // Arrange
+    Greenhouse greenhouse = new Greenhouse("Watched");
+    AtomicInteger changes = new AtomicInteger();
+    Consumer<Greenhouse> listener = changed -> changes.incrementAndGet();
+    greenhouse.addChangeListener(listener);
+
+    // Act
+    ClimateEngine.getShared().tick();
+    greenhouse.removeChangeListener(listener);
+    ClimateEngine.getShared().tick();
+
+    // Assert
+    assertEquals(1, changes.get());
+    greenhouse.stopEnvironmentUpdates();
+  }
+
+  /**
+   * Tests that a greenhouse with a sensor history records a reading of its
+   * sensors on every tick.
+   * Expected outcome: one reading per tick, holding the current temperature.
+   */
+  @Test
+  void tick_Positive_RecordsSensorHistory() {
+    // Arrange
+    Greenhouse greenhouse = new Greenhouse("Recorded");
+    String sensorId = greenhouse.getSensorNode().addSensorToNode(new TemperatureSensor());
+    greenhouse.setHistoryCapacity(10);
+    long[] timestamps = new long[10];
+    double[] values = new double[10];
+
+    // Act
+    ClimateEngine.getShared().tick();
+    ClimateEngine.getShared().tick();
+    greenhouse.stopEnvironmentUpdates();
+
+    // Assert
+    SensorHistory history = greenhouse.getSensorNode().getHistory(sensorId);
+    assertEquals(2, history.copyTo(timestamps, values));
+    assertEquals(greenhouse.getTemperature(), values[1]);
+    assertTrue(timestamps[0] <= timestamps[1]);
+  }
+
+  /**
+   * Tests that a greenhouse failing on a tick does not keep the other
+   * watched greenhouses from being told about it.
+   * Expected outcome: the listener of the other greenhouse is called on every tick.
+   */
+  @Test
+  void tick_Negative_FailingGreenhouseDoesNotStopOthers() {
+    // Arrange
+    Greenhouse failing = new Greenhouse("Failing");
+    failing.getSensorNode().addSensorToNode(new TemperatureSensor() {
+      @Override public double read(Greenhouse greenhouse, Climate climate) {
+        throw new IllegalStateException("Sensor broke");
+      }
+    });
+    failing.setHistoryCapacity(10);
+    Greenhouse watched = new Greenhouse("Watched");
+    AtomicInteger changes = new AtomicInteger();
+    watched.addChangeListener(changed -> changes.incrementAndGet());
+
+    // Act
+    ClimateEngine.getShared().tick();
+    ClimateEngine.getShared().tick();
+    failing.stopEnvironmentUpdates();
+    watched.stopEnvironmentUpdates();
+
+    // Assert
+    assertEquals(2, changes.get());
+  }
+
+  /**
+   * Tests that a lazy engine goes through the same climate as an eager
+   * engine with the same seed, and only computes it when it is read.
+   * Expected outcome: the values are unchanged until the clock moves, then equal to the eager ones.
+   */
+  @Test
+  void tick_Positive_LazyMatchesEager() {
+    // Arrange
+    AtomicLong clock = new AtomicLong();
+    ClimateEngine eager = new ClimateEngine(42, clock::get);
+    ClimateEngine lazy = new ClimateEngine(42, clock::get);
+    lazy.setMode(ClimateEngine.Mode.LAZY);
+    ClimateEngine.Slot[] eagerSlots = new ClimateEngine.Slot[100];
+    ClimateEngine.Slot[] lazySlots = new ClimateEngine.Slot[100];
+    for (int i = 0; i < eagerSlots.length; i++) {
+      Greenhouse greenhouse = new Greenhouse(i, "G" + i, 20, 50, 1000);
+      eagerSlots[i] = eager.attach(greenhouse, 20, 50, 1000);
+      lazySlots[i] = lazy.attach(greenhouse, 20, 50, 1000);
+    }
+
+    // Act
+    lazy.tick();
+    double unchanged = lazySlots[0].getTemperature();
+    for (int i = 0; i < 25; i++) {
+      eager.tick();
+    }
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(ClimateEngine.TICK_MILLIS) * 25);
+
+    // Assert
+    assertEquals(20, unchanged, 1e-9);
+    for (int i = 0; i < eagerSlots.length; i++) {
+      assertEquals(eagerSlots[i].getTemperature(), lazySlots[i].getTemperature(), 1e-9);
+      assertEquals(eagerSlots[i].getHumidity(), lazySlots[i].getHumidity());
+      assertEquals(eagerSlots[i].getLight(), lazySlots[i].getLight());
+    }
+  }
+
+  /**
+   * Tests that switching between the modes continues from the same step.
+   * Expected outcome: an engine switched to lazy and back matches an engine that stayed eager.
+   */
+  @Test
+  void setMode_Positive_ContinuesFromSameStep() {
+    // Arrange
+    AtomicLong clock = new AtomicLong();
+    ClimateEngine eager = new ClimateEngine(7, clock::get);
+    ClimateEngine switching = new ClimateEngine(7, clock::get);
+    Greenhouse greenhouse = new Greenhouse(1, "G", 20, 50, 1000);
+    ClimateEngine.Slot eagerSlot = eager.attach(greenhouse, 20, 50, 1000);
+    ClimateEngine.Slot switchingSlot = switching.attach(greenhouse, 20, 50, 1000);
+
+    // Act
+    for (int i = 0; i < 3; i++) {
+      eager.tick();
+      switching.tick();
+    }
+    switching.setMode(ClimateEngine.Mode.LAZY);
+    for (int i = 0; i < 4; i++) {
+      eager.tick();
+    }
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(ClimateEngine.TICK_MILLIS) * 4);
+    switching.setMode(ClimateEngine.Mode.EAGER);
+    eager.tick();
+    switching.tick();
+
+    // Assert
+    assertEquals(eagerSlot.getTemperature(), switchingSlot.getTemperature(), 1e-9);
+    assertEquals(eagerSlot.getHumidity(), switchingSlot.getHumidity());
+    assertEquals(eagerSlot.getLight(), switchingSlot.getLight());
+  }
+
+  /**
+   * Tests that reads while another thread ticks always see the values of
+   * one whole step, never a mix of two steps.
+   * Expected outcome: every value read is one of the values the greenhouse went through.
+   */
+  @Test
+  void read_Positive_SeesWholeSteps() throws InterruptedException {
+    // Arrange
+    Greenhouse greenhouse = new Greenhouse(1, "G", 20, 50, 1000);
+    ClimateEngine reference = new ClimateEngine(3, System::nanoTime);
+    ClimateEngine.Slot referenceSlot = reference.attach(greenhouse, 20, 50, 1000);
+    Set<Climate> states = new HashSet<>();
+    states.add(referenceSlot.read());
+    for (int i = 0; i < 20_000; i++) {
+      reference.tick();
+      states.add(referenceSlot.read());
+    }
+    ClimateEngine engine = new ClimateEngine(3, System::nanoTime);
+    ClimateEngine.Slot slot = engine.attach(greenhouse, 20, 50, 1000);
+    Thread ticker = new Thread(() -> {
+      for (int i = 0; i < 20_000; i++) {
+        engine.tick();
+      }
+    });
+
+    // Act
+    ticker.start();
+    int reads = 0;
+    boolean allWhole = true;
+    while (ticker.isAlive() || reads == 0) {
+      allWhole &= states.contains(slot.read());
+      reads++;
+    }
+    ticker.join();
+
+    // Assert
+    assertTrue(allWhole);
+    assertEquals(referenceSlot.read(), slot.read());
+  }
+
+  /**
+   * Tests that a greenhouse keeps its values when it leaves the engine,
+   * and that its slot is used again for the next greenhouse.
+   * Expected outcome: the values are unchanged and the engine does not grow.
+   */
+  @Test
+  void cancel_Positive_KeepsValuesAndReusesSlot() {
+    // Arrange
+    ClimateEngine engine = ClimateEngine.getShared();
+    Greenhouse greenhouse = new Greenhouse("Leaving");
+    greenhouse.changeTemperature(2.5);
+    int sizeBefore = engine.size();
+
+    // Act
+    greenhouse.stopEnvironmentUpdates();
+    Greenhouse next = new Greenhouse("Arriving");
+
+    // Assert
+    assertEquals(16.5, greenhouse.getTemperature(), 1e-9);
+    assertEquals(60, greenhouse.getHumidity());
+    assertEquals(sizeBefore, engine.size());
+    next.stopEnvironmentUpdates();
+  }
+}
@@ -0,0 +1,294 @@
+package greenhouse;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import sensor.TemperatureSensor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the class GreenhouseRegistry.
+ */
+class GreenhouseRegistryTest {
+
+  private GreenhouseRegistry registry;
+
+  /**
+   * Initializes an empty registry before each test.
+   */
+  @BeforeEach
+  void setUp() {
+    registry = new GreenhouseRegistry();
+  }
+
+  /**
+   * Tests that an added greenhouse can be looked up by the returned ID.
+   * Expected outcome: the greenhouse has the given name.
+   */
+  @Test
+  void addGreenhouse_Positive_CanRetrieveById() {
+    // Arrange
+
+    // Act
+    int id = registry.addGreenhouse("North");
+
+    // Assert
+    assertEquals("North", registry.getGreenhouse(id).getGreenhouseName());
+  }
+
+  /**
+   * Tests that removing a greenhouse takes it out of the list.
+   * Expected outcome: removeGreenhouse returns true and one greenhouse is left.
+   */
+  @Test
+  void removeGreenhouse_Positive_RemovesFromList() {
+    // Arrange
+    int id = registry.addGreenhouse("North");
+    registry.addGreenhouse("South");
+
+    // Act
+    boolean removed = registry.removeGreenhouse(id);
+
+    // Assert
+    assertTrue(removed);
+    assertEquals(1, registry.getAllGreenhouses().size());
+  }
+
+  /**
+   * Tests that the returned list is a copy, so callers can not change the registry.
+   * Expected outcome: clearing the returned list leaves the registry unchanged.
+   */
+  @Test
+  void getAllGreenhouses_Positive_ReturnsCopy() {
+    // Arrange
+    registry.addGreenhouse("North");
+
+    // Act
+    ArrayList<Greenhouse> greenhouses = registry.getAllGreenhouses();
+    greenhouses.clear();
+
+    // Assert
+    assertEquals(1, registry.getAllGreenhouses().size());
+  }
+
+  /**
+   * Tests that removing an unknown ID does nothing.
+   * Expected outcome: removeGreenhouse returns false.
+   */
+  @Test
+  void removeGreenhouse_Negative_UnknownIdReturnsFalse() {
+    // Arrange
+    registry.addGreenhouse("North");
+
+    // Act
+    boolean removed = registry.removeGreenhouse(42);
+
+    // Assert
+    assertFalse(removed);
+    assertEquals(1, registry.getAllGreenhouses().size());
+  }
+
+  /**
+   * Tests that adding and removing greenhouses bumps the version, and that
+   * removing a greenhouse that does not exist does not.
+   * Expected outcome: the version goes up by one per change.
+   */
+  @Test
+  void getVersion_Positive_BumpedOnChange() {
+    // Arrange
+    long start = registry.getVersion();
+
+    // Act
+    int id = registry.addGreenhouse("North");
+    long afterAdd = registry.getVersion();
+    registry.removeGreenhouse(id + 1);
+    long afterFailedRemove = registry.getVersion();
+    registry.removeGreenhouse(id);
+
+    // Assert
+    assertEquals(start + 1, afterAdd);
+    assertEquals(afterAdd, afterFailedRemove);
+    assertEquals(start + 2, registry.getVersion());
+  }
+
+  /**
+   * Tests that removing a greenhouse stops its environment updates, and
+   * that putting it back starts them again.
+   * Expected outcome: the climate is not simulated after the removal, and
+   * simulated again after the insert.
+   */
+  @Test
+  void removeGreenhouse_Positive_StopsEnvironmentUpdates() {
+    // Arrange
+    Greenhouse greenhouse = new Greenhouse("North");
+    int id = registry.addGreenhouse(greenhouse);
+
+    // Act
+    registry.removeGreenhouse(id);
+    boolean simulatedAfterRemoval = greenhouse.isSimulated();
+    registry.insertGreenhouse(id, greenhouse);
+    boolean simulatedAfterInsert = greenhouse.isSimulated();
+
+    // Assert
+    assertFalse(simulatedAfterRemoval);
+    assertTrue(simulatedAfterInsert);
+    greenhouse.stopEnvironmentUpdates();
+  }
+
+  /**
+   * Tests that removing a greenhouse leaves the IDs of the others alone,
+   * and that its ID is not given to the next greenhouse.
+   * Expected outcome: the remaining greenhouse keeps its ID, the removed ID finds nothing.
+   */
+  @Test
+  void removeGreenhouse_Positive_KeepsOtherIds() {
+    // Arrange
+    int northId = registry.addGreenhouse("North");
+    int southId = registry.addGreenhouse("South");
+
+    // Act
+    registry.removeGreenhouse(northId);
+    int eastId = registry.addGreenhouse("East");
+
+    // Assert
+    assertEquals("South", registry.getGreenhouse(southId).getGreenhouseName());
+    assertEquals(southId, registry.getGreenhouse(southId).getGreenhouseId());
+    assertNull(registry.getGreenhouse(northId));
+    assertTrue(eastId > southId);
+  }
+
+  /**
+   * Tests that paging skips a chunk whose greenhouses were all removed.
+   * Expected outcome: only the greenhouses after the first chunk are listed, in ID order.
+   */
+  @Test
+  void getGreenhouses_Positive_SkipsRemovedChunk() {
+    // Arrange
+    for (int i = 0; i < GreenhouseRegistry.CHUNK_SIZE + 2; i++) {
+      registry.addGreenhouse(new Greenhouse(0, "G" + i, 20, 50, 1000));
+    }
+    for (int id = 1; id <= GreenhouseRegistry.CHUNK_SIZE; id++) {
+      registry.removeGreenhouse(id);
+    }
+    ArrayList<Greenhouse> page = new ArrayList<>();
+
+    // Act
+    int next = registry.getGreenhouses(null, 0, 10, Integer.MAX_VALUE, page);
+
+    // Assert
+    assertEquals(2, page.size());
+    assertEquals(GreenhouseRegistry.CHUNK_SIZE + 1, page.get(0).getGreenhouseId());
+    assertEquals(-1, next);
+    assertEquals(2, registry.getAllGreenhouses().size());
+  }
+
+  /**
+   * Tests that a greenhouse can not be put back at an ID that is in use.
+   * Expected outcome: an IllegalArgumentException is thrown.
+   */
+  @Test
+  void insertGreenhouse_Negative_UsedIdThrows() {
+    // Arrange
+    int id = registry.addGreenhouse(new Greenhouse(0, "North", 20, 50, 1000));
+    Greenhouse other = new Greenhouse(0, "South", 20, 50, 1000);
+
+    // Act & Assert
+    assertThrows(IllegalArgumentException.class, () -> registry.insertGreenhouse(id, other));
+  }
+
+  /**
+   * Tests that greenhouses are found by name, and no longer once removed.
+   * Expected outcome: both greenhouses named "North" are found in ID order, then only the one left.
+   */
+  @Test
+  void findGreenhouses_Positive_FollowsAddAndRemove() {
+    // Arrange
+    Greenhouse first = new Greenhouse(0, "North", 20, 50, 1000);
+    Greenhouse second = new Greenhouse(0, "North", 20, 50, 1000);
+    registry.addGreenhouse(first);
+    registry.addGreenhouse(new Greenhouse(0, "South", 20, 50, 1000));
+    registry.addGreenhouse(second);
+
+    // Act
+    List<Greenhouse> before = registry.findGreenhouses("North");
+    registry.removeGreenhouse(first);
+    List<Greenhouse> after = registry.findGreenhouses("North");
+
+    // Assert
+    assertEquals(List.of(first, second), before);
+    assertEquals(List.of(second), after);
+    assertTrue(registry.findGreenhouses("East").isEmpty());
+  }
+
+  /**
+   * Tests that a greenhouse is not added when one with the same name exists.
+   * Expected outcome: the existing greenhouse is returned and the registry is unchanged.
+   */
+  @Test
+  void addGreenhouseIfAbsent_Negative_ExistingNameIsKept() {
+    // Arrange
+    Greenhouse existing = new Greenhouse(0, "North", 20, 50, 1000);
+    registry.addGreenhouse(existing);
+    long version = registry.getVersion();
+
+    // Act
+    Greenhouse result = registry.addGreenhouseIfAbsent(new Greenhouse(0, "North", 20, 50, 1000));
+
+    // Assert
+    assertSame(existing, result);
+    assertEquals(version, registry.getVersion());
+    assertEquals(1, registry.getAllGreenhouses().size());
+  }
+
+  /**
+   * Tests that the device directory follows sensors added to and removed from
+   * registered greenhouses, and the greenhouses themselves.
+   * Expected outcome: the sensor is found in both greenhouses, then only in the one left.
+   */
+  @Test
+  void getDeviceDirectory_Positive_FollowsSensorsAndGreenhouses() {
+    // Arrange
+    Greenhouse first = new Greenhouse(0, "North", 20, 50, 1000);
+    Greenhouse second = new Greenhouse(0, "South", 20, 50, 1000);
+    String sensorId = first.getSensorNode().addSensorToNode(new TemperatureSensor());
+    registry.addGreenhouse(first);
+    registry.addGreenhouse(second);
+    second.getSensorNode().addSensorToNode(new TemperatureSensor());
+    DeviceDirectory directory = registry.getDeviceDirectory();
+
+    // Act
+    List<Greenhouse> before = directory.findSensor(sensorId);
+    registry.removeGreenhouse(first);
+    List<Greenhouse> after = directory.findSensor(sensorId);
+
+    // Assert
+    assertEquals(List.of(first, second), before);
+    assertEquals(List.of(second), after);
+    assertTrue(directory.findActuator(sensorId).isEmpty());
+  }
+
+  /**
+   * Tests that added greenhouses get the history capacity of the registry,
+   * unless they keep a history already.
+   * Expected outcome: the first greenhouse gets 60 readings per sensor, the second keeps 5.
+   */
+  @Test
+  void setHistoryCapacity_Positive_AppliesToAddedGreenhouses() {
+    // Arrange
+    registry.setHistoryCapacity(60);
+    Greenhouse plain = new Greenhouse(0, "North", 20, 50, 1000);
+    Greenhouse configured = new Greenhouse(0, "South", 20, 50, 1000);
+    configured.setHistoryCapacity(5);
+
+    // Act
+    registry.addGreenhouse(plain);
+    registry.addGreenhouse(configured);
+
+    // Assert
+    assertEquals(60, plain.getHistoryCapacity());
+    assertEquals(60, plain.getSensorNode().getHistoryCapacity());
+    assertEquals(5, configured.getHistoryCapacity());
+  }
+}
@@ -1,11 +1,12 @@
 package greenhouse;
 
 import client.SensorNode;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.lang.reflect.Field;
-import java.util.Timer;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -13,8 +14,8 @@ import static org.junit.jupiter.api.Assertions.*;
  * Unit tests for the {@link Greenhouse} class.
  *
  * <p>This test suite validates both positive and negative scenarios for the
- * greenhouse environment model. Automatic updates from the internal timer are
- * disabled during testing using reflection to ensure deterministic results.</p>
+ * greenhouse environment model. Automatic environment updates are stopped
+ * during testing to ensure deterministic results.</p>
  *
  * <p>The AAA (Arrange–Act–Assert) test structure is used consistently.</p>
  */
@@ -35,14 +36,7 @@ class GreenhouseTest {
    * Disables the internal timer to prevent random environmental updates.
    */
   private void disableTimer() {
-    try {
-      Field timerField = Greenhouse.class.getDeclaredField("timer");
-      timerField.setAccessible(true);
-      Timer timer = (Timer) timerField.get(greenhouse);
-      timer.cancel();
-    } catch (Exception e) {
-      fail("Failed to cancel greenhouse timer: " + e.getMessage());
-    }
+    greenhouse.stopEnvironmentUpdates();
   }
 
   /**
@@ -249,5 +243,39 @@ class GreenhouseTest {
     // Assert
     assertNull(greenhouse.getGreenhouseName());
   }
-}
 
+  /**
+   * Tests that a reader never sees the climate a greenhouse started with
+   * while its environment updates are stopped on another thread.
+   * Expected outcome: every read gets the changed climate.
+   */
+  @Test
+  void stopEnvironmentUpdates_Positive_ReadersNeverSeeStaleClimate() throws InterruptedException {
+    // Arrange
+    AtomicInteger staleReads = new AtomicInteger();
+    for (int i = 0; i < 200; i++) {
+      Greenhouse simulated = new Greenhouse("Raced house", new Climate(14, 60, 1000));
+      simulated.changeTemperature(100);
+      AtomicBoolean stopped = new AtomicBoolean();
+      Thread reader = new Thread(() -> {
+        // Keep reading until a read after the stop is done
+        boolean last = false;
+        while (!last) {
+          last = stopped.get();
+          if (simulated.getClimate().temperature() < 100) {
+            staleReads.incrementAndGet();
+          }
+        }
+      });
+      reader.start();
+
+      // Act
+      simulated.stopEnvironmentUpdates();
+      stopped.set(true);
+      reader.join();
+    }
+
+    // Assert
+    assertEquals(0, staleReads.get());
+  }
+}
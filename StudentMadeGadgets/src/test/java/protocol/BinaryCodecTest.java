@@ -0,0 +1,193 @@
+package protocol;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import javafx.util.Pair;
+import org.junit.jupiter.api.Test;
+import protocol.command.ActuatorCommand;
+import protocol.command.Batch;
+import protocol.command.DataRequest;
+import protocol.command.DeviceLocations;
+import protocol.command.GreenhouseSummary;
+import protocol.command.GreenhouseSummaryList;
+import protocol.command.SensorData;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the class BinaryCodec for round trips and malformed input.
+ */
+class BinaryCodecTest {
+
+  /**
+   * Tests that the header fields of a message survive encoding and decoding.
+   * Expected outcome: all header fields and the body are equal after the round trip.
+   */
+  @Test
+  void decode_Positive_RoundTripsHeaderAndBody() {
+    // Arrange
+    String messageID = UUID.randomUUID().toString();
+    Message message = new Message("ControlPanel", "Server", "DATA_REQUEST", messageID,
+        "not-a-uuid", 1_700_000_000_000L, new DataRequest(3, "ALL", "SENSOR"));
+
+    // Act
+    Message decoded = BinaryCodec.decode(BinaryCodec.encode(message));
+
+    // Assert
+    assertEquals("ControlPanel", decoded.getSource());
+    assertEquals("Server", decoded.getDestination());
+    assertEquals("DATA_REQUEST", decoded.getMessageType());
+    assertEquals(messageID, decoded.getMessageID());
+    assertEquals("not-a-uuid", decoded.getCorrelationID());
+    assertEquals(1_700_000_000_000L, decoded.getTimestamp());
+    DataRequest body = (DataRequest) decoded.getBody();
+    assertEquals(3, body.getGreenhouseID());
+    assertEquals("ALL", body.getDeviceID());
+    assertEquals("SENSOR", body.getdeviceType());
+  }
+
+  /**
+   * Tests that sensor readings keep their exact double value.
+   * Expected outcome: the decoded map equals the encoded map.
+   */
+  @Test
+  void decode_Positive_RoundTripsSensorReadings() {
+    // Arrange
+    HashMap<String, Pair<Double, String>> readings = new HashMap<>();
+    readings.put("Temperature-1", new Pair<>(21.123456789, "C"));
+    readings.put("Humidity-1", new Pair<>(-0.5, "%"));
+    Message message = new Message();
+    message.setMessageType("SENSOR_DATA");
+    message.setBody(new SensorData(readings));
+
+    // Act
+    SensorData decoded = (SensorData) BinaryCodec.decode(BinaryCodec.encode(message)).getBody();
+
+    // Assert
+    assertEquals(21.123456789, decoded.getSensorDataHashMap().get("Temperature-1").getKey());
+    assertEquals("C", decoded.getSensorDataHashMap().get("Temperature-1").getValue());
+    assertEquals(-0.5, decoded.getSensorDataHashMap().get("Humidity-1").getKey());
+  }
+
+  /**
+   * Tests that an actuator command with a power level and negative IDs round trips.
+   * Expected outcome: greenhouse ID, actuator ID and power are kept.
+   */
+  @Test
+  void decode_Positive_RoundTripsActuatorPower() {
+    // Arrange
+    Message message = new Message();
+    message.setMessageType("ACTUATOR_COMMAND");
+    message.setBody(new ActuatorCommand(-7, "Fan-1", 80));
+
+    // Act
+    ActuatorCommand decoded = (ActuatorCommand) BinaryCodec.decode(BinaryCodec.encode(message)).getBody();
+
+    // Assert
+    assertEquals(-7, decoded.getGreenhouseId());
+    assertEquals("Fan-1", decoded.getActuatorId());
+    assertEquals(80, decoded.getPower());
+  }
+
+  /**
+   * Tests that a UUID messageID is sent as 16 bytes instead of 36 characters.
+   * Expected outcome: the encoded message is smaller than the UUID string.
+   */
+  @Test
+  void encode_Positive_UuidIsCompact() {
+    // Arrange
+    Message message = new Message();
+    message.setMessageType("GET_ALL_GREENHOUSES");
+    message.setMessageID(UUID.randomUUID().toString());
+
+    // Act
+    byte[] encoded = BinaryCodec.encode(message);
+
+    // Assert
+    assertTrue(encoded.length < 36);
+  }
+
+  /**
+   * Tests that a truncated message is rejected.
+   * Expected outcome: IllegalArgumentException.
+   */
+  @Test
+  void decode_Negative_TruncatedMessageThrows() {
+    // Arrange
+    Message message = new Message();
+    message.setMessageType("CREATE_GREENHOUSE");
+    message.setMessageID(UUID.randomUUID().toString());
+    byte[] encoded = BinaryCodec.encode(message);
+
+    // Act & Assert
+    assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(encoded, 0, encoded.length - 3));
+  }
+  /**
+   * Tests that a batch inside a batch is rejected while it is decoded.
+   * Expected outcome: IllegalArgumentException.
+   */
+  @Test
+  void decode_Negative_NestedBatchThrows() {
+    // Arrange
+    Message outer = new Message();
+    outer.setMessageType("BATCH");
+    outer.setBody(new Batch(false).add("BATCH", new Batch(false)));
+    byte[] encoded = BinaryCodec.encode(outer);
+
+    // Act & Assert
+    assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(encoded));
+  }
+
+
+  /**
+   * Tests that greenhouse summaries keep the fields that were left out as null.
+   * Expected outcome: the decoded summaries, next offset and version equal the encoded ones.
+   */
+  @Test
+  void decode_Positive_RoundTripsGreenhouseSummaries() {
+    // Arrange
+    ArrayList<GreenhouseSummary> summaries = new ArrayList<>();
+    summaries.add(new GreenhouseSummary(1, "North", 0, null));
+    summaries.add(new GreenhouseSummary(2, null, null, 3));
+    Message message = new Message();
+    message.setMessageType("GREENHOUSE_SUMMARIES");
+    message.setBody(new GreenhouseSummaryList(summaries, -1, 42));
+
+    // Act
+    Message decoded = BinaryCodec.decode(BinaryCodec.encode(message));
+
+    // Assert
+    GreenhouseSummaryList body = (GreenhouseSummaryList) decoded.getBody();
+    assertEquals(-1, body.getNextOffset());
+    assertEquals(42, body.getVersion());
+    assertEquals("North", body.getGreenhouses().get(0).getGreenhouseName());
+    assertEquals(0, body.getGreenhouses().get(0).getSensorCount());
+    assertNull(body.getGreenhouses().get(0).getActuatorCount());
+    assertNull(body.getGreenhouses().get(1).getGreenhouseName());
+    assertNull(body.getGreenhouses().get(1).getSensorCount());
+    assertEquals(3, body.getGreenhouses().get(1).getActuatorCount());
+  }
+
+  /**
+   * Tests that the greenhouses holding a device survive a round trip.
+   * Expected outcome: the decoded device type, device ID and greenhouse IDs equal the encoded ones.
+   */
+  @Test
+  void decode_Positive_RoundTripsDeviceLocations() {
+    // Arrange
+    Message message = new Message();
+    message.setMessageType("DEVICE_LOCATIONS");
+    message.setBody(new DeviceLocations("SENSOR", "Temperature-1", new ArrayList<>(List.of(3, 1024, 70000))));
+
+    // Act
+    Message decoded = BinaryCodec.decode(BinaryCodec.encode(message));
+
+    // Assert
+    DeviceLocations body = (DeviceLocations) decoded.getBody();
+    assertEquals("SENSOR", body.getDeviceType());
+    assertEquals("Temperature-1", body.getDeviceId());
+    assertEquals(List.of(3, 1024, 70000), body.getGreenhouseIds());
+  }
+}
@@ -0,0 +1,263 @@
+package protocol;
+
+import greenhouse.Greenhouse;
+import greenhouse.GreenhouseRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import protocol.command.*;
+import sensor.TemperatureSensor;
+import server.Server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the batch and greenhouse listing of the class CommandHandler.
+ */
+class CommandHandlerTest {
+
+  private static Message batchRequest(Batch batch) {
+    Message request = new Message();
+    request.setMessageType("BATCH");
+    request.setMessageID("batch-1");
+    request.setBody(batch);
+    return request;
+  }
+
+  /**
+   * Tests that a batch without atomic mode runs every request, also after a failure,
+   * and that ID 0 refers to the greenhouse created in the batch.
+   * Expected outcome: one reply per request, and the sensor is added to the new greenhouse.
+   */
+  @Test
+  void handle_Positive_BatchRunsAllRequests() {
+    // Arrange
+    Batch batch = new Batch(false)
+        .add("CREATE_GREENHOUSE", new CreateGreenhouse("Batch house"))
+        .add("ADD_SENSOR", new AddSensor(0, "Unknown"))
+        .add("ADD_SENSOR", new AddSensor(0, "Temperature"));
+
+    // Act
+    Message reply = CommandHandler.handle(batchRequest(batch));
+
+    // Assert
+    BatchResult result = (BatchResult) reply.getBody();
+    assertEquals("BATCH_RESULT", reply.getMessageType());
+    assertEquals("batch-1", reply.getCorrelationID());
+    assertFalse(result.isRolledBack());
+    assertEquals(3, result.getResults().size());
+    assertEquals("ERROR", result.getResults().get(1).getMessageType());
+    assertEquals("INFORMATION", result.getResults().get(2).getMessageType());
+  }
+
+  /**
+   * Tests that an atomic batch stops at the first failure and undoes the earlier requests.
+   * Expected outcome: the batch is rolled back and no greenhouse was added.
+   */
+  @Test
+  void handle_Negative_AtomicBatchRollsBack() {
+    // Arrange
+    GreenhouseRegistry registry = Server.getGreenhouseRegistry();
+    int before = registry.getAllGreenhouses().size();
+    Batch batch = new Batch(true)
+        .add("CREATE_GREENHOUSE", new CreateGreenhouse("Doomed house"))
+        .add("ADD_ACTUATOR", new AddActuator(0, "Fan"))
+        .add("ADD_ACTUATOR", new AddActuator(0, "Unknown"))
+        .add("CREATE_GREENHOUSE", new CreateGreenhouse("Never created"));
+
+    // Act
+    Message reply = CommandHandler.handle(batchRequest(batch));
+
+    // Assert
+    BatchResult result = (BatchResult) reply.getBody();
+    assertTrue(result.isRolledBack());
+    assertEquals(3, result.getResults().size());
+    assertEquals(before, registry.getAllGreenhouses().size());
+  }
+
+  /**
+   * Tests that a request sent while an atomic batch runs waits for the
+   * batch, and does not see the changes it rolls back.
+   * Expected outcome: the request is only answered after the batch, without the added sensor.
+   */
+  @Test
+  void handle_Positive_RequestsWaitForAtomicBatch() throws Exception {
+    // Arrange
+    Greenhouse greenhouse = new Greenhouse("Locked house");
+    int id = Server.getGreenhouseRegistry().addGreenhouse(greenhouse);
+    CountDownLatch inBatch = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Thread batchThread = new Thread(() -> CommandHandler.handle(batchRequest(new Batch(true)
+        .add("ADD_SENSOR", new AddSensor(id, "Temperature"))
+        .add("ADD_SENSOR", new AddSensor(id, "Unknown")))));
+    greenhouse.addChangeListener(changed -> {
+      if (Thread.currentThread() == batchThread) {
+        inBatch.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    Message dataRequest = new Message();
+    dataRequest.setMessageType("DATA_REQUEST");
+    dataRequest.setBody(new DataRequest(id, "ALL", "SENSOR"));
+
+    // Act
+    batchThread.start();
+    assertTrue(inBatch.await(5, TimeUnit.SECONDS));
+    CompletableFuture<Message> reply = CompletableFuture.supplyAsync(() -> CommandHandler.handle(dataRequest));
+    Thread.sleep(100);
+    boolean answeredDuringBatch = reply.isDone();
+    release.countDown();
+    batchThread.join(5000);
+
+    // Assert
+    assertFalse(answeredDuringBatch);
+    SensorData data = (SensorData) reply.get(5, TimeUnit.SECONDS).getBody();
+    assertTrue(data.getSensorDataHashMap().isEmpty());
+    Server.getGreenhouseRegistry().removeGreenhouse(id);
+  }
+
+  /**
+   * Tests that a batch inside a batch is rejected.
+   * Expected outcome: the inner batch gets an ERROR reply.
+   */
+  @Test
+  void handle_Negative_NestedBatchIsRejected() {
+    // Arrange
+    Batch batch = new Batch(false).add("BATCH", new Batch(false));
+
+    // Act
+    Message reply = CommandHandler.handle(batchRequest(batch));
+
+    // Assert
+    BatchResult result = (BatchResult) reply.getBody();
+    assertEquals("ERROR", result.getResults().get(0).getMessageType());
+  }
+
+  /**
+   * Tests that a client with the current version of the greenhouse list gets
+   * NOT_MODIFIED, and a client with an older version gets the list.
+   * Expected outcome: NOT_MODIFIED without a body, then GREENHOUSE_LIST_DATA with the current version.
+   */
+  @Test
+  void handle_Positive_NotModifiedForKnownVersion() {
+    // Arrange
+    long version = Server.getGreenhouseRegistry().getVersion();
+    Message current = new Message();
+    current.setMessageType("GET_ALL_GREENHOUSES");
+    current.setBody(new GreenhouseListRequest(version));
+    Message outdated = new Message();
+    outdated.setMessageType("GET_ALL_GREENHOUSES");
+    outdated.setBody(new GreenhouseListRequest(version - 1));
+
+    // Act
+    Message notModified = CommandHandler.handle(current);
+    Message list = CommandHandler.handle(outdated);
+
+    // Assert
+    assertEquals("NOT_MODIFIED", notModified.getMessageType());
+    assertNull(notModified.getBody());
+    assertEquals("GREENHOUSE_LIST_DATA", list.getMessageType());
+    assertEquals(version, ((GreenhouseListData) list.getBody()).getVersion());
+  }
+
+  /**
+   * Tests that greenhouse summaries are filtered by name prefix, paged and
+   * only hold the fields asked for.
+   * Expected outcome: two pages of the three matching greenhouses, with
+   * sensor counts but without names.
+   */
+  @Test
+  void listGreenhouses_Positive_FiltersPagesAndProjects() {
+    // Arrange
+    GreenhouseRegistry registry = Server.getGreenhouseRegistry();
+    Greenhouse[] added = new Greenhouse[3];
+    for (int i = 0; i < added.length; i++) {
+      added[i] = new Greenhouse(0, "Summary test " + i, 20, 50, 1000);
+      registry.addGreenhouse(added[i]);
+    }
+    added[1].getSensorNode().addSensorToNode(new TemperatureSensor());
+    ArrayList<String> fields = new ArrayList<>(List.of(GreenhouseSummary.SENSOR_COUNT));
+
+    // Act
+    GreenhouseSummaryList first = CommandHandler.listGreenhouses(new GreenhouseQuery("Summary test", 0, 2, fields));
+    GreenhouseSummaryList second = CommandHandler.listGreenhouses(
+        new GreenhouseQuery("Summary test", first.getNextOffset(), 2, fields));
+
+    // Assert
+    assertEquals(2, first.getGreenhouses().size());
+    assertEquals(added[0].getGreenhouseId(), first.getGreenhouses().get(0).getGreenhouseId());
+    assertNull(first.getGreenhouses().get(0).getGreenhouseName());
+    assertEquals(1, first.getGreenhouses().get(1).getSensorCount());
+    assertNull(first.getGreenhouses().get(1).getActuatorCount());
+    assertEquals(1, second.getGreenhouses().size());
+    assertEquals(-1, second.getNextOffset());
+    for (Greenhouse greenhouse : added) {
+      registry.removeGreenhouse(greenhouse);
+    }
+  }
+
+  /**
+   * Tests that a greenhouse query with an unknown field or a negative offset is rejected.
+   * Expected outcome: an IllegalArgumentException is thrown in both cases.
+   */
+  @Test
+  void listGreenhouses_Negative_InvalidQueryThrows() {
+    // Arrange
+    GreenhouseQuery unknownField = new GreenhouseQuery(null, 0, 10, new ArrayList<>(List.of("temperature")));
+    GreenhouseQuery negativeOffset = new GreenhouseQuery(null, -1, 10, null);
+
+    // Act & Assert
+    assertThrows(IllegalArgumentException.class, () -> CommandHandler.listGreenhouses(unknownField));
+    assertThrows(IllegalArgumentException.class, () -> CommandHandler.listGreenhouses(negativeOffset));
+  }
+
+  /**
+   * Tests that creating a greenhouse if absent only adds it the first time,
+   * and that it can then be found by name.
+   * Expected outcome: the second request reports the greenhouse that exists, and
+   * FIND_GREENHOUSE returns only that one.
+   */
+  @Test
+  void handle_Positive_CreateIfAbsentAddsOnce() {
+    // Arrange
+    Message create = new Message();
+    create.setMessageType("CREATE_GREENHOUSE_IF_ABSENT");
+    create.setBody(new CreateGreenhouse("Unique house"));
+    Message find = new Message();
+    find.setMessageType("FIND_GREENHOUSE");
+    find.setBody(new GreenhouseLookup("Unique house"));
+
+    // Act
+    CommandHandler.handle(create);
+    Message second = CommandHandler.handle(create);
+    Message found = CommandHandler.handle(find);
+
+    // Assert
+    GreenhouseSummaryList summaries = (GreenhouseSummaryList) found.getBody();
+    assertEquals(1, summaries.getGreenhouses().size());
+    int id = summaries.getGreenhouses().get(0).getGreenhouseId();
+    assertEquals("Unique house already exists as greenhouse " + id + ".",
+        ((Information) second.getBody()).getInformation());
+    Server.getGreenhouseRegistry().removeGreenhouse(id);
+  }
+
+  /**
+   * Tests that a device lookup with an unknown device type is rejected.
+   * Expected outcome: an IllegalArgumentException is thrown.
+   */
+  @Test
+  void findDevice_Negative_UnknownTypeThrows() {
+    // Arrange
+    DeviceLookup lookup = new DeviceLookup("CAMERA", "Camera-1");
+
+    // Act & Assert
+    assertThrows(IllegalArgumentException.class, () -> CommandHandler.findDevice(lookup));
+  }
+}
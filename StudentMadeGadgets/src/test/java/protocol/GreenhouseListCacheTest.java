@@ -0,0 +1,59 @@
+package protocol;
+
+import greenhouse.GreenhouseRegistry;
+import org.junit.jupiter.api.Test;
+import protocol.command.CachedGreenhouseListData;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the class GreenhouseListCache.
+ */
+class GreenhouseListCacheTest {
+
+  /**
+   * Tests that the cached list is reused until the registry version changes.
+   * Expected outcome: the same list for the same version, a new list with
+   * the new greenhouse after a change, and the counters match.
+   */
+  @Test
+  void get_Positive_ReusedUntilVersionChanges() {
+    // Arrange
+    GreenhouseRegistry registry = new GreenhouseRegistry();
+    GreenhouseListCache cache = new GreenhouseListCache(registry);
+    cache.setMaxAgeMillis(60_000);
+
+    // Act
+    CachedGreenhouseListData first = cache.get(registry.getVersion());
+    CachedGreenhouseListData second = cache.get(registry.getVersion());
+    registry.addGreenhouse("Added");
+    CachedGreenhouseListData third = cache.get(registry.getVersion());
+
+    // Assert
+    assertSame(first, second);
+    assertNotSame(second, third);
+    assertEquals(first.getGreenhouses().size() + 1, third.getGreenhouses().size());
+    assertEquals(1, cache.getHits());
+    assertEquals(2, cache.getMisses());
+  }
+
+  /**
+   * Tests that a maximum age of 0 turns the cache off.
+   * Expected outcome: a new list on every call.
+   */
+  @Test
+  void get_Negative_ZeroMaxAgeNeverCaches() {
+    // Arrange
+    GreenhouseRegistry registry = new GreenhouseRegistry();
+    GreenhouseListCache cache = new GreenhouseListCache(registry);
+    cache.setMaxAgeMillis(0);
+
+    // Act
+    CachedGreenhouseListData first = cache.get(registry.getVersion());
+    CachedGreenhouseListData second = cache.get(registry.getVersion());
+
+    // Assert
+    assertNotSame(first, second);
+    assertEquals(0, cache.getHits());
+  }
+}
@@ -0,0 +1,119 @@
+package protocol;
+
+import java.util.HashMap;
+import javafx.util.Pair;
+import org.junit.jupiter.api.Test;
+import protocol.command.CreateGreenhouse;
+import protocol.command.SensorData;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the serialization and streaming deserialization of the class JSONHandler.
+ */
+class JSONHandlerTest {
+
+  /**
+   * Tests that a serialized message is read back with its body.
+   * Expected outcome: type, ID and body are equal after the round trip.
+   */
+  @Test
+  void deserializeFromJSONToMessage_Positive_RoundTripsSerializedMessage() {
+    // Arrange
+    Message message = new Message("ControlPanel", "Server", "CREATE_GREENHOUSE", "id-1", 42L,
+        new CreateGreenhouse("North"));
+
+    // Act
+    Message decoded = JSONHandler.deserializeFromJSONToMessage(JSONHandler.serializeMessageToJSON(message));
+
+    // Assert
+    assertEquals("CREATE_GREENHOUSE", decoded.getMessageType());
+    assertEquals("id-1", decoded.getMessageID());
+    assertEquals(42L, decoded.getTimestamp());
+    assertEquals("North", ((CreateGreenhouse) decoded.getBody()).getName());
+  }
+
+  /**
+   * Tests that a body sent before the messageType is still decoded.
+   * Expected outcome: the body is a CreateGreenhouse with the given name.
+   */
+  @Test
+  void deserializeFromJSONToMessage_Positive_BodyBeforeMessageType() {
+    // Arrange
+    String json = "{\"body\":{\"name\":\"South\"},\"messageType\":\"CREATE_GREENHOUSE\"}";
+
+    // Act
+    Message decoded = JSONHandler.deserializeFromJSONToMessage(json);
+
+    // Assert
+    assertEquals("South", ((CreateGreenhouse) decoded.getBody()).getName());
+  }
+
+  /**
+   * Tests that the body of an unknown message type is skipped.
+   * Expected outcome: the message is read, without a body.
+   */
+  @Test
+  void deserializeFromJSONToMessage_Positive_SkipsUnknownBody() {
+    // Arrange
+    String json = "{\"messageType\":\"UNKNOWN\",\"body\":{\"list\":[1,{\"a\":2}]},\"messageID\":\"x\"}";
+
+    // Act
+    Message decoded = JSONHandler.deserializeFromJSONToMessage(json);
+
+    // Assert
+    assertEquals("x", decoded.getMessageID());
+    assertNull(decoded.getBody());
+  }
+
+  /**
+   * Tests that a message without a messageType is rejected.
+   * Expected outcome: IllegalArgumentException.
+   */
+  @Test
+  void deserializeFromJSONToMessage_Negative_MissingMessageTypeThrows() {
+    // Arrange
+    String json = "{\"messageID\":\"x\"}";
+
+    // Act & Assert
+    assertThrows(IllegalArgumentException.class, () -> JSONHandler.deserializeFromJSONToMessage(json));
+  }
+
+  /**
+   * Tests that a batch inside a batch is rejected while it is read, with
+   * the body before or after the messageType.
+   * Expected outcome: IllegalArgumentException for both.
+   */
+  @Test
+  void deserializeFromJSONToMessage_Negative_NestedBatchThrows() {
+    // Arrange
+    String inner = "{\"messageType\":\"BATCH\",\"body\":{\"commands\":[]}}";
+    String bodyFirst = "{\"body\":{\"commands\":[" + inner + "]},\"messageType\":\"BATCH\"}";
+    String typeFirst = "{\"messageType\":\"BATCH\",\"body\":{\"commands\":[" + inner + "]}}";
+
+    // Act & Assert
+    assertThrows(IllegalArgumentException.class, () -> JSONHandler.deserializeFromJSONToMessage(bodyFirst));
+    assertThrows(IllegalArgumentException.class, () -> JSONHandler.deserializeFromJSONToMessage(typeFirst));
+  }
+
+  /**
+   * Tests that the wire format is unchanged: fields in declaration order,
+   * null fields left out and pairs written as key/value objects.
+   * Expected outcome: the exact JSON string below.
+   */
+  @Test
+  void serializeMessageToJSON_Positive_KeepsWireFormat() {
+    // Arrange
+    HashMap<String, Pair<Double, String>> readings = new HashMap<>();
+    readings.put("Temperature-1", new Pair<>(14.0, "C"));
+    Message message = new Message("Server", null, "SENSOR_DATA", "m1", "c1", 5L, new SensorData(readings));
+
+    // Act
+    String json = JSONHandler.serializeMessageToJSON(message);
+
+    // Assert
+    assertEquals("{\"source\":\"Server\",\"messageType\":\"SENSOR_DATA\",\"messageID\":\"m1\","
+        + "\"correlationID\":\"c1\",\"timestamp\":5,\"body\":{\"sensorDataHashMap\":"
+        + "{\"Temperature-1\":{\"key\":14.0,\"value\":\"C\"}},\"data\":0.0}}", json);
+  }
+}
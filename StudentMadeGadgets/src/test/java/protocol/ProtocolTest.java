@@ -0,0 +1,179 @@
+package protocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the connection preamble and the framing of the class Protocol.
+ */
+class ProtocolTest {
+
+  /**
+   * Creates a Protocol that reads the given bytes, over a socket that is
+   * never connected.
+   */
+  private static Protocol protocolReading(byte[] input, int maxFrameSize) throws IOException {
+    Socket socket = new Socket() {
+      private final InputStream in = new ByteArrayInputStream(input);
+      private final OutputStream out = new ByteArrayOutputStream();
+
+      @Override
+      public InputStream getInputStream() {
+        return in;
+      }
+
+      @Override
+      public OutputStream getOutputStream() {
+        return out;
+      }
+    };
+    return new Protocol(socket, maxFrameSize);
+  }
+
+  /**
+   * Creates the bytes of a length prefixed connection: the preamble and one frame.
+   */
+  private static byte[] lengthPrefixed(byte[] frame) {
+    byte[] preamble = Protocol.createPreamble(Framing.LENGTH_PREFIXED);
+    return ByteBuffer.allocate(preamble.length + Integer.BYTES + frame.length)
+        .put(preamble).putInt(frame.length).put(frame).array();
+  }
+
+  /**
+   * Tests that a created preamble can be parsed again.
+   * Expected outcome: the parsed framing is the one the preamble was created with.
+   */
+  @Test
+  void parsePreamble_Positive_ReadsCreatedPreamble() throws IOException {
+    // Arrange
+    byte[] preamble = Protocol.createPreamble(Framing.LENGTH_PREFIXED);
+
+    // Act
+    Framing framing = Protocol.parsePreamble(preamble, 0);
+
+    // Assert
+    assertEquals(Protocol.PREAMBLE_LENGTH, preamble.length);
+    assertEquals(0, preamble[0]);
+    assertEquals(Framing.LENGTH_PREFIXED, framing);
+  }
+
+  /**
+   * Tests that a preamble with an unknown framing code is rejected.
+   * Expected outcome: IOException.
+   */
+  @Test
+  void parsePreamble_Negative_UnknownFramingThrows() {
+    // Arrange
+    byte[] preamble = Protocol.createPreamble(Framing.LINE);
+    preamble[Protocol.PREAMBLE_LENGTH - 3] = 42;
+
+    // Act & Assert
+    assertThrows(IOException.class, () -> Protocol.parsePreamble(preamble, 0));
+  }
+
+  /**
+   * Tests that the binary codec is only accepted with length prefixed framing.
+   * Expected outcome: IOException for a preamble asking for binary line framing.
+   */
+  @Test
+  void parsePreamble_Negative_BinaryCodecNeedsLengthPrefix() {
+    // Arrange
+    byte[] preamble = Protocol.createPreamble(Framing.LINE, Codec.BINARY);
+
+    // Act & Assert
+    assertThrows(IOException.class, () -> Protocol.parsePreamble(preamble, 0));
+  }
+
+  /**
+   * Tests that a message is read from a length prefixed frame after the
+   * framing was negotiated.
+   * Expected outcome: the message in the frame, then null at the end of the stream.
+   */
+  @Test
+  void readMessage_Positive_ReadsLengthPrefixedFrame() throws IOException {
+    // Arrange
+    byte[] input = lengthPrefixed("{\"messageType\":\"PING\"}".getBytes(StandardCharsets.UTF_8));
+    Protocol protocol = protocolReading(input, Protocol.DEFAULT_MAX_FRAME_SIZE);
+
+    // Act
+    Framing framing = protocol.acceptNegotiation();
+    String message = protocol.readMessage();
+    String end = protocol.readMessage();
+
+    // Assert
+    assertEquals(Framing.LENGTH_PREFIXED, framing);
+    assertEquals("{\"messageType\":\"PING\"}", message);
+    assertNull(end);
+  }
+
+  /**
+   * Tests that a line longer than the maximum frame size is rejected, also
+   * when the whole line fits in the read buffer.
+   * Expected outcome: IOException.
+   */
+  @Test
+  void readMessage_Negative_OversizedLineThrows() throws IOException {
+    // Arrange
+    byte[] input = ("x".repeat(100) + "\n").getBytes(StandardCharsets.UTF_8);
+    Protocol protocol = protocolReading(input, 64);
+
+    // Act & Assert
+    assertThrows(IOException.class, protocol::readMessage);
+  }
+
+  /**
+   * Tests that a frame longer than the maximum frame size is rejected
+   * before it is read.
+   * Expected outcome: IOException.
+   */
+  @Test
+  void readFrame_Negative_OversizedFrameThrows() throws IOException {
+    // Arrange
+    Protocol protocol = protocolReading(lengthPrefixed(new byte[100]), 64);
+    protocol.acceptNegotiation();
+
+    // Act & Assert
+    assertThrows(IOException.class, protocol::readFrame);
+  }
+
+  /**
+   * Tests that a server which answers the preamble with an ERROR line, as
+   * a server that does not know it does, leaves the connection as it was.
+   * Expected outcome: line framing and the JSON codec.
+   */
+  @Test
+  void negotiate_Negative_ErrorLineKeepsLineFraming() throws IOException {
+    // Arrange
+    byte[] input = "{\"messageType\":\"ERROR\"}\n".getBytes(StandardCharsets.UTF_8);
+    Protocol protocol = protocolReading(input, Protocol.DEFAULT_MAX_FRAME_SIZE);
+
+    // Act
+    Framing framing = protocol.negotiate(Framing.LENGTH_PREFIXED, Codec.BINARY);
+
+    // Assert
+    assertEquals(Framing.LINE, framing);
+    assertEquals(Codec.JSON, protocol.getCodec());
+  }
+
+  /**
+   * Tests that a server closing the connection on the preamble makes the negotiation fail.
+   * Expected outcome: IOException.
+   */
+  @Test
+  void negotiate_Negative_ClosedConnectionThrows() throws IOException {
+    // Arrange
+    Protocol protocol = protocolReading(new byte[0], Protocol.DEFAULT_MAX_FRAME_SIZE);
+
+    // Act & Assert
+    assertThrows(IOException.class, () -> protocol.negotiate(Framing.LENGTH_PREFIXED));
+  }
+}
@@ -0,0 +1,107 @@
+package protocol;
+
+import greenhouse.Greenhouse;
+import java.util.HashMap;
+import org.junit.jupiter.api.Test;
+import protocol.command.SensorData;
+import protocol.command.SensorDataDelta;
+import sensor.HumiditySensor;
+import sensor.TemperatureSensor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the classes SensorDeltaEncoder and SensorDeltaDecoder.
+ */
+class SensorDeltaEncoderTest {
+
+  private static Greenhouse createGreenhouse() {
+    Greenhouse greenhouse = new Greenhouse(1, "Test", 20, 50, 1000);
+    greenhouse.getSensorNode().addSensorToNode(new TemperatureSensor());
+    greenhouse.getSensorNode().addSensorToNode(new HumiditySensor());
+    return greenhouse;
+  }
+
+  private static Message asMessage(SensorDataDelta delta) {
+    Message message = new Message();
+    message.setMessageType("SENSOR_DATA_DELTA");
+    message.setBody(delta);
+    return message;
+  }
+
+  /**
+   * Tests that the first delta is a keyframe with every sensor, and that a
+   * second delta without changes is empty.
+   * Expected outcome: two sensors with IDs and units first, then nothing.
+   */
+  @Test
+  void encode_Positive_KeyframeThenEmpty() {
+    // Arrange
+    SensorDeltaEncoder encoder = new SensorDeltaEncoder();
+    Greenhouse greenhouse = createGreenhouse();
+
+    // Act
+    SensorDataDelta first = encoder.encode(greenhouse, new HashMap<>());
+    SensorDataDelta second = encoder.encode(greenhouse, new HashMap<>());
+
+    // Assert
+    assertTrue(first.isKeyframe());
+    assertEquals(2, first.getSensors().size());
+    assertEquals(2, first.getReadings().size());
+    assertTrue(second.isEmpty());
+  }
+
+  /**
+   * Tests that a reading is only sent again once it moved by more than the
+   * dead-band of its sensor type, counted from the reading last sent.
+   * Expected outcome: a change of 0.3 is left out, the total change of 0.6 is sent without its unit.
+   */
+  @Test
+  void encode_Positive_DeadBandPerSensorType() {
+    // Arrange
+    SensorDeltaEncoder encoder = new SensorDeltaEncoder();
+    Greenhouse greenhouse = createGreenhouse();
+    HashMap<String, Double> deadBands = new HashMap<>();
+    deadBands.put("Temperature", 0.5);
+    deadBands.put("ALL", 10.0);
+    encoder.encode(greenhouse, deadBands);
+
+    // Act
+    greenhouse.changeTemperature(0.3);
+    greenhouse.changeHumidity(5);
+    SensorDataDelta small = encoder.encode(greenhouse, deadBands);
+    greenhouse.changeTemperature(0.3);
+    SensorDataDelta large = encoder.encode(greenhouse, deadBands);
+
+    // Assert
+    assertTrue(small.isEmpty());
+    assertEquals(1, large.getReadings().size());
+    assertTrue(large.getSensors().isEmpty());
+    assertEquals(20.6, large.getReadings().values().iterator().next(), 1e-9);
+  }
+
+  /**
+   * Tests that the decoder rebuilds the full sensor data from deltas,
+   * including a removed sensor.
+   * Expected outcome: the decoded data matches a full read of the greenhouse.
+   */
+  @Test
+  void apply_Positive_RebuildsFullData() {
+    // Arrange
+    SensorDeltaEncoder encoder = new SensorDeltaEncoder();
+    SensorDeltaDecoder decoder = new SensorDeltaDecoder();
+    Greenhouse greenhouse = createGreenhouse();
+    decoder.apply(asMessage(encoder.encode(greenhouse, null)));
+
+    // Act
+    greenhouse.changeTemperature(1.5);
+    greenhouse.getSensorNode().removeSensorFromNode(greenhouse.getSensorNode().getSensor("Humidity-1"));
+    SensorData decoded = decoder.apply(asMessage(encoder.encode(greenhouse, null)));
+
+    // Assert
+    SensorData full = CommandHandler.readAllSensors(greenhouse);
+    assertEquals(full.getSensorDataHashMap().keySet(), decoded.getSensorDataHashMap().keySet());
+    assertEquals(21.5, decoded.getSensorDataHashMap().get("Temperature-1").getKey(), 1e-9);
+    assertEquals("Celsius", decoded.getSensorDataHashMap().get("Temperature-1").getValue());
+  }
+}
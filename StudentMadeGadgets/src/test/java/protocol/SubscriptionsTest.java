@@ -0,0 +1,160 @@
+package protocol;
+
+import greenhouse.Greenhouse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the class Subscriptions.
+ */
+class SubscriptionsTest {
+
+  /**
+   * Tests that a subscription pushes the current data right away and again on every change.
+   * Expected outcome: two SENSOR_DATA pushes correlated with the subscription ID.
+   */
+  @Test
+  void subscribe_Positive_PushesOnChange() {
+    // Arrange
+    ArrayList<Message> pushes = new ArrayList<>();
+    Subscriptions subscriptions = new Subscriptions((id, push) -> pushes.add(push.get()));
+    Greenhouse greenhouse = new Greenhouse(1, "Test", 20, 50, 1000);
+
+    // Act
+    subscriptions.subscribe("sub-1", greenhouse, "SENSOR");
+    greenhouse.notifyChanged();
+
+    // Assert
+    assertEquals(2, pushes.size());
+    assertEquals("SENSOR_DATA", pushes.get(1).getMessageType());
+    assertEquals("sub-1", pushes.get(1).getCorrelationID());
+  }
+
+  /**
+   * Tests that nothing is pushed after a subscription is stopped.
+   * Expected outcome: only the first push arrives, and a second unsubscribe fails.
+   */
+  @Test
+  void unsubscribe_Positive_StopsPushes() {
+    // Arrange
+    ArrayList<Message> pushes = new ArrayList<>();
+    Subscriptions subscriptions = new Subscriptions((id, push) -> pushes.add(push.get()));
+    Greenhouse greenhouse = new Greenhouse(1, "Test", 20, 50, 1000);
+    subscriptions.subscribe("sub-1", greenhouse, "ACTUATOR");
+
+    // Act
+    boolean stopped = subscriptions.unsubscribe("sub-1");
+    greenhouse.notifyChanged();
+
+    // Assert
+    assertTrue(stopped);
+    assertFalse(subscriptions.unsubscribe("sub-1"));
+    assertEquals(1, pushes.size());
+    assertEquals(0, subscriptions.size());
+  }
+
+  /**
+   * Tests that a subscription with an unknown device type or a reused ID is rejected.
+   * Expected outcome: an IllegalArgumentException is thrown in both cases.
+   */
+  @Test
+  void subscribe_Negative_InvalidRequest() {
+    // Arrange
+    Subscriptions subscriptions = new Subscriptions((id, push) -> { });
+    Greenhouse greenhouse = new Greenhouse(1, "Test", 20, 50, 1000);
+    subscriptions.subscribe("sub-1", greenhouse, "SENSOR");
+
+    // Act & Assert
+    assertThrows(IllegalArgumentException.class, () -> subscriptions.subscribe("sub-2", greenhouse, "CAMERA"));
+    assertThrows(IllegalArgumentException.class, () -> subscriptions.subscribe("sub-1", greenhouse, "SENSOR"));
+  }
+
+  /**
+   * Starts subscriptions with the given IDs from several threads at once,
+   * as pipelined SUBSCRIBE requests are.
+   *
+   * @return the number of subscriptions that were started
+   */
+  private static int subscribeConcurrently(Subscriptions subscriptions, List<String> subscriptionIds)
+      throws Exception {
+    Greenhouse greenhouse = new Greenhouse(1, "Test", 20, 50, 1000);
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicInteger started = new AtomicInteger();
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (String subscriptionId : subscriptionIds) {
+      tasks.add(() -> {
+        start.await();
+        try {
+          subscriptions.subscribe(subscriptionId, greenhouse, "SENSOR");
+          started.incrementAndGet();
+        } catch (IllegalArgumentException e) {
+          // Over the limit or a reused ID
+        }
+        return null;
+      });
+    }
+    try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+      List<Future<Void>> results = new ArrayList<>();
+      for (Callable<Void> task : tasks) {
+        results.add(executor.submit(task));
+      }
+      start.countDown();
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    }
+    return started.get();
+  }
+
+  /**
+   * Tests that subscriptions started at the same time keep to the limit.
+   * Expected outcome: exactly the maximum number of subscriptions is started.
+   */
+  @Test
+  void subscribe_Negative_ConcurrentSubscriptionsKeepLimit() throws Exception {
+    // Arrange
+    Subscriptions subscriptions = new Subscriptions((id, push) -> { });
+    List<String> subscriptionIds = new ArrayList<>();
+    for (int i = 0; i < Subscriptions.MAX_SUBSCRIPTIONS * 2; i++) {
+      subscriptionIds.add("sub-" + i);
+    }
+
+    // Act
+    int started = subscribeConcurrently(subscriptions, subscriptionIds);
+
+    // Assert
+    assertEquals(Subscriptions.MAX_SUBSCRIPTIONS, started);
+    assertEquals(Subscriptions.MAX_SUBSCRIPTIONS, subscriptions.size());
+  }
+
+  /**
+   * Tests that subscriptions with the same ID started at the same time
+   * start only one subscription.
+   * Expected outcome: one subscription is started.
+   */
+  @Test
+  void subscribe_Negative_ConcurrentSubscriptionsKeepIdsUnique() throws Exception {
+    // Arrange
+    Subscriptions subscriptions = new Subscriptions((id, push) -> { });
+    List<String> subscriptionIds = new ArrayList<>();
+    for (int i = 0; i < 32; i++) {
+      subscriptionIds.add("sub-1");
+    }
+
+    // Act
+    int started = subscribeConcurrently(subscriptions, subscriptionIds);
+
+    // Assert
+    assertEquals(1, started);
+    assertEquals(1, subscriptions.size());
+  }
+}
@@ -4,8 +4,6 @@ import greenhouse.Greenhouse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.lang.reflect.Field;
-
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -13,8 +11,8 @@ import static org.junit.jupiter.api.Assertions.*;
  *
  * <p>Tests include both positive and negative scenarios, validating
  * that the sensor correctly reports humidity values from the
- * {@link Greenhouse}. Timer-based updates are disabled using
- * reflection to ensure stable behavior during tests.</p>
+ * {@link Greenhouse}. Timer-based updates are stopped before
+ * each test to ensure stable behavior during tests.</p>
  */
 class HumiditySensorTest {
 
@@ -37,29 +35,16 @@ class HumiditySensorTest {
    * This prevents random environmental changes during tests.
    */
   private void disableTimer() {
-    try {
-      Field timerField = Greenhouse.class.getDeclaredField("timer");
-      timerField.setAccessible(true);
-      Object timer = timerField.get(greenhouse);
-      timer.getClass().getMethod("cancel").invoke(timer);
-    } catch (Exception e) {
-      fail("Failed to disable greenhouse timer: " + e.getMessage());
-    }
+    greenhouse.stopEnvironmentUpdates();
   }
 
   /**
-   * Helper method to set the private 'humidity' field on Greenhouse.
+   * Helper method to set the humidity of the Greenhouse.
    *
-   * @param value the humidity value to inject (0–100)
+   * @param value the humidity value to set (0–100)
    */
   private void setHumidity(int value) {
-    try {
-      Field field = Greenhouse.class.getDeclaredField("humidity");
-      field.setAccessible(true);
-      field.setInt(greenhouse, value);
-    } catch (Exception e) {
-      fail("Failed to set humidity via reflection: " + e.getMessage());
-    }
+    greenhouse.changeHumidity(value - greenhouse.getHumidity());
   }
 
   /**
@@ -4,8 +4,6 @@ import greenhouse.Greenhouse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.lang.reflect.Field;
-
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -13,7 +11,7 @@ import static org.junit.jupiter.api.Assertions.*;
  *
  * <p>Tests cover both positive and negative scenarios using
  * the Arrange–Act–Assert pattern. Timer-based updates in
- * {@link Greenhouse} are disabled via reflection to ensure
+ * {@link Greenhouse} are stopped before each test to ensure
  * deterministic test behavior.</p>
  */
 class LightSensorTest {
@@ -37,29 +35,16 @@ class LightSensorTest {
    * remain stable during testing.
    */
   private void disableTimer() {
-    try {
-      Field timerField = Greenhouse.class.getDeclaredField("timer");
-      timerField.setAccessible(true);
-      Object timer = timerField.get(greenhouse);
-      timer.getClass().getMethod("cancel").invoke(timer);
-    } catch (Exception e) {
-      fail("Failed to disable greenhouse timer: " + e.getMessage());
-    }
+    greenhouse.stopEnvironmentUpdates();
   }
 
   /**
-   * Helper method to set the private 'light' field in Greenhouse.
+   * Helper method to set the light level of the Greenhouse.
    *
-   * @param value the light value to inject
+   * @param value the light value to set
    */
   private void setLight(int value) {
-    try {
-      Field field = Greenhouse.class.getDeclaredField("light");
-      field.setAccessible(true);
-      field.setInt(greenhouse, value);
-    } catch (Exception e) {
-      fail("Failed to set light via reflection: " + e.getMessage());
-    }
+    greenhouse.changeLight(value - greenhouse.getLight());
   }
 
   /**
@@ -0,0 +1,92 @@
+package sensor;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the class SensorHistory.
+ */
+class SensorHistoryTest {
+
+  /**
+   * Tests that a full history overwrites its oldest readings.
+   * Expected outcome: the last three of five readings, oldest first.
+   */
+  @Test
+  void record_Positive_OverwritesOldest() {
+    // Arrange
+    SensorHistory history = new SensorHistory(3);
+    long[] timestamps = new long[3];
+    double[] values = new double[3];
+
+    // Act
+    for (int i = 1; i <= 5; i++) {
+      history.record(i * 1000L, i / 2.0);
+    }
+    int copied = history.copyTo(timestamps, values);
+
+    // Assert
+    assertEquals(3, copied);
+    assertEquals(3, history.size());
+    assertArrayEquals(new long[] {3000, 4000, 5000}, timestamps);
+    assertArrayEquals(new double[] {1.5, 2.0, 2.5}, values);
+  }
+
+  /**
+   * Tests that only the latest readings are copied into arrays shorter than the history.
+   * Expected outcome: the two latest readings, oldest first.
+   */
+  @Test
+  void copyTo_Positive_CopiesLatestThatFit() {
+    // Arrange
+    SensorHistory history = new SensorHistory(4);
+    for (int i = 1; i <= 3; i++) {
+      history.record(i, i);
+    }
+    long[] timestamps = new long[2];
+    double[] values = new double[2];
+
+    // Act
+    int copied = history.copyTo(timestamps, values);
+
+    // Assert
+    assertEquals(2, copied);
+    assertArrayEquals(new long[] {2, 3}, timestamps);
+    assertArrayEquals(new double[] {2, 3}, values);
+  }
+
+  /**
+   * Tests that a resized history keeps the latest readings and records after them.
+   * Expected outcome: readings 4 and 5 from the old history, then reading 6.
+   */
+  @Test
+  void resize_Positive_KeepsLatestReadings() {
+    // Arrange
+    SensorHistory history = new SensorHistory(4);
+    for (int i = 1; i <= 5; i++) {
+      history.record(i, i);
+    }
+    long[] timestamps = new long[3];
+    double[] values = new double[3];
+
+    // Act
+    SensorHistory resized = history.resize(3);
+    resized.record(6, 6);
+    resized.copyTo(timestamps, values);
+
+    // Assert
+    assertEquals(3, resized.getCapacity());
+    assertArrayEquals(new long[] {4, 5, 6}, timestamps);
+  }
+
+  /**
+   * Tests that a history must hold at least one reading.
+   * Expected outcome: an IllegalArgumentException is thrown.
+   */
+  @Test
+  void constructor_Negative_ZeroCapacityThrows() {
+    // Act & Assert
+    assertThrows(IllegalArgumentException.class, () -> new SensorHistory(0));
+  }
+}
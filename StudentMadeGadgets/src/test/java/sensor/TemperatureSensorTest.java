@@ -4,8 +4,6 @@ import greenhouse.Greenhouse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.lang.reflect.Field;
-
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -26,7 +24,7 @@ import static org.junit.jupiter.api.Assertions.*;
  *     <li>\`read()\` correctly handles low negative temperatures reported by the \`Greenhouse\`</li>
  *   </ul>
  *
- *   <p>Note: Tests use reflection to set the private temperature field on \`Greenhouse\`
+ *   <p>Note: Tests stop the environment updates of the \`Greenhouse\` and set its temperature
  *   to keep execution deterministic and independent of timer-based updates.</p>
  * </body>
  * </html>
@@ -40,22 +38,18 @@ class TemperatureSensorTest {
   void setUp() {
     // Arrange
     greenhouse = new Greenhouse("TestHouse");
+    // Keep the climate in the greenhouse fields, where the tests set it
+    greenhouse.stopEnvironmentUpdates();
     sensor = new TemperatureSensor();
   }
 
   /**
-   * Helper method to set the temperature field on Greenhouse via reflection.
+   * Helper method to set the temperature of the Greenhouse.
    *
-   * @param value temperature value to inject
+   * @param value temperature value to set
    */
   private void setTemperature(double value) {
-    try {
-      Field field = Greenhouse.class.getDeclaredField("temperature");
-      field.setAccessible(true);
-      field.setDouble(greenhouse, value);
-    } catch (Exception e) {
-      fail("Failed to set temperature via reflection: " + e.getMessage());
-    }
+    greenhouse.changeTemperature(value - greenhouse.getTemperature());
   }
 
   /**
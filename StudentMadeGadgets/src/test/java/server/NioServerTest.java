@@ -0,0 +1,140 @@
+package server;
+
+import client.SensorNode;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import protocol.JSONHandler;
+import protocol.Message;
+import protocol.Protocol;
+import protocol.command.AddSensor;
+import sensor.Sensor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the class NioServer over a socket. The server can not be stopped,
+ * so it runs on a daemon thread for the rest of the tests.
+ */
+class NioServerTest {
+
+  private static int port;
+
+  private Socket socket;
+  private Protocol client;
+  private int greenhouseId;
+  private CountDownLatch release;
+  private CountDownLatch entered;
+
+  /**
+   * A sensor node which blocks until it is released before adding a sensor.
+   */
+  private static class SlowSensorNode extends SensorNode {
+    private final transient CountDownLatch entered;
+    private final transient CountDownLatch release;
+
+    SlowSensorNode(CountDownLatch entered, CountDownLatch release) {
+      this.entered = entered;
+      this.release = release;
+    }
+
+    @Override
+    public String addSensorToNode(Sensor sensor) {
+      entered.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return super.addSensorToNode(sensor);
+    }
+  }
+
+  private static synchronized int startServer() throws Exception {
+    if (port == 0) {
+      int freePort;
+      try (ServerSocket probe = new ServerSocket(0)) {
+        freePort = probe.getLocalPort();
+      }
+      NioServer server = new NioServer(freePort, 1, Protocol.DEFAULT_MAX_FRAME_SIZE);
+      Thread thread = new Thread(() -> {
+        try {
+          server.run();
+        } catch (IOException e) {
+          System.out.println("NIO server stopped: " + e.getMessage());
+        }
+      });
+      thread.setDaemon(true);
+      thread.start();
+      port = freePort;
+    }
+    return port;
+  }
+
+  @BeforeEach
+  void setUp() throws Exception {
+    int serverPort = startServer();
+    long deadline = System.currentTimeMillis() + 5000;
+    while (socket == null) {
+      try {
+        socket = new Socket("localhost", serverPort);
+      } catch (ConnectException e) {
+        if (System.currentTimeMillis() > deadline) {
+          throw e;
+        }
+        Thread.sleep(10);
+      }
+    }
+    socket.setSoTimeout(5000);
+    client = new Protocol(socket);
+
+    release = new CountDownLatch(1);
+    entered = new CountDownLatch(1);
+    greenhouseId = Server.getGreenhouseRegistry().addGreenhouse("Slow NIO house");
+    Server.getGreenhouseRegistry().getGreenhouse(greenhouseId)
+        .setSensorNode(new SlowSensorNode(entered, release));
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    release.countDown();
+    client.close();
+    Server.getGreenhouseRegistry().removeGreenhouse(greenhouseId);
+  }
+
+  /**
+   * Tests that a client closing its side of the connection still gets the
+   * replies to the requests that were in flight.
+   * Expected outcome: the reply to the slow request, then the end of the stream.
+   */
+  @Test
+  void read_Positive_SendsInFlightRepliesBeforeClosing() throws Exception {
+    // Arrange
+    Message request = new Message();
+    request.setMessageType("ADD_SENSOR");
+    request.setMessageID("slow");
+    request.setBody(new AddSensor(greenhouseId, "Temperature"));
+    client.sendMessage(JSONHandler.serializeMessageToJSON(request));
+    assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+    // Act
+    socket.shutdownOutput();
+    // Give the server time to read the end of the stream before the request finishes
+    Thread.sleep(100);
+    release.countDown();
+    String reply = client.readMessage();
+    String end = client.readMessage();
+
+    // Assert
+    assertNotNull(reply);
+    assertEquals("slow", JsonParser.parseString(reply).getAsJsonObject().get("correlationID").getAsString());
+    assertNull(end);
+  }
+}
@@ -0,0 +1,107 @@
+package server;
+
+import actuator.Actuator;
+import greenhouse.Greenhouse;
+import greenhouse.GreenhouseRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the class RegistrySnapshot together with the write-ahead log written after it.
+ */
+class RegistrySnapshotTest {
+
+  @TempDir
+  Path directory;
+
+  /**
+   * Tests that a snapshot and the log tail after it restore the registry,
+   * with the climate and actuator state of the snapshot.
+   * Expected outcome: both greenhouses are restored, only the tail is replayed,
+   * and the heater that was on is on without its effect being added twice.
+   */
+  @Test
+  void load_Positive_RestoresSnapshotAndLogTail() throws IOException {
+    // Arrange
+    Path snapshot = directory.resolve(RegistrySnapshot.FILE_NAME);
+    GreenhouseRegistry original = new GreenhouseRegistry();
+    try (WriteAheadLog log = WriteAheadLog.open(directory, 0, original, 0)) {
+      WriteAheadLogTest.logGreenhouse(log, original);
+      RegistrySnapshot.take(snapshot, log, original);
+      Greenhouse later = new Greenhouse(0, "South", 20, 50, 1000);
+      original.addGreenhouse(later);
+      log.awaitDurable(log.logCreateGreenhouse(later));
+    }
+    GreenhouseRegistry restored = new GreenhouseRegistry();
+
+    // Act
+    long snapshotLsn = RegistrySnapshot.load(snapshot, restored);
+    try (WriteAheadLog log = WriteAheadLog.open(directory, 0, restored, snapshotLsn)) {
+
+      // Assert
+      assertEquals(4, snapshotLsn);
+      assertEquals(1, log.getReplayedRecords());
+    }
+    Greenhouse greenhouse = restored.getGreenhouse(1);
+    Actuator heater = greenhouse.getSensorNode().getActuator("Heater-1");
+    assertTrue(heater.isOn());
+    assertEquals(2, heater.getPower());
+    // 20 degrees and 7 from the heater, give or take a climate tick
+    assertEquals(27, greenhouse.getTemperature(), 2);
+    assertNotNull(greenhouse.getSensorNode().getSensor("Temperature-1"));
+    assertEquals("South", restored.getGreenhouse(2).getGreenhouseName());
+    restored.getAllGreenhouses().forEach(Greenhouse::stopEnvironmentUpdates);
+  }
+
+  /**
+   * Tests that the next greenhouse ID survives a snapshot when the greenhouse
+   * with the highest ID was removed.
+   * Expected outcome: a greenhouse added after loading gets an ID that was never used.
+   */
+  @Test
+  void load_Positive_KeepsNextId() throws IOException {
+    // Arrange
+    Path snapshot = directory.resolve(RegistrySnapshot.FILE_NAME);
+    GreenhouseRegistry original = new GreenhouseRegistry();
+    original.addGreenhouse(new Greenhouse(0, "North", 20, 50, 1000));
+    original.removeGreenhouse(original.addGreenhouse(new Greenhouse(0, "South", 20, 50, 1000)));
+    try (WriteAheadLog log = WriteAheadLog.open(directory, 0, original, 0)) {
+      RegistrySnapshot.take(snapshot, log, original);
+    }
+    GreenhouseRegistry restored = new GreenhouseRegistry();
+
+    // Act
+    RegistrySnapshot.load(snapshot, restored);
+
+    // Assert
+    assertEquals(3, restored.addGreenhouse(new Greenhouse(0, "East", 20, 50, 1000)));
+    restored.getGreenhouse(1).stopEnvironmentUpdates();
+  }
+
+  /**
+   * Tests that a damaged snapshot is not loaded.
+   * Expected outcome: an IOException is thrown.
+   */
+  @Test
+  void load_Negative_CorruptSnapshotThrows() throws IOException {
+    // Arrange
+    Path snapshot = directory.resolve(RegistrySnapshot.FILE_NAME);
+    GreenhouseRegistry original = new GreenhouseRegistry();
+    original.addGreenhouse(new Greenhouse(0, "North", 20, 50, 1000));
+    try (WriteAheadLog log = WriteAheadLog.open(directory, 0, original, 0)) {
+      RegistrySnapshot.take(snapshot, log, original);
+    }
+    byte[] bytes = Files.readAllBytes(snapshot);
+    bytes[bytes.length / 2] ^= 1;
+    Files.write(snapshot, bytes, StandardOpenOption.TRUNCATE_EXISTING);
+
+    // Act & Assert
+    assertThrows(IOException.class, () -> RegistrySnapshot.load(snapshot, new GreenhouseRegistry()));
+  }
+}
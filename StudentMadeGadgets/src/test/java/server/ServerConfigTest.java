@@ -0,0 +1,161 @@
+package server;
+
+import greenhouse.ClimateEngine;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the class ServerConfig, mainly the parsing of command line options.
+ */
+class ServerConfigTest {
+
+  /**
+   * Tests that a config without arguments uses the protocol defaults.
+   * Expected outcome: port 6767 and blocking mode.
+   */
+  @Test
+  void fromArgs_Positive_NoArgumentsGivesDefaults() {
+    // Arrange
+    String[] args = {};
+
+    // Act
+    ServerConfig config = ServerConfig.fromArgs(args);
+
+    // Assert
+    assertEquals(6767, config.getPort());
+    assertEquals(ServerMode.BLOCKING, config.getMode());
+    assertTrue(config.getIoThreads() >= 1);
+  }
+
+  /**
+   * Tests that given options override the defaults.
+   * Expected outcome: port, mode and I/O thread count are taken from the arguments.
+   */
+  @Test
+  void fromArgs_Positive_ParsesGivenOptions() {
+    // Arrange
+    String[] args = {"--port=7000", "--mode=nio", "--io-threads=3"};
+
+    // Act
+    ServerConfig config = ServerConfig.fromArgs(args);
+
+    // Assert
+    assertEquals(7000, config.getPort());
+    assertEquals(ServerMode.NIO, config.getMode());
+    assertEquals(3, config.getIoThreads());
+  }
+
+  /**
+   * Tests that an unknown option is rejected.
+   * Expected outcome: IllegalArgumentException.
+   */
+  @Test
+  void fromArgs_Negative_UnknownOptionThrows() {
+    // Arrange
+    String[] args = {"--colour=green"};
+
+    // Act & Assert
+    assertThrows(IllegalArgumentException.class, () -> ServerConfig.fromArgs(args));
+  }
+
+  /**
+   * Tests that zero I/O threads is rejected.
+   * Expected outcome: IllegalArgumentException.
+   */
+  @Test
+  void setIoThreads_Negative_ZeroThrows() {
+    // Arrange
+    ServerConfig config = new ServerConfig();
+
+    // Act & Assert
+    assertThrows(IllegalArgumentException.class, () -> config.setIoThreads(0));
+  }
+
+  /**
+   * Tests that the maximum frame size can be set from the command line.
+   * Expected outcome: the given frame size is used.
+   */
+  @Test
+  void fromArgs_Positive_ParsesMaxFrameSize() {
+    // Arrange
+    String[] args = {"--max-frame-size=4096"};
+
+    // Act
+    ServerConfig config = ServerConfig.fromArgs(args);
+
+    // Assert
+    assertEquals(4096, config.getMaxFrameSize());
+  }
+
+  /**
+   * Tests that the list cache age and metrics interval can be set from the command line.
+   * Expected outcome: the given values are used.
+   */
+  @Test
+  void fromArgs_Positive_ParsesCacheAndMetricsOptions() {
+    // Arrange
+    String[] args = {"--list-cache-max-age=0", "--metrics-interval=30"};
+
+    // Act
+    ServerConfig config = ServerConfig.fromArgs(args);
+
+    // Assert
+    assertEquals(0, config.getListCacheMaxAge());
+    assertEquals(30, config.getMetricsInterval());
+  }
+
+  /**
+   * Tests that the climate mode can be set from the command line.
+   * Expected outcome: the lazy mode is used, and eager is the default.
+   */
+  @Test
+  void fromArgs_Positive_ParsesClimateMode() {
+    // Arrange
+    String[] args = {"--climate-mode=lazy"};
+
+    // Act
+    ServerConfig config = ServerConfig.fromArgs(args);
+
+    // Assert
+    assertEquals(ClimateEngine.Mode.LAZY, config.getClimateMode());
+    assertEquals(ClimateEngine.Mode.EAGER, new ServerConfig().getClimateMode());
+  }
+
+  /**
+   * Tests that the write-ahead log options can be set from the command line.
+   * Expected outcome: the directory and intervals are used, and no log is the default.
+   */
+  @Test
+  void fromArgs_Positive_ParsesWalOptions() {
+    // Arrange
+    String[] args = {"--wal-dir=data/wal", "--wal-sync-interval=0", "--snapshot-interval=300"};
+
+    // Act
+    ServerConfig config = ServerConfig.fromArgs(args);
+
+    // Assert
+    assertEquals(Path.of("data/wal"), config.getWalDirectory());
+    assertEquals(0, config.getWalSyncInterval());
+    assertEquals(300, config.getSnapshotInterval());
+    assertNull(new ServerConfig().getWalDirectory());
+  }
+
+  /**
+   * Tests that the sensor history capacity can be set from the command line.
+   * Expected outcome: 360 readings per sensor, and no history is the default.
+   */
+  @Test
+  void fromArgs_Positive_ParsesHistoryCapacity() {
+    // Arrange
+    String[] args = {"--history-capacity=360"};
+
+    // Act
+    ServerConfig config = ServerConfig.fromArgs(args);
+
+    // Assert
+    assertEquals(360, config.getHistoryCapacity());
+    assertEquals(0, new ServerConfig().getHistoryCapacity());
+  }
+}
@@ -0,0 +1,204 @@
+package server;
+
+import client.SensorNode;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import protocol.JSONHandler;
+import protocol.Message;
+import protocol.Protocol;
+import protocol.command.AddSensor;
+import protocol.command.Command;
+import sensor.Sensor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the pipelining of requests on one connection of the class Server.
+ *
+ * <p>A request is made slow with a sensor node that blocks the request
+ * threads adding a sensor until it is released.</p>
+ */
+class ServerTest {
+
+  private ServerSocket serverSocket;
+  private Socket socket;
+  private Protocol client;
+  private int greenhouseId;
+  private CountDownLatch release;
+  private CountDownLatch entered;
+
+  /**
+   * A sensor node which blocks until it is released before adding a sensor.
+   */
+  private static class SlowSensorNode extends SensorNode {
+    private final transient CountDownLatch entered;
+    private final transient CountDownLatch release;
+
+    SlowSensorNode(CountDownLatch entered, CountDownLatch release) {
+      this.entered = entered;
+      this.release = release;
+    }
+
+    @Override
+    public String addSensorToNode(Sensor sensor) {
+      entered.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return super.addSensorToNode(sensor);
+    }
+  }
+
+  @BeforeEach
+  void setUp() throws IOException {
+    serverSocket = new ServerSocket(0);
+    Thread acceptor = new Thread(() -> {
+      try {
+        Server.handle(serverSocket.accept());
+      } catch (IOException e) {
+        // The test failed to connect
+      }
+    });
+    acceptor.setDaemon(true);
+    acceptor.start();
+    socket = new Socket("localhost", serverSocket.getLocalPort());
+    socket.setSoTimeout(5000);
+    client = new Protocol(socket);
+
+    release = new CountDownLatch(1);
+    entered = new CountDownLatch(Server.MAX_IN_FLIGHT_PER_CONNECTION);
+    greenhouseId = Server.getGreenhouseRegistry().addGreenhouse("Slow house");
+    Server.getGreenhouseRegistry().getGreenhouse(greenhouseId)
+        .setSensorNode(new SlowSensorNode(entered, release));
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    release.countDown();
+    client.close();
+    serverSocket.close();
+    Server.getGreenhouseRegistry().removeGreenhouse(greenhouseId);
+  }
+
+  private void send(String messageId, String messageType, Command body) throws IOException {
+    Message request = new Message();
+    request.setMessageType(messageType);
+    request.setMessageID(messageId);
+    request.setBody(body);
+    client.sendMessage(JSONHandler.serializeMessageToJSON(request));
+  }
+
+  private void sendSlow(String messageId) throws IOException {
+    send(messageId, "ADD_SENSOR", new AddSensor(greenhouseId, "Temperature"));
+  }
+
+  private void sendFast(String messageId) throws IOException {
+    send(messageId, "GET_ALL_GREENHOUSES", null);
+  }
+
+  private String readCorrelationId() throws IOException {
+    String reply = client.readMessage();
+    assertNotNull(reply);
+    // Only the correlationID is read, the bodies are not needed
+    return JsonParser.parseString(reply).getAsJsonObject().get("correlationID").getAsString();
+  }
+
+  /**
+   * Tests that a fast request is answered while a slow request sent before
+   * it is still being handled.
+   * Expected outcome: the reply to the fast request comes first, and each
+   * reply carries the messageID of its request as correlationID.
+   */
+  @Test
+  void handle_Positive_RepliesOutOfOrder() throws Exception {
+    // Arrange
+    sendSlow("slow");
+    sendFast("fast");
+
+    // Act
+    String first = readCorrelationId();
+    release.countDown();
+    String second = readCorrelationId();
+
+    // Assert
+    assertEquals("fast", first);
+    assertEquals("slow", second);
+  }
+
+  /**
+   * Tests that no more requests are read from a connection while the
+   * maximum number of its requests are being handled.
+   * Expected outcome: the fast request is not answered until the slow
+   * requests are released, and then every request is answered.
+   */
+  @Test
+  void handle_Positive_PausesReadingAtMaxInFlight() throws Exception {
+    // Arrange
+    for (int i = 0; i < Server.MAX_IN_FLIGHT_PER_CONNECTION; i++) {
+      sendSlow("slow-" + i);
+    }
+    sendFast("fast");
+    assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+    // Act
+    socket.setSoTimeout(200);
+    assertThrows(SocketTimeoutException.class, client::readMessage);
+    socket.setSoTimeout(5000);
+    release.countDown();
+    List<String> replies = new ArrayList<>();
+    for (int i = 0; i <= Server.MAX_IN_FLIGHT_PER_CONNECTION; i++) {
+      replies.add(readCorrelationId());
+    }
+
+    // Assert
+    assertTrue(replies.contains("fast"));
+    assertEquals(Server.MAX_IN_FLIGHT_PER_CONNECTION + 1, replies.stream().distinct().count());
+  }
+
+  /**
+   * Tests that a client closing its side of the connection still gets the
+   * replies to the requests that were in flight.
+   * Expected outcome: the reply to the slow request, then the end of the stream.
+   */
+  @Test
+  void handle_Positive_SendsInFlightRepliesBeforeClosing() throws Exception {
+    // Arrange
+    sendSlow("slow");
+    assertTrue(waitForEntered(1));
+
+    // Act
+    socket.shutdownOutput();
+    // Give the server time to read the end of the stream before the request finishes
+    Thread.sleep(100);
+    release.countDown();
+    String correlationId = readCorrelationId();
+    String end = client.readMessage();
+
+    // Assert
+    assertEquals("slow", correlationId);
+    assertNull(end);
+  }
+
+  private boolean waitForEntered(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (Server.MAX_IN_FLIGHT_PER_CONNECTION - entered.getCount() < count) {
+      if (System.currentTimeMillis() > deadline) {
+        return false;
+      }
+      Thread.sleep(10);
+    }
+    return true;
+  }
+}
@@ -0,0 +1,175 @@
+package server;
+
+import actuator.Actuator;
+import actuator.HeaterActuator;
+import greenhouse.Greenhouse;
+import greenhouse.GreenhouseRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sensor.Sensor;
+import sensor.TemperatureSensor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the class WriteAheadLog, mainly replaying it into a new registry.
+ */
+class WriteAheadLogTest {
+
+  @TempDir
+  Path directory;
+
+  /**
+   * Writes a greenhouse with a sensor and a heater that is on to a log.
+   *
+   * @return the ID of the greenhouse
+   */
+  static int logGreenhouse(WriteAheadLog log, GreenhouseRegistry registry) {
+    Greenhouse greenhouse = new Greenhouse(0, "North", 20, 50, 1000);
+    registry.addGreenhouse(greenhouse);
+    log.logCreateGreenhouse(greenhouse);
+    Sensor sensor = new TemperatureSensor();
+    greenhouse.getSensorNode().addSensorToNode(sensor);
+    log.logAddSensor(greenhouse.getGreenhouseId(), sensor);
+    Actuator heater = new HeaterActuator();
+    greenhouse.getSensorNode().addActuatorToNode(heater);
+    log.logAddActuator(greenhouse.getGreenhouseId(), heater);
+    heater.setPower(2, greenhouse);
+    heater.setState(true, greenhouse);
+    log.awaitDurable(log.logActuatorState(greenhouse.getGreenhouseId(), heater));
+    return greenhouse.getGreenhouseId();
+  }
+
+  /**
+   * Tests that greenhouses, sensors and actuator states are restored from the log,
+   * and that a removed greenhouse stays removed.
+   * Expected outcome: only the greenhouse that was kept is restored, with its
+   * devices, and new greenhouses get IDs after all logged ones.
+   */
+  @Test
+  void open_Positive_ReplaysChanges() throws IOException {
+    // Arrange
+    GreenhouseRegistry original = new GreenhouseRegistry();
+    int id;
+    try (WriteAheadLog log = WriteAheadLog.open(directory, 5, original, 0)) {
+      id = logGreenhouse(log, original);
+      int removedId = logGreenhouse(log, original);
+      original.removeGreenhouse(removedId);
+      log.logRemoveGreenhouse(removedId);
+    }
+    GreenhouseRegistry restored = new GreenhouseRegistry();
+
+    // Act
+    try (WriteAheadLog log = WriteAheadLog.open(directory, 0, restored, 0)) {
+
+      // Assert
+      assertEquals(9, log.getReplayedRecords());
+      assertEquals(9, log.getLastLsn());
+    }
+    assertEquals(1, restored.getAllGreenhouses().size());
+    Greenhouse greenhouse = restored.getGreenhouse(id);
+    assertEquals("North", greenhouse.getGreenhouseName());
+    assertNotNull(greenhouse.getSensorNode().getSensor("Temperature-1"));
+    Actuator heater = greenhouse.getSensorNode().getActuator("Heater-1");
+    assertTrue(heater.isOn());
+    assertEquals(2, heater.getPower());
+    assertEquals(id + 2, restored.addGreenhouse(new Greenhouse(0, "South", 20, 50, 1000)));
+    restored.getAllGreenhouses().forEach(Greenhouse::stopEnvironmentUpdates);
+  }
+
+  /**
+   * Tests that a record torn by a crash is cut off, and new records follow the last whole one.
+   * Expected outcome: the whole records and the record added after reopening are replayed.
+   */
+  @Test
+  void open_Positive_CutsOffTornRecord() throws IOException {
+    // Arrange
+    try (WriteAheadLog log = WriteAheadLog.open(directory, 0, new GreenhouseRegistry(), 0)) {
+      logGreenhouse(log, new GreenhouseRegistry());
+    }
+    Path file;
+    try (Stream<Path> files = Files.list(directory)) {
+      file = files.findFirst().orElseThrow();
+    }
+    long length = Files.size(file);
+    Files.write(file, new byte[] {0, 0, 0, 40, 0, 0, 1}, StandardOpenOption.APPEND);
+
+    // Act
+    try (WriteAheadLog log = WriteAheadLog.open(directory, 0, new GreenhouseRegistry(), 0)) {
+      assertEquals(length, Files.size(file));
+      log.awaitDurable(log.logRemoveGreenhouse(1));
+    }
+    GreenhouseRegistry restored = new GreenhouseRegistry();
+    try (WriteAheadLog log = WriteAheadLog.open(directory, 0, restored, 0)) {
+
+      // Assert
+      assertEquals(5, log.getReplayedRecords());
+    }
+    assertNull(restored.getGreenhouse(1));
+  }
+
+  /**
+   * Tests that replaying a log into a registry that already holds its changes does nothing.
+   * Expected outcome: one greenhouse with one sensor and one actuator, as before.
+   */
+  @Test
+  void open_Positive_ReplayIsIdempotent() throws IOException {
+    // Arrange
+    GreenhouseRegistry registry = new GreenhouseRegistry();
+    try (WriteAheadLog log = WriteAheadLog.open(directory, 0, registry, 0)) {
+      logGreenhouse(log, registry);
+    }
+    long version = registry.getVersion();
+
+    // Act
+    WriteAheadLog.open(directory, 0, registry, 0).close();
+
+    // Assert
+    assertEquals(version, registry.getVersion());
+    Greenhouse greenhouse = registry.getGreenhouse(1);
+    assertEquals(1, greenhouse.getSensorNode().getSensors().size());
+    assertEquals(1, greenhouse.getSensorNode().getActuators().size());
+    assertTrue(greenhouse.getSensorNode().getActuator("Heater-1").isOn());
+  }
+
+  /**
+   * Tests that rotating starts a new segment, and that the segments before a
+   * snapshot are deleted but still skipped when they are left behind.
+   * Expected outcome: two segments after rotating, one after deleting, and
+   * only the record after the snapshot LSN is replayed.
+   */
+  @Test
+  void rotate_Positive_SegmentsBeforeSnapshotAreDeleted() throws IOException {
+    // Arrange
+    GreenhouseRegistry registry = new GreenhouseRegistry();
+    long lsn;
+    try (WriteAheadLog log = WriteAheadLog.open(directory, 0, registry, 0)) {
+      logGreenhouse(log, registry);
+
+      // Act
+      lsn = log.rotate();
+      log.awaitDurable(log.logRemoveGreenhouse(1));
+
+      // Assert
+      assertEquals(4, lsn);
+      assertEquals(2, countSegments());
+      assertEquals(1, log.deleteSegmentsBefore(lsn));
+      assertEquals(1, countSegments());
+    }
+    try (WriteAheadLog log = WriteAheadLog.open(directory, 0, new GreenhouseRegistry(), lsn)) {
+      assertEquals(1, log.getReplayedRecords());
+      assertEquals(5, log.getLastLsn());
+    }
+  }
+
+  private long countSegments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+}